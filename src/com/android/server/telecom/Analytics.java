@@ -41,12 +41,11 @@ import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.stream.Collectors;
 
@@ -222,6 +221,9 @@ public class Analytics {
 
         public void setMissedReason(long missedReason) {
         }
+
+        public void setTimeToFirstRingMillis(long timeToFirstRingMillis) {
+        }
     }
 
     /**
@@ -252,23 +254,32 @@ public class Analytics {
         public EventManager.EventRecord callEvents;
 
         public boolean isVideo = false;
-        public List<TelecomLogClass.VideoEvent> videoEvents;
         public List<TelecomLogClass.InCallServiceInfo> inCallServiceInfos;
         public int callProperties = 0;
         public int callSource = CALL_SOURCE_UNSPECIFIED;
         public long missedReason;
-
+        // From the call being added until its ringtone first played; -1 if it never rang.
+        public long timeToFirstRingMillis = -1;
+
+        // Video events are kept in parallel arrays, guarded by the CallInfoImpl itself.
+        private int mNumVideoEvents = 0;
+        private int[] mVideoEventNames = new int[INITIAL_VIDEO_EVENT_CAPACITY];
+        private long[] mVideoEventIntervals = new long[INITIAL_VIDEO_EVENT_CAPACITY];
+        private int[] mVideoEventStates = new int[INITIAL_VIDEO_EVENT_CAPACITY];
         private long mTimeOfLastVideoEvent = -1;
 
-        CallInfoImpl(String callId, int callDirection) {
+        // Position of this call in the AnalyticsStore.
+        long storeSequence;
+
+        @VisibleForTesting
+        public CallInfoImpl(String callId, int callDirection) {
             this.callId = callId;
             startTime = 0;
             endTime = 0;
             this.callDirection = callDirection;
             callTechnologies = 0;
             connectionService = "";
-            videoEvents = new LinkedList<>();
-            inCallServiceInfos = new LinkedList<>();
+            inCallServiceInfos = new ArrayList<>();
             missedReason = 0;
         }
 
@@ -285,10 +296,17 @@ public class Analytics {
             this.isEmergency = other.isEmergency;
             this.callEvents = other.callEvents;
             this.isVideo = other.isVideo;
-            this.videoEvents = other.videoEvents;
+            synchronized (other) {
+                this.mNumVideoEvents = other.mNumVideoEvents;
+                this.mVideoEventNames = other.mVideoEventNames.clone();
+                this.mVideoEventIntervals = other.mVideoEventIntervals.clone();
+                this.mVideoEventStates = other.mVideoEventStates.clone();
+                this.mTimeOfLastVideoEvent = other.mTimeOfLastVideoEvent;
+            }
             this.callProperties = other.callProperties;
             this.callSource = other.callSource;
             this.missedReason = other.missedReason;
+            this.timeToFirstRingMillis = other.timeToFirstRingMillis;
 
             if (other.callTerminationReason != null) {
                 this.callTerminationReason = new DisconnectCause(
@@ -365,6 +383,17 @@ public class Analytics {
             this.missedReason = missedReason;
         }
 
+        @Override
+        public void setTimeToFirstRingMillis(long timeToFirstRingMillis) {
+            if (this.timeToFirstRingMillis >= 0) {
+                // Ringing restarted, e.g. when a headset connected; keep the first.
+                return;
+            }
+            Log.d(TAG, "setting timeToFirstRing for call " + callId + " to "
+                    + timeToFirstRingMillis);
+            this.timeToFirstRingMillis = timeToFirstRingMillis;
+        }
+
         @Override
         public void setCallEvents(EventManager.EventRecord records) {
             this.callEvents = records;
@@ -376,7 +405,7 @@ public class Analytics {
         }
 
         @Override
-        public void addVideoEvent(int eventId, int videoState) {
+        public synchronized void addVideoEvent(int eventId, int videoState) {
             long timeSinceLastEvent;
             long currentTime = System.currentTimeMillis();
             if (mTimeOfLastVideoEvent < 0) {
@@ -386,15 +415,21 @@ public class Analytics {
             }
             mTimeOfLastVideoEvent = currentTime;
 
-            videoEvents.add(new TelecomLogClass.VideoEvent()
-                    .setEventName(eventId)
-                    .setTimeSinceLastEventMillis(timeSinceLastEvent)
-                    .setVideoState(videoState));
+            if (mNumVideoEvents == mVideoEventNames.length) {
+                int capacity = mNumVideoEvents * 2;
+                mVideoEventNames = Arrays.copyOf(mVideoEventNames, capacity);
+                mVideoEventIntervals = Arrays.copyOf(mVideoEventIntervals, capacity);
+                mVideoEventStates = Arrays.copyOf(mVideoEventStates, capacity);
+            }
+            mVideoEventNames[mNumVideoEvents] = eventId;
+            mVideoEventIntervals[mNumVideoEvents] = timeSinceLastEvent;
+            mVideoEventStates[mNumVideoEvents] = videoState;
+            mNumVideoEvents++;
         }
 
         @Override
-        public void addInCallService(String serviceName, int type, long boundDuration,
-                boolean isNullBinding) {
+        public synchronized void addInCallService(String serviceName, int type,
+                long boundDuration, boolean isNullBinding) {
             inCallServiceInfos.add(new TelecomLogClass.InCallServiceInfo()
                     .setInCallServiceName(serviceName)
                     .setInCallServiceType(type)
@@ -430,6 +465,7 @@ public class Analytics {
                     + "    callProperties: " + Connection.propertiesToStringShort(callProperties)
                     + '\n'
                     + "    callSource: " + getCallSourceString() + '\n'
+                    + "    timeToFirstRingMillis: " + timeToFirstRingMillis + '\n'
                     + "}\n";
         }
 
@@ -502,6 +538,9 @@ public class Analytics {
                     .setIsVideoCall(isVideo)
                     .setConnectionProperties(callProperties)
                     .setCallSource(callSource);
+            if (timeToFirstRingMillis >= 0) {
+                result.setTimeToFirstRingMillis(timeToFirstRingMillis);
+            }
 
             result.connectionService = new String[]{connectionService};
             if (callEvents != null) {
@@ -510,10 +549,17 @@ public class Analytics {
                         .map(Analytics::logEventTimingToProtoEventTiming)
                         .toArray(TelecomLogClass.EventTimingEntry[]::new);
             }
-            result.videoEvents =
-                    videoEvents.toArray(new TelecomLogClass.VideoEvent[videoEvents.size()]);
-            result.inCallServices = inCallServiceInfos.toArray(
-                    new TelecomLogClass.InCallServiceInfo[inCallServiceInfos.size()]);
+            synchronized (this) {
+                result.videoEvents = new TelecomLogClass.VideoEvent[mNumVideoEvents];
+                for (int i = 0; i < mNumVideoEvents; i++) {
+                    result.videoEvents[i] = new TelecomLogClass.VideoEvent()
+                            .setEventName(mVideoEventNames[i])
+                            .setTimeSinceLastEventMillis(mVideoEventIntervals[i])
+                            .setVideoState(mVideoEventStates[i]);
+                }
+                result.inCallServices = inCallServiceInfos.toArray(
+                        new TelecomLogClass.InCallServiceInfo[inCallServiceInfos.size()]);
+            }
 
             return result;
         }
@@ -648,75 +694,67 @@ public class Analytics {
     public static final long MILLIS_IN_1_SECOND = ParcelableCallAnalytics.MILLIS_IN_1_SECOND;
 
     public static final int MAX_NUM_CALLS_TO_STORE = 100;
+    public static final int MAX_NUM_SESSION_TIMINGS_TO_STORE = 1000;
     public static final int MAX_NUM_DUMP_TIMES_TO_STORE = 100;
+    private static final int INITIAL_VIDEO_EVENT_CAPACITY = 4;
 
-    private static final Object sLock = new Object(); // Coarse lock for all of analytics
+    // Serializes dumps and clears; appends to the store do not take it.
+    private static final Object sLock = new Object();
     private static final LinkedBlockingDeque<Long> sDumpTimes =
             new LinkedBlockingDeque<>(MAX_NUM_DUMP_TIMES_TO_STORE);
-    private static final Map<String, CallInfoImpl> sCallIdToInfo = new HashMap<>();
-    private static final LinkedList<String> sActiveCallIds = new LinkedList<>();
-    private static final List<SessionTiming> sSessionTimings = new LinkedList<>();
+    private static final AnalyticsStore sStore =
+            new AnalyticsStore(MAX_NUM_CALLS_TO_STORE, MAX_NUM_SESSION_TIMINGS_TO_STORE);
 
     public static void addSessionTiming(String sessionName, long time) {
-        if (sLogSessionToSessionId.containsKey(sessionName)) {
-            synchronized (sLock) {
-                sSessionTimings.add(new SessionTiming(sLogSessionToSessionId.get(sessionName),
-                        time));
-            }
+        Integer sessionId = sLogSessionToSessionId.get(sessionName);
+        if (sessionId != null) {
+            sStore.addSessionTiming(sessionId, time);
         }
     }
 
     public static CallInfo initiateCallAnalytics(String callId, int direction) {
         Log.i(TAG, "Starting analytics for call " + callId);
         CallInfoImpl callInfo = new CallInfoImpl(callId, direction);
-        synchronized (sLock) {
-            while (sActiveCallIds.size() >= MAX_NUM_CALLS_TO_STORE) {
-                String callToRemove = sActiveCallIds.remove();
-                sCallIdToInfo.remove(callToRemove);
-            }
-            sCallIdToInfo.put(callId, callInfo);
-            sActiveCallIds.add(callId);
-        }
+        sStore.addCall(callInfo);
         return callInfo;
     }
 
     public static TelecomAnalytics dumpToParcelableAnalytics() {
-        List<ParcelableCallAnalytics> calls = new LinkedList<>();
-        List<SessionTiming> sessionTimings = new LinkedList<>();
+        List<ParcelableCallAnalytics> calls = new ArrayList<>();
+        List<SessionTiming> sessionTimings = new ArrayList<>();
         synchronized (sLock) {
-            calls.addAll(sCallIdToInfo.values().stream()
-                    .map(CallInfoImpl::toParcelableAnalytics)
-                    .collect(Collectors.toList()));
-            sessionTimings.addAll(sSessionTimings);
-            sCallIdToInfo.clear();
-            sSessionTimings.clear();
+            sStore.forEachCall(callInfo -> calls.add(callInfo.toParcelableAnalytics()));
+            sStore.forEachSessionTiming((sessionId, time) ->
+                    sessionTimings.add(new SessionTiming(sessionId, time)));
+            sStore.clearCalls();
+            sStore.clearSessionTimings();
         }
         return new TelecomAnalytics(sessionTimings, calls);
     }
 
     public static void dumpToEncodedProto(Context context, PrintWriter pw, String[] args) {
-        TelecomLogClass.TelecomLog result = new TelecomLogClass.TelecomLog();
+        dumpToEncodedProto(context, pw, args, null);
+    }
 
+    /**
+     * Writes the analytics as a base64 encoded {@link TelecomLogClass.TelecomLog}.
+     * @param listenerTimings If not {@code null}, the listener latencies to include in the log.
+     */
+    public static void dumpToEncodedProto(Context context, PrintWriter pw, String[] args,
+            CallsManagerListenerTimings listenerTimings) {
+        byte[] encodedLog;
         synchronized (sLock) {
             noteDumpTime();
-            result.callLogs = sCallIdToInfo.values().stream()
-                    .map(CallInfoImpl::toProto)
-                    .toArray(TelecomLogClass.CallLog[]::new);
-            result.sessionTimings = sSessionTimings.stream()
-                    .map(timing -> new TelecomLogClass.LogSessionTiming()
-                            .setSessionEntryPoint(timing.getKey())
-                            .setTimeMillis(timing.getTime()))
-                    .toArray(TelecomLogClass.LogSessionTiming[]::new);
-            result.setHardwareRevision(SystemProperties.get("ro.boot.revision", ""));
-            result.setCarrierId(getCarrierId(context));
+            encodedLog = sStore.encodeTelecomLog(SystemProperties.get("ro.boot.revision", ""),
+                    getCarrierId(context), listenerTimings == null
+                            ? new TelecomLogClass.ListenerLatency[0]
+                            : listenerTimings.toProto());
             if (args.length > 1 && CLEAR_ANALYTICS_ARG.equals(args[1])) {
-                sCallIdToInfo.clear();
-                sSessionTimings.clear();
+                sStore.clearCalls();
+                sStore.clearSessionTimings();
             }
         }
-        String encodedProto = Base64.encodeToString(
-                TelecomLogClass.TelecomLog.toByteArray(result), Base64.DEFAULT);
-        pw.write(encodedProto);
+        pw.write(Base64.encodeToString(encodedLog, Base64.DEFAULT));
     }
 
     private static int getCarrierId(Context context) {
@@ -748,39 +786,25 @@ public class Analytics {
 
     public static void dump(IndentingPrintWriter writer) {
         synchronized (sLock) {
-            int prefixLength = CallsManager.TELECOM_CALL_ID_PREFIX.length();
-            List<String> callIds = new ArrayList<>(sCallIdToInfo.keySet());
-            // Sort the analytics in increasing order of call IDs
-            try {
-                Collections.sort(callIds, (id1, id2) -> {
-                    int i1, i2;
-                    try {
-                        i1 = Integer.valueOf(id1.substring(prefixLength));
-                    } catch (NumberFormatException e) {
-                        i1 = Integer.MAX_VALUE;
-                    }
-
-                    try {
-                        i2 = Integer.valueOf(id2.substring(prefixLength));
-                    } catch (NumberFormatException e) {
-                        i2 = Integer.MAX_VALUE;
-                    }
-                    return i1 - i2;
-                });
-            } catch (IllegalArgumentException e) {
-                // do nothing, leave the list in a partially sorted state.
-            }
-
-            for (String callId : callIds) {
-                writer.printf("Call %s: ", callId);
-                writer.println(sCallIdToInfo.get(callId).toString());
+            // Calls are stored in the order they were created, which is call ID order.
+            sStore.forEachCall(callInfo -> {
+                writer.printf("Call %s: ", callInfo.callId);
+                writer.println(callInfo.toString());
+            });
+
+            Map<Integer, long[]> totalTimings = new TreeMap<>();
+            sStore.forEachSessionTiming((sessionId, time) -> {
+                long[] total = totalTimings.computeIfAbsent(sessionId, k -> new long[2]);
+                total[0] += time;
+                total[1]++;
+            });
+            for (Map.Entry<Integer, long[]> e : totalTimings.entrySet()) {
+                String sessionName = sSessionIdToLogSession.get(e.getKey());
+                if (sessionName != null) {
+                    writer.printf("%s: %.2f\n", sessionName,
+                            (double) e.getValue()[0] / e.getValue()[1]);
+                }
             }
-
-            Map<Integer, Double> averageTimings = SessionTiming.averageTimings(sSessionTimings);
-            averageTimings.entrySet().stream()
-                    .filter(e -> sSessionIdToLogSession.containsKey(e.getKey()))
-                    .forEach(e -> writer.printf("%s: %.2f\n",
-                            sSessionIdToLogSession.get(e.getKey()), e.getValue()));
             writer.println("Hardware Version: " + SystemProperties.get("ro.boot.revision", ""));
             writer.println("Past analytics dumps: ");
             writer.increaseIndent();
@@ -793,7 +817,7 @@ public class Analytics {
 
     public static void reset() {
         synchronized (sLock) {
-            sCallIdToInfo.clear();
+            sStore.clearCalls();
         }
     }
 
@@ -814,10 +838,9 @@ public class Analytics {
     @VisibleForTesting
     public static Map<String, CallInfoImpl> cloneData() {
         synchronized (sLock) {
-            Map<String, CallInfoImpl> result = new HashMap<>(sCallIdToInfo.size());
-            for (Map.Entry<String, CallInfoImpl> entry : sCallIdToInfo.entrySet()) {
-                result.put(entry.getKey(), new CallInfoImpl(entry.getValue()));
-            }
+            Map<String, CallInfoImpl> result = new HashMap<>();
+            sStore.forEachCall(callInfo -> result.put(callInfo.callId,
+                    new CallInfoImpl(callInfo)));
             return result;
         }
     }
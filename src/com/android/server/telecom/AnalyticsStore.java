@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.server.telecom.nano.TelecomLogClass;
+import com.google.protobuf.nano.CodedOutputByteBufferNano;
+import com.google.protobuf.nano.WireFormatNano;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-capacity storage for the data {@link Analytics} collects.
+ * <p>
+ * Calls and session timings are each kept in a ring which overwrites its oldest entry once full.
+ * Appending to either ring is lock-free, so call and logging threads never wait on a dump. Each
+ * session timing is packed into a single {@code long} so that a timing is stored without
+ * allocating and is always read whole.
+ * <p>
+ * Entries are never removed; clearing the store moves a watermark past the entries appended so
+ * far, and readers skip everything before it.
+ */
+@VisibleForTesting
+public class AnalyticsStore {
+    // TelecomLog field numbers, see telecom.proto.
+    private static final int FIELD_CALL_LOGS = 1;
+    private static final int FIELD_SESSION_TIMINGS = 2;
+    private static final int FIELD_HARDWARE_REVISION = 3;
+    private static final int FIELD_CARRIER_ID = 4;
+    private static final int FIELD_LISTENER_LATENCIES = 5;
+    // LogSessionTiming field numbers.
+    private static final int FIELD_SESSION_ENTRY_POINT = 1;
+    private static final int FIELD_TIME_MILLIS = 2;
+
+    private static final int TIMING_TIME_BITS = 48;
+    private static final long TIMING_TIME_MASK = (1L << TIMING_TIME_BITS) - 1;
+    private static final long EMPTY_TIMING = -1;
+
+    /**
+     * Receives the session timings read from the store.
+     */
+    public interface SessionTimingConsumer {
+        void accept(int sessionId, long timeMillis);
+    }
+
+    private final int mCallCapacity;
+    private final AtomicReferenceArray<Analytics.CallInfoImpl> mCalls;
+    private final AtomicLong mCallSequence = new AtomicLong();
+    private final AtomicLong mCallWatermark = new AtomicLong();
+
+    private final int mTimingCapacity;
+    private final AtomicLongArray mTimings;
+    private final AtomicLong mTimingSequence = new AtomicLong();
+    private final AtomicLong mTimingWatermark = new AtomicLong();
+
+    public AnalyticsStore(int callCapacity, int timingCapacity) {
+        mCallCapacity = callCapacity;
+        mCalls = new AtomicReferenceArray<>(callCapacity);
+        mTimingCapacity = timingCapacity;
+        mTimings = new AtomicLongArray(timingCapacity);
+        for (int i = 0; i < timingCapacity; i++) {
+            mTimings.set(i, EMPTY_TIMING);
+        }
+    }
+
+    /**
+     * Adds a call, overwriting the oldest call if the store is full.
+     */
+    public void addCall(Analytics.CallInfoImpl callInfo) {
+        long sequence = mCallSequence.getAndIncrement();
+        callInfo.storeSequence = sequence;
+        mCalls.set((int) (sequence % mCallCapacity), callInfo);
+    }
+
+    /**
+     * Adds a session timing, overwriting the oldest timing if the store is full.
+     * @param sessionId One of {@link android.telecom.TelecomAnalytics.SessionTiming}'s IDs.
+     */
+    public void addSessionTiming(int sessionId, long timeMillis) {
+        long packed = ((long) sessionId << TIMING_TIME_BITS)
+                | (Math.max(0, timeMillis) & TIMING_TIME_MASK);
+        long sequence = mTimingSequence.getAndIncrement();
+        mTimings.set((int) (sequence % mTimingCapacity), packed);
+    }
+
+    /**
+     * Passes each stored call to {@code consumer}, oldest first.
+     */
+    public void forEachCall(Consumer<Analytics.CallInfoImpl> consumer) {
+        long end = mCallSequence.get();
+        long start = Math.max(mCallWatermark.get(), end - mCallCapacity);
+        for (long sequence = start; sequence < end; sequence++) {
+            Analytics.CallInfoImpl callInfo = mCalls.get((int) (sequence % mCallCapacity));
+            // Skip slots which are still being written or were overwritten since reading end.
+            if (callInfo != null && callInfo.storeSequence == sequence) {
+                consumer.accept(callInfo);
+            }
+        }
+    }
+
+    /**
+     * Passes each stored session timing to {@code consumer}, oldest first. A timing added while
+     * this runs may be reported in place of the timing it overwrites.
+     */
+    public void forEachSessionTiming(SessionTimingConsumer consumer) {
+        long end = mTimingSequence.get();
+        long start = Math.max(mTimingWatermark.get(), end - mTimingCapacity);
+        for (long sequence = start; sequence < end; sequence++) {
+            long packed = mTimings.get((int) (sequence % mTimingCapacity));
+            if (packed != EMPTY_TIMING) {
+                consumer.accept((int) (packed >>> TIMING_TIME_BITS), packed & TIMING_TIME_MASK);
+            }
+        }
+    }
+
+    public void clearCalls() {
+        mCallWatermark.set(mCallSequence.get());
+    }
+
+    public void clearSessionTimings() {
+        mTimingWatermark.set(mTimingSequence.get());
+    }
+
+    /**
+     * Encodes the stored data as a {@link TelecomLogClass.TelecomLog}. Calls and timings are
+     * written to the output as they are read from the rings, rather than first being collected
+     * into the message's arrays.
+     */
+    public byte[] encodeTelecomLog(String hardwareRevision, int carrierId) {
+        return encodeTelecomLog(hardwareRevision, carrierId,
+                new TelecomLogClass.ListenerLatency[0]);
+    }
+
+    /**
+     * Encodes the stored data as a {@link TelecomLogClass.TelecomLog}, along with latencies which
+     * are not kept in the store.
+     */
+    public byte[] encodeTelecomLog(String hardwareRevision, int carrierId,
+            TelecomLogClass.ListenerLatency[] listenerLatencies) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[][] scratch = new byte[1][64];
+        forEachCall(callInfo -> {
+            TelecomLogClass.CallLog callLog = callInfo.toProto();
+            int size = CodedOutputByteBufferNano.computeMessageSize(FIELD_CALL_LOGS, callLog);
+            CodedOutputByteBufferNano output = newOutput(scratch, size);
+            try {
+                output.writeMessage(FIELD_CALL_LOGS, callLog);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            out.write(scratch[0], 0, size);
+        });
+        forEachSessionTiming((sessionId, timeMillis) -> {
+            int messageSize =
+                    CodedOutputByteBufferNano.computeInt32Size(FIELD_SESSION_ENTRY_POINT,
+                            sessionId)
+                    + CodedOutputByteBufferNano.computeInt64Size(FIELD_TIME_MILLIS, timeMillis);
+            int size = CodedOutputByteBufferNano.computeTagSize(FIELD_SESSION_TIMINGS)
+                    + CodedOutputByteBufferNano.computeRawVarint32Size(messageSize) + messageSize;
+            CodedOutputByteBufferNano output = newOutput(scratch, size);
+            try {
+                output.writeTag(FIELD_SESSION_TIMINGS, WireFormatNano.WIRETYPE_LENGTH_DELIMITED);
+                output.writeRawVarint32(messageSize);
+                output.writeInt32(FIELD_SESSION_ENTRY_POINT, sessionId);
+                output.writeInt64(FIELD_TIME_MILLIS, timeMillis);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            out.write(scratch[0], 0, size);
+        });
+        int size = CodedOutputByteBufferNano.computeStringSize(FIELD_HARDWARE_REVISION,
+                hardwareRevision)
+                + CodedOutputByteBufferNano.computeInt32Size(FIELD_CARRIER_ID, carrierId);
+        CodedOutputByteBufferNano output = newOutput(scratch, size);
+        try {
+            output.writeString(FIELD_HARDWARE_REVISION, hardwareRevision);
+            output.writeInt32(FIELD_CARRIER_ID, carrierId);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        out.write(scratch[0], 0, size);
+        for (TelecomLogClass.ListenerLatency latency : listenerLatencies) {
+            size = CodedOutputByteBufferNano.computeMessageSize(FIELD_LISTENER_LATENCIES, latency);
+            output = newOutput(scratch, size);
+            try {
+                output.writeMessage(FIELD_LISTENER_LATENCIES, latency);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            out.write(scratch[0], 0, size);
+        }
+        return out.toByteArray();
+    }
+
+    private static CodedOutputByteBufferNano newOutput(byte[][] scratch, int size) {
+        if (scratch[0].length < size) {
+            scratch[0] = new byte[Math.max(size, scratch[0].length * 2)];
+        }
+        return CodedOutputByteBufferNano.newInstance(scratch[0], 0, size);
+    }
+}
@@ -242,9 +242,12 @@ public class AsyncRingtonePlayer {
                 } catch (InterruptedException e) {
                     Log.w(this, "handlePlay: latch exception: " + e);
                 }
-                if (ringtoneInfoSupplier != null && ringtoneInfoSupplier.get() != null) {
-                    ringtoneUri = ringtoneInfoSupplier.get().first;
-                    ringtone = ringtoneInfoSupplier.get().second;
+                // Each get() opens a new ringtone, so only ask once.
+                Pair<Uri, Ringtone> ringtoneInfo =
+                        ringtoneInfoSupplier != null ? ringtoneInfoSupplier.get() : null;
+                if (ringtoneInfo != null) {
+                    ringtoneUri = ringtoneInfo.first;
+                    ringtone = ringtoneInfo.second;
                 }
 
                 // Ringtone supply can be slow or stop command could have been issued while waiting
@@ -84,6 +84,7 @@ import com.android.server.telecom.voip.VoipCallTransactionResult;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -156,10 +157,78 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     private static final String EVENT_PHONE_ACCOUNT_CHANGED =
             "org.codeaurora.telecom.event.EVENT_PHONE_ACCOUNT_CHANGED";
 
+    /**
+     * The {@link Listener} callbacks, as bits for {@link Listener#getInterestedEvents()}.
+     */
+    public static final long LISTENER_SUCCESSFUL_OUTGOING_CALL = 1L << 0;
+    public static final long LISTENER_FAILED_OUTGOING_CALL = 1L << 1;
+    public static final long LISTENER_SUCCESSFUL_INCOMING_CALL = 1L << 2;
+    public static final long LISTENER_FAILED_INCOMING_CALL = 1L << 3;
+    public static final long LISTENER_SUCCESSFUL_UNKNOWN_CALL = 1L << 4;
+    public static final long LISTENER_FAILED_UNKNOWN_CALL = 1L << 5;
+    public static final long LISTENER_RINGBACK_REQUESTED = 1L << 6;
+    public static final long LISTENER_POST_DIAL_WAIT = 1L << 7;
+    public static final long LISTENER_POST_DIAL_CHAR = 1L << 8;
+    public static final long LISTENER_CONNECTION_CAPABILITIES_CHANGED = 1L << 9;
+    public static final long LISTENER_CONNECTION_PROPERTIES_CHANGED = 1L << 10;
+    public static final long LISTENER_PARENT_CHANGED = 1L << 11;
+    public static final long LISTENER_CHILDREN_CHANGED = 1L << 12;
+    public static final long LISTENER_CANNED_SMS_RESPONSES_LOADED = 1L << 13;
+    public static final long LISTENER_VIDEO_CALL_PROVIDER_CHANGED = 1L << 14;
+    public static final long LISTENER_CALLER_INFO_CHANGED = 1L << 15;
+    public static final long LISTENER_IS_VOIP_AUDIO_MODE_CHANGED = 1L << 16;
+    public static final long LISTENER_STATUS_HINTS_CHANGED = 1L << 17;
+    public static final long LISTENER_EXTRAS_CHANGED = 1L << 18;
+    public static final long LISTENER_EXTRAS_REMOVED = 1L << 19;
+    public static final long LISTENER_HANDLE_CHANGED = 1L << 20;
+    public static final long LISTENER_CALLER_DISPLAY_NAME_CHANGED = 1L << 21;
+    public static final long LISTENER_CALL_DIRECTION_CHANGED = 1L << 22;
+    public static final long LISTENER_VIDEO_STATE_CHANGED = 1L << 23;
+    public static final long LISTENER_TARGET_PHONE_ACCOUNT_CHANGED = 1L << 24;
+    public static final long LISTENER_CONNECTION_MANAGER_PHONE_ACCOUNT_CHANGED = 1L << 25;
+    public static final long LISTENER_PHONE_ACCOUNT_CHANGED = 1L << 26;
+    public static final long LISTENER_CONFERENCEABLE_CALLS_CHANGED = 1L << 27;
+    public static final long LISTENER_CONFERENCE_STATE_CHANGED = 1L << 28;
+    public static final long LISTENER_CDMA_CONFERENCE_SWAP = 1L << 29;
+    public static final long LISTENER_CANCELED_VIA_NEW_OUTGOING_CALL_BROADCAST = 1L << 30;
+    public static final long LISTENER_HOLD_TONE_REQUESTED = 1L << 31;
+    public static final long LISTENER_CALL_HOLD_FAILED = 1L << 32;
+    public static final long LISTENER_CALL_SWITCH_FAILED = 1L << 33;
+    public static final long LISTENER_CONNECTION_EVENT = 1L << 34;
+    public static final long LISTENER_CALL_STREAMING_STATE_CHANGED = 1L << 35;
+    public static final long LISTENER_EXTERNAL_CALL_CHANGED = 1L << 36;
+    public static final long LISTENER_RTT_INITIATION_FAILURE = 1L << 37;
+    public static final long LISTENER_REMOTE_RTT_REQUEST = 1L << 38;
+    public static final long LISTENER_HANDOVER_REQUESTED = 1L << 39;
+    public static final long LISTENER_HANDOVER_FAILED = 1L << 40;
+    public static final long LISTENER_HANDOVER_COMPLETE = 1L << 41;
+    public static final long LISTENER_BLUETOOTH_CALL_QUALITY_REPORT = 1L << 42;
+    public static final long LISTENER_RECEIVED_DEVICE_TO_DEVICE_MESSAGE = 1L << 43;
+    public static final long LISTENER_RECEIVED_CALL_QUALITY_REPORT = 1L << 44;
+    public static final long LISTENER_CALLER_NUMBER_VERIFICATION_STATUS_CHANGED = 1L << 45;
+    public static final long LISTENER_STATE_CHANGED = 1L << 46;
+    public static final long LISTENER_UPDATE_BATCH_ENDED = 1L << 47;
+
+    /** All {@link Listener} callbacks. */
+    public static final long LISTENER_ALL_EVENTS = -1L;
+    private static final int NUM_LISTENER_EVENTS = 48;
+    private static final Listener[] NO_LISTENERS = new Listener[0];
+
     /**
      * Listener for events on the call.
      */
     public interface Listener {
+        /**
+         * @return The callbacks this listener should be invoked for, as a combination of the
+         * {@code LISTENER_*} bits. Other callbacks are skipped, so this must include every
+         * callback the listener implements. A listener interested in no callbacks would not be
+         * added, so {@code 0} is taken to mean every callback.
+         */
+        default long getInterestedEvents() {
+            return LISTENER_ALL_EVENTS;
+        }
+
+
         default void onSuccessfulOutgoingCall(Call call, int callState) {};
         default void onFailedOutgoingCall(Call call, DisconnectCause disconnectCause) {};
         default void onSuccessfulIncomingCall(Call call) {};
@@ -213,6 +282,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         default void onReceivedCallQualityReport(Call call, CallQuality callQuality) {};
         default void onCallerNumberVerificationStatusChanged(Call call,
                 int callerNumberVerificationStatus) {};
+        default void onStateChanged(Call call, int oldState, int newState) {};
+        /**
+         * Called once the changes made between {@link #beginUpdateBatch()} and the matching
+         * {@link #endUpdateBatch()} have all been applied.
+         */
+        default void onUpdateBatchEnded(Call call) {};
     }
 
     public abstract static class ListenerBase implements Listener {
@@ -313,6 +388,10 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         @Override
         public void onCallerNumberVerificationStatusChanged(Call call,
                 int callerNumberVerificationStatus) {}
+        @Override
+        public void onStateChanged(Call call, int oldState, int newState) {}
+        @Override
+        public void onUpdateBatchEnded(Call call) {}
     }
 
     private final CallerInfoLookupHelper.OnQueryCompleteListener mCallerInfoQueryListener =
@@ -526,6 +605,14 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     private final Set<Listener> mListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<Listener, Boolean>(8, 0.9f, 1));
+    /**
+     * For each {@link Listener} callback, the listeners interested in it. Rebuilt whenever a
+     * listener is added or removed, so that dispatching a callback does not allocate or visit
+     * uninterested listeners.
+     */
+    private volatile Listener[][] mListenersByEvent = newListenersByEvent();
+    // Guarded by mLock.
+    private int mUpdateBatchDepth;
 
     private CreateConnectionProcessor mCreateConnectionProcessor;
 
@@ -1018,13 +1105,107 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     }
 
     public void addListener(Listener listener) {
-        mListeners.add(listener);
+        synchronized (mListeners) {
+            if (mListeners.add(listener)) {
+                updateListenersByEvent();
+            }
+        }
     }
 
     public void removeListener(Listener listener) {
         if (listener != null) {
-            mListeners.remove(listener);
+            synchronized (mListeners) {
+                if (mListeners.remove(listener)) {
+                    updateListenersByEvent();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param event One of the {@code LISTENER_*} bits.
+     * @return The listeners interested in {@code event}.
+     */
+    private Listener[] getListeners(long event) {
+        return mListenersByEvent[Long.numberOfTrailingZeros(event)];
+    }
+
+    private void updateListenersByEvent() {
+        Listener[] listeners = mListeners.toArray(NO_LISTENERS);
+        long[] interests = new long[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+            interests[i] = listeners[i].getInterestedEvents();
+            if (interests[i] == 0) {
+                interests[i] = LISTENER_ALL_EVENTS;
+            }
+        }
+        Listener[][] listenersByEvent = newListenersByEvent();
+        for (int event = 0; event < NUM_LISTENER_EVENTS; event++) {
+            long bit = 1L << event;
+            int count = 0;
+            for (long interest : interests) {
+                if ((interest & bit) != 0) {
+                    count++;
+                }
+            }
+            if (count == listeners.length) {
+                // Share one array between the callbacks every listener is interested in.
+                listenersByEvent[event] = listeners;
+            } else if (count > 0) {
+                Listener[] interested = new Listener[count];
+                int next = 0;
+                for (int i = 0; i < listeners.length; i++) {
+                    if ((interests[i] & bit) != 0) {
+                        interested[next++] = listeners[i];
+                    }
+                }
+                listenersByEvent[event] = interested;
+            }
         }
+        mListenersByEvent = listenersByEvent;
+    }
+
+    private static Listener[][] newListenersByEvent() {
+        Listener[][] listenersByEvent = new Listener[NUM_LISTENER_EVENTS][];
+        Arrays.fill(listenersByEvent, NO_LISTENERS);
+        return listenersByEvent;
+    }
+
+    /**
+     * Starts a batch of changes to the call. Listeners are still told about each change as it is
+     * made, but may hold back work which only depends on the final state of the call, such as
+     * sending the call to the {@link android.telecom.InCallService}s, until {@link
+     * Listener#onUpdateBatchEnded}. Batches may be nested; must be called with the Telecom lock
+     * held, and always be paired with {@link #endUpdateBatch()}.
+     * <p>
+     * Only {@link #handleCreateConnectionSuccess} batches its changes. Later changes from the
+     * {@link android.telecom.ConnectionService} each arrive as their own binder call, and are
+     * still sent to the {@link android.telecom.InCallService}s one at a time.
+     */
+    public void beginUpdateBatch() {
+        mUpdateBatchDepth++;
+    }
+
+    /**
+     * Ends the batch started by the matching {@link #beginUpdateBatch()}.
+     */
+    public void endUpdateBatch() {
+        if (mUpdateBatchDepth == 0) {
+            Log.w(this, "endUpdateBatch: no batch in progress");
+            return;
+        }
+        if (--mUpdateBatchDepth == 0) {
+            for (Listener l : getListeners(LISTENER_UPDATE_BATCH_ENDED)) {
+                l.onUpdateBatchEnded(this);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if changes to the call are currently being batched.
+     */
+    public boolean isInUpdateBatch() {
+        return mUpdateBatchDepth > 0;
     }
 
     public void initAnalytics() {
@@ -1382,6 +1563,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             updateVideoHistoryViaState(mState, newState);
 
+            int oldState = mState;
             mState = newState;
             maybeLoadCannedSmsResponses();
 
@@ -1473,13 +1655,17 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     .setDurationSeconds(Long.valueOf(
                         (mDisconnectTimeMillis - mConnectTimeMillis) / 1000).intValue())
                     .write(newState);
+
+            for (Listener l : getListeners(LISTENER_STATE_CHANGED)) {
+                l.onStateChanged(this, oldState, newState);
+            }
         }
         return true;
     }
 
     void setRingbackRequested(boolean ringbackRequested) {
         mRingbackRequested = ringbackRequested;
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_RINGBACK_REQUESTED)) {
             l.onRingbackRequested(this, mRingbackRequested);
         }
     }
@@ -1573,8 +1759,9 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void setCallerNumberVerificationStatus(
             @Connection.VerificationStatus int callerNumberVerificationStatus) {
         mCallerNumberVerificationStatus = callerNumberVerificationStatus;
-        mListeners.forEach(l -> l.onCallerNumberVerificationStatusChanged(this,
-                callerNumberVerificationStatus));
+        for (Listener l : getListeners(LISTENER_CALLER_NUMBER_VERIFICATION_STATUS_CHANGED)) {
+            l.onCallerNumberVerificationStatusChanged(this, callerNumberVerificationStatus);
+        }
     }
 
     public @Connection.VerificationStatus int getCallerNumberVerificationStatus() {
@@ -1629,7 +1816,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             } else  {
                 Log.i(this, "skip incoming caller info lookup");
             }
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_HANDLE_CHANGED)) {
                 l.onHandleChanged(this);
             }
         }
@@ -1670,7 +1857,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 presentation != mCallerDisplayNamePresentation) {
             mCallerDisplayName = callerDisplayName;
             mCallerDisplayNamePresentation = presentation;
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CALLER_DISPLAY_NAME_CHANGED)) {
                 l.onCallerDisplayNameChanged(this);
             }
         }
@@ -1807,7 +1994,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void setConnectionManagerPhoneAccount(PhoneAccountHandle accountHandle) {
         if (!Objects.equals(mConnectionManagerPhoneAccountHandle, accountHandle)) {
             mConnectionManagerPhoneAccountHandle = accountHandle;
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CONNECTION_MANAGER_PHONE_ACCOUNT_CHANGED)) {
                 l.onConnectionManagerPhoneAccountChanged(this);
             }
         }
@@ -1867,7 +2054,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 mCallsManager.getEmergencyCallHelper().setLastOutgoingEmergencyCallPAH(
                         accountHandle);
             }
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_TARGET_PHONE_ACCOUNT_CHANGED)) {
                 l.onTargetPhoneAccountChanged(this);
             }
             configureCallAttributes();
@@ -2317,7 +2504,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (forceUpdate || mConnectionCapabilities != connectionCapabilities) {
             int previousCapabilities = mConnectionCapabilities;
             mConnectionCapabilities = connectionCapabilities;
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CONNECTION_CAPABILITIES_CHANGED)) {
                 l.onConnectionCapabilitiesChanged(this);
             }
 
@@ -2399,7 +2586,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             mWasHighDefAudio = (connectionProperties & Connection.PROPERTY_HIGH_DEF_AUDIO) ==
                     Connection.PROPERTY_HIGH_DEF_AUDIO;
             mWasWifi = (connectionProperties & Connection.PROPERTY_WIFI) > 0;
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CONNECTION_PROPERTIES_CHANGED)) {
                 l.onConnectionPropertiesChanged(this, didRttChange);
             }
 
@@ -2417,7 +2604,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     boolean isInEmergencyCall = mCallsManager.isInEmergencyCall();
                     setIsPullExternalCallSupported(!isInEmergencyCall);
                 }
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_EXTERNAL_CALL_CHANGED)) {
                     l.onExternalCallChanged(this, isExternal);
                 }
             }
@@ -2636,12 +2823,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             case CALL_DIRECTION_INCOMING:
                 // Listeners (just CallsManager for now) will be responsible for checking whether
                 // the call should be blocked.
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_SUCCESSFUL_INCOMING_CALL)) {
                     l.onSuccessfulIncomingCall(this);
                 }
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_SUCCESSFUL_OUTGOING_CALL)) {
                     l.onSuccessfulOutgoingCall(this,
                             getStateFromConnectionState(conference.getState()));
                 }
@@ -2655,20 +2842,30 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             ParcelableConnection connection) {
         Log.v(this, "handleCreateConnectionSuccessful %s", connection);
         mIsCreateConnectionComplete = true;
-        setTargetPhoneAccount(connection.getPhoneAccount());
-        setHandle(connection.getHandle(), connection.getHandlePresentation());
-
-        setCallerDisplayName(
-                connection.getCallerDisplayName(), connection.getCallerDisplayNamePresentation());
-        setConnectionCapabilities(connection.getConnectionCapabilities());
-        setConnectionProperties(connection.getConnectionProperties());
-        setIsVoipAudioMode(connection.getIsVoipAudioMode());
-        setSupportedAudioRoutes(connection.getSupportedAudioRoutes());
-        setVideoProvider(connection.getVideoProvider());
-        setVideoState(connection.getVideoState());
-        setRingbackRequested(connection.isRingbackRequested());
-        setStatusHints(connection.getStatusHints());
-        putConnectionServiceExtras(connection.getExtras());
+        boolean batchUpdates = mFlags.batchConnectionUpdates();
+        if (batchUpdates) {
+            beginUpdateBatch();
+        }
+        try {
+            setTargetPhoneAccount(connection.getPhoneAccount());
+            setHandle(connection.getHandle(), connection.getHandlePresentation());
+
+            setCallerDisplayName(connection.getCallerDisplayName(),
+                    connection.getCallerDisplayNamePresentation());
+            setConnectionCapabilities(connection.getConnectionCapabilities());
+            setConnectionProperties(connection.getConnectionProperties());
+            setIsVoipAudioMode(connection.getIsVoipAudioMode());
+            setSupportedAudioRoutes(connection.getSupportedAudioRoutes());
+            setVideoProvider(connection.getVideoProvider());
+            setVideoState(connection.getVideoState());
+            setRingbackRequested(connection.isRingbackRequested());
+            setStatusHints(connection.getStatusHints());
+            putConnectionServiceExtras(connection.getExtras());
+        } finally {
+            if (batchUpdates) {
+                endUpdateBatch();
+            }
+        }
 
         mConferenceableCalls.clear();
         for (String id : connection.getConferenceableConnectionIds()) {
@@ -2681,18 +2878,18 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
                 // Listeners (just CallsManager for now) will be responsible for checking whether
                 // the call should be blocked.
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_SUCCESSFUL_INCOMING_CALL)) {
                     l.onSuccessfulIncomingCall(this);
                 }
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_SUCCESSFUL_OUTGOING_CALL)) {
                     l.onSuccessfulOutgoingCall(this,
                             getStateFromConnectionState(connection.getState()));
                 }
                 break;
             case CALL_DIRECTION_UNKNOWN:
-                for (Listener l : mListeners) {
+                for (Listener l : getListeners(LISTENER_SUCCESSFUL_UNKNOWN_CALL)) {
                     l.onSuccessfulUnknownCall(this, getStateFromConnectionState(connection
                             .getState()));
                 }
@@ -2710,12 +2907,12 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
         switch (mCallDirection) {
             case CALL_DIRECTION_INCOMING:
-                for (Listener listener : mListeners) {
+                for (Listener listener : getListeners(LISTENER_FAILED_INCOMING_CALL)) {
                     listener.onFailedIncomingCall(this);
                 }
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener listener : mListeners) {
+                for (Listener listener : getListeners(LISTENER_FAILED_OUTGOING_CALL)) {
                     listener.onFailedOutgoingCall(this, disconnectCause);
                 }
                 break;
@@ -2732,17 +2929,17 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
         switch (mCallDirection) {
             case CALL_DIRECTION_INCOMING:
-                for (Listener listener : mListeners) {
+                for (Listener listener : getListeners(LISTENER_FAILED_INCOMING_CALL)) {
                     listener.onFailedIncomingCall(this);
                 }
                 break;
             case CALL_DIRECTION_OUTGOING:
-                for (Listener listener : mListeners) {
+                for (Listener listener : getListeners(LISTENER_FAILED_OUTGOING_CALL)) {
                     listener.onFailedOutgoingCall(this, disconnectCause);
                 }
                 break;
             case CALL_DIRECTION_UNKNOWN:
-                for (Listener listener : mListeners) {
+                for (Listener listener : getListeners(LISTENER_FAILED_UNKNOWN_CALL)) {
                     listener.onFailedUnknownCall(this);
                 }
                 break;
@@ -2877,7 +3074,8 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 // the second call so that in-call only ever sees a single call...eliminating the
                 // jank altogether. The app will also be able to set the timeout via an extra on
                 // the ordered broadcast.
-                for (Listener listener : mListeners) {
+                for (Listener listener :
+                        getListeners(LISTENER_CANCELED_VIA_NEW_OUTGOING_CALL_BROADCAST)) {
                     if (listener.onCanceledViaNewOutgoingCallBroadcast(
                             this, disconnectionTimeout)) {
                         // The first listener to handle this wins. A return value of true means that
@@ -3288,7 +3486,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
         mExtras.putAll(extras);
 
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_EXTRAS_CHANGED)) {
             l.onExtrasChanged(this, source, extras, requestingPackageName);
         }
 
@@ -3369,7 +3567,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             mExtras.remove(key);
         }
 
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_EXTRAS_REMOVED)) {
             l.onExtrasRemoved(this, source, keys);
         }
 
@@ -3419,13 +3617,13 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     }
 
     void onPostDialWait(String remaining) {
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_POST_DIAL_WAIT)) {
             l.onPostDialWait(this, remaining);
         }
     }
 
     void onPostDialChar(char nextChar) {
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_POST_DIAL_CHAR)) {
             l.onPostDialChar(this, nextChar);
         }
     }
@@ -3499,7 +3697,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                     mConferenceLevelActiveCall = null;
                     break;
             }
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CDMA_CONFERENCE_SWAP)) {
                 l.onCdmaConferenceSwap(this);
             }
         }
@@ -3622,7 +3820,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     void notifyBluetoothCallQualityReport(@NonNull BluetoothCallQualityReport report) {
         Log.addEvent(this, LogUtils.Events.BT_QUALITY_REPORT, "choppy=" + report.isChoppyVoice());
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_BLUETOOTH_CALL_QUALITY_REPORT)) {
             l.onBluetoothCallQualityReport(this, report);
         }
     }
@@ -3659,7 +3857,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     void notifyParentChanged(Call parentCall) {
         Log.addEvent(this, LogUtils.Events.SET_PARENT, parentCall);
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_PARENT_CHANGED)) {
             l.onParentChanged(this);
         }
     }
@@ -3712,7 +3910,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
         Log.addEvent(this, LogUtils.Events.CONF_CALLS_CHANGED, confCallIds);
 
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_CONFERENCEABLE_CALLS_CHANGED)) {
             l.onConferenceableCallsChanged(this);
         }
     }
@@ -3747,7 +3945,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
             Log.addEvent(this, LogUtils.Events.ADD_CHILD, call);
 
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CHILDREN_CHANGED)) {
                 l.onChildrenChanged(this);
             }
         }
@@ -3780,7 +3978,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     private void removeChildCall(Call call) {
         if (mChildCalls.remove(call)) {
             Log.addEvent(this, LogUtils.Events.REMOVE_CHILD, call);
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CHILDREN_CHANGED)) {
                 l.onChildrenChanged(this);
             }
         }
@@ -3931,7 +4129,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
         if (mCallerInfo.getContactDisplayPhotoUri() == null || mCallerInfo.cachedPhotoIcon != null
             || mCallerInfo.cachedPhoto != null || contactNameChanged) {
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CALLER_INFO_CHANGED)) {
                 l.onCallerInfoChanged(this);
             }
         }
@@ -3956,7 +4154,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                             if (result.length > 0) {
                                 Log.d(this, "maybeLoadCannedSmsResponses: got %s", result[0]);
                                 mCannedSmsResponses = result[0];
-                                for (Listener l : mListeners) {
+                                for (Listener l : getListeners(LISTENER_CANNED_SMS_RESPONSES_LOADED)) {
                                     l.onCannedSmsResponsesLoaded(Call.this);
                                 }
                             }
@@ -4038,7 +4236,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void onRttConnectionFailure(int reason) {
         Log.i(this, "Got RTT initiation failure with reason %d", reason);
         Log.addEvent(this, LogUtils.Events.ON_RTT_FAILED, "reason="  + reason);
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_RTT_INITIATION_FAILURE)) {
             l.onRttInitiationFailure(this, reason);
         }
     }
@@ -4051,7 +4249,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         }
 
         mPendingRttRequestId = mCallsManager.getNextRttRequestId();
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_REMOTE_RTT_REQUEST)) {
             l.onRemoteRttRequest(this, mPendingRttRequestId);
         }
     }
@@ -4134,7 +4332,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             }
         }
 
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_VIDEO_CALL_PROVIDER_CHANGED)) {
             l.onVideoCallProviderChanged(Call.this);
         }
     }
@@ -4213,7 +4411,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 Log.addEvent(this, LogUtils.Events.VIDEO_STATE_CHANGED,
                         VideoProfile.videoStateToString(videoState));
             }
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_VIDEO_STATE_CHANGED)) {
                 l.onVideoStateChanged(this, previousVideoState, mVideoState);
             }
         }
@@ -4249,7 +4447,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.addEvent(this, LogUtils.Events.SET_VOIP_MODE, audioModeIsVoip ? "Y" : "N");
         }
         mIsVoipAudioMode = audioModeIsVoip;
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_IS_VOIP_AUDIO_MODE_CHANGED)) {
             l.onIsVoipAudioModeChanged(this);
         }
     }
@@ -4260,7 +4458,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
 
     public void setStatusHints(StatusHints statusHints) {
         mStatusHints = statusHints;
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_STATUS_HINTS_CHANGED)) {
             l.onStatusHintsChanged(this);
         }
     }
@@ -4408,7 +4606,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
     public void onConnectionEvent(String event, Bundle extras) {
         if (mIsTransactionalCall) {
             // send the Event directly to the ICS via the InCallController listener
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CONNECTION_EVENT)) {
                 l.onConnectionEvent(this, event, extras);
             }
             // Don't run the below block since it applies to Calls that are attached to a
@@ -4424,21 +4622,21 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.addEvent(this, LogUtils.Events.REMOTELY_HELD);
             // Inform listeners of the fact that a call hold tone was received.  This will trigger
             // the CallAudioManager to play a tone via the InCallTonePlayer.
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_HOLD_TONE_REQUESTED)) {
                 l.onHoldToneRequested(this);
             }
         } else if (Connection.EVENT_ON_HOLD_TONE_END.equals(event)) {
             mIsRemotelyHeld = false;
             Log.addEvent(this, LogUtils.Events.REMOTELY_UNHELD);
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_HOLD_TONE_REQUESTED)) {
                 l.onHoldToneRequested(this);
             }
         } else if (Connection.EVENT_CALL_HOLD_FAILED.equals(event)) {
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CALL_HOLD_FAILED)) {
                 l.onCallHoldFailed(this);
             }
         } else if (Connection.EVENT_CALL_SWITCH_FAILED.equals(event)) {
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CALL_SWITCH_FAILED)) {
                 l.onCallSwitchFailed(this);
             }
         } else if (Connection.EVENT_DEVICE_TO_DEVICE_MESSAGE.equals(event)
@@ -4449,13 +4647,13 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             // CallDiagnosticService.
             int messageType = extras.getInt(Connection.EXTRA_DEVICE_TO_DEVICE_MESSAGE_TYPE);
             int messageValue = extras.getInt(Connection.EXTRA_DEVICE_TO_DEVICE_MESSAGE_VALUE);
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_RECEIVED_DEVICE_TO_DEVICE_MESSAGE)) {
                 l.onReceivedDeviceToDeviceMessage(this, messageType, messageValue);
             }
         } else if (Connection.EVENT_CALL_QUALITY_REPORT.equals(event)
                 && extras != null && extras.containsKey(Connection.EXTRA_CALL_QUALITY_REPORT)) {
             CallQuality callQuality = extras.getParcelable(Connection.EXTRA_CALL_QUALITY_REPORT);
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_RECEIVED_CALL_QUALITY_REPORT)) {
                 l.onReceivedCallQualityReport(this, callQuality);
             }
         } else {
@@ -4465,7 +4663,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
                 return;
             }
 
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CONNECTION_EVENT)) {
                 l.onConnectionEvent(this, event, extras);
             }
         }
@@ -4484,14 +4682,14 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         if (mConnectionService != null) {
             mConnectionService.handoverComplete(this);
         }
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_HANDOVER_COMPLETE)) {
             l.onHandoverComplete(this);
         }
     }
 
     public void onHandoverFailed(int handoverError) {
         Log.i(this, "onHandoverFailed; callId=%s, handoverError=%d", getId(), handoverError);
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_HANDOVER_FAILED)) {
             l.onHandoverFailed(this, handoverError);
         }
     }
@@ -4550,7 +4748,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
      */
     private void requestHandover(PhoneAccountHandle handoverToHandle, int videoState,
                                  Bundle extras, boolean isLegacy) {
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_HANDOVER_REQUESTED)) {
             l.onHandoverRequested(this, handoverToHandle, videoState, extras, isLegacy);
         }
     }
@@ -4568,7 +4766,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
         Log.addEvent(this, LogUtils.Events.CONF_STATE_CHANGED, "isConference=" + isConference);
         // Ultimately CallsManager needs to know so it can update the "add call" state and inform
         // the UI to update itself.
-        for (Listener l : mListeners) {
+        for (Listener l : getListeners(LISTENER_CONFERENCE_STATE_CHANGED)) {
             l.onConferenceStateChanged(this, isConference);
         }
     }
@@ -4584,7 +4782,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             Log.addEvent(this, LogUtils.Events.CALL_DIRECTION_CHANGED, "callDirection="
                     + callDirection);
             mCallDirection = callDirection;
-            for (Listener l : mListeners) {
+            for (Listener l : getListeners(LISTENER_CALL_DIRECTION_CHANGED)) {
                 // Update InCallService directly, do not notify CallsManager.
                 l.onCallDirectionChanged(this);
             }
@@ -4991,7 +5189,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             }
 
             mIsStreaming = true;
-            for (Listener listener : mListeners) {
+            for (Listener listener : getListeners(LISTENER_CALL_STREAMING_STATE_CHANGED)) {
                 listener.onCallStreamingStateChanged(this, true /** isStreaming */);
             }
         }
@@ -5005,7 +5203,7 @@ public class Call implements CreateConnectionResponse, EventManager.Loggable,
             }
             Log.addEvent(this, LogUtils.Events.STOP_STREAMING);
             mIsStreaming = false;
-            for (Listener listener : mListeners) {
+            for (Listener listener : getListeners(LISTENER_CALL_STREAMING_STATE_CHANGED)) {
                 listener.onCallStreamingStateChanged(this, false /** isStreaming */);
             }
         }
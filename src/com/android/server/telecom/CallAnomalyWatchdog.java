@@ -34,9 +34,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -108,14 +105,15 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         }
     }
 
-    // Handler for tracking pending timeouts.
-    private final ScheduledExecutorService mScheduledExecutorService;
+    // Runs the pending timeouts.
+    private final TelecomTimerService mTimerService;
     private final TelecomSystem.SyncRoot mLock;
     private final Timeouts.Adapter mTimeoutAdapter;
     private final ClockProxy mClockProxy;
     private AnomalyReporterAdapter mAnomalyReporter = new AnomalyReporterAdapterImpl();
     // Pre-allocate space for 2 calls; realistically thats all we should ever need (tm)
-    private final Map<Call, ScheduledFuture<?>> mScheduledFutureMap = new ConcurrentHashMap<>(2);
+    // Each tracked call's timer is re-armed on every state change rather than replaced.
+    private final Map<Call, TelecomTimerService.Timer> mTimerMap = new ConcurrentHashMap<>(2);
     private final Map<Call, WatchdogCallState> mWatchdogCallStateMap = new ConcurrentHashMap<>(2);
     // Track the calls which are pending destruction.
     // TODO: enhance to handle the case where a call never gets destroyed.
@@ -146,11 +144,11 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         mAnomalyReporter = mAnomalyReporterAdapter;
     }
 
-    public CallAnomalyWatchdog(ScheduledExecutorService executorService,
+    public CallAnomalyWatchdog(TelecomTimerService timerService,
             TelecomSystem.SyncRoot lock,
             Timeouts.Adapter timeoutAdapter, ClockProxy clockProxy,
             EmergencyCallDiagnosticLogger emergencyCallDiagnosticLogger) {
-        mScheduledExecutorService = executorService;
+        mTimerService = timerService;
         mLock = lock;
         mTimeoutAdapter = timeoutAdapter;
         mClockProxy = clockProxy;
@@ -206,6 +204,15 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         maybeTrackCall(call);
     }
 
+    /**
+     * Override of {@link Call.Listener} so we are only told about call creation.
+     */
+    @Override
+    public long getInterestedEvents() {
+        return Call.LISTENER_SUCCESSFUL_OUTGOING_CALL | Call.LISTENER_FAILED_OUTGOING_CALL
+                | Call.LISTENER_SUCCESSFUL_INCOMING_CALL | Call.LISTENER_FAILED_INCOMING_CALL;
+    }
+
     /**
      * Override of {@link Call.Listener} so we can capture successful creation of calls.
      * @param call the call
@@ -251,10 +258,9 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
      * @param call the call.
      */
     private void stopTrackingCall(Call call) {
-        if (mScheduledFutureMap.containsKey(call)) {
-            ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-            existingTimeout.cancel(false /* cancelIfRunning */);
-            mScheduledFutureMap.remove(call);
+        TelecomTimerService.Timer timer = mTimerMap.remove(call);
+        if (timer != null) {
+            timer.cancel();
         }
         if (mCallsPendingDestruction.contains(call)) {
             mCallsPendingDestruction.remove(call);
@@ -280,11 +286,10 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         }
         mWatchdogCallStateMap.put(call, newState);
 
-        // The call's state has changed, so we will remove any existing state cleanup tasks.
-        if (mScheduledFutureMap.containsKey(call)) {
-            ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-            existingTimeout.cancel(false /* cancelIfRunning */);
-            mScheduledFutureMap.remove(call);
+        // The call's state has changed, so we will cancel any existing state cleanup task.
+        TelecomTimerService.Timer timer = mTimerMap.get(call);
+        if (timer != null) {
+            timer.cancel();
         }
 
         Log.i(this, "maybePostCleanupTask; callId=%s, state=%s, createConnComplete=%b",
@@ -292,17 +297,14 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
                 call.isCreateConnectionComplete());
 
         long timeoutMillis = getTimeoutMillis(call, newState);
-        boolean isEnabledDisconnect = isEnabledDisconnectForStuckCall();
-        // If the call is now in a transitory or intermediate state, post a new cleanup task.
+        // If the call is now in a transitory or intermediate state, arm the cleanup timer.
         if (timeoutMillis > 0) {
-            Runnable cleanupRunnable = getCleanupRunnable(call, newState, timeoutMillis,
-                    isEnabledDisconnect);
-
-            // Post cleanup to the executor service and cache the future, so we can cancel it if
-            // needed.
-            ScheduledFuture<?> future = mScheduledExecutorService.schedule(cleanupRunnable,
-                    timeoutMillis, TimeUnit.MILLISECONDS);
-            mScheduledFutureMap.put(call, future);
+            if (timer == null) {
+                timer = mTimerService.newTimer(CallAnomalyWatchdog.class.getSimpleName(),
+                        call.getId(), () -> onStateTimeout(call));
+                mTimerMap.put(call, timer);
+            }
+            timer.schedule(timeoutMillis);
         }
     }
 
@@ -337,26 +339,32 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         return 0;
     }
 
-    private Runnable getCleanupRunnable(Call call, WatchdogCallState newState, long timeoutMillis,
-            boolean isEnabledDisconnect) {
-        Runnable cleanupRunnable = new android.telecom.Logging.Runnable("CAW.mR", mLock) {
-            @Override
-            public void loggedRun() {
+    /**
+     * Called when a call's cleanup timer fires. The timer is cancelled on every state change, so
+     * the call is expected to still be in the state it was tracked in.
+     * @param call the call.
+     */
+    private void onStateTimeout(Call call) {
+        Log.startSession("CAW.oST");
+        try {
+            synchronized (mLock) {
+                final WatchdogCallState trackedState = mWatchdogCallStateMap.get(call);
                 // If we're already pending a cleanup due to a state violation for this call.
-                if (mCallsPendingDestruction.contains(call)) {
+                if (trackedState == null || mCallsPendingDestruction.contains(call)) {
                     return;
                 }
-                // Ensure that at timeout we are still in the original state when we posted the
+                final long timeoutMillis = getTimeoutMillis(call, trackedState);
+                // Ensure that at timeout we are still in the original state when we armed the
                 // timeout.
                 final WatchdogCallState expiredState = new WatchdogCallState(call.getState(),
                         call.isCreateConnectionComplete(), mClockProxy.elapsedRealtime());
-                if (expiredState.equals(newState)
-                        && getDurationInCurrentStateMillis(newState) > timeoutMillis) {
+                if (timeoutMillis > 0 && expiredState.equals(trackedState)
+                        && getDurationInCurrentStateMillis(trackedState) > timeoutMillis) {
                     // The call has been in this transitory or intermediate state too long,
                     // so disconnect it and destroy it.
-                    Log.addEvent(call, STATE_TIMEOUT, newState);
+                    Log.addEvent(call, STATE_TIMEOUT, trackedState);
                     mLocalLog.log("STATE_TIMEOUT; callId=" + call.getId() + " in state "
-                            + newState);
+                            + trackedState);
                     if (call.isEmergencyCall()){
                         mAnomalyReporter.reportAnomaly(
                                 WATCHDOG_DISCONNECTED_STUCK_EMERGENCY_CALL_UUID,
@@ -368,7 +376,7 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
                                 WATCHDOG_DISCONNECTED_STUCK_CALL_MSG);
                     }
 
-                    if (isEnabledDisconnect) {
+                    if (isEnabledDisconnectForStuckCall()) {
                         call.setOverrideDisconnectCauseCode(
                                 new DisconnectCause(DisconnectCause.ERROR, "state_timeout"));
                         call.disconnect("State timeout");
@@ -377,14 +385,12 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
                     }
 
                     mCallsPendingDestruction.add(call);
-                    if (mWatchdogCallStateMap.containsKey(call)) {
-                        mWatchdogCallStateMap.remove(call);
-                    }
+                    mWatchdogCallStateMap.remove(call);
                 }
-                mScheduledFutureMap.remove(call);
             }
-        }.prepare();
-        return cleanupRunnable;
+        } finally {
+            Log.endSession();
+        }
     }
 
     /**
@@ -426,8 +432,8 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
         mLocalLog.dump(pw);
         pw.decreaseIndent();
         pw.print("Pending timeouts: ");
-        pw.println(mScheduledFutureMap.keySet().stream().map(c -> c.getId()).collect(
-                Collectors.joining(",")));
+        pw.println(mTimerMap.entrySet().stream().filter(e -> e.getValue().isPending())
+                .map(e -> e.getKey().getId()).collect(Collectors.joining(",")));
         pw.print("Pending destruction: ");
         pw.println(mCallsPendingDestruction.stream().map(c -> c.getId()).collect(
                 Collectors.joining(",")));
@@ -435,6 +441,7 @@ public class CallAnomalyWatchdog extends CallsManagerListenerBase implements Cal
 
     @VisibleForTesting
     public int getNumberOfScheduledTimeouts() {
-        return mScheduledFutureMap.size();
+        return (int) mTimerMap.values().stream().filter(TelecomTimerService.Timer::isPending)
+                .count();
     }
 }
@@ -731,6 +731,11 @@ public class CallAudioManager extends CallsManagerListenerBase {
             mBluetoothStateReceiver.getBluetoothDeviceManager().dump(pw);
         }
         pw.decreaseIndent();
+
+        pw.println("Ringer:");
+        pw.increaseIndent();
+        mRinger.dump(pw);
+        pw.decreaseIndent();
     }
 
     @VisibleForTesting
@@ -71,6 +71,18 @@ public class CallDiagnosticServiceController extends CallsManagerListenerBase {
      * {@link CallDiagnosticService}.
      */
     private final Call.Listener mCallListener = new Call.ListenerBase() {
+        @Override
+        public long getInterestedEvents() {
+            return Call.LISTENER_CONNECTION_CAPABILITIES_CHANGED
+                    | Call.LISTENER_CONNECTION_PROPERTIES_CHANGED
+                    | Call.LISTENER_EXTRAS_CHANGED
+                    | Call.LISTENER_EXTRAS_REMOVED
+                    | Call.LISTENER_VIDEO_STATE_CHANGED
+                    | Call.LISTENER_BLUETOOTH_CALL_QUALITY_REPORT
+                    | Call.LISTENER_RECEIVED_DEVICE_TO_DEVICE_MESSAGE
+                    | Call.LISTENER_RECEIVED_CALL_QUALITY_REPORT;
+        }
+
         @Override
         public void onConnectionCapabilitiesChanged(Call call) {
             updateCall(call);
@@ -99,7 +99,8 @@ public class CallIdMapper {
         mCalls.put(callId, newCall);
     }
 
-    void addCall(Call call, String id) {
+    @VisibleForTesting
+    public void addCall(Call call, String id) {
         if (call == null) {
             return;
         }
@@ -121,14 +122,16 @@ public class CallIdMapper {
         mCalls.remove(callId);
     }
 
-    String getCallId(Call call) {
+    @VisibleForTesting
+    public String getCallId(Call call) {
         if (call == null || mCalls.getKey(call) == null) {
             return null;
         }
         return mCallInfo.getCallId(call);
     }
 
-    Call getCall(Object objId) {
+    @VisibleForTesting
+    public Call getCall(Object objId) {
         String callId = null;
         if (objId instanceof String) {
             callId = (String) objId;
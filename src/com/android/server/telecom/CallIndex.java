@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.PhoneAccountHandle;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes over the calls tracked by {@link CallsManager}, so that lookups such as "the
+ * first held call for this ConnectionService" do not scan every call. Calls are grouped by
+ * {@link CallState}, by target {@link PhoneAccountHandle}, by the package of the
+ * ConnectionService behind that account, and by whether they are self-managed or emergency
+ * calls.
+ * <p>
+ * {@link CallsManager} keeps the index current by calling {@link #update(Call)} from its
+ * {@link Call.Listener} callbacks. A call is only ever filed under the values it had at its last
+ * update, so callers should still check the property they are looking for on each candidate.
+ * The index does not iterate calls in the same order as {@link CallsManager}, so lookups which
+ * return the first matching call must not rely on its order when several calls match.
+ * {@link #verify(Collection)} compares the index against the calls themselves and can be turned
+ * on in tests to catch property changes which are not signalled to listeners.
+ */
+@VisibleForTesting
+public class CallIndex {
+    /**
+     * The indexed properties of a call as of its last update.
+     */
+    private static final class Keys {
+        final int state;
+        final PhoneAccountHandle phoneAccount;
+        final String connectionServicePackage;
+        final boolean isSelfManaged;
+        final boolean isEmergency;
+
+        Keys(Call call) {
+            state = call.getState();
+            phoneAccount = call.getTargetPhoneAccount();
+            connectionServicePackage = phoneAccount == null
+                    ? null : phoneAccount.getComponentName().getPackageName();
+            isSelfManaged = call.isSelfManaged();
+            isEmergency = call.isEmergencyCall() || call.isNetworkIdentifiedEmergencyCall();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Keys)) return false;
+            Keys keys = (Keys) o;
+            return state == keys.state
+                    && isSelfManaged == keys.isSelfManaged
+                    && isEmergency == keys.isEmergency
+                    && Objects.equals(phoneAccount, keys.phoneAccount);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(state, phoneAccount, isSelfManaged, isEmergency);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[state=%s, account=%s, selfManaged=%b, emergency=%b]",
+                    CallState.toString(state), phoneAccount, isSelfManaged, isEmergency);
+        }
+    }
+
+    private final Map<Call, Keys> mKeys = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Call>> mByState = new ConcurrentHashMap<>();
+    private final Map<PhoneAccountHandle, Set<Call>> mByPhoneAccount = new ConcurrentHashMap<>();
+    private final Map<String, Set<Call>> mByConnectionService = new ConcurrentHashMap<>();
+    private final Set<Call> mSelfManagedCalls = newCallSet();
+    private final Set<Call> mEmergencyCalls = newCallSet();
+
+    /**
+     * Starts indexing a call.
+     */
+    public void add(Call call) {
+        Keys keys = new Keys(call);
+        Keys oldKeys = mKeys.put(call, keys);
+        if (oldKeys != null) {
+            unfile(call, oldKeys);
+        }
+        file(call, keys);
+    }
+
+    /**
+     * Stops indexing a call.
+     */
+    public void remove(Call call) {
+        Keys oldKeys = mKeys.remove(call);
+        if (oldKeys != null) {
+            unfile(call, oldKeys);
+        }
+    }
+
+    /**
+     * Re-files a call after any of its indexed properties may have changed. Calls which are not
+     * indexed are ignored.
+     */
+    public void update(Call call) {
+        Keys oldKeys = mKeys.get(call);
+        if (oldKeys == null) {
+            return;
+        }
+        Keys keys = new Keys(call);
+        if (keys.equals(oldKeys)) {
+            return;
+        }
+        mKeys.put(call, keys);
+        unfile(call, oldKeys);
+        file(call, keys);
+    }
+
+    /**
+     * @return The calls which were in {@code state} when they were last updated.
+     */
+    public Collection<Call> getCallsWithState(int state) {
+        return unmodifiable(mByState.get(state));
+    }
+
+    /**
+     * @return The calls targeting {@code phoneAccount}.
+     */
+    public Collection<Call> getCallsForPhoneAccount(PhoneAccountHandle phoneAccount) {
+        return phoneAccount == null
+                ? Collections.emptySet() : unmodifiable(mByPhoneAccount.get(phoneAccount));
+    }
+
+    /**
+     * @return The calls targeting any phone account registered by {@code packageName}.
+     */
+    public Collection<Call> getCallsForConnectionService(String packageName) {
+        return packageName == null
+                ? Collections.emptySet() : unmodifiable(mByConnectionService.get(packageName));
+    }
+
+    public Collection<Call> getSelfManagedCalls() {
+        return Collections.unmodifiableSet(mSelfManagedCalls);
+    }
+
+    public Collection<Call> getEmergencyCalls() {
+        return Collections.unmodifiableSet(mEmergencyCalls);
+    }
+
+    public int size() {
+        return mKeys.size();
+    }
+
+    /**
+     * Compares the index against the current properties of {@code calls}.
+     *
+     * @param calls All calls which should be indexed.
+     * @return A description of each inconsistency found; empty if the index is consistent.
+     */
+    public List<String> verify(Collection<Call> calls) {
+        List<String> problems = new ArrayList<>();
+        if (calls.size() != mKeys.size()) {
+            problems.add(String.format("indexed %d calls, expected %d", mKeys.size(),
+                    calls.size()));
+        }
+        for (Call call : calls) {
+            Keys keys = mKeys.get(call);
+            if (keys == null) {
+                problems.add("not indexed: " + call.getId());
+                continue;
+            }
+            Keys current = new Keys(call);
+            if (!keys.equals(current)) {
+                problems.add(String.format("stale: %s indexed as %s, is %s", call.getId(), keys,
+                        current));
+            }
+        }
+        return problems;
+    }
+
+    private void file(Call call, Keys keys) {
+        mByState.computeIfAbsent(keys.state, k -> newCallSet()).add(call);
+        if (keys.phoneAccount != null) {
+            mByPhoneAccount.computeIfAbsent(keys.phoneAccount, k -> newCallSet()).add(call);
+            mByConnectionService.computeIfAbsent(keys.connectionServicePackage,
+                    k -> newCallSet()).add(call);
+        }
+        if (keys.isSelfManaged) {
+            mSelfManagedCalls.add(call);
+        }
+        if (keys.isEmergency) {
+            mEmergencyCalls.add(call);
+        }
+    }
+
+    private void unfile(Call call, Keys keys) {
+        removeFromBucket(mByState, keys.state, call);
+        if (keys.phoneAccount != null) {
+            removeFromBucket(mByPhoneAccount, keys.phoneAccount, call);
+            removeFromBucket(mByConnectionService, keys.connectionServicePackage, call);
+        }
+        mSelfManagedCalls.remove(call);
+        mEmergencyCalls.remove(call);
+    }
+
+    private static <K> void removeFromBucket(Map<K, Set<Call>> buckets, K key, Call call) {
+        Set<Call> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(call);
+        }
+    }
+
+    private static Collection<Call> unmodifiable(Set<Call> calls) {
+        return calls == null ? Collections.emptySet() : Collections.unmodifiableSet(calls);
+    }
+
+    /**
+     * Same construction as {@link CallsManager}'s call set, as the index is read on the same
+     * threads.
+     */
+    private static Set<Call> newCallSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1));
+    }
+}
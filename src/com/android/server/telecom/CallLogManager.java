@@ -54,6 +54,7 @@ import android.telephony.SubscriptionManager;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.flags.FeatureFlags;
 import com.android.server.telecom.flags.Flags;
@@ -127,6 +128,8 @@ public final class CallLogManager extends CallsManagerListenerBase {
     private HandlerExecutor mCountryCodeExecutor;
 
     private final FeatureFlags mFeatureFlags;
+    // Only set when call log writes are batched.
+    private final CallLogWriter mCallLogWriter;
 
     public CallLogManager(Context context, PhoneAccountRegistrar phoneAccountRegistrar,
             MissedCallNotifier missedCallNotifier, AnomalyReporterAdapter anomalyReporterAdapter,
@@ -139,6 +142,20 @@ public final class CallLogManager extends CallsManagerListenerBase {
         mAnomalyReporterAdapter = anomalyReporterAdapter;
         mCountryCodeExecutor = new HandlerExecutor(new Handler(Looper.getMainLooper()));
         mFeatureFlags = featureFlags;
+        if (mFeatureFlags.batchCallLogWrites()) {
+            // Created up front so calls left unwritten by a previous process are written now.
+            // The writes share the background lane of the worker pool, whose threads stop once
+            // idle, and only the batch window and retry timers are kept on the main looper.
+            mCallLogWriter = new CallLogWriter(context,
+                    TelecomWorkerPool.getInstance().newSerialExecutor(
+                            CallLogWriter.class.getSimpleName(),
+                            TelecomWorkerPool.LANE_BACKGROUND),
+                    Looper.getMainLooper(), new CallLogWriter.CallLogInserter(),
+                    () -> mAnomalyReporterAdapter.reportAnomaly(LOG_CALL_FAILED_ANOMALY_ID,
+                            LOG_CALL_FAILED_ANOMALY_DESC));
+        } else {
+            mCallLogWriter = null;
+        }
     }
 
     @Override
@@ -311,8 +328,7 @@ public final class CallLogManager extends CallsManagerListenerBase {
     void logCall(Call call, int callLogType,
             @Nullable LogCallCompletedListener logCallCompletedListener, CallFilteringResult result) {
 
-        CallLog.AddCallParams.AddCallParametersBuilder paramBuilder =
-                new CallLog.AddCallParams.AddCallParametersBuilder();
+        CallLogWriter.ParamsBuilder paramBuilder = new CallLogWriter.ParamsBuilder();
 
         paramBuilder.setStart(call.isChildCall() ? call.getConnectTimeMillis()
             : call.getCreationTimeMillis());
@@ -441,12 +457,15 @@ public final class CallLogManager extends CallsManagerListenerBase {
         boolean okayToLog =
                 okayToLogCall(accountHandle, logNumber, call.isEmergencyCall());
         if (okayToLog) {
-            AddCallArgs args = new AddCallArgs(mContext, paramBuilder.build(),
-                    logCallCompletedListener, call);
             Log.addEvent(call, LogUtils.Events.LOG_CALL, "number=" + Log.piiHandle(logNumber)
                     + ",postDial=" + Log.piiHandle(call.getPostDialDigits()) + ",pres="
                     + call.getHandlePresentation());
-            logCallAsync(args);
+            if (mCallLogWriter != null) {
+                mCallLogWriter.addCall(call.getId(), paramBuilder, logCallCompletedListener);
+            } else {
+                logCallAsync(new AddCallArgs(mContext, paramBuilder.build(),
+                        logCallCompletedListener, call));
+            }
         } else {
             Log.addEvent(call, LogUtils.Events.SKIP_CALL_LOG);
         }
@@ -678,6 +697,12 @@ public final class CallLogManager extends CallsManagerListenerBase {
         }
     }
 
+    public void dump(IndentingPrintWriter pw) {
+        if (mCallLogWriter != null) {
+            mCallLogWriter.dump(pw);
+        }
+    }
+
     @VisibleForTesting
     public void setAnomalyReporterAdapter(AnomalyReporterAdapter anomalyReporterAdapter){
         mAnomalyReporterAdapter = anomalyReporterAdapter;
@@ -0,0 +1,920 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.Nullable;
+import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.os.PersistableBundle;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.CallLog;
+import android.provider.CallLog.Calls;
+import android.telecom.CallerInfo;
+import android.telecom.Log;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes calls to the call log from a serial executor, one task at a time. Calls logged within a
+ * short window of each other are written as one batch, so a burst of disconnects (e.g. a conference or
+ * several lines dropping with the network) costs one call to the call log provider rather than
+ * one for every call; see {@link CallLogInserter}.
+ * <p>
+ * A batch entry which fails to write with an exception, such as when the provider is busy or not
+ * yet available, is retried with exponential backoff, up to {@link #MAX_ATTEMPTS} times, after
+ * which its listener is told the call was not logged. A call for which the provider returns no
+ * URI was rejected rather than lost, and is not retried. Once a write has failed, the calls still
+ * waiting to be written are saved to credential protected storage, and are written when the
+ * writer is next created, so that they are not lost if the Telecom process restarts while the
+ * provider is unavailable.
+ */
+@VisibleForTesting
+public class CallLogWriter {
+    /**
+     * Writes batches of calls to the call log.
+     */
+    public interface Inserter {
+        /**
+         * Writes the given calls to the call log.
+         *
+         * @param calls The calls to write.
+         * @param uris Set to the URI of each call written; left {@code null} for calls which the
+         *             provider did not add, which are not retried.
+         * @param errors Set to the error raised for each call which could not be written, such as
+         *               when the provider is busy or not available; the call will be retried.
+         */
+        void addCalls(Context context, List<ParamsBuilder> calls, Uri[] uris,
+                Exception[] errors);
+    }
+
+    /**
+     * {@link Inserter} which writes the calls of a batch that only need a row in the call log of
+     * a single, unlocked user with one {@link ContentResolver#applyBatch} per user. The rows hold
+     * the same values {@link Calls#addCall(Context, CallLog.AddCallParams)} would write, and the
+     * batch ends by trimming the call log as it does, once per phone account rather than once per
+     * call.
+     * <p>
+     * Calls which need more than that are written with {@link Calls#addCall} on their own: calls
+     * to be added for all users on a device with several users, calls for a locked user, which go
+     * to the shadow call log, and calls with a picture, a location, business call details or
+     * contact details to update.
+     */
+    public static class CallLogInserter implements Inserter {
+        // Mirrors the limits and conventions of CallLog.Calls#addCall.
+        private static final int MAX_CALLS_PER_ACCOUNT = 500;
+        private static final String SILENT_REJECTION_ID = "0";
+        private static final String TRIM_SELECTION_FOR_ACCOUNT = Calls._ID + " IN (SELECT "
+                + Calls._ID + " FROM calls WHERE " + Calls.PHONE_ACCOUNT_COMPONENT_NAME
+                + " = ? AND " + Calls.PHONE_ACCOUNT_ID + " = ? ORDER BY "
+                + Calls.DEFAULT_SORT_ORDER + " LIMIT -1 OFFSET " + MAX_CALLS_PER_ACCOUNT + ")";
+        private static final String TRIM_SELECTION = Calls._ID + " IN (SELECT " + Calls._ID
+                + " FROM calls ORDER BY " + Calls.DEFAULT_SORT_ORDER + " LIMIT -1 OFFSET "
+                + MAX_CALLS_PER_ACCOUNT + ")";
+
+        @Override
+        public void addCalls(Context context, List<ParamsBuilder> calls, Uri[] uris,
+                Exception[] errors) {
+            UserManager userManager = context.getSystemService(UserManager.class);
+            boolean hasOtherUsers = userManager.getUserHandles(true /* excludeDying */).size() > 1;
+            Map<UserHandle, List<Integer>> callsByUser = new ArrayMap<>();
+            for (int i = 0; i < calls.size(); i++) {
+                UserHandle user = getBatchUser(context, userManager, calls.get(i), hasOtherUsers);
+                if (user == null) {
+                    try {
+                        uris[i] = Calls.addCall(context, calls.get(i).build());
+                    } catch (Exception e) {
+                        errors[i] = e;
+                    }
+                    continue;
+                }
+                List<Integer> callsForUser = callsByUser.get(user);
+                if (callsForUser == null) {
+                    callsForUser = new ArrayList<>();
+                    callsByUser.put(user, callsForUser);
+                }
+                callsForUser.add(i);
+            }
+            Map<PhoneAccountHandle, String> accountAddresses = new ArrayMap<>();
+            for (Map.Entry<UserHandle, List<Integer>> entry : callsByUser.entrySet()) {
+                addCallsForUser(context, entry.getKey(), entry.getValue(), calls,
+                        accountAddresses, uris, errors);
+            }
+        }
+
+        /**
+         * @return The user whose call log the call can be written to as part of a batch, or
+         * {@code null} if it has to be written with {@link Calls#addCall}.
+         */
+        private static UserHandle getBatchUser(Context context, UserManager userManager,
+                ParamsBuilder params, boolean hasOtherUsers) {
+            if (!params.isCallLogRowOnly()) {
+                return null;
+            }
+            UserHandle user;
+            if (params.mValues.getBoolean(ParamsBuilder.KEY_ADD_FOR_ALL_USERS)) {
+                if (hasOtherUsers) {
+                    return null;
+                }
+                user = UserHandle.SYSTEM;
+            } else if (params.mValues.containsKey(ParamsBuilder.KEY_USER_TO_BE_INSERTED_TO)) {
+                user = UserHandle.of(
+                        params.mValues.getInt(ParamsBuilder.KEY_USER_TO_BE_INSERTED_TO));
+            } else {
+                user = context.getUser();
+            }
+            return userManager.isUserUnlocked(user) ? user : null;
+        }
+
+        private static void addCallsForUser(Context context, UserHandle user,
+                List<Integer> indexes, List<ParamsBuilder> calls,
+                Map<PhoneAccountHandle, String> accountAddresses, Uri[] uris,
+                Exception[] errors) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            List<PhoneAccountHandle> accounts = new ArrayList<>();
+            for (int index : indexes) {
+                PhoneAccountHandle account = calls.get(index).getAccountHandle();
+                if (!accounts.contains(account)) {
+                    accounts.add(account);
+                }
+                operations.add(ContentProviderOperation.newInsert(Calls.CONTENT_URI)
+                        .withValues(calls.get(index).toContentValues(
+                                getAccountAddress(context, account, accountAddresses)))
+                        .build());
+            }
+            for (PhoneAccountHandle account : accounts) {
+                if (account != null && !TextUtils.isEmpty(account.getId())) {
+                    operations.add(ContentProviderOperation.newDelete(Calls.CONTENT_URI)
+                            .withSelection(TRIM_SELECTION_FOR_ACCOUNT, new String[] {
+                                    account.getComponentName().flattenToString(),
+                                    account.getId()})
+                            .build());
+                } else {
+                    operations.add(ContentProviderOperation.newDelete(Calls.CONTENT_URI)
+                            .withSelection(TRIM_SELECTION, null)
+                            .build());
+                }
+            }
+            try {
+                ContentProviderResult[] results = context.createContextAsUser(user, 0)
+                        .getContentResolver().applyBatch(CallLog.AUTHORITY, operations);
+                for (int i = 0; i < indexes.size(); i++) {
+                    Uri uri = results[i].uri;
+                    // An app ops denial is reported with a URI for row 0 instead of an error.
+                    uris[indexes.get(i)] = uri == null
+                            || SILENT_REJECTION_ID.equals(uri.getLastPathSegment()) ? null : uri;
+                }
+            } catch (Exception e) {
+                for (int index : indexes) {
+                    errors[index] = e;
+                }
+            }
+        }
+
+        /**
+         * @return The subscription address of the phone account, as logged by
+         * {@link Calls#addCall}.
+         */
+        private static String getAccountAddress(Context context, PhoneAccountHandle account,
+                Map<PhoneAccountHandle, String> accountAddresses) {
+            if (account == null) {
+                return null;
+            }
+            if (accountAddresses.containsKey(account)) {
+                return accountAddresses.get(account);
+            }
+            String address = null;
+            TelecomManager telecomManager = context.getSystemService(TelecomManager.class);
+            PhoneAccount phoneAccount = telecomManager == null
+                    ? null : telecomManager.getPhoneAccount(account);
+            if (phoneAccount != null && phoneAccount.getSubscriptionAddress() != null) {
+                address = phoneAccount.getSubscriptionAddress().getSchemeSpecificPart();
+            }
+            accountAddresses.put(account, address);
+            return address;
+        }
+    }
+
+    /**
+     * Builds {@link CallLog.AddCallParams}, while keeping a copy of the parameters which can be
+     * saved to disk and restored. The {@link CallerInfo} is not saved; calls restored from disk
+     * are logged without it.
+     */
+    public static class ParamsBuilder {
+        private static final String KEY_START = "start";
+        private static final String KEY_DURATION = "duration";
+        private static final String KEY_NUMBER = "number";
+        private static final String KEY_VIA_NUMBER = "via_number";
+        private static final String KEY_ACCOUNT_COMPONENT = "account_component";
+        private static final String KEY_ACCOUNT_ID = "account_id";
+        private static final String KEY_ACCOUNT_USER = "account_user";
+        private static final String KEY_DATA_USAGE = "data_usage";
+        private static final String KEY_FEATURES = "features";
+        private static final String KEY_BLOCK_REASON = "block_reason";
+        private static final String KEY_SCREENING_COMPONENT = "screening_component";
+        private static final String KEY_SCREENING_APP_NAME = "screening_app_name";
+        private static final String KEY_USER_TO_BE_INSERTED_TO = "user_to_be_inserted_to";
+        private static final String KEY_ADD_FOR_ALL_USERS = "add_for_all_users";
+        private static final String KEY_PRIORITY = "priority";
+        private static final String KEY_SUBJECT = "subject";
+        private static final String KEY_PICTURE_URI = "picture_uri";
+        private static final String KEY_LATITUDE = "latitude";
+        private static final String KEY_LONGITUDE = "longitude";
+        private static final String KEY_POST_DIAL_DIGITS = "post_dial_digits";
+        private static final String KEY_PRESENTATION = "presentation";
+        private static final String KEY_CALL_TYPE = "call_type";
+        private static final String KEY_IS_READ = "is_read";
+        private static final String KEY_MISSED_REASON = "missed_reason";
+        private static final String KEY_IS_BUSINESS_CALL = "is_business_call";
+        private static final String KEY_ASSERTED_DISPLAY_NAME = "asserted_display_name";
+
+        private final CallLog.AddCallParams.AddCallParametersBuilder mBuilder =
+                new CallLog.AddCallParams.AddCallParametersBuilder();
+        private final PersistableBundle mValues = new PersistableBundle();
+        private CallerInfo mCallerInfo;
+
+        public ParamsBuilder setStart(long start) {
+            mBuilder.setStart(start);
+            mValues.putLong(KEY_START, start);
+            return this;
+        }
+
+        public ParamsBuilder setDuration(int duration) {
+            mBuilder.setDuration(duration);
+            mValues.putInt(KEY_DURATION, duration);
+            return this;
+        }
+
+        public ParamsBuilder setNumber(String number) {
+            mBuilder.setNumber(number);
+            putString(KEY_NUMBER, number);
+            return this;
+        }
+
+        public ParamsBuilder setViaNumber(String viaNumber) {
+            mBuilder.setViaNumber(viaNumber);
+            putString(KEY_VIA_NUMBER, viaNumber);
+            return this;
+        }
+
+        public ParamsBuilder setAccountHandle(PhoneAccountHandle accountHandle) {
+            mBuilder.setAccountHandle(accountHandle);
+            if (accountHandle != null) {
+                mValues.putString(KEY_ACCOUNT_COMPONENT,
+                        accountHandle.getComponentName().flattenToString());
+                mValues.putString(KEY_ACCOUNT_ID, accountHandle.getId());
+                mValues.putInt(KEY_ACCOUNT_USER, accountHandle.getUserHandle().getIdentifier());
+            }
+            return this;
+        }
+
+        public ParamsBuilder setDataUsage(long dataUsage) {
+            mBuilder.setDataUsage(dataUsage);
+            mValues.putLong(KEY_DATA_USAGE, dataUsage);
+            return this;
+        }
+
+        public ParamsBuilder setFeatures(int features) {
+            mBuilder.setFeatures(features);
+            mValues.putInt(KEY_FEATURES, features);
+            return this;
+        }
+
+        public ParamsBuilder setCallBlockReason(int callBlockReason) {
+            mBuilder.setCallBlockReason(callBlockReason);
+            mValues.putInt(KEY_BLOCK_REASON, callBlockReason);
+            return this;
+        }
+
+        public ParamsBuilder setCallScreeningComponentName(String componentName) {
+            mBuilder.setCallScreeningComponentName(componentName);
+            putString(KEY_SCREENING_COMPONENT, componentName);
+            return this;
+        }
+
+        public ParamsBuilder setCallScreeningAppName(CharSequence appName) {
+            mBuilder.setCallScreeningAppName(appName);
+            putString(KEY_SCREENING_APP_NAME, appName == null ? null : appName.toString());
+            return this;
+        }
+
+        public ParamsBuilder setUserToBeInsertedTo(UserHandle user) {
+            mBuilder.setUserToBeInsertedTo(user);
+            if (user != null) {
+                mValues.putInt(KEY_USER_TO_BE_INSERTED_TO, user.getIdentifier());
+            }
+            return this;
+        }
+
+        public ParamsBuilder setAddForAllUsers(boolean addForAllUsers) {
+            mBuilder.setAddForAllUsers(addForAllUsers);
+            mValues.putBoolean(KEY_ADD_FOR_ALL_USERS, addForAllUsers);
+            return this;
+        }
+
+        public ParamsBuilder setPriority(int priority) {
+            mBuilder.setPriority(priority);
+            mValues.putInt(KEY_PRIORITY, priority);
+            return this;
+        }
+
+        public ParamsBuilder setSubject(String subject) {
+            mBuilder.setSubject(subject);
+            putString(KEY_SUBJECT, subject);
+            return this;
+        }
+
+        public ParamsBuilder setPictureUri(Uri pictureUri) {
+            mBuilder.setPictureUri(pictureUri);
+            putString(KEY_PICTURE_URI, pictureUri == null ? null : pictureUri.toString());
+            return this;
+        }
+
+        public ParamsBuilder setLatitude(double latitude) {
+            mBuilder.setLatitude(latitude);
+            mValues.putDouble(KEY_LATITUDE, latitude);
+            return this;
+        }
+
+        public ParamsBuilder setLongitude(double longitude) {
+            mBuilder.setLongitude(longitude);
+            mValues.putDouble(KEY_LONGITUDE, longitude);
+            return this;
+        }
+
+        public ParamsBuilder setCallerInfo(CallerInfo callerInfo) {
+            mBuilder.setCallerInfo(callerInfo);
+            mCallerInfo = callerInfo;
+            return this;
+        }
+
+        public ParamsBuilder setPostDialDigits(String postDialDigits) {
+            mBuilder.setPostDialDigits(postDialDigits);
+            putString(KEY_POST_DIAL_DIGITS, postDialDigits);
+            return this;
+        }
+
+        public ParamsBuilder setPresentation(int presentation) {
+            mBuilder.setPresentation(presentation);
+            mValues.putInt(KEY_PRESENTATION, presentation);
+            return this;
+        }
+
+        public ParamsBuilder setCallType(int callType) {
+            mBuilder.setCallType(callType);
+            mValues.putInt(KEY_CALL_TYPE, callType);
+            return this;
+        }
+
+        public ParamsBuilder setIsRead(boolean isRead) {
+            mBuilder.setIsRead(isRead);
+            mValues.putBoolean(KEY_IS_READ, isRead);
+            return this;
+        }
+
+        public ParamsBuilder setMissedReason(long missedReason) {
+            mBuilder.setMissedReason(missedReason);
+            mValues.putLong(KEY_MISSED_REASON, missedReason);
+            return this;
+        }
+
+        public ParamsBuilder setIsBusinessCall(boolean isBusinessCall) {
+            mBuilder.setIsBusinessCall(isBusinessCall);
+            mValues.putBoolean(KEY_IS_BUSINESS_CALL, isBusinessCall);
+            return this;
+        }
+
+        public ParamsBuilder setAssertedDisplayName(String assertedDisplayName) {
+            mBuilder.setAssertedDisplayName(assertedDisplayName);
+            putString(KEY_ASSERTED_DISPLAY_NAME, assertedDisplayName);
+            return this;
+        }
+
+        public CallLog.AddCallParams build() {
+            return mBuilder.build();
+        }
+
+        /**
+         * @param accountAddress The subscription address of the phone account, if any.
+         * @return The values {@link Calls#addCall} would insert into the call log for these
+         * parameters; only complete for calls where {@link #isCallLogRowOnly()}.
+         */
+        @VisibleForTesting
+        public ContentValues toContentValues(String accountAddress) {
+            String number = mValues.getString(KEY_NUMBER);
+            int presentation = getLogNumberPresentation(number,
+                    mValues.getInt(KEY_PRESENTATION, TelecomManager.PRESENTATION_ALLOWED));
+            String name = mCallerInfo != null ? mCallerInfo.getName() : "";
+            if (presentation != Calls.PRESENTATION_ALLOWED) {
+                number = "";
+                if (mCallerInfo != null) {
+                    name = "";
+                }
+            }
+            PhoneAccountHandle accountHandle = getAccountHandle();
+            int callType = mValues.getInt(KEY_CALL_TYPE, Calls.INCOMING_TYPE);
+
+            ContentValues values = new ContentValues();
+            values.put(Calls.NUMBER, number);
+            values.put(Calls.POST_DIAL_DIGITS, mValues.getString(KEY_POST_DIAL_DIGITS));
+            values.put(Calls.VIA_NUMBER, mValues.getString(KEY_VIA_NUMBER));
+            values.put(Calls.NUMBER_PRESENTATION, presentation);
+            values.put(Calls.TYPE, callType);
+            values.put(Calls.FEATURES, mValues.getInt(KEY_FEATURES));
+            values.put(Calls.DATE, mValues.getLong(KEY_START));
+            values.put(Calls.DURATION, (long) mValues.getInt(KEY_DURATION));
+            long dataUsage = mValues.getLong(KEY_DATA_USAGE, Long.MIN_VALUE);
+            if (dataUsage != Long.MIN_VALUE) {
+                values.put(Calls.DATA_USAGE, dataUsage);
+            }
+            values.put(Calls.PHONE_ACCOUNT_COMPONENT_NAME, accountHandle == null
+                    ? null : accountHandle.getComponentName().flattenToString());
+            values.put(Calls.PHONE_ACCOUNT_ID, accountHandle == null ? null : accountHandle.getId());
+            values.put(Calls.PHONE_ACCOUNT_ADDRESS, accountAddress);
+            values.put(Calls.NEW, 1);
+            values.put(Calls.CACHED_NAME, name);
+            values.put(Calls.ADD_FOR_ALL_USERS, mValues.getBoolean(KEY_ADD_FOR_ALL_USERS) ? 1 : 0);
+            if (callType == Calls.MISSED_TYPE) {
+                values.put(Calls.IS_READ, mValues.getBoolean(KEY_IS_READ) ? 1 : 0);
+            }
+            values.put(Calls.BLOCK_REASON,
+                    mValues.getInt(KEY_BLOCK_REASON, Calls.BLOCK_REASON_NOT_BLOCKED));
+            values.put(Calls.CALL_SCREENING_APP_NAME, mValues.getString(KEY_SCREENING_APP_NAME));
+            values.put(Calls.CALL_SCREENING_COMPONENT_NAME,
+                    mValues.getString(KEY_SCREENING_COMPONENT));
+            values.put(Calls.MISSED_REASON,
+                    mValues.getLong(KEY_MISSED_REASON, Calls.MISSED_REASON_NOT_MISSED));
+            values.put(Calls.PRIORITY, mValues.getInt(KEY_PRIORITY, Calls.PRIORITY_NORMAL));
+            values.put(Calls.SUBJECT, mValues.getString(KEY_SUBJECT));
+            return values;
+        }
+
+        /**
+         * @return {@code true} if logging the call only takes a row in the call log, as opposed
+         * to also storing a picture or location, business call details, or updating the
+         * normalized number of the contact it was placed to.
+         */
+        boolean isCallLogRowOnly() {
+            if (mValues.containsKey(KEY_PICTURE_URI) || mValues.containsKey(KEY_LATITUDE)
+                    || mValues.containsKey(KEY_LONGITUDE)
+                    || mValues.getBoolean(KEY_IS_BUSINESS_CALL)
+                    || !TextUtils.isEmpty(mValues.getString(KEY_ASSERTED_DISPLAY_NAME))) {
+                return false;
+            }
+            return mCallerInfo == null || mCallerInfo.getContactId() <= 0
+                    || mValues.getInt(KEY_CALL_TYPE, Calls.INCOMING_TYPE) != Calls.OUTGOING_TYPE
+                    || !TextUtils.isEmpty(mCallerInfo.normalizedNumber);
+        }
+
+        PhoneAccountHandle getAccountHandle() {
+            if (!mValues.containsKey(KEY_ACCOUNT_COMPONENT)) {
+                return null;
+            }
+            ComponentName componentName = ComponentName.unflattenFromString(
+                    mValues.getString(KEY_ACCOUNT_COMPONENT));
+            return componentName == null ? null : new PhoneAccountHandle(componentName,
+                    mValues.getString(KEY_ACCOUNT_ID),
+                    UserHandle.of(mValues.getInt(KEY_ACCOUNT_USER)));
+        }
+
+        /**
+         * The presentation {@link Calls#addCall} logs for a number.
+         */
+        private static int getLogNumberPresentation(String number, int presentation) {
+            if (presentation == TelecomManager.PRESENTATION_RESTRICTED
+                    || presentation == TelecomManager.PRESENTATION_PAYPHONE
+                    || presentation == TelecomManager.PRESENTATION_UNAVAILABLE) {
+                return presentation;
+            }
+            if (TextUtils.isEmpty(number)
+                    || presentation == TelecomManager.PRESENTATION_UNKNOWN) {
+                return Calls.PRESENTATION_UNKNOWN;
+            }
+            return Calls.PRESENTATION_ALLOWED;
+        }
+
+        /**
+         * @return The saved parameters; see {@link #fromPersistableBundle(PersistableBundle)}.
+         */
+        public PersistableBundle toPersistableBundle() {
+            return new PersistableBundle(mValues);
+        }
+
+        /**
+         * Restores parameters saved by {@link #toPersistableBundle()}.
+         */
+        public static ParamsBuilder fromPersistableBundle(PersistableBundle values) {
+            ParamsBuilder builder = new ParamsBuilder();
+            if (values.containsKey(KEY_START)) {
+                builder.setStart(values.getLong(KEY_START));
+            }
+            if (values.containsKey(KEY_DURATION)) {
+                builder.setDuration(values.getInt(KEY_DURATION));
+            }
+            if (values.containsKey(KEY_NUMBER)) {
+                builder.setNumber(values.getString(KEY_NUMBER));
+            }
+            if (values.containsKey(KEY_VIA_NUMBER)) {
+                builder.setViaNumber(values.getString(KEY_VIA_NUMBER));
+            }
+            if (values.containsKey(KEY_ACCOUNT_COMPONENT)) {
+                ComponentName componentName = ComponentName.unflattenFromString(
+                        values.getString(KEY_ACCOUNT_COMPONENT));
+                if (componentName != null) {
+                    builder.setAccountHandle(new PhoneAccountHandle(componentName,
+                            values.getString(KEY_ACCOUNT_ID),
+                            UserHandle.of(values.getInt(KEY_ACCOUNT_USER))));
+                }
+            }
+            if (values.containsKey(KEY_DATA_USAGE)) {
+                builder.setDataUsage(values.getLong(KEY_DATA_USAGE));
+            }
+            if (values.containsKey(KEY_FEATURES)) {
+                builder.setFeatures(values.getInt(KEY_FEATURES));
+            }
+            if (values.containsKey(KEY_BLOCK_REASON)) {
+                builder.setCallBlockReason(values.getInt(KEY_BLOCK_REASON));
+            }
+            if (values.containsKey(KEY_SCREENING_COMPONENT)) {
+                builder.setCallScreeningComponentName(values.getString(KEY_SCREENING_COMPONENT));
+            }
+            if (values.containsKey(KEY_SCREENING_APP_NAME)) {
+                builder.setCallScreeningAppName(values.getString(KEY_SCREENING_APP_NAME));
+            }
+            if (values.containsKey(KEY_USER_TO_BE_INSERTED_TO)) {
+                builder.setUserToBeInsertedTo(
+                        UserHandle.of(values.getInt(KEY_USER_TO_BE_INSERTED_TO)));
+            }
+            if (values.containsKey(KEY_ADD_FOR_ALL_USERS)) {
+                builder.setAddForAllUsers(values.getBoolean(KEY_ADD_FOR_ALL_USERS));
+            }
+            if (values.containsKey(KEY_PRIORITY)) {
+                builder.setPriority(values.getInt(KEY_PRIORITY));
+            }
+            if (values.containsKey(KEY_SUBJECT)) {
+                builder.setSubject(values.getString(KEY_SUBJECT));
+            }
+            if (values.containsKey(KEY_PICTURE_URI)) {
+                builder.setPictureUri(Uri.parse(values.getString(KEY_PICTURE_URI)));
+            }
+            if (values.containsKey(KEY_LATITUDE)) {
+                builder.setLatitude(values.getDouble(KEY_LATITUDE));
+            }
+            if (values.containsKey(KEY_LONGITUDE)) {
+                builder.setLongitude(values.getDouble(KEY_LONGITUDE));
+            }
+            if (values.containsKey(KEY_POST_DIAL_DIGITS)) {
+                builder.setPostDialDigits(values.getString(KEY_POST_DIAL_DIGITS));
+            }
+            if (values.containsKey(KEY_PRESENTATION)) {
+                builder.setPresentation(values.getInt(KEY_PRESENTATION));
+            }
+            if (values.containsKey(KEY_CALL_TYPE)) {
+                builder.setCallType(values.getInt(KEY_CALL_TYPE));
+            }
+            if (values.containsKey(KEY_IS_READ)) {
+                builder.setIsRead(values.getBoolean(KEY_IS_READ));
+            }
+            if (values.containsKey(KEY_MISSED_REASON)) {
+                builder.setMissedReason(values.getLong(KEY_MISSED_REASON));
+            }
+            if (values.containsKey(KEY_IS_BUSINESS_CALL)) {
+                builder.setIsBusinessCall(values.getBoolean(KEY_IS_BUSINESS_CALL));
+            }
+            if (values.containsKey(KEY_ASSERTED_DISPLAY_NAME)) {
+                builder.setAssertedDisplayName(values.getString(KEY_ASSERTED_DISPLAY_NAME));
+            }
+            return builder;
+        }
+
+        private void putString(String key, String value) {
+            // PersistableBundle does not round trip null values, so leave the key out instead.
+            if (value != null) {
+                mValues.putString(key, value);
+            }
+        }
+    }
+
+    /**
+     * A call waiting to be written.
+     */
+    private static class Entry {
+        final String callId;
+        final ParamsBuilder params;
+        @Nullable final CallLogManager.LogCallCompletedListener listener;
+        int attempts;
+        long nextAttemptUptimeMillis;
+
+        Entry(String callId, ParamsBuilder params,
+                @Nullable CallLogManager.LogCallCompletedListener listener) {
+            this.callId = callId;
+            this.params = params;
+            this.listener = listener;
+        }
+    }
+
+    private static final String TAG = CallLogWriter.class.getSimpleName();
+    private static final String FILE_NAME = "pending-call-log.xml";
+    private static final String KEY_ENTRY_COUNT = "entry_count";
+    private static final String KEY_ENTRY_PREFIX = "entry_";
+    private static final String KEY_CALL_ID = "call_id";
+
+    /** Calls logged within this long of the first pending call are written in the same batch. */
+    public static final long BATCH_WINDOW_MILLIS = 100;
+    /** The delay before a failed write is first retried; doubled for each later retry. */
+    public static final long INITIAL_RETRY_DELAY_MILLIS = 1000;
+    /** The number of times a call is attempted before giving up on it. */
+    @VisibleForTesting
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static final int MSG_FLUSH = 1;
+
+    private final Context mContext;
+    private final Inserter mInserter;
+    private final Runnable mWriteFailedCallback;
+    private final AtomicFile mAtomicFile;
+    private final UserManager mUserManager;
+    private final long mBatchWindowMillis;
+    private final long mInitialRetryDelayMillis;
+    private final Handler mCallbackHandler = new Handler(Looper.getMainLooper());
+    private final Executor mExecutor;
+    // Only keeps time; each flush it schedules is run on mExecutor.
+    private final Handler mTimerHandler;
+
+    // The following are only accessed on mExecutor.
+    private final List<Entry> mPending = new ArrayList<>();
+    private long mNextFlushUptimeMillis;
+    // Whether calls saved by an earlier writer have been read back; waits for the user to unlock.
+    private boolean mIsRestored;
+    // Whether the pending file may exist and so needs to be updated as calls are written.
+    private boolean mHasSavedCalls;
+
+    // Written on mExecutor; read by dump.
+    private volatile long mCallsQueued;
+    private volatile long mCallsWritten;
+    private volatile long mBatchesWritten;
+    private volatile long mRetries;
+    private volatile long mFailures;
+    private volatile long mCallsRestored;
+
+    /**
+     * @param context The context used to write the call log.
+     * @param executor Runs the writes, one at a time and in order.
+     * @param timerLooper Used to wait out the batch window and retry delays; does no writing.
+     * @param inserter Writes batches of calls.
+     * @param writeFailedCallback Run, on {@code executor}, for each call which was not logged.
+     */
+    public CallLogWriter(Context context, Executor executor, Looper timerLooper,
+            Inserter inserter, Runnable writeFailedCallback) {
+        // Telecom defaults to device protected storage, which is readable before the user
+        // unlocks; unwritten calls belong with the call log, in credential protected storage.
+        this(context, executor, timerLooper, inserter, writeFailedCallback,
+                new File(context.createCredentialProtectedStorageContext().getFilesDir(),
+                        FILE_NAME), BATCH_WINDOW_MILLIS, INITIAL_RETRY_DELAY_MILLIS);
+    }
+
+    @VisibleForTesting
+    public CallLogWriter(Context context, Executor executor, Looper timerLooper,
+            Inserter inserter, Runnable writeFailedCallback, File pendingFile,
+            long batchWindowMillis, long initialRetryDelayMillis) {
+        mContext = context;
+        mInserter = inserter;
+        mWriteFailedCallback = writeFailedCallback;
+        mAtomicFile = new AtomicFile(pendingFile);
+        mUserManager = context.getSystemService(UserManager.class);
+        mBatchWindowMillis = batchWindowMillis;
+        mInitialRetryDelayMillis = initialRetryDelayMillis;
+        mExecutor = executor;
+        mTimerHandler = new Handler(timerLooper) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_FLUSH) {
+                    mExecutor.execute(CallLogWriter.this::flush);
+                }
+            }
+        };
+        mExecutor.execute(this::maybeRestore);
+    }
+
+    /**
+     * Queues a call to be written to the call log.
+     *
+     * @param callId The ID of the call, for logging.
+     * @param params The call log entry.
+     * @param listener Told the URI of the entry once written, on the main thread.
+     */
+    public void addCall(String callId, ParamsBuilder params,
+            @Nullable CallLogManager.LogCallCompletedListener listener) {
+        mExecutor.execute(() -> {
+            maybeRestore();
+            mCallsQueued++;
+            mPending.add(new Entry(callId, params, listener));
+            scheduleFlush(SystemClock.uptimeMillis() + mBatchWindowMillis);
+        });
+    }
+
+    @VisibleForTesting
+    public Handler getTimerHandler() {
+        return mTimerHandler;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("CallLogWriter: queued=%d, written=%d, batches=%d, retries=%d,"
+                        + " failures=%d, restored=%d", mCallsQueued, mCallsWritten,
+                mBatchesWritten, mRetries, mFailures, mCallsRestored));
+    }
+
+    private void scheduleFlush(long uptimeMillis) {
+        if (mNextFlushUptimeMillis != 0 && mNextFlushUptimeMillis <= uptimeMillis) {
+            // An earlier flush will pick up the new entry, or reschedule for it.
+            return;
+        }
+        mTimerHandler.removeMessages(MSG_FLUSH);
+        mTimerHandler.sendEmptyMessageAtTime(MSG_FLUSH, uptimeMillis);
+        mNextFlushUptimeMillis = uptimeMillis;
+    }
+
+    private void flush() {
+        mNextFlushUptimeMillis = 0;
+        maybeRestore();
+        long now = SystemClock.uptimeMillis();
+        List<Entry> batch = new ArrayList<>();
+        List<ParamsBuilder> params = new ArrayList<>();
+        for (Entry entry : mPending) {
+            if (entry.nextAttemptUptimeMillis <= now) {
+                batch.add(entry);
+                params.add(entry.params);
+            }
+        }
+        if (!batch.isEmpty()) {
+            Uri[] uris = new Uri[batch.size()];
+            Exception[] errors = new Exception[batch.size()];
+            mInserter.addCalls(mContext, params, uris, errors);
+            mBatchesWritten++;
+            Log.i(TAG, "flush: wrote batch of %d calls", batch.size());
+            boolean isRetryNeeded = false;
+            for (int i = 0; i < batch.size(); i++) {
+                isRetryNeeded |= onCallWritten(batch.get(i), uris[i], errors[i], now);
+            }
+            // Only touch the disk when a write failed, or to drop calls saved earlier.
+            if (isRetryNeeded || mHasSavedCalls) {
+                save();
+            }
+        }
+
+        long nextAttempt = Long.MAX_VALUE;
+        for (Entry entry : mPending) {
+            nextAttempt = Math.min(nextAttempt, entry.nextAttemptUptimeMillis);
+        }
+        if (nextAttempt != Long.MAX_VALUE) {
+            scheduleFlush(nextAttempt);
+        }
+    }
+
+    /**
+     * @return {@code true} if the call will be retried.
+     */
+    private boolean onCallWritten(Entry entry, Uri uri, Exception error, long now) {
+        if (error != null) {
+            entry.attempts++;
+            if (entry.attempts < MAX_ATTEMPTS) {
+                // The provider may be busy or not yet available; try again later.
+                entry.nextAttemptUptimeMillis = now
+                        + (mInitialRetryDelayMillis << (entry.attempts - 1));
+                mRetries++;
+                Log.w(TAG, "LogCall: failed to add callId=%s, attempt %d; %s", entry.callId,
+                        entry.attempts, error);
+                return true;
+            }
+            // This is very rare but may happen in legitimate cases, e.g. if the phone is
+            // encrypted. We don't want to crash the whole process just because of that.
+            Log.e(TAG, error, "LogCall: Exception raised adding callId=%s", entry.callId);
+        } else {
+            Log.i(TAG, "LogCall; logged callId=%s, uri=%s", entry.callId, uri);
+        }
+        mPending.remove(entry);
+        if (uri == null) {
+            // No call was added or even worse we lost a call in the log.
+            mFailures++;
+            Log.w(TAG, "Failed to write call to the log.");
+            mWriteFailedCallback.run();
+        } else {
+            mCallsWritten++;
+        }
+        if (entry.listener != null) {
+            mCallbackHandler.post(() -> entry.listener.onLogCompleted(uri));
+        }
+        return false;
+    }
+
+    /**
+     * Saves the pending calls, or removes the file once there are none.
+     */
+    private void save() {
+        if (mPending.isEmpty()) {
+            if (mHasSavedCalls) {
+                mAtomicFile.delete();
+                mHasSavedCalls = false;
+            }
+            return;
+        }
+        if (!mUserManager.isUserUnlocked()) {
+            // Credential protected storage is not available yet; the calls stay queued.
+            Log.i(TAG, "save: user locked, not saving %d pending calls", mPending.size());
+            return;
+        }
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putInt(KEY_ENTRY_COUNT, mPending.size());
+        for (int i = 0; i < mPending.size(); i++) {
+            Entry entry = mPending.get(i);
+            PersistableBundle entryBundle = entry.params.toPersistableBundle();
+            entryBundle.putString(KEY_CALL_ID, entry.callId);
+            bundle.putPersistableBundle(KEY_ENTRY_PREFIX + i, entryBundle);
+        }
+        FileOutputStream fileOutput = null;
+        try {
+            fileOutput = mAtomicFile.startWrite();
+            bundle.writeToStream(fileOutput);
+            mAtomicFile.finishWrite(fileOutput);
+            mHasSavedCalls = true;
+        } catch (IOException e) {
+            Log.e(TAG, e, "save: unable to save pending calls");
+            mAtomicFile.failWrite(fileOutput);
+        }
+    }
+
+    /**
+     * Queues any calls which were saved but not written before the writer was last stopped, once
+     * the user has unlocked.
+     */
+    private void maybeRestore() {
+        if (mIsRestored || !mUserManager.isUserUnlocked()) {
+            return;
+        }
+        mIsRestored = true;
+        PersistableBundle bundle;
+        try (FileInputStream fileInput = mAtomicFile.openRead()) {
+            bundle = PersistableBundle.readFromStream(fileInput);
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, e, "restore: unable to read pending calls");
+            mAtomicFile.delete();
+            return;
+        }
+        mHasSavedCalls = true;
+        int count = bundle.getInt(KEY_ENTRY_COUNT);
+        for (int i = 0; i < count; i++) {
+            PersistableBundle entryBundle = bundle.getPersistableBundle(KEY_ENTRY_PREFIX + i);
+            if (entryBundle != null) {
+                mPending.add(new Entry(entryBundle.getString(KEY_CALL_ID),
+                        ParamsBuilder.fromPersistableBundle(entryBundle), null /* listener */));
+                mCallsRestored++;
+            }
+        }
+        Log.i(TAG, "restore: restored %d pending calls", mCallsRestored);
+        if (!mPending.isEmpty()) {
+            scheduleFlush(SystemClock.uptimeMillis() + mBatchWindowMillis);
+        }
+    }
+}
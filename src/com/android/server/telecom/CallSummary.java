@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.UserHandle;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telephony.TelephonyManager;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable summary of the calls tracked by {@link CallsManager}, which is rebuilt and
+ * published after every call transition. It answers the yes/no questions apps ask through
+ * {@link android.telecom.TelecomManager} (is a call ringing, is there an ongoing call, ...) without
+ * taking the {@link TelecomSystem.SyncRoot} lock, so polling apps do not contend with call
+ * processing.
+ * <p>
+ * The global answers are packed into a single int; only questions scoped to a user or package
+ * look at the per-call entries, and only when the packed flags say there is something to find.
+ */
+@VisibleForTesting
+public class CallSummary {
+    private static final int FLAG_RINGING = 1 << 0;
+    private static final int FLAG_ONGOING = 1 << 1;
+    private static final int FLAG_ONGOING_MANAGED = 1 << 2;
+    private static final int FLAG_EMERGENCY = 1 << 3;
+    private static final int FLAG_SELF_MANAGED = 1 << 4;
+    private static final int CALL_STATE_SHIFT = 8;
+    private static final int CALL_STATE_MASK = 0xff;
+
+    public static final CallSummary EMPTY = new CallSummary(
+            TelephonyManager.CALL_STATE_IDLE << CALL_STATE_SHIFT,
+            new Entry[0], new Entry[0]);
+
+    /**
+     * The properties of a single call which user or package scoped queries need.
+     */
+    private static final class Entry {
+        final UserHandle associatedUser;
+        final boolean isMultiUser;
+        final boolean isSelfManaged;
+        final String packageName;
+        final UserHandle accountUser;
+
+        Entry(Call call) {
+            associatedUser = call.getAssociatedUser();
+            PhoneAccount account = call.getPhoneAccountFromHandle();
+            isMultiUser = account != null
+                    && account.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER);
+            isSelfManaged = call.isSelfManaged();
+            PhoneAccountHandle handle = call.getTargetPhoneAccount();
+            packageName = handle == null ? null : handle.getComponentName().getPackageName();
+            accountUser = handle == null ? null : handle.getUserHandle();
+        }
+
+        /**
+         * Mirrors {@link CallsManager#isCallVisibleForUser(Call, UserHandle)}.
+         */
+        boolean isVisibleForUser(UserHandle userHandle) {
+            return (associatedUser != null && associatedUser.equals(userHandle)) || isMultiUser;
+        }
+    }
+
+    private final int mFlags;
+    private final Entry[] mOngoingCalls;
+    private final Entry[] mSelfManagedCalls;
+
+    private CallSummary(int flags, Entry[] ongoingCalls, Entry[] selfManagedCalls) {
+        mFlags = flags;
+        mOngoingCalls = ongoingCalls;
+        mSelfManagedCalls = selfManagedCalls;
+    }
+
+    /**
+     * Summarizes the given calls. Must be called with the {@link TelecomSystem.SyncRoot} lock
+     * held, as it reads mutable call state.
+     *
+     * @param calls The calls tracked by {@link CallsManager}.
+     * @param selfManagedCallsBeingSetup Self-managed calls which are not yet tracked.
+     * @param callState The {@link TelephonyManager} call state last broadcast.
+     */
+    public static CallSummary create(Collection<Call> calls,
+            Collection<Call> selfManagedCallsBeingSetup, int callState) {
+        int flags = (callState & CALL_STATE_MASK) << CALL_STATE_SHIFT;
+        List<Entry> ongoingCalls = new ArrayList<>();
+        List<Entry> selfManagedCalls = new ArrayList<>();
+        for (Call call : calls) {
+            if ((call.isEmergencyCall() || call.isNetworkIdentifiedEmergencyCall())
+                    && !call.isDisconnected()) {
+                flags |= FLAG_EMERGENCY;
+            }
+            if (call.isSelfManaged() && call.getTargetPhoneAccount() != null) {
+                selfManagedCalls.add(new Entry(call));
+            }
+            // Only top-level, non-external calls count towards the call state.
+            if (call.getParentCall() != null || call.isExternalCall()) {
+                continue;
+            }
+            int state = call.getState();
+            if (isRingingState(state)) {
+                flags |= FLAG_RINGING;
+            }
+            if (isOngoingState(state)) {
+                Entry entry = new Entry(call);
+                ongoingCalls.add(entry);
+                flags |= FLAG_ONGOING;
+                if (!entry.isSelfManaged) {
+                    flags |= FLAG_ONGOING_MANAGED;
+                }
+            }
+        }
+        for (Call call : selfManagedCallsBeingSetup) {
+            if (call.isSelfManaged() && call.getTargetPhoneAccount() != null) {
+                selfManagedCalls.add(new Entry(call));
+            }
+        }
+        if (!selfManagedCalls.isEmpty()) {
+            flags |= FLAG_SELF_MANAGED;
+        }
+        return new CallSummary(flags, ongoingCalls.toArray(new Entry[0]),
+                selfManagedCalls.toArray(new Entry[0]));
+    }
+
+    /**
+     * @return {@code true} if a call moving between the given states may change the summary, so
+     * that state changes which cannot affect it do not require a new summary.
+     */
+    public static boolean isSummarizedStateChange(int oldState, int newState) {
+        return isRingingState(oldState) != isRingingState(newState)
+                || isOngoingState(oldState) != isOngoingState(newState)
+                || isDisconnectedState(oldState) != isDisconnectedState(newState);
+    }
+
+    private static boolean isRingingState(int state) {
+        return state == CallState.RINGING || state == CallState.SIMULATED_RINGING
+                || state == CallState.ANSWERED;
+    }
+
+    private static boolean isDisconnectedState(int state) {
+        return state == CallState.DISCONNECTED || state == CallState.ABORTED;
+    }
+
+    private static boolean isOngoingState(int state) {
+        for (int ongoingState : CallsManager.ONGOING_CALL_STATES) {
+            if (state == ongoingState) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if a call is ringing, simulated ringing or answered.
+     */
+    public boolean isRinging() {
+        return (mFlags & FLAG_RINGING) != 0;
+    }
+
+    /**
+     * @return {@code true} if there is an emergency call which is not disconnected.
+     */
+    public boolean isInEmergencyCall() {
+        return (mFlags & FLAG_EMERGENCY) != 0;
+    }
+
+    /**
+     * @return The {@link TelephonyManager} call state last broadcast.
+     */
+    public int getCallState() {
+        return (mFlags >> CALL_STATE_SHIFT) & CALL_STATE_MASK;
+    }
+
+    /**
+     * @param callingUser The user to scope the calls to.
+     * @param hasCrossUserAccess Whether calls of all users are visible.
+     * @return {@code true} if there are ongoing managed or self-managed calls.
+     */
+    public boolean hasOngoingCalls(UserHandle callingUser, boolean hasCrossUserAccess) {
+        if ((mFlags & FLAG_ONGOING) == 0) {
+            return false;
+        }
+        return hasOngoingCalls(callingUser, hasCrossUserAccess, false /* managedOnly */);
+    }
+
+    /**
+     * @param callingUser The user to scope the calls to.
+     * @param hasCrossUserAccess Whether calls of all users are visible.
+     * @return {@code true} if there are ongoing managed calls.
+     */
+    public boolean hasOngoingManagedCalls(UserHandle callingUser, boolean hasCrossUserAccess) {
+        if ((mFlags & FLAG_ONGOING_MANAGED) == 0) {
+            return false;
+        }
+        return hasOngoingCalls(callingUser, hasCrossUserAccess, true /* managedOnly */);
+    }
+
+    private boolean hasOngoingCalls(UserHandle callingUser, boolean hasCrossUserAccess,
+            boolean managedOnly) {
+        for (Entry entry : mOngoingCalls) {
+            if (managedOnly && entry.isSelfManaged) {
+                continue;
+            }
+            if (hasCrossUserAccess || entry.isVisibleForUser(callingUser)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mirrors {@link CallsManager#isInSelfManagedCall(String, UserHandle)}.
+     *
+     * @param packageName The package name to check.
+     * @param userHandle The user to check, or {@link UserHandle#ALL} to check all users.
+     * @return {@code true} if the package has self-managed calls, including ones being set up.
+     */
+    public boolean isInSelfManagedCall(String packageName, UserHandle userHandle) {
+        if ((mFlags & FLAG_SELF_MANAGED) == 0) {
+            return false;
+        }
+        boolean hasCrossUserAccess = userHandle.equals(UserHandle.ALL);
+        for (Entry entry : mSelfManagedCalls) {
+            if (Objects.equals(packageName, entry.packageName)
+                    && (hasCrossUserAccess || userHandle.equals(entry.accountUser))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CallSummary{flags=0x%x, ongoing=%d, selfManaged=%d}", mFlags,
+                mOngoingCalls.length, mSelfManagedCalls.length);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.ContactsContract;
+import android.telecom.CallerInfo;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link CallerInfo} (including the decoded contact photo) {@link
+ * CallerInfoLookupHelper} found for recently seen handles, so that a call from a recent caller
+ * can be shown without waiting on a contacts query and photo decode.
+ * <p>
+ * The cache is bounded by a number of entries and by the memory used by the photos it holds;
+ * when either is exceeded the least recently used entries are evicted. Entries also expire after
+ * {@link #DEFAULT_TTL_MILLIS}, and the whole cache is dropped when the contacts provider reports
+ * a change. Safe to use from any thread.
+ * <p>
+ * A {@link Call} keeps, and changes, the {@link CallerInfo} it is given (it drops the photos once
+ * it is destroyed, for one), so the cache holds a copy of what it is given and hands out a copy
+ * of what it holds.
+ */
+@VisibleForTesting
+public class CallerInfoCache {
+    private static final String TAG = CallerInfoCache.class.getSimpleName();
+    public static final int DEFAULT_MAX_ENTRIES = 100;
+    public static final long DEFAULT_MAX_PHOTO_BYTES = 4 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+    private static class Entry {
+        final CallerInfo mCallerInfo;
+        final long mPhotoBytes;
+        final long mCachedAtMillis;
+
+        Entry(CallerInfo callerInfo, long photoBytes, long cachedAtMillis) {
+            mCallerInfo = callerInfo;
+            mPhotoBytes = photoBytes;
+            mCachedAtMillis = cachedAtMillis;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final long mMaxPhotoBytes;
+    private final long mTtlMillis;
+    private final LinkedHashMap<Uri, Entry> mEntries =
+            new LinkedHashMap<>(16, 0.75f, true /* accessOrder */);
+    private long mPhotoBytes;
+    private long mHits;
+    private long mMisses;
+    private long mEvictions;
+    /**
+     * Bumped on every invalidation, so a lookup which started before contacts changed is not
+     * cached once it completes.
+     */
+    private long mGeneration;
+
+    private final ContentObserver mContactsObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate();
+        }
+    };
+
+    public CallerInfoCache(Context context) {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_PHOTO_BYTES, DEFAULT_TTL_MILLIS);
+        context.getContentResolver().registerContentObserver(ContactsContract.AUTHORITY_URI,
+                true /* notifyForDescendants */, mContactsObserver);
+    }
+
+    @VisibleForTesting
+    public CallerInfoCache(int maxEntries, long maxPhotoBytes, long ttlMillis) {
+        mMaxEntries = maxEntries;
+        mMaxPhotoBytes = maxPhotoBytes;
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @return The cached {@link CallerInfo} for {@code handle}, or {@code null} if there is none
+     * or it has expired.
+     */
+    public synchronized CallerInfo get(Uri handle) {
+        Entry entry = mEntries.get(handle);
+        if (entry != null && SystemClock.elapsedRealtime() - entry.mCachedAtMillis > mTtlMillis) {
+            remove(handle);
+            entry = null;
+        }
+        if (entry == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return copyOf(entry.mCallerInfo);
+    }
+
+    /**
+     * @return The current generation, to be passed to {@link #put} once a lookup started now
+     * completes.
+     */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the {@link CallerInfo} found for {@code handle}, evicting the least recently used
+     * entries if the cache is over budget.
+     * @param generation The {@link #getGeneration generation} when the lookup was started; the
+     *                   result is dropped if the cache has been invalidated since.
+     */
+    public synchronized void put(Uri handle, CallerInfo callerInfo, long generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        remove(handle);
+        long photoBytes = getPhotoBytes(callerInfo);
+        if (photoBytes > mMaxPhotoBytes) {
+            Log.i(TAG, "put: photo for %s exceeds the cache budget", Log.piiHandle(handle));
+            return;
+        }
+        mEntries.put(handle, new Entry(copyOf(callerInfo), photoBytes,
+                SystemClock.elapsedRealtime()));
+        mPhotoBytes += photoBytes;
+
+        Iterator<Map.Entry<Uri, Entry>> eldest = mEntries.entrySet().iterator();
+        while ((mEntries.size() > mMaxEntries || mPhotoBytes > mMaxPhotoBytes)
+                && eldest.hasNext()) {
+            mPhotoBytes -= eldest.next().getValue().mPhotoBytes;
+            eldest.remove();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mEntries.clear();
+        mPhotoBytes = 0;
+    }
+
+    private void remove(Uri handle) {
+        Entry removed = mEntries.remove(handle);
+        if (removed != null) {
+            mPhotoBytes -= removed.mPhotoBytes;
+        }
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    @VisibleForTesting
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    @VisibleForTesting
+    public synchronized long getPhotoBytes() {
+        return mPhotoBytes;
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public synchronized void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("CallerInfoCache: entries=%d/%d, photoBytes=%d/%d, hits=%d, "
+                        + "misses=%d, evictions=%d, invalidations=%d", mEntries.size(),
+                mMaxEntries, mPhotoBytes, mMaxPhotoBytes, mHits, mMisses, mEvictions,
+                mGeneration));
+    }
+
+    /**
+     * Copies the contact details a lookup fills in. The photos themselves are shared, since
+     * nothing changes a decoded photo in place. The contact ID cannot be set from outside
+     * {@link CallerInfo}, so it is not copied; the lookup key still identifies the contact.
+     */
+    private static CallerInfo copyOf(CallerInfo callerInfo) {
+        if (callerInfo == null) {
+            return null;
+        }
+        CallerInfo copy = new CallerInfo();
+        copy.setName(callerInfo.getName());
+        copy.setPhoneNumber(callerInfo.getPhoneNumber());
+        copy.normalizedNumber = callerInfo.normalizedNumber;
+        copy.geoDescription = callerInfo.geoDescription;
+        copy.cnapName = callerInfo.cnapName;
+        copy.numberPresentation = callerInfo.numberPresentation;
+        copy.namePresentation = callerInfo.namePresentation;
+        copy.contactExists = callerInfo.contactExists;
+        copy.phoneLabel = callerInfo.phoneLabel;
+        copy.numberType = callerInfo.numberType;
+        copy.numberLabel = callerInfo.numberLabel;
+        copy.photoResource = callerInfo.photoResource;
+        copy.needUpdate = callerInfo.needUpdate;
+        copy.contactRefUri = callerInfo.contactRefUri;
+        copy.lookupKey = callerInfo.lookupKey;
+        copy.preferredPhoneAccountComponent = callerInfo.preferredPhoneAccountComponent;
+        copy.preferredPhoneAccountId = callerInfo.preferredPhoneAccountId;
+        copy.userType = callerInfo.userType;
+        copy.SetContactDisplayPhotoUri(callerInfo.getContactDisplayPhotoUri());
+        copy.contactRingtoneUri = callerInfo.contactRingtoneUri;
+        copy.shouldSendToVoicemail = callerInfo.shouldSendToVoicemail;
+        copy.cachedPhoto = callerInfo.cachedPhoto;
+        copy.cachedPhotoIcon = callerInfo.cachedPhotoIcon;
+        copy.isCachedPhotoCurrent = callerInfo.isCachedPhotoCurrent;
+        return copy;
+    }
+
+    private static long getPhotoBytes(CallerInfo callerInfo) {
+        if (callerInfo == null) {
+            return 0;
+        }
+        Bitmap photo = callerInfo.cachedPhoto instanceof BitmapDrawable
+                ? ((BitmapDrawable) callerInfo.cachedPhoto).getBitmap() : null;
+        Bitmap icon = callerInfo.cachedPhotoIcon;
+        long bytes = photo == null ? 0 : photo.getAllocationByteCount();
+        if (icon != null && icon != photo) {
+            bytes += icon.getAllocationByteCount();
+        }
+        return bytes;
+    }
+}
@@ -18,20 +18,26 @@ package com.android.server.telecom;
 
 import android.annotation.Nullable;
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
+import android.provider.CallLog.Calls;
 import android.telecom.Log;
+import android.telecom.PhoneAccount;
 import android.telecom.Logging.Runnable;
 import android.telecom.Logging.Session;
 import android.text.TextUtils;
 import android.util.Pair;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import android.telecom.CallerInfo;
 import android.telecom.CallerInfoAsyncQuery;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -52,6 +58,7 @@ public class CallerInfoLookupHelper {
         public CallerInfo callerInfo;
         public List<OnQueryCompleteListener> listeners;
         public boolean imageQueryPending = false;
+        public long cacheGeneration;
 
         public CallerInfoQueryInfo() {
             listeners = new LinkedList<>();
@@ -65,15 +72,39 @@ public class CallerInfoLookupHelper {
     private final Context mContext;
     private final TelecomSystem.SyncRoot mLock;
     private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final CallerInfoCache mCallerInfoCache;
+
+    private static final OnQueryCompleteListener NO_OP_LISTENER = new OnQueryCompleteListener() {
+        @Override
+        public void onCallerInfoQueryComplete(Uri handle, CallerInfo info) {
+        }
+
+        @Override
+        public void onContactPhotoQueryComplete(Uri handle, CallerInfo info) {
+        }
+    };
 
     public CallerInfoLookupHelper(Context context,
             CallerInfoAsyncQueryFactory callerInfoAsyncQueryFactory,
             ContactsAsyncHelper contactsAsyncHelper,
             TelecomSystem.SyncRoot lock) {
+        this(context, callerInfoAsyncQueryFactory, contactsAsyncHelper, lock, null);
+    }
+
+    /**
+     * @param callerInfoCache If not {@code null}, completed lookups are kept in this cache and
+     *                        later lookups for the same handle are answered from it.
+     */
+    public CallerInfoLookupHelper(Context context,
+            CallerInfoAsyncQueryFactory callerInfoAsyncQueryFactory,
+            ContactsAsyncHelper contactsAsyncHelper,
+            TelecomSystem.SyncRoot lock,
+            @Nullable CallerInfoCache callerInfoCache) {
         mCallerInfoAsyncQueryFactory = callerInfoAsyncQueryFactory;
         mContactsAsyncHelper = contactsAsyncHelper;
         mContext = context;
         mLock = lock;
+        mCallerInfoCache = callerInfoCache;
     }
 
     /**
@@ -152,8 +183,31 @@ public class CallerInfoLookupHelper {
                 // Since we have a pending query for this handle already, don't re-query it.
                 return;
             } else {
+                if (mCallerInfoCache != null) {
+                    CallerInfo cachedInfo = mCallerInfoCache.get(handle);
+                    if (cachedInfo != null) {
+                        Log.i(this, "Caller info for handle %s found in cache",
+                                Log.piiHandle(handle));
+                        // Delivered from the handler, as a completed query would be, rather than
+                        // before startLookup returns.
+                        mHandler.post(new Runnable("CILH.sL.cH", mLock) {
+                            @Override
+                            public void loggedRun() {
+                                listener.onCallerInfoQueryComplete(handle, cachedInfo);
+                                if (cachedInfo.cachedPhoto != null
+                                        || cachedInfo.cachedPhotoIcon != null) {
+                                    listener.onContactPhotoQueryComplete(handle, cachedInfo);
+                                }
+                            }
+                        }.prepare());
+                        return;
+                    }
+                }
                 CallerInfoQueryInfo info = new CallerInfoQueryInfo();
                 info.listeners.add(listener);
+                if (mCallerInfoCache != null) {
+                    info.cacheGeneration = mCallerInfoCache.getGeneration();
+                }
                 mQueryEntries.put(handle, info);
             }
         }
@@ -195,6 +249,9 @@ public class CallerInfoLookupHelper {
                             Log.i(CallerInfoLookupHelper.this, "There is no photo for this " +
                                     "contact, skipping photo query");
                             mQueryEntries.remove(handle);
+                            if (mCallerInfoCache != null) {
+                                mCallerInfoCache.put(handle, ci, info.cacheGeneration);
+                            }
                         } else {
                             info.callerInfo = ci;
                             info.imageQueryPending = true;
@@ -248,6 +305,9 @@ public class CallerInfoLookupHelper {
                             l.onContactPhotoQueryComplete(handle, info.callerInfo);
                         }
                         mQueryEntries.remove(handle);
+                        if (mCallerInfoCache != null) {
+                            mCallerInfoCache.put(handle, info.callerInfo, info.cacheGeneration);
+                        }
                     } else {
                         Log.i(CallerInfoLookupHelper.this, "Photo query for handle %s has" +
                                 " completed, but there are no listeners left.",
@@ -260,6 +320,58 @@ public class CallerInfoLookupHelper {
         };
     }
 
+    /**
+     * Looks up the caller info for the most recent distinct numbers in the call log, so that
+     * calls from them can be shown from the cache. Does nothing if there is no cache.
+     * @param maxNumbers The maximum number of numbers to look up.
+     */
+    public void prefetchRecentCallers(int maxNumbers) {
+        if (mCallerInfoCache == null) {
+            return;
+        }
+        AsyncTask.execute(new Runnable("CILH.pRC", null /*lock*/) {
+            @Override
+            public void loggedRun() {
+                LinkedHashSet<String> numbers = new LinkedHashSet<>();
+                // Several recent calls are often with the same number, so read a few more rows
+                // than the numbers needed.
+                Uri callsUri = Calls.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(Calls.LIMIT_PARAM_KEY,
+                                Integer.toString(maxNumbers * 4))
+                        .build();
+                try (Cursor cursor = mContext.getContentResolver().query(callsUri,
+                        new String[] {Calls.NUMBER}, null, null, Calls.DEFAULT_SORT_ORDER)) {
+                    while (cursor != null && cursor.moveToNext()
+                            && numbers.size() < maxNumbers) {
+                        String number = cursor.getString(0);
+                        if (!TextUtils.isEmpty(number)) {
+                            numbers.add(number);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(CallerInfoLookupHelper.this, "prefetchRecentCallers: query failed: %s",
+                            e);
+                    return;
+                }
+                Log.i(CallerInfoLookupHelper.this, "prefetchRecentCallers: prefetching %d numbers",
+                        numbers.size());
+                for (String number : numbers) {
+                    startLookup(Uri.fromParts(PhoneAccount.SCHEME_TEL, number, null),
+                            NO_OP_LISTENER);
+                }
+            }
+        }.prepare());
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        if (mCallerInfoCache != null) {
+            mCallerInfoCache.dump(pw);
+        }
+    }
+
     @VisibleForTesting
     public Map<Uri, CallerInfoQueryInfo> getCallerInfoEntries() {
         return mQueryEntries;
@@ -122,10 +122,13 @@ import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
 import com.android.server.telecom.callfiltering.BlockCheckerAdapter;
 import com.android.server.telecom.callfiltering.BlockCheckerFilter;
+import com.android.server.telecom.callfiltering.BlockVerdictCache;
 import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
+import com.android.server.telecom.callfiltering.CallFilterEngine;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.CallFilteringResult.Builder;
+import com.android.server.telecom.callfiltering.CallScreeningServiceBindingPool;
 import com.android.server.telecom.callfiltering.CallScreeningServiceFilter;
 import com.android.server.telecom.callfiltering.DirectToVoicemailFilter;
 import com.android.server.telecom.callfiltering.DndCallFilter;
@@ -167,6 +170,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -288,6 +292,8 @@ public class CallsManager extends Call.ListenerBase
     private static final int MAXIMUM_TOP_LEVEL_CALLS = 2;
     private static final int MAXIMUM_TOP_LEVEL_CALLS_DSDA = 4;
     private static final int MAXIMUM_SELF_MANAGED_CALLS = 10;
+    /** The number of recent callers whose caller info is looked up at boot. */
+    private static final int PREFETCH_RECENT_CALLERS = 20;
 
     /**
      * Anomaly Report UUIDs and corresponding error descriptions specific to CallsManager.
@@ -393,6 +399,19 @@ public class CallsManager extends Call.ListenerBase
     private final Set<Call> mSelfManagedCallsBeingSetup = Collections.newSetFromMap(
             new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1));
 
+    /**
+     * Summary of {@link #mCalls} as of the last call transition, which binder calls can read
+     * without holding the lock. Rebuilt by {@link #updateCallSummary()}.
+     */
+    private volatile CallSummary mCallSummary = CallSummary.EMPTY;
+
+    /**
+     * Secondary indexes over {@link #mCalls}, used for lookups when
+     * {@link FeatureFlags#callIndexLookups()} is enabled.
+     */
+    private final CallIndex mCallIndex = new CallIndex();
+    private boolean mVerifyCallIndex = false;
+
     /**
      * A pending call is one which requires user-intervention in order to be placed.
      * Used by {@link #startCallConfirmation}.
@@ -456,6 +475,8 @@ public class CallsManager extends Call.ListenerBase
     private final InCallWakeLockController mInCallWakeLockController;
     private final CopyOnWriteArrayList<CallsManagerListener> mListeners =
             new CopyOnWriteArrayList<>();
+    private final CallsManagerListenerTimings mListenerTimings =
+            new CallsManagerListenerTimings();
     private final HeadsetMediaButton mHeadsetMediaButton;
     private final WiredHeadsetManager mWiredHeadsetManager;
     private final SystemStateHelper mSystemStateHelper;
@@ -487,10 +508,15 @@ public class CallsManager extends Call.ListenerBase
     private final VoipCallMonitor mVoipCallMonitor;
     private final CallEndpointController mCallEndpointController;
     private final CallAnomalyWatchdog mCallAnomalyWatchdog;
+    private final TelecomTimerService mTimerService;
 
     private final EmergencyCallDiagnosticLogger mEmergencyCallDiagnosticLogger;
     private final CallStreamingController mCallStreamingController;
     private final BlockedNumbersAdapter mBlockedNumbersAdapter;
+    /** Block check results shared by the calls' {@link BlockCheckerAdapter}s, if enabled. */
+    private final BlockVerdictCache mBlockVerdictCache;
+    /** Call screening service bindings kept warm between calls, if enabled. */
+    private final CallScreeningServiceBindingPool mCallScreeningBindingPool;
     private final TransactionManager mTransactionManager;
     private final UserManager mUserManager;
     private final CallStreamingNotification mCallStreamingNotification;
@@ -574,7 +600,7 @@ public class CallsManager extends Call.ListenerBase
 
     /**
      * Receiver for enhanced call blocking feature to update the emergency call notification
-     * in below cases:
+     * and drop cached block verdicts in below cases:
      *  1) Carrier config changed.
      *  2) Blocking suppression state changed.
      */
@@ -585,6 +611,9 @@ public class CallsManager extends Call.ListenerBase
             if (CarrierConfigManager.ACTION_CARRIER_CONFIG_CHANGED.equals(action)
                     || BlockedNumbersManager
                     .ACTION_BLOCK_SUPPRESSION_STATE_CHANGED.equals(action)) {
+                if (mBlockVerdictCache != null) {
+                    mBlockVerdictCache.invalidate(action);
+                }
                 updateEmergencyCallNotificationAsync(context);
             } else if (ACTION_MSIM_VOICE_CAPABILITY_CHANGED.equals(action)) {
                 updateCanAddCall();
@@ -629,6 +658,7 @@ public class CallsManager extends Call.ListenerBase
             ToastFactory toastFactory,
             CallEndpointControllerFactory callEndpointControllerFactory,
             CallAnomalyWatchdog callAnomalyWatchdog,
+            TelecomTimerService timerService,
             Ringer.AccessibilityManagerAdapter accessibilityManagerAdapter,
             Executor asyncTaskExecutor,
             Executor asyncCallAudioTaskExecutor,
@@ -720,6 +750,7 @@ public class CallsManager extends Call.ListenerBase
                 new Ringer.VibrationEffectProxy(), mInCallController,
                 mContext.getSystemService(NotificationManager.class),
                 accessibilityManagerAdapter, featureFlags);
+        ringtoneFactory.setPlaybackParamsSupplier(mRinger::getExpectedRingtonePlaybackParams);
         mCallRecordingTonePlayer = new CallRecordingTonePlayer(mContext, audioManager,
                 mTimeoutsAdapter, mLock);
         mCallAudioManager = new CallAudioManager(callAudioRouteAdapter,
@@ -746,6 +777,10 @@ public class CallsManager extends Call.ListenerBase
         mVoipCallMonitor = new VoipCallMonitor(mContext, mLock);
         mTransactionManager = transactionManager;
         mBlockedNumbersAdapter = blockedNumbersAdapter;
+        mBlockVerdictCache = featureFlags.cacheBlockVerdicts()
+                ? new BlockVerdictCache(mContext) : null;
+        mCallScreeningBindingPool = featureFlags.warmCallScreeningBindings()
+                ? new CallScreeningServiceBindingPool(mContext) : null;
         mCallStreamingController = new CallStreamingController(mContext, mLock);
         mCallStreamingNotification = callStreamingNotification;
         mFeatureFlags = featureFlags;
@@ -798,6 +833,7 @@ public class CallsManager extends Call.ListenerBase
         context.registerReceiver(mReceiver, intentFilter, Context.RECEIVER_EXPORTED);
         mGraphHandlerThreads = new LinkedList<>();
         mCallAnomalyWatchdog = callAnomalyWatchdog;
+        mTimerService = timerService;
         mAsyncTaskExecutor = asyncTaskExecutor;
         mUserManager = mContext.getSystemService(UserManager.class);
         QtiCarrierConfigHelper.getInstance().setup(mContext);
@@ -827,6 +863,35 @@ public class CallsManager extends Call.ListenerBase
         return mCallerInfoLookupHelper;
     }
 
+    public CallsManagerListenerTimings getListenerTimings() {
+        return mListenerTimings;
+    }
+
+    /**
+     * Notifies each listener in turn, recording how long each one took to handle {@code event}.
+     * Callers pass a lambda capturing the callback's arguments, so each notification allocates
+     * that lambda once, on top of the iterator over {@link #mListeners}.
+     * @param event The name of the listener method, under which the timings are kept.
+     * @param notification Calls that method on the listener it is given.
+     */
+    private void notifyListeners(String event, Consumer<CallsManagerListener> notification) {
+        for (CallsManagerListener listener : mListeners) {
+            if (LogUtils.SYSTRACE_DEBUG) {
+                Trace.beginSection(listener.getClass().toString() + " " + event);
+            }
+            long startNanos = mListenerTimings.start();
+            notification.accept(listener);
+            mListenerTimings.record(listener, event, startNanos);
+            if (LogUtils.SYSTRACE_DEBUG) {
+                Trace.endSection();
+            }
+        }
+    }
+
+    public TelecomTimerService getTimerService() {
+        return mTimerService;
+    }
+
     public RoleManagerAdapter getRoleManagerAdapter() {
         return mRoleManagerAdapter;
     }
@@ -853,9 +918,9 @@ public class CallsManager extends Call.ListenerBase
         }
 
         // The call's ConnectionService has been updated.
-        for (CallsManagerListener listener : mListeners) {
-            listener.onConnectionServiceChanged(call, null, call.getConnectionService());
-        }
+        notifyListeners("onConnectionServiceChanged",
+                listener -> listener.onConnectionServiceChanged(call, null,
+                        call.getConnectionService()));
 
         if (mFeatureFlags.fixAudioFlickerForOutgoingCalls()) {
             // Allow the ConnectionService to start the call in the active state. This case is
@@ -933,7 +998,9 @@ public class CallsManager extends Call.ListenerBase
                 incomingHfpCall,
                 this::onCallFilteringComplete, mContext, mTimeoutsAdapter, mLock);
         graph.addFilter(dndCallFilter);
-        mGraphHandlerThreads.add(graph.getHandlerThread());
+        if (graph.getHandlerThread() != null) {
+            mGraphHandlerThreads.add(graph.getHandlerThread());
+        }
         return graph;
     }
 
@@ -954,23 +1021,28 @@ public class CallsManager extends Call.ListenerBase
         DirectToVoicemailFilter voicemailFilter = new DirectToVoicemailFilter(incomingCall,
                 mCallerInfoLookupHelper);
         BlockCheckerFilter blockCheckerFilter = new BlockCheckerFilter(mContext, incomingCall,
-                mCallerInfoLookupHelper, new BlockCheckerAdapter(mFeatureFlags));
+                mCallerInfoLookupHelper, new BlockCheckerAdapter(mFeatureFlags,
+                        mBlockVerdictCache),
+                mFeatureFlags.sharedWorkerPool()
+                        ? TelecomWorkerPool.getInstance().newSerialExecutor("BCF.gBS",
+                                TelecomWorkerPool.LANE_BACKGROUND)
+                        : null);
         DndCallFilter dndCallFilter = new DndCallFilter(incomingCall, getRinger());
         CallScreeningServiceFilter carrierCallScreeningServiceFilter =
                 new CallScreeningServiceFilter(incomingCall, carrierPackageName,
                         CallScreeningServiceFilter.PACKAGE_TYPE_CARRIER, mContext, this,
-                        appLabelProxy, converter);
+                        appLabelProxy, converter, mCallScreeningBindingPool);
         CallScreeningServiceFilter callScreeningServiceFilter;
         if ((userChosenPackageName != null)
                 && (!userChosenPackageName.equals(defaultDialerPackageName))) {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     userChosenPackageName, CallScreeningServiceFilter.PACKAGE_TYPE_USER_CHOSEN,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, mCallScreeningBindingPool);
         } else {
             callScreeningServiceFilter = new CallScreeningServiceFilter(incomingCall,
                     defaultDialerPackageName,
                     CallScreeningServiceFilter.PACKAGE_TYPE_DEFAULT_DIALER,
-                    mContext, this, appLabelProxy, converter);
+                    mContext, this, appLabelProxy, converter, mCallScreeningBindingPool);
         }
         graph.addFilter(voicemailFilter);
         graph.addFilter(dndCallFilter);
@@ -981,7 +1053,9 @@ public class CallsManager extends Call.ListenerBase
         IncomingCallFilterGraph.addEdge(blockCheckerFilter, carrierCallScreeningServiceFilter);
         IncomingCallFilterGraph.addEdge(carrierCallScreeningServiceFilter,
                 callScreeningServiceFilter);
-        mGraphHandlerThreads.add(graph.getHandlerThread());
+        if (graph.getHandlerThread() != null) {
+            mGraphHandlerThreads.add(graph.getHandlerThread());
+        }
         return graph;
     }
 
@@ -1214,9 +1288,8 @@ public class CallsManager extends Call.ListenerBase
 
     @Override
     public void onRingbackRequested(Call call, boolean ringback) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onRingbackRequested(call, ringback);
-        }
+        notifyListeners("onRingbackRequested",
+                listener -> listener.onRingbackRequested(call, ringback));
     }
 
     @Override
@@ -1274,55 +1347,77 @@ public class CallsManager extends Call.ListenerBase
         if (didRttChange) {
             updateHasActiveRttCall();
         }
+        // The network may have identified the call as an emergency call.
+        mCallIndex.update(call);
+        maybeUpdateCallSummaryForEmergency(call);
+    }
+
+    @Override
+    public void onHandleChanged(Call call) {
+        // Whether a call is an emergency call depends on its handle.
+        mCallIndex.update(call);
+        maybeUpdateCallSummaryForEmergency(call);
+    }
+
+    @Override
+    public void onTargetPhoneAccountChanged(Call call) {
+        mCallIndex.update(call);
+        if (mCalls.contains(call) || mSelfManagedCallsBeingSetup.contains(call)) {
+            updateCallSummary();
+        }
+    }
+
+    @Override
+    public void onStateChanged(Call call, int oldState, int newState) {
+        // Calls can change state without going through setCallState, so keep the index and the
+        // summary current here rather than in notifyCallStateChanged.
+        mCallIndex.update(call);
+        if (CallSummary.isSummarizedStateChange(oldState, newState) && mCalls.contains(call)) {
+            updateCallSummary();
+        }
     }
 
     @Override
     public void onParentChanged(Call call) {
         // parent-child relationship affects which call should be foreground, so do an update.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsConferencedChanged(call);
-        }
+        notifyListeners("onIsConferencedChanged",
+                listener -> listener.onIsConferencedChanged(call));
+        updateCallSummary();
     }
 
     @Override
     public void onChildrenChanged(Call call) {
         // parent-child relationship affects which call should be foreground, so do an update.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsConferencedChanged(call);
-        }
+        notifyListeners("onIsConferencedChanged",
+                listener -> listener.onIsConferencedChanged(call));
     }
 
     @Override
     public void onConferenceStateChanged(Call call, boolean isConference) {
         // Conference changed whether it is treated as a conference or not.
         updateCanAddCall();
-        for (CallsManagerListener listener : mListeners) {
-            listener.onConferenceStateChanged(call, isConference);
-        }
+        notifyListeners("onConferenceStateChanged",
+                listener -> listener.onConferenceStateChanged(call, isConference));
     }
 
     @Override
     public void onCdmaConferenceSwap(Call call) {
         // SWAP was executed on a CDMA conference
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCdmaConferenceSwap(call);
-        }
+        notifyListeners("onCdmaConferenceSwap", listener -> listener.onCdmaConferenceSwap(call));
     }
 
     @Override
     public void onIsVoipAudioModeChanged(Call call) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onIsVoipAudioModeChanged(call);
-        }
+        notifyListeners("onIsVoipAudioModeChanged",
+                listener -> listener.onIsVoipAudioModeChanged(call));
     }
 
     @Override
     public void onVideoStateChanged(Call call, int previousVideoState, int newVideoState) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onVideoStateChanged(call, previousVideoState, newVideoState);
-        }
+        notifyListeners("onVideoStateChanged",
+                listener -> listener.onVideoStateChanged(call, previousVideoState, newVideoState));
     }
 
     @Override
@@ -1376,9 +1471,8 @@ public class CallsManager extends Call.ListenerBase
         Log.v(TAG, "onSessionModifyRequestReceived : videoProfile = " + VideoProfile
                 .videoStateToString(videoState));
 
-        for (CallsManagerListener listener : mListeners) {
-            listener.onSessionModifyRequestReceived(call, videoProfile);
-        }
+        notifyListeners("onSessionModifyRequestReceived",
+                listener -> listener.onSessionModifyRequestReceived(call, videoProfile));
     }
 
     /**
@@ -1388,9 +1482,7 @@ public class CallsManager extends Call.ListenerBase
      */
     @Override
     public void onSetCamera(Call call, String cameraId) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onSetCamera(call, cameraId);
-        }
+        notifyListeners("onSetCamera", listener -> listener.onSetCamera(call, cameraId));
     }
 
     public Collection<Call> getCalls() {
@@ -1407,9 +1499,7 @@ public class CallsManager extends Call.ListenerBase
      */
     @Override
     public void onHoldToneRequested(Call call) {
-        for (CallsManagerListener listener : mListeners) {
-            listener.onHoldToneRequested(call);
-        }
+        notifyListeners("onHoldToneRequested", listener -> listener.onHoldToneRequested(call));
     }
 
     /**
@@ -1617,7 +1707,10 @@ public class CallsManager extends Call.ListenerBase
         call.setIsSelfManaged(isSelfManaged);
         // It's important to start tracking self-managed calls as soon as the Call object is
         // initialized so NotificationManagerService is aware Telecom is setting up a call
-        if (isSelfManaged) mSelfManagedCallsBeingSetup.add(call);
+        if (isSelfManaged) {
+            mSelfManagedCallsBeingSetup.add(call);
+            updateCallSummary();
+        }
 
         // set properties for transactional call
         if (extras.containsKey(TelecomManager.TRANSACTION_CALL_ID_KEY)) {
@@ -2034,7 +2127,10 @@ public class CallsManager extends Call.ListenerBase
         }
         // It's important to start tracking self-managed calls as soon as the Call object is
         // initialized so NotificationManagerService is aware Telecom is setting up a call
-        if (isSelfManaged) mSelfManagedCallsBeingSetup.add(call);
+        if (isSelfManaged) {
+            mSelfManagedCallsBeingSetup.add(call);
+            updateCallSummary();
+        }
 
         int videoState = VideoProfile.STATE_AUDIO_ONLY;
         if (extras != null) {
@@ -2259,7 +2355,8 @@ public class CallsManager extends Call.ListenerBase
                                         R.string.cant_call_due_to_no_supported_service;
                                 showErrorMessage(resId);
 
-                                mListeners.forEach(l -> l.onCreateConnectionFailed(callToPlace));
+                                notifyListeners("onCreateConnectionFailed",
+                                        listener -> listener.onCreateConnectionFailed(callToPlace));
                                 if (callToPlace.isEmergencyCall()) {
                                     mAnomalyReporter.reportAnomaly(
                                             EMERGENCY_CALL_ABORTED_NO_PHONE_ACCOUNTS_ERROR_UUID,
@@ -3098,13 +3195,23 @@ public class CallsManager extends Call.ListenerBase
         }
 
         if (call.isEmergencyCall()) {
-            Executors.defaultThreadFactory().newThread(() -> {
+            if (mBlockVerdictCache != null) {
+                // Blocking is suppressed after an emergency call; don't wait for the broadcast.
+                mBlockVerdictCache.invalidate("emergency call");
+            }
+            java.lang.Runnable notifyEmergencyContact = () -> {
                 if (mBlockedNumbersManager != null) {
                     mBlockedNumbersManager.notifyEmergencyContact();
                 } else {
                     BlockedNumberContract.SystemContract.notifyEmergencyContact(mContext);
                 }
-            }).start();
+            };
+            if (mFeatureFlags.sharedWorkerPool()) {
+                TelecomWorkerPool.getInstance().newSerialExecutor("CM.nEC",
+                        TelecomWorkerPool.LANE_BACKGROUND).execute(notifyEmergencyContact);
+            } else {
+                Executors.defaultThreadFactory().newThread(notifyEmergencyContact).start();
+            }
         }
 
         final boolean requireCallCapableAccountByHandle = mContext.getResources().getBoolean(
@@ -3366,9 +3473,9 @@ public class CallsManager extends Call.ListenerBase
         if (!mCalls.contains(call)) {
             Log.i(this, "Request to reject a non-existent call %s", call);
         } else {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onIncomingCallRejected(call, rejectWithMessage, textMessage);
-            }
+            notifyListeners("onIncomingCallRejected",
+                    listener -> listener.onIncomingCallRejected(call, rejectWithMessage,
+                            textMessage));
             call.reject(rejectWithMessage, textMessage);
         }
     }
@@ -3383,10 +3490,9 @@ public class CallsManager extends Call.ListenerBase
         if (!mCalls.contains(call)) {
             Log.i(this, "Request to reject a non-existent call %s", call);
         } else {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onIncomingCallRejected(call, false /* rejectWithMessage */,
-                        null /* textMessage */);
-            }
+            notifyListeners("onIncomingCallRejected",
+                    listener -> listener.onIncomingCallRejected(call,
+                            false /* rejectWithMessage */, null /* textMessage */));
             call.reject(rejectReason);
         }
     }
@@ -3476,9 +3582,8 @@ public class CallsManager extends Call.ListenerBase
             mLocallyDisconnectingCalls.add(call);
             int previousState = call.getState();
             call.disconnect();
-            for (CallsManagerListener listener : mListeners) {
-                listener.onCallStateChanged(call, previousState, call.getState());
-            }
+            notifyListeners("onCallStateChanged",
+                    listener -> listener.onCallStateChanged(call, previousState, call.getState()));
             // Cancel any of the outgoing call futures if they're still around.
             if (mPendingCallConfirm != null && !mPendingCallConfirm.isDone()) {
                 mPendingCallConfirm.complete(null);
@@ -3637,9 +3742,8 @@ public class CallsManager extends Call.ListenerBase
             return;
         }
         mCrsCallId = null;
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCrsFallbackLocalRinging(c);
-        }
+        notifyListeners("onCrsFallbackLocalRinging",
+                listener -> listener.onCrsFallbackLocalRinging(c));
     }
 
     public void playRttUpgradeToneForCall(Call call) {
@@ -3819,17 +3923,16 @@ public class CallsManager extends Call.ListenerBase
     @Override
     public void onExternalCallChanged(Call call, boolean isExternalCall) {
         Log.v(this, "onConnectionPropertiesChanged: %b", isExternalCall);
-        for (CallsManagerListener listener : mListeners) {
-            listener.onExternalCallChanged(call, isExternalCall);
-        }
+        notifyListeners("onExternalCallChanged",
+                listener -> listener.onExternalCallChanged(call, isExternalCall));
+        updateCallSummary();
     }
 
     @Override
     public void onCallStreamingStateChanged(Call call, boolean isStreaming) {
         Log.v(this, "onCallStreamingStateChanged: %b", isStreaming);
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCallStreamingStateChanged(call, isStreaming);
-        }
+        notifyListeners("onCallStreamingStateChanged",
+                listener -> listener.onCallStreamingStateChanged(call, isStreaming));
     }
 
     private void handleCallTechnologyChange(Call call) {
@@ -3943,33 +4046,28 @@ public class CallsManager extends Call.ListenerBase
     public void onCallAudioStateChanged(CallAudioState oldAudioState, CallAudioState
             newAudioState) {
         Log.v(this, "onAudioStateChanged, audioState: %s -> %s", oldAudioState, newAudioState);
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCallAudioStateChanged(oldAudioState, newAudioState);
-        }
+        notifyListeners("onCallAudioStateChanged",
+                listener -> listener.onCallAudioStateChanged(oldAudioState, newAudioState));
     }
 
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void updateCallEndpoint(CallEndpoint callEndpoint) {
         Log.v(this, "updateCallEndpoint");
-        for (CallsManagerListener listener : mListeners) {
-            listener.onCallEndpointChanged(callEndpoint);
-        }
+        notifyListeners("onCallEndpointChanged",
+                listener -> listener.onCallEndpointChanged(callEndpoint));
     }
 
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void updateAvailableCallEndpoints(Set<CallEndpoint> availableCallEndpoints) {
         Log.v(this, "updateAvailableCallEndpoints");
-        for (CallsManagerListener listener : mListeners) {
-            listener.onAvailableCallEndpointsChanged(availableCallEndpoints);
-        }
+        notifyListeners("onAvailableCallEndpointsChanged",
+                listener -> listener.onAvailableCallEndpointsChanged(availableCallEndpoints));
     }
 
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PACKAGE)
     public void updateMuteState(boolean isMuted) {
         Log.v(this, "updateMuteState");
-        for (CallsManagerListener listener : mListeners) {
-            listener.onMuteStateChanged(isMuted);
-        }
+        notifyListeners("onMuteStateChanged", listener -> listener.onMuteStateChanged(isMuted));
     }
 
     /**
@@ -3983,9 +4081,8 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public void onDisconnectedTonePlaying(Call call, boolean isTonePlaying) {
         Log.v(this, "onDisconnectedTonePlaying, %s", isTonePlaying ? "started" : "stopped");
-        for (CallsManagerListener listener : mListeners) {
-            listener.onDisconnectedTonePlaying(call, isTonePlaying);
-        }
+        notifyListeners("onDisconnectedTonePlaying",
+                listener -> listener.onDisconnectedTonePlaying(call, isTonePlaying));
     }
 
     void markCallAsRinging(Call call) {
@@ -4277,7 +4374,8 @@ public class CallsManager extends Call.ListenerBase
         // Notify listeners that the call was disconnected before being added to CallsManager.
         // Listeners will not receive onAdded or onRemoved callbacks.
         if (!mCalls.contains(call)) {
-            mListeners.forEach(l -> l.onCreateConnectionFailed(call));
+            notifyListeners("onCreateConnectionFailed",
+                    listener -> listener.onCreateConnectionFailed(call));
         }
 
         // If a call diagnostic service is in use, we will log the original telephony-provided
@@ -4657,6 +4755,32 @@ public class CallsManager extends Call.ListenerBase
     }
 
     public Call getHeldCallByConnectionService(PhoneAccountHandle targetPhoneAccount) {
+        if (mFeatureFlags.callIndexLookups()) {
+            // Calls without a target account are not indexed by ConnectionService.
+            Collection<Call> candidates = targetPhoneAccount == null
+                    ? getIndexedCallsWithState(CallState.ON_HOLD)
+                    : getIndexedCallsForConnectionService(
+                            targetPhoneAccount.getComponentName().getPackageName());
+            Call match = null;
+            boolean hasMultipleMatches = false;
+            for (Call call : candidates) {
+                if (PhoneAccountHandle.areFromSamePackage(call.getTargetPhoneAccount(),
+                        targetPhoneAccount)
+                        && call.getParentCall() == null
+                        && call.getState() == CallState.ON_HOLD) {
+                    hasMultipleMatches = match != null;
+                    if (hasMultipleMatches) {
+                        break;
+                    }
+                    match = call;
+                }
+            }
+            // The index does not iterate in the same order as mCalls; when several calls match,
+            // fall back to the scan so the same call is returned as without the index.
+            if (!hasMultipleMatches) {
+                return match;
+            }
+        }
         Optional<Call> heldCall = mCalls.stream()
                 .filter(call -> PhoneAccountHandle.areFromSamePackage(call.getTargetPhoneAccount(),
                         targetPhoneAccount)
@@ -4669,7 +4793,8 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public int getNumHeldCalls() {
         int count = 0;
-        for (Call call : mCalls) {
+        for (Call call : mFeatureFlags.callIndexLookups()
+                ? getIndexedCallsWithState(CallState.ON_HOLD) : mCalls) {
             if (call.getParentCall() == null && call.getState() == CallState.ON_HOLD) {
                 count++;
             }
@@ -4717,21 +4842,17 @@ public class CallsManager extends Call.ListenerBase
                 return foregroundCall;
             }
 
-            for (Call call : mCalls) {
-                if (Objects.equals(callToSkip, call)) {
-                    continue;
-                }
-
-                // Only operate on top-level calls
-                if (call.getParentCall() != null) {
-                    continue;
-                }
-
-                if (call.isExternalCall()) {
-                    continue;
+            Collection<Call> calls = mCalls;
+            if (mFeatureFlags.callIndexLookups()) {
+                Collection<Call> indexedCalls = getIndexedCallsWithState(currentState);
+                // The index does not iterate in the same order as mCalls, so it can only be
+                // used when it cannot change which call is found first.
+                if (countFirstCallCandidates(indexedCalls, callToSkip, currentState, 2) < 2) {
+                    calls = indexedCalls;
                 }
-
-                if (currentState == call.getState()) {
+            }
+            for (Call call : calls) {
+                if (isFirstCallCandidate(call, callToSkip, currentState)) {
                     return call;
                 }
             }
@@ -4739,6 +4860,38 @@ public class CallsManager extends Call.ListenerBase
         return null;
     }
 
+    private static boolean isFirstCallCandidate(Call call, Call callToSkip, int state) {
+        if (Objects.equals(callToSkip, call)) {
+            return false;
+        }
+
+        // Only operate on top-level calls
+        if (call.getParentCall() != null) {
+            return false;
+        }
+
+        if (call.isExternalCall()) {
+            return false;
+        }
+
+        return state == call.getState();
+    }
+
+    /**
+     * Counts the calls {@link #getFirstCallWithState(Call, int...)} could return for
+     * {@code state}, stopping once {@code limit} is reached.
+     */
+    private static int countFirstCallCandidates(Collection<Call> calls, Call callToSkip,
+            int state, int limit) {
+        int count = 0;
+        for (Call call : calls) {
+            if (isFirstCallCandidate(call, callToSkip, state) && ++count >= limit) {
+                break;
+            }
+        }
+        return count;
+    }
+
     /**
      * Returns all calls that it finds with the given states.
      */
@@ -4911,6 +5064,7 @@ public class CallsManager extends Call.ListenerBase
         Log.i(this, "addCall(%s)", call);
         call.addListener(this);
         mCalls.add(call);
+        mCallIndex.add(call);
         mSelfManagedCallsBeingSetup.remove(call);
 
         // Specifies the time telecom finished routing the call. This is used by the dialer for
@@ -4924,15 +5078,8 @@ public class CallsManager extends Call.ListenerBase
         updateExternalCallCanPullSupport();
         maybeUpdateVideoCrsCall(call);
         // onCallAdded for calls which immediately take the foreground (like the first call).
-        for (CallsManagerListener listener : mListeners) {
-            if (LogUtils.SYSTRACE_DEBUG) {
-                Trace.beginSection(listener.getClass().toString() + " addCall");
-            }
-            listener.onCallAdded(call);
-            if (LogUtils.SYSTRACE_DEBUG) {
-                Trace.endSection();
-            }
-        }
+        notifyListeners("onCallAdded", listener -> listener.onCallAdded(call));
+        updateCallSummary();
         Trace.endSection();
     }
 
@@ -4954,6 +5101,7 @@ public class CallsManager extends Call.ListenerBase
         boolean shouldNotify = false;
         if (mCalls.contains(call)) {
             mCalls.remove(call);
+            mCallIndex.remove(call);
             shouldNotify = true;
         }
         mSelfManagedCallsBeingSetup.remove(call);
@@ -4964,16 +5112,9 @@ public class CallsManager extends Call.ListenerBase
         if (shouldNotify) {
             updateCanAddCall();
             updateHasActiveRttCall();
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() + " onCallRemoved");
-                }
-                listener.onCallRemoved(call);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
-            }
+            notifyListeners("onCallRemoved", listener -> listener.onCallRemoved(call));
         }
+        updateCallSummary();
         Trace.endSection();
     }
 
@@ -5059,19 +5200,50 @@ public class CallsManager extends Call.ListenerBase
         if (mCalls.contains(call)) {
             updateCanAddCall();
             updateHasActiveRttCall();
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() +
-                            " onCallStateChanged");
-                }
-                listener.onCallStateChanged(call, oldState, newState);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
+            notifyListeners("onCallStateChanged",
+                    listener -> listener.onCallStateChanged(call, oldState, newState));
+            // onStateChanged already covered the call itself; the listeners may have changed
+            // the broadcast call state.
+            if (getCallState() != mCallSummary.getCallState()) {
+                updateCallSummary();
             }
         }
     }
 
+    /**
+     * Publishes a new {@link CallSummary} when {@link FeatureFlags#publishCallSummary()} is
+     * enabled. Called after every change to {@link #mCalls}, and after changes to the call
+     * properties the summary depends on, including state changes made directly on a
+     * {@link Call} (see {@link #onStateChanged}).
+     */
+    private void updateCallSummary() {
+        if (!mFeatureFlags.publishCallSummary()) {
+            return;
+        }
+        mCallSummary = CallSummary.create(mCalls, mSelfManagedCallsBeingSetup, getCallState());
+    }
+
+    /**
+     * Updates the summary if a change to the call may have changed whether there is an
+     * emergency call.
+     */
+    private void maybeUpdateCallSummaryForEmergency(Call call) {
+        boolean isEmergency = (call.isEmergencyCall() || call.isNetworkIdentifiedEmergencyCall())
+                && !call.isDisconnected();
+        if (isEmergency != mCallSummary.isInEmergencyCall() && mCalls.contains(call)) {
+            updateCallSummary();
+        }
+    }
+
+    /**
+     * @return A summary of the current calls which is safe to read without holding the lock. It
+     * reflects the state after the most recent call transition completed. Only kept current when
+     * {@link FeatureFlags#publishCallSummary()} is enabled.
+     */
+    public CallSummary getCallSummary() {
+        return mCallSummary;
+    }
+
     /**
      * Identifies call state transitions for a call which trigger handover events.
      * - If this call has a handover to it which just started and this call goes active, treat
@@ -5191,15 +5363,8 @@ public class CallsManager extends Call.ListenerBase
         boolean newCanAddCall = canAddCall();
         if (newCanAddCall != mCanAddCall) {
             mCanAddCall = newCanAddCall;
-            for (CallsManagerListener listener : mListeners) {
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.beginSection(listener.getClass().toString() + " updateCanAddCall");
-                }
-                listener.onCanAddCallChanged(mCanAddCall);
-                if (LogUtils.SYSTRACE_DEBUG) {
-                    Trace.endSection();
-                }
-            }
+            notifyListeners("onCanAddCallChanged",
+                    listener -> listener.onCanAddCallChanged(mCanAddCall));
         }
     }
 
@@ -5437,6 +5602,12 @@ public class CallsManager extends Call.ListenerBase
      */
     @VisibleForTesting
     public boolean hasSelfManagedCalls() {
+        if (mFeatureFlags.callIndexLookups()) {
+            verifyCallIndex();
+            return mSelfManagedCallsBeingSetup.size() > 0
+                    || mCallIndex.getSelfManagedCalls().stream()
+                            .anyMatch(call -> call.isSelfManaged());
+        }
         return mSelfManagedCallsBeingSetup.size() > 0 ||
                 mCalls.stream().filter(call -> call.isSelfManaged()).count() > 0;
     }
@@ -6047,6 +6218,9 @@ public class CallsManager extends Call.ListenerBase
         mCurrentUserHandle = userHandle;
         mMissedCallNotifier.setCurrentUserHandle(userHandle);
         mRoleManagerAdapter.setCurrentUserHandle(userHandle);
+        if (mCallScreeningBindingPool != null) {
+            mCallScreeningBindingPool.unbindIdle();
+        }
         final UserManager userManager = mFeatureFlags.telecomResolveHiddenDependencies()
                 ? mContext.createContextAsUser(userHandle, 0).getSystemService(
                         UserManager.class)
@@ -6095,6 +6269,10 @@ public class CallsManager extends Call.ListenerBase
     public void onBootCompleted() {
         mMissedCallNotifier.reloadAfterBootComplete(mCallerInfoLookupHelper,
                 new MissedCallNotifier.CallInfoFactory());
+        if (mFeatureFlags.cacheCallerInfo()) {
+            // The call log is only readable once the user is unlocked.
+            mCallerInfoLookupHelper.prefetchRecentCallers(PREFETCH_RECENT_CALLERS);
+        }
     }
 
     public boolean isVideoCrbtVoLteCall(int videoState) {
@@ -6378,6 +6556,61 @@ public class CallsManager extends Call.ListenerBase
             pw.decreaseIndent();
         }
 
+        if (mBlockVerdictCache != null) {
+            pw.println("mBlockVerdictCache:");
+            pw.increaseIndent();
+            mBlockVerdictCache.dump(pw);
+            pw.decreaseIndent();
+        }
+
+        if (mCallScreeningBindingPool != null) {
+            pw.println("mCallScreeningBindingPool:");
+            pw.increaseIndent();
+            mCallScreeningBindingPool.dump(pw);
+            pw.decreaseIndent();
+        }
+
+        pw.println("mListenerTimings:");
+        pw.increaseIndent();
+        mListenerTimings.dump(pw);
+        pw.decreaseIndent();
+
+        if (mCallerInfoLookupHelper != null) {
+            pw.println("mCallerInfoLookupHelper:");
+            pw.increaseIndent();
+            mCallerInfoLookupHelper.dump(pw);
+            pw.decreaseIndent();
+        }
+
+        if (mCallLogManager != null) {
+            pw.println("mCallLogManager:");
+            pw.increaseIndent();
+            mCallLogManager.dump(pw);
+            pw.decreaseIndent();
+        }
+
+        if (mFeatureFlags.sharedCallFilterEngine()) {
+            pw.println("CallFilterEngine:");
+            pw.increaseIndent();
+            CallFilterEngine.getInstance().dump(pw);
+            pw.decreaseIndent();
+        }
+
+        if (mFeatureFlags.sharedWorkerPool()) {
+            pw.println("TelecomWorkerPool:");
+            pw.increaseIndent();
+            TelecomWorkerPool.getInstance().dump(pw);
+            pw.decreaseIndent();
+        }
+
+        TimeoutsCache timeoutsCache = Timeouts.getCache();
+        if (timeoutsCache != null) {
+            pw.println("Timeouts:");
+            pw.increaseIndent();
+            timeoutsCache.dump(pw);
+            pw.decreaseIndent();
+        }
+
         if (mCallDiagnosticServiceController != null) {
             pw.println("mCallDiagnosticServiceController:");
             pw.increaseIndent();
@@ -6392,6 +6625,13 @@ public class CallsManager extends Call.ListenerBase
             pw.decreaseIndent();
         }
 
+        if (mTimerService != null) {
+            pw.println("mTimerService:");
+            pw.increaseIndent();
+            mTimerService.dump(pw);
+            pw.decreaseIndent();
+        }
+
         if (mEmergencyCallDiagnosticLogger != null) {
             pw.println("mEmergencyCallDiagnosticLogger:");
             pw.increaseIndent();
@@ -6518,7 +6758,8 @@ public class CallsManager extends Call.ListenerBase
             call.setConnectionService(service);
             service.createConnectionFailed(call);
             if (!mCalls.contains(call)){
-                mListeners.forEach(l -> l.onCreateConnectionFailed(call));
+                notifyListeners("onCreateConnectionFailed",
+                        listener -> listener.onCreateConnectionFailed(call));
             }
         }
     }
@@ -6543,7 +6784,8 @@ public class CallsManager extends Call.ListenerBase
             call.setConnectionService(service);
             service.createConferenceFailed(call);
             if (!mCalls.contains(call)){
-                mListeners.forEach(l -> l.onCreateConnectionFailed(call));
+                notifyListeners("onCreateConnectionFailed",
+                        listener -> listener.onCreateConnectionFailed(call));
             }
         }
     }
@@ -6554,7 +6796,8 @@ public class CallsManager extends Call.ListenerBase
      * @param theCall the new call.
      */
     private void notifyStartCreateConnection(final Call theCall) {
-        mListeners.forEach(l -> l.onStartCreateConnection(theCall));
+        notifyListeners("onStartCreateConnection",
+                listener -> listener.onStartCreateConnection(theCall));
     }
 
     /**
@@ -6954,9 +7197,8 @@ public class CallsManager extends Call.ListenerBase
         public void performAction() {
             synchronized (mLock) {
                 Log.d(this, "perform answer call for %s, videoState = %d", mCall, mVideoState);
-                for (CallsManagerListener listener : mListeners) {
-                    listener.onIncomingCallAnswered(mCall);
-                }
+                notifyListeners("onIncomingCallAnswered",
+                        listener -> listener.onIncomingCallAnswered(mCall));
 
                 // We do not update the UI until we get confirmation of the answer() through
                 // {@link #markCallAsActive}.
@@ -7084,9 +7326,8 @@ public class CallsManager extends Call.ListenerBase
         call.setConnectTimeMillis(System.currentTimeMillis());
         call.setConnectElapsedTimeMillis(SystemClock.elapsedRealtime());
         if (mCalls.contains(call)) {
-            for (CallsManagerListener listener : mListeners) {
-                listener.onConnectionTimeChanged(call);
-            }
+            notifyListeners("onConnectionTimeChanged",
+                    listener -> listener.onConnectionTimeChanged(call));
         }
     }
 
@@ -7101,6 +7342,11 @@ public class CallsManager extends Call.ListenerBase
      */
     public boolean
     isInEmergencyCall() {
+        if (mFeatureFlags.callIndexLookups()) {
+            verifyCallIndex();
+            return mCallIndex.getEmergencyCalls().stream().anyMatch(c -> (c.isEmergencyCall()
+                    || c.isNetworkIdentifiedEmergencyCall()) && !c.isDisconnected());
+        }
         return mCalls.stream().filter(c -> (c.isEmergencyCall()
                 || c.isNetworkIdentifiedEmergencyCall()) && !c.isDisconnected()).count() > 0;
     }
@@ -7275,6 +7521,32 @@ public class CallsManager extends Call.ListenerBase
 
     /* Returns the first HELD call on the same sub and managed by same ConnectionService */
     private Call getHeldCallByConnectionServiceAndPhoneAccount(Call current) {
+        if (mFeatureFlags.callIndexLookups()) {
+            verifyCallIndex();
+            Call match = null;
+            boolean hasMultipleMatches = false;
+            for (Call call : mCallIndex.getCallsForPhoneAccount(
+                    current.getTargetPhoneAccount())) {
+                if (call != current
+                        && arePhoneAccountsEqual(call.getTargetPhoneAccount(),
+                        current.getTargetPhoneAccount())
+                        && PhoneAccountHandle.areFromSamePackage(call.getTargetPhoneAccount(),
+                                current.getTargetPhoneAccount())
+                        && call.getParentCall() == null
+                        && call.getState() == CallState.ON_HOLD) {
+                    hasMultipleMatches = match != null;
+                    if (hasMultipleMatches) {
+                        break;
+                    }
+                    match = call;
+                }
+            }
+            // As in getHeldCallByConnectionService, only the scan decides between several
+            // matching calls.
+            if (!hasMultipleMatches) {
+                return match;
+            }
+        }
         Optional<Call> heldCall = mCalls.stream()
                 .filter(call -> call != current
                         && arePhoneAccountsEqual(call.getTargetPhoneAccount(),
@@ -7313,6 +7585,46 @@ public class CallsManager extends Call.ListenerBase
         call.getTransactionServiceWrapper().stopCallStreaming(call);
     }
 
+    /**
+     * @return The calls last indexed in {@code state}, after verifying the index if enabled.
+     */
+    private Collection<Call> getIndexedCallsWithState(int state) {
+        verifyCallIndex();
+        return mCallIndex.getCallsWithState(state);
+    }
+
+    /**
+     * @return The calls targeting any phone account registered by {@code packageName}, after
+     * verifying the index if enabled.
+     */
+    private Collection<Call> getIndexedCallsForConnectionService(String packageName) {
+        verifyCallIndex();
+        return mCallIndex.getCallsForConnectionService(packageName);
+    }
+
+    private void verifyCallIndex() {
+        if (!mVerifyCallIndex) {
+            return;
+        }
+        List<String> problems = mCallIndex.verify(mCalls);
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Call index is inconsistent: " + problems);
+        }
+    }
+
+    /**
+     * Enables checking {@link #mCallIndex} against {@link #mCalls} before every indexed lookup.
+     */
+    @VisibleForTesting
+    public void setCallIndexVerificationEnabled(boolean isEnabled) {
+        mVerifyCallIndex = isEnabled;
+    }
+
+    @VisibleForTesting
+    public CallIndex getCallIndex() {
+        return mCallIndex;
+    }
+
     @VisibleForTesting
     public Set<Call> getSelfManagedCallsBeingSetup() {
         return mSelfManagedCallsBeingSetup;
@@ -7321,5 +7633,6 @@ public class CallsManager extends Call.ListenerBase
     @VisibleForTesting
     public void addCallBeingSetup(Call call) {
         mSelfManagedCallsBeingSetup.add(call);
+        updateCallSummary();
     }
 }
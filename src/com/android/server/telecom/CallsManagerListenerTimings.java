@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.nano.TelecomLogClass;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures how long each {@link CallsManager.CallsManagerListener} takes to handle each callback
+ * {@link CallsManager} dispatches to it. The callbacks run synchronously under the Telecom lock,
+ * so a slow listener delays everything else happening in Telecom.
+ * <p>
+ * A latency histogram is kept per listener class and callback. Invocations which take longer
+ * than {@link #SLOW_THRESHOLD_MICROS} are also logged and kept in a small ring, so that the
+ * listener which held up a call can be found after the fact. Once the histogram for a listener
+ * and callback exists, recording an invocation which is not slow does not allocate or lock;
+ * the dispatch in {@link CallsManager} which calls {@link #record} still allocates its
+ * notification and its listener iterator.
+ */
+@VisibleForTesting
+public class CallsManagerListenerTimings {
+    private static final String TAG = CallsManagerListenerTimings.class.getSimpleName();
+    public static final long SLOW_THRESHOLD_MICROS = 50 * 1000;
+    public static final int MAX_SLOW_INVOCATIONS = 20;
+    // SLOW_THRESHOLD_MICROS must be one of the bounds, so slow invocations can be counted.
+    private static final long[] BUCKETS_MICROS =
+            {100, 500, 1000, 5000, 10000, 50000, 100000, 500000};
+
+    /**
+     * A callback which took longer than {@link #SLOW_THRESHOLD_MICROS}.
+     */
+    public static class SlowInvocation {
+        public final long timestampMillis;
+        public final String listenerName;
+        public final String callbackName;
+        public final long durationMicros;
+
+        SlowInvocation(long timestampMillis, String listenerName, String callbackName,
+                long durationMicros) {
+            this.timestampMillis = timestampMillis;
+            this.listenerName = listenerName;
+            this.callbackName = callbackName;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    /** Histograms keyed by listener class and then by callback name. */
+    private final Map<Class<?>, Map<String, LatencyHistogram>> mHistograms =
+            new ConcurrentHashMap<>();
+    private final SlowInvocation[] mSlowInvocations = new SlowInvocation[MAX_SLOW_INVOCATIONS];
+    private int mNextSlowInvocation;
+
+    /**
+     * @return The start time to pass to {@link #record} once the callback returns.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records an invocation of {@code callbackName} on {@code listener} which began at
+     * {@code startNanos}.
+     */
+    public void record(Object listener, String callbackName, long startNanos) {
+        record(listener.getClass(), callbackName, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    @VisibleForTesting
+    public void record(Class<?> listenerClass, String callbackName, long durationMicros) {
+        Map<String, LatencyHistogram> callbacks = mHistograms.get(listenerClass);
+        if (callbacks == null) {
+            callbacks = mHistograms.computeIfAbsent(listenerClass,
+                    k -> new ConcurrentHashMap<>());
+        }
+        LatencyHistogram histogram = callbacks.get(callbackName);
+        if (histogram == null) {
+            histogram = callbacks.computeIfAbsent(callbackName,
+                    k -> new LatencyHistogram(BUCKETS_MICROS, "us"));
+        }
+        histogram.record(durationMicros);
+
+        if (durationMicros > SLOW_THRESHOLD_MICROS) {
+            String listenerName = getListenerName(listenerClass);
+            Log.w(TAG, "record: %s.%s took %d us", listenerName, callbackName, durationMicros);
+            synchronized (mSlowInvocations) {
+                mSlowInvocations[mNextSlowInvocation] = new SlowInvocation(
+                        System.currentTimeMillis(), listenerName, callbackName, durationMicros);
+                mNextSlowInvocation = (mNextSlowInvocation + 1) % MAX_SLOW_INVOCATIONS;
+            }
+        }
+    }
+
+    /**
+     * @return The histogram for {@code callbackName} on listeners of {@code listenerClass}, or
+     * {@code null} if none has been recorded.
+     */
+    @VisibleForTesting
+    public LatencyHistogram getHistogram(Class<?> listenerClass, String callbackName) {
+        Map<String, LatencyHistogram> callbacks = mHistograms.get(listenerClass);
+        return callbacks == null ? null : callbacks.get(callbackName);
+    }
+
+    /**
+     * @return The most recent slow invocations, oldest first.
+     */
+    public List<SlowInvocation> getSlowInvocations() {
+        List<SlowInvocation> result = new ArrayList<>(MAX_SLOW_INVOCATIONS);
+        synchronized (mSlowInvocations) {
+            for (int i = 0; i < MAX_SLOW_INVOCATIONS; i++) {
+                SlowInvocation invocation =
+                        mSlowInvocations[(mNextSlowInvocation + i) % MAX_SLOW_INVOCATIONS];
+                if (invocation != null) {
+                    result.add(invocation);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Discards everything recorded so far.
+     */
+    public void reset() {
+        mHistograms.clear();
+        synchronized (mSlowInvocations) {
+            for (int i = 0; i < MAX_SLOW_INVOCATIONS; i++) {
+                mSlowInvocations[i] = null;
+            }
+            mNextSlowInvocation = 0;
+        }
+    }
+
+    /**
+     * @return The recorded latencies, ordered by listener and callback, for {@link Analytics}.
+     */
+    public TelecomLogClass.ListenerLatency[] toProto() {
+        List<TelecomLogClass.ListenerLatency> result = new ArrayList<>();
+        for (Map.Entry<String, Map<String, LatencyHistogram>> listener :
+                getSortedHistograms().entrySet()) {
+            for (Map.Entry<String, LatencyHistogram> callback : listener.getValue().entrySet()) {
+                LatencyHistogram histogram = callback.getValue();
+                result.add(new TelecomLogClass.ListenerLatency()
+                        .setListenerName(listener.getKey())
+                        .setCallbackName(callback.getKey())
+                        .setCount(histogram.getCount())
+                        .setTotalMicros(histogram.getTotal())
+                        .setMaxMicros(histogram.getMax())
+                        .setSlowCount(histogram.getCountAbove(SLOW_THRESHOLD_MICROS)));
+            }
+        }
+        return result.toArray(new TelecomLogClass.ListenerLatency[result.size()]);
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        for (Map.Entry<String, Map<String, LatencyHistogram>> listener :
+                getSortedHistograms().entrySet()) {
+            pw.println(listener.getKey() + ":");
+            pw.increaseIndent();
+            for (Map.Entry<String, LatencyHistogram> callback : listener.getValue().entrySet()) {
+                pw.println(callback.getKey() + ": " + callback.getValue());
+            }
+            pw.decreaseIndent();
+        }
+        List<SlowInvocation> slowInvocations = getSlowInvocations();
+        pw.println("Slow invocations (>" + SLOW_THRESHOLD_MICROS + "us): "
+                + slowInvocations.size());
+        pw.increaseIndent();
+        for (SlowInvocation invocation : slowInvocations) {
+            pw.println(Instant.ofEpochMilli(invocation.timestampMillis).atZone(ZoneOffset.UTC)
+                    + " " + invocation.listenerName + "." + invocation.callbackName + ": "
+                    + invocation.durationMicros + "us");
+        }
+        pw.decreaseIndent();
+    }
+
+    private Map<String, Map<String, LatencyHistogram>> getSortedHistograms() {
+        Map<String, Map<String, LatencyHistogram>> sorted = new TreeMap<>();
+        for (Map.Entry<Class<?>, Map<String, LatencyHistogram>> e : mHistograms.entrySet()) {
+            sorted.computeIfAbsent(getListenerName(e.getKey()), k -> new TreeMap<>())
+                    .putAll(e.getValue());
+        }
+        return sorted;
+    }
+
+    private static String getListenerName(Class<?> listenerClass) {
+        // Anonymous listeners have no simple name; fall back to e.g. CallsManager$3.
+        String name = listenerClass.getSimpleName();
+        if (name.isEmpty()) {
+            name = listenerClass.getName();
+            name = name.substring(name.lastIndexOf('.') + 1);
+        }
+        return name;
+    }
+}
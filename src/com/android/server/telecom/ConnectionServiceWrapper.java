@@ -78,10 +78,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.Objects;
 
@@ -111,13 +109,44 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
     private static final long SERVICE_BINDING_TIMEOUT = 15000L;
     private CompletableFuture<Pair<Integer, Location>> mQueryLocationFuture = null;
     private @Nullable CancellationSignal mOngoingQueryLocationRequest = null;
-    private final ExecutorService mQueryLocationExecutor = Executors.newSingleThreadExecutor();
-    private ScheduledExecutorService mScheduledExecutor =
-            Executors.newSingleThreadScheduledExecutor();
+    private final Executor mQueryLocationExecutor;
+    private TelecomTimerService mTimerService;
     // Pre-allocate space for 2 calls; realistically thats all we should ever need (tm)
-    private final Map<Call, ScheduledFuture<?>> mScheduledFutureMap = new ConcurrentHashMap<>(2);
+    private final Map<Call, CreateTimeout> mTimerMap = new ConcurrentHashMap<>(2);
     private AnomalyReporterAdapter mAnomalyReporter = new AnomalyReporterAdapterImpl();
 
+    /**
+     * The create connection or conference timeout of a call. Its timer is created along with it
+     * and re-armed for each attempt, with the action for that attempt.
+     */
+    private static final class CreateTimeout {
+        private final TelecomTimerService.Timer mTimer;
+        private volatile java.lang.Runnable mOnTimeout;
+
+        CreateTimeout(TelecomTimerService timerService, String callId) {
+            mTimer = timerService.newTimer(ConnectionServiceWrapper.class.getSimpleName(),
+                    callId, this::onTimeout);
+        }
+
+        void schedule(java.lang.Runnable onTimeout, long delayMillis) {
+            mOnTimeout = onTimeout;
+            mTimer.schedule(delayMillis);
+        }
+
+        void cancel() {
+            mTimer.cancel();
+            mOnTimeout = null;
+        }
+
+        private void onTimeout() {
+            java.lang.Runnable onTimeout = mOnTimeout;
+            mOnTimeout = null;
+            if (onTimeout != null) {
+                onTimeout.run();
+            }
+        }
+    }
+
     private final class Adapter extends IConnectionServiceAdapter.Stub {
 
         @Override
@@ -131,11 +160,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 synchronized (mLock) {
                     logIncoming("handleCreateConnectionComplete %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
-                    if (call != null && mScheduledFutureMap.containsKey(call)) {
-                        ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-                        existingTimeout.cancel(false /* cancelIfRunning */);
-                        mScheduledFutureMap.remove(call);
-                    }
+                    cancelCreateTimeout(call);
                     // Check status hints image for cross user access
                     if (connection.getStatusHints() != null) {
                         Icon icon = connection.getStatusHints().getIcon();
@@ -175,11 +200,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                 synchronized (mLock) {
                     logIncoming("handleCreateConferenceComplete %s", callId);
                     Call call = mCallIdMapper.getCall(callId);
-                    if (call != null && mScheduledFutureMap.containsKey(call)) {
-                        ScheduledFuture<?> existingTimeout = mScheduledFutureMap.get(call);
-                        existingTimeout.cancel(false /* cancelIfRunning */);
-                        mScheduledFutureMap.remove(call);
-                    }
+                    cancelCreateTimeout(call);
                     // Check status hints image for cross user access
                     if (conference.getStatusHints() != null) {
                         Icon icon = conference.getStatusHints().getIcon();
@@ -1428,8 +1449,13 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         });
         mPhoneAccountRegistrar = phoneAccountRegistrar;
         mCallsManager = callsManager;
+        mTimerService = callsManager.getTimerService();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
         mContext = context;
+        mQueryLocationExecutor = mFlags.sharedWorkerPool()
+                ? TelecomWorkerPool.getInstance().newSerialExecutor("CSW.qL",
+                        TelecomWorkerPool.LANE_BACKGROUND)
+                : Executors.newSingleThreadExecutor();
     }
 
     /** See {@link IConnectionService#addConnectionServiceAdapter}. */
@@ -1664,11 +1690,8 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                         }
                     }
                 };
-                // Post cleanup to the executor service and cache the future, so we can cancel it if
-                // needed.
-                ScheduledFuture<?> future = mScheduledExecutor.schedule(r.getRunnableToCancel(),
-                        SERVICE_BINDING_TIMEOUT, TimeUnit.MILLISECONDS);
-                mScheduledFutureMap.put(call, future);
+                // Arm the call's timeout timer, so we can cancel it if needed.
+                scheduleCreateTimeout(call, callId, r.getRunnableToCancel());
 
                 if (mServiceInterface != null) {
                     try {
@@ -1795,11 +1818,8 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
                         }
                     }
                 };
-                // Post cleanup to the executor service and cache the future, so we can cancel it if
-                // needed.
-                ScheduledFuture<?> future = mScheduledExecutor.schedule(r.getRunnableToCancel(),
-                        SERVICE_BINDING_TIMEOUT, TimeUnit.MILLISECONDS);
-                mScheduledFutureMap.put(call, future);
+                // Arm the call's timeout timer, so we can cancel it if needed.
+                scheduleCreateTimeout(call, callId, r.getRunnableToCancel());
 
                 if (mServiceInterface != null) {
                     try {
@@ -2311,6 +2331,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             response.handleCreateConnectionFailure(disconnectCause);
         }
 
+        removeCreateTimeout(mCallIdMapper.getCall(callId));
         mCallIdMapper.removeCall(callId);
     }
 
@@ -2320,6 +2341,7 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             response.handleCreateConnectionFailure(disconnectCause);
         }
 
+        removeCreateTimeout(call);
         mCallIdMapper.removeCall(call);
     }
 
@@ -2520,10 +2542,6 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         handleConnectionServiceDeath();
         mCallsManager.handleConnectionServiceDeath(this);
         mServiceInterface = null;
-        if (mScheduledExecutor != null) {
-            mScheduledExecutor.shutdown();
-            mScheduledExecutor = null;
-        }
     }
 
     @Override
@@ -2585,6 +2603,32 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
         mConnSvrFocusListener = listener;
     }
 
+    /**
+     * Arms a timer which runs {@code onTimeout} if {@code call} is not created in time.
+     */
+    private void scheduleCreateTimeout(Call call, String callId, java.lang.Runnable onTimeout) {
+        mTimerMap.computeIfAbsent(call, c -> new CreateTimeout(mTimerService, callId))
+                .schedule(onTimeout, SERVICE_BINDING_TIMEOUT);
+    }
+
+    private void cancelCreateTimeout(Call call) {
+        CreateTimeout timeout = call == null ? null : mTimerMap.get(call);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Disarms the create timeout of {@code call}, and forgets it once the call has left this
+     * service.
+     */
+    private void removeCreateTimeout(Call call) {
+        CreateTimeout timeout = call == null ? null : mTimerMap.remove(call);
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
     private void handleCreateConnectionComplete(
             String callId,
             ConnectionRequest request,
@@ -2651,7 +2695,10 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
             }
         }
         mCallIdMapper.clear();
-        mScheduledFutureMap.clear();
+        for (CreateTimeout timeout : mTimerMap.values()) {
+            timeout.cancel();
+        }
+        mTimerMap.clear();
 
         if (mConnSvrFocusListener != null) {
             mConnSvrFocusListener.onConnectionServiceDeath(this);
@@ -2779,8 +2826,8 @@ public class ConnectionServiceWrapper extends ServiceBinder implements
     }
 
     @VisibleForTesting
-    public void setScheduledExecutorService(ScheduledExecutorService service) {
-        mScheduledExecutor = service;
+    public void setTimerService(TelecomTimerService timerService) {
+        mTimerService = timerService;
     }
 
     @VisibleForTesting
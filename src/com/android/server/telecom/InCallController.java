@@ -874,6 +874,31 @@ public class InCallController extends CallsManagerListenerBase implements
     }
 
     private final Call.Listener mCallListener = new Call.ListenerBase() {
+        @Override
+        public long getInterestedEvents() {
+            return Call.LISTENER_CONNECTION_CAPABILITIES_CHANGED
+                    | Call.LISTENER_CONNECTION_PROPERTIES_CHANGED
+                    | Call.LISTENER_CANNED_SMS_RESPONSES_LOADED
+                    | Call.LISTENER_VIDEO_CALL_PROVIDER_CHANGED
+                    | Call.LISTENER_STATUS_HINTS_CHANGED
+                    | Call.LISTENER_CALLER_INFO_CHANGED
+                    | Call.LISTENER_EXTRAS_CHANGED
+                    | Call.LISTENER_EXTRAS_REMOVED
+                    | Call.LISTENER_HANDLE_CHANGED
+                    | Call.LISTENER_CALLER_DISPLAY_NAME_CHANGED
+                    | Call.LISTENER_CALL_DIRECTION_CHANGED
+                    | Call.LISTENER_VIDEO_STATE_CHANGED
+                    | Call.LISTENER_TARGET_PHONE_ACCOUNT_CHANGED
+                    | Call.LISTENER_CONFERENCEABLE_CALLS_CHANGED
+                    | Call.LISTENER_CONNECTION_EVENT
+                    | Call.LISTENER_HANDOVER_FAILED
+                    | Call.LISTENER_HANDOVER_COMPLETE
+                    | Call.LISTENER_RTT_INITIATION_FAILURE
+                    | Call.LISTENER_REMOTE_RTT_REQUEST
+                    | Call.LISTENER_CALLER_NUMBER_VERIFICATION_STATUS_CHANGED
+                    | Call.LISTENER_UPDATE_BATCH_ENDED;
+        }
+
         @Override
         public void onConnectionCapabilitiesChanged(Call call) {
             updateCall(call);
@@ -1011,6 +1036,11 @@ public class InCallController extends CallsManagerListenerBase implements
                 int callerNumberVerificationStatus) {
             updateCall(call);
         }
+
+        @Override
+        public void onUpdateBatchEnded(Call call) {
+            sendDeferredUpdate(call);
+        }
     };
 
     private UserHandle findChildManagedProfileUser(UserHandle parent, UserManager um) {
@@ -1263,6 +1293,9 @@ public class InCallController extends CallsManagerListenerBase implements
     // component has been enabled.
     private Set<ComponentName> mKnownNonUiInCallServices = new ArraySet<>();
 
+    /** Resolved InCallServices, or {@code null} if they are resolved on every lookup. */
+    private final InCallServiceResolutionCache mResolutionCache;
+
     // Future that's in a completed state unless we're in the middle of binding to a service.
     // The future will complete with true if binding succeeds, false if it timed out.
     private CompletableFuture<Boolean> mBindingFuture = CompletableFuture.completedFuture(true);
@@ -1276,6 +1309,19 @@ public class InCallController extends CallsManagerListenerBase implements
     // finishes playing.
     private Map<String, CompletableFuture<Void>> mDisconnectedToneBtFutures = new ArrayMap<>();
 
+    // Last call update sent to each InCallService, used to skip updates which change nothing.
+    private final ParcelableCallUpdateTracker mCallUpdateTracker =
+            new ParcelableCallUpdateTracker();
+
+    // Calls whose updates are held back until their update batch ends, mapped to the
+    // DEFERRED_UPDATE_* flags of the updates held back.
+    private static final int DEFERRED_UPDATE = 1 << 0;
+    private static final int DEFERRED_UPDATE_VIDEO_PROVIDER_CHANGED = 1 << 1;
+    private static final int DEFERRED_UPDATE_RTT_INFO_CHANGED = 1 << 2;
+    private final Map<Call, Integer> mDeferredCallUpdates = new ArrayMap<>();
+    private long mDeferredCallUpdateCount;
+    private long mBatchedCallUpdateCount;
+
     private final CarModeTracker mCarModeTracker;
 
     /**
@@ -1338,6 +1384,8 @@ public class InCallController extends CallsManagerListenerBase implements
         userAddedFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         mContext.registerReceiver(mUserAddedReceiver, userAddedFilter);
         mFeatureFlags = featureFlags;
+        mResolutionCache = featureFlags.cacheInCallServiceResolution()
+                ? new InCallServiceResolutionCache(context, defaultDialerCache) : null;
     }
 
     private void restrictPhoneCallOps() {
@@ -1494,6 +1542,7 @@ public class InCallController extends CallsManagerListenerBase implements
                         info.isExternalCallsSupported(), includeRttCall,
                         info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI ||
                                 info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
+                mCallUpdateTracker.forget(inCallService, call.getId());
                 try {
                     inCallService.addCall(
                             sanitizeParcelableCallForService(info, parcelableCall));
@@ -1541,6 +1590,8 @@ public class InCallController extends CallsManagerListenerBase implements
         }
         call.removeListener(mCallListener);
         mCallIdMapper.removeCall(call);
+        mCallUpdateTracker.onCallRemoved(call.getId());
+        mDeferredCallUpdates.remove(call);
         if (mCallIdMapper.getCalls().isEmpty()) {
             mActiveCarrierPrivilegedApps.clear();
             mAppOpsManager.stopWatchingActive(this);
@@ -1620,6 +1671,7 @@ public class InCallController extends CallsManagerListenerBase implements
                         info.isExternalCallsSupported(), includeRttCall,
                         info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI
                                 || info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
+                mCallUpdateTracker.forget(inCallService, call.getId());
                 try {
                     inCallService.addCall(sanitizeParcelableCallForService(info, parcelableCall));
                     updateCallTracking(call, info, true /* isAdd */);
@@ -1656,6 +1708,7 @@ public class InCallController extends CallsManagerListenerBase implements
                                     || info.getType() == IN_CALL_SERVICE_TYPE_NON_UI
                     );
 
+                    mCallUpdateTracker.forget(inCallService, call.getId());
                     try {
                         inCallService.updateCall(
                                 sanitizeParcelableCallForService(info, parcelableCall));
@@ -2369,6 +2422,18 @@ public class InCallController extends CallsManagerListenerBase implements
     private List<InCallServiceInfo> getInCallServiceComponents(UserHandle userHandle,
             String packageName, ComponentName componentName,
             int requestedType, boolean ignoreDisabled) {
+        if (mResolutionCache != null) {
+            return mResolutionCache.get(userHandle, packageName, componentName, requestedType,
+                    ignoreDisabled, () -> resolveInCallServiceComponents(userHandle,
+                            packageName, componentName, requestedType, ignoreDisabled));
+        }
+        return resolveInCallServiceComponents(userHandle, packageName, componentName,
+                requestedType, ignoreDisabled);
+    }
+
+    private List<InCallServiceInfo> resolveInCallServiceComponents(UserHandle userHandle,
+            String packageName, ComponentName componentName,
+            int requestedType, boolean ignoreDisabled) {
         List<InCallServiceInfo> retval = new LinkedList<>();
 
         Intent serviceIntent = new Intent(InCallService.SERVICE_INTERFACE);
@@ -2439,6 +2504,12 @@ public class InCallController extends CallsManagerListenerBase implements
         return retval;
     }
 
+    private void invalidateResolutionCache(String reason) {
+        if (mResolutionCache != null) {
+            mResolutionCache.invalidate(reason);
+        }
+    }
+
     private boolean isServiceEnabled(ComponentName componentName,
             ServiceInfo serviceInfo, PackageManager packageManager) {
         if (packageManager == null) {
@@ -2654,6 +2725,7 @@ public class InCallController extends CallsManagerListenerBase implements
                     includeRttCall,
                     info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI ||
                             info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
+            mCallUpdateTracker.forget(inCallService, call.getId());
             inCallService.addCall(sanitizeParcelableCallForService(info, parcelableCall));
             updateCallTracking(call, info, true /* isAdd */);
             return 1;
@@ -2675,11 +2747,19 @@ public class InCallController extends CallsManagerListenerBase implements
             trackCallingUserInterfaceStopped(disconnectedInfo);
         }
         if (mInCallServices.containsKey(userHandle)) {
-            mInCallServices.get(userHandle).remove(disconnectedInfo);
+            IInCallService inCallService = mInCallServices.get(userHandle).remove(
+                    disconnectedInfo);
+            if (inCallService != null) {
+                mCallUpdateTracker.onServiceRemoved(inCallService);
+            }
         }
         if (mFeatureFlags.separatelyBindToBtIncallService()
                 && disconnectedInfo.getType() == IN_CALL_SERVICE_TYPE_BLUETOOTH) {
-            mBTInCallServices.remove(userHandle);
+            Pair<InCallServiceInfo, IInCallService> btInCallService =
+                    mBTInCallServices.remove(userHandle);
+            if (btInCallService != null) {
+                mCallUpdateTracker.onServiceRemoved(btInCallService.second);
+            }
             updateCombinedInCallServiceMap(userHandle);
         }
     }
@@ -2708,12 +2788,29 @@ public class InCallController extends CallsManagerListenerBase implements
      */
     private void updateCall(Call call, boolean videoProviderChanged, boolean rttInfoChanged,
             String exceptPackageName) {
+        if (exceptPackageName == null && mFeatureFlags.batchConnectionUpdates()
+                && call.isInUpdateBatch()) {
+            // Send the call once, with all of the batch's changes, when the batch ends.
+            Integer deferred = mDeferredCallUpdates.get(call);
+            int flags = (deferred == null ? DEFERRED_UPDATE : deferred)
+                    | (videoProviderChanged ? DEFERRED_UPDATE_VIDEO_PROVIDER_CHANGED : 0)
+                    | (rttInfoChanged ? DEFERRED_UPDATE_RTT_INFO_CHANGED : 0);
+            mDeferredCallUpdates.put(call, flags);
+            mDeferredCallUpdateCount++;
+            return;
+        }
         UserHandle userFromCall = getUserFromCall(call);
         Map<UserHandle, Map<InCallController.InCallServiceInfo, IInCallService>> serviceMap =
                 getCombinedInCallServiceMap();
         if (serviceMap.containsKey(userFromCall)) {
             Log.i(this, "Sending updateCall %s", call);
             List<ComponentName> componentsUpdated = new ArrayList<>();
+            // When redundant updates are suppressed, InCallServices with the same view of the call
+            // share a sanitized parcel and its marshalled form; see getParcelView.
+            boolean shareParcels = mFeatureFlags.suppressRedundantCallUpdates();
+            ParcelableCall[] parcelsByView = shareParcels
+                    ? new ParcelableCall[PARCEL_VIEW_COUNT] : null;
+            byte[][] marshalledByView = shareParcels ? new byte[PARCEL_VIEW_COUNT][] : null;
             for (Map.Entry<InCallServiceInfo, IInCallService> entry : serviceMap.
                     get(userFromCall).entrySet()) {
                 InCallServiceInfo info = entry.getKey();
@@ -2739,15 +2836,45 @@ public class InCallController extends CallsManagerListenerBase implements
                     continue;
                 }
 
-                ParcelableCall parcelableCall = ParcelableCallUtils.toParcelableCall(
-                        call,
-                        videoProviderChanged /* includeVideoProvider */,
-                        mCallsManager.getPhoneAccountRegistrar(),
-                        info.isExternalCallsSupported(),
-                        rttInfoChanged && info.equals(
-                                mInCallServiceConnections.get(userFromCall).getInfo()),
-                        info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI ||
-                        info.getType() == IN_CALL_SERVICE_TYPE_NON_UI);
+                boolean includeRttCall = rttInfoChanged && info.equals(
+                        mInCallServiceConnections.get(userFromCall).getInfo());
+                boolean isSystemOrNonUi = info.getType() == IN_CALL_SERVICE_TYPE_SYSTEM_UI
+                        || info.getType() == IN_CALL_SERVICE_TYPE_NON_UI;
+                ParcelableCall parcelableCall;
+                byte[] marshalled = null;
+                if (shareParcels) {
+                    boolean hasContactsPermission = hasContactsPermission(info);
+                    int parcelView = getParcelView(info.isExternalCallsSupported(),
+                            includeRttCall, isSystemOrNonUi, hasContactsPermission);
+                    parcelableCall = parcelsByView[parcelView];
+                    mCallUpdateTracker.onParcelUsed(parcelableCall != null /* shared */);
+                    if (parcelableCall == null) {
+                        parcelableCall = sanitizeParcelableCallForService(
+                                ParcelableCallUtils.toParcelableCall(
+                                        call,
+                                        videoProviderChanged /* includeVideoProvider */,
+                                        mCallsManager.getPhoneAccountRegistrar(),
+                                        info.isExternalCallsSupported(),
+                                        includeRttCall,
+                                        isSystemOrNonUi),
+                                hasContactsPermission);
+                        parcelsByView[parcelView] = parcelableCall;
+                        marshalledByView[parcelView] =
+                                mCallUpdateTracker.marshall(parcelableCall);
+                    }
+                    marshalled = marshalledByView[parcelView];
+                } else {
+                    parcelableCall = sanitizeParcelableCallForService(info,
+                            ParcelableCallUtils.toParcelableCall(
+                                    call,
+                                    videoProviderChanged /* includeVideoProvider */,
+                                    mCallsManager.getPhoneAccountRegistrar(),
+                                    info.isExternalCallsSupported(),
+                                    includeRttCall,
+                                    isSystemOrNonUi));
+                }
+                final ParcelableCall updatedCall = parcelableCall;
+                final byte[] updatedCallMarshalled = marshalled;
                 IInCallService inCallService = entry.getValue();
                 componentsUpdated.add(componentName);
 
@@ -2760,11 +2887,12 @@ public class InCallController extends CallsManagerListenerBase implements
                     mDisconnectedToneBtFutures.put(call.getId(), disconnectedToneFuture);
                     mDisconnectedToneBtFutures.get(call.getId()).thenRunAsync(() -> {
                         Log.i(this, "updateCall: Sending call disconnected update to BT ICS.");
-                        updateCallToIcs(inCallService, info, parcelableCall, componentName);
+                        updateCallToIcs(inCallService, updatedCall, updatedCallMarshalled,
+                                componentName);
                         mDisconnectedToneBtFutures.remove(call.getId());
                     }, new LoggedHandlerExecutor(mHandler, "ICC.uC", mLock));
                 } else {
-                    updateCallToIcs(inCallService, info, parcelableCall, componentName);
+                    updateCallToIcs(inCallService, parcelableCall, marshalled, componentName);
                 }
             }
             Log.i(this, "Components updated: %s", componentsUpdated);
@@ -2774,11 +2902,59 @@ public class InCallController extends CallsManagerListenerBase implements
         }
     }
 
-    private void updateCallToIcs(IInCallService inCallService, InCallServiceInfo info,
-            ParcelableCall parcelableCall, ComponentName componentName) {
+    /**
+     * The number of distinct values returned by {@link #getParcelView}.
+     */
+    private static final int PARCEL_VIEW_COUNT = 16;
+
+    /**
+     * Identifies the arguments to {@link ParcelableCallUtils#toParcelableCall} and
+     * {@link #sanitizeParcelableCallForService} which vary between InCallServices for the same
+     * call update; services with the same view get the same parcel.
+     */
+    private static int getParcelView(boolean supportsExternalCalls, boolean includeRttCall,
+            boolean isForSystemInCallService, boolean hasContactsPermission) {
+        return (supportsExternalCalls ? 1 : 0) | (includeRttCall ? 2 : 0)
+                | (isForSystemInCallService ? 4 : 0) | (hasContactsPermission ? 8 : 0);
+    }
+
+    /**
+     * Sends the update held back while {@code call}'s update batch was in progress, if any.
+     */
+    private void sendDeferredUpdate(Call call) {
+        Integer deferred = mDeferredCallUpdates.remove(call);
+        if (deferred == null) {
+            return;
+        }
+        mBatchedCallUpdateCount++;
+        updateCall(call, (deferred & DEFERRED_UPDATE_VIDEO_PROVIDER_CHANGED) != 0,
+                (deferred & DEFERRED_UPDATE_RTT_INFO_CHANGED) != 0, null);
+    }
+
+    @VisibleForTesting
+    public long getDeferredCallUpdateCount() {
+        return mDeferredCallUpdateCount;
+    }
+
+    @VisibleForTesting
+    public long getBatchedCallUpdateCount() {
+        return mBatchedCallUpdateCount;
+    }
+
+    /**
+     * @param sanitizedCall The call, already sanitized for the InCallService.
+     * @param marshalled The marshalled form of {@code sanitizedCall} when redundant updates are
+     *                   suppressed, or {@code null} if it could not be marshalled.
+     */
+    private void updateCallToIcs(IInCallService inCallService, ParcelableCall sanitizedCall,
+            byte[] marshalled, ComponentName componentName) {
+        if (mFeatureFlags.suppressRedundantCallUpdates() && !mCallUpdateTracker.shouldSend(
+                inCallService, sanitizedCall.getId(), marshalled)) {
+            Log.v(this, "updateCallToIcs: %s already up to date", componentName);
+            return;
+        }
         try {
-            inCallService.updateCall(
-                    sanitizeParcelableCallForService(info, parcelableCall));
+            inCallService.updateCall(sanitizedCall);
         } catch (RemoteException exception) {
             Log.w(this, "Call status update did not send to: "
                     + componentName + " successfully with error " + exception);
@@ -2881,6 +3057,19 @@ public class InCallController extends CallsManagerListenerBase implements
         pw.decreaseIndent();
 
         mCarModeTracker.dump(pw);
+
+        mCallUpdateTracker.dump(pw);
+        pw.println("Batched call updates: deferred=" + mDeferredCallUpdateCount + ", sent="
+                + mBatchedCallUpdateCount);
+
+        if (mResolutionCache != null) {
+            mResolutionCache.dump(pw);
+        }
+    }
+
+    @VisibleForTesting
+    public ParcelableCallUpdateTracker getCallUpdateTracker() {
+        return mCallUpdateTracker;
     }
 
     /**
@@ -2964,13 +3153,22 @@ public class InCallController extends CallsManagerListenerBase implements
     @VisibleForTesting
     public ParcelableCall sanitizeParcelableCallForService(
             InCallServiceInfo info, ParcelableCall parcelableCall) {
+        return sanitizeParcelableCallForService(parcelableCall, hasContactsPermission(info));
+    }
+
+    private boolean hasContactsPermission(InCallServiceInfo info) {
+        PackageManager pm = mContext.getPackageManager();
+        return pm.checkPermission(Manifest.permission.READ_CONTACTS,
+                info.getComponentName().getPackageName()) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private ParcelableCall sanitizeParcelableCallForService(ParcelableCall parcelableCall,
+            boolean hasContactsPermission) {
         ParcelableCall.ParcelableCallBuilder builder =
                 ParcelableCall.ParcelableCallBuilder.fromParcelableCall(parcelableCall);
-        PackageManager pm = mContext.getPackageManager();
 
         // Check for contacts permission.
-        if (pm.checkPermission(Manifest.permission.READ_CONTACTS,
-                info.getComponentName().getPackageName()) != PackageManager.PERMISSION_GRANTED) {
+        if (!hasContactsPermission) {
             // contacts permission is not present...
 
             // removing the contactsDisplayName
@@ -3032,6 +3230,7 @@ public class InCallController extends CallsManagerListenerBase implements
         } else {
             mCarModeTracker.handleExitCarMode(priority, packageName);
         }
+        invalidateResolutionCache("car mode changed");
 
         updateCarModeForConnections();
     }
@@ -3044,6 +3243,7 @@ public class InCallController extends CallsManagerListenerBase implements
             return;
         }
         mCarModeTracker.handleSetAutomotiveProjection(packageName);
+        invalidateResolutionCache("automotive projection set");
 
         updateCarModeForConnections();
     }
@@ -3051,6 +3251,7 @@ public class InCallController extends CallsManagerListenerBase implements
     public void handleReleaseAutomotiveProjection() {
         Log.i(this, "handleReleaseAutomotiveProjection");
         mCarModeTracker.handleReleaseAutomotiveProjection();
+        invalidateResolutionCache("automotive projection released");
 
         updateCarModeForConnections();
     }
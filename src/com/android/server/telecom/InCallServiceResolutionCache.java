@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.UserHandle;
+import android.telecom.InCallService;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.InCallController.InCallServiceInfo;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the {@link InCallService}s {@link InCallController} resolves for each user, so that
+ * binding to the in-call services for a call does not query {@link
+ * android.content.pm.PackageManager} and re-check each candidate's permissions and metadata every
+ * time.
+ * <p>
+ * The type of an {@link InCallService} depends on its package, its permissions and app-ops, and
+ * on which app holds the dialer role, so all cached results are dropped when a package is added,
+ * removed or changed, when the dialer role holder changes, when the app-ops which allow an app
+ * to manage calls change, and when car mode changes.
+ */
+@VisibleForTesting
+public class InCallServiceResolutionCache {
+    private static final String TAG = InCallServiceResolutionCache.class.getSimpleName();
+
+    private static class Query {
+        final String mPackageName;
+        final ComponentName mComponentName;
+        final int mRequestedType;
+        final boolean mIgnoreDisabled;
+
+        Query(String packageName, ComponentName componentName, int requestedType,
+                boolean ignoreDisabled) {
+            mPackageName = packageName;
+            mComponentName = componentName;
+            mRequestedType = requestedType;
+            mIgnoreDisabled = ignoreDisabled;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Query)) return false;
+            Query query = (Query) o;
+            return mRequestedType == query.mRequestedType
+                    && mIgnoreDisabled == query.mIgnoreDisabled
+                    && Objects.equals(mPackageName, query.mPackageName)
+                    && Objects.equals(mComponentName, query.mComponentName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mPackageName, mComponentName, mRequestedType, mIgnoreDisabled);
+        }
+    }
+
+    /** Resolved services keyed by user ID and then by query. */
+    private final Map<Integer, Map<Query, List<InCallServiceInfo>>> mResolved =
+            new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation, so services resolved concurrently with a change are not
+     * cached after the change has been processed.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate(intent.getAction());
+        }
+    };
+
+    private final AppOpsManager.OnOpChangedListener mOpChangedListener =
+            (op, packageName) -> invalidate(op);
+
+    public InCallServiceResolutionCache(Context context, DefaultDialerCache defaultDialerCache) {
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        context.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, packageFilter, null,
+                null);
+        defaultDialerCache.observeDefaultDialerApplication(Runnable::run,
+                userId -> invalidate("dialer role changed"));
+        AppOpsManager appOpsManager = context.getSystemService(AppOpsManager.class);
+        if (appOpsManager != null) {
+            appOpsManager.startWatchingMode(AppOpsManager.OPSTR_MANAGE_ONGOING_CALLS, null,
+                    mOpChangedListener);
+            appOpsManager.startWatchingMode(AppOpsManager.OPSTR_INTERACT_ACROSS_PROFILES, null,
+                    mOpChangedListener);
+        }
+    }
+
+    /**
+     * Returns the services for a query, resolving them with {@code resolver} if they are not
+     * cached. The returned list and its elements are not shared with other callers.
+     */
+    public List<InCallServiceInfo> get(UserHandle userHandle, String packageName,
+            ComponentName componentName, int requestedType, boolean ignoreDisabled,
+            Supplier<List<InCallServiceInfo>> resolver) {
+        Map<Query, List<InCallServiceInfo>> userResolved = mResolved.computeIfAbsent(
+                userHandle.getIdentifier(), k -> new ConcurrentHashMap<>());
+        Query query = new Query(packageName, componentName, requestedType, ignoreDisabled);
+        List<InCallServiceInfo> infos = userResolved.get(query);
+        if (infos != null) {
+            mHits.incrementAndGet();
+            return copy(infos);
+        }
+
+        mMisses.incrementAndGet();
+        long generation = mGeneration.get();
+        infos = resolver.get();
+        if (generation == mGeneration.get()) {
+            userResolved.put(query, copy(infos));
+            if (generation != mGeneration.get()) {
+                // Invalidated while being cached; the services may be stale.
+                userResolved.remove(query);
+            }
+        }
+        return infos;
+    }
+
+    /**
+     * Drops all cached services.
+     * @param reason Why, for logging.
+     */
+    public void invalidate(String reason) {
+        mGeneration.incrementAndGet();
+        if (!mResolved.isEmpty()) {
+            Log.i(TAG, "invalidate: %s", reason);
+            mResolved.clear();
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        int queries = 0;
+        for (Map<Query, List<InCallServiceInfo>> userResolved : mResolved.values()) {
+            queries += userResolved.size();
+        }
+        pw.println(String.format("InCallServiceResolutionCache: users=%d, queries=%d, hits=%d, "
+                        + "misses=%d, invalidations=%d", mResolved.size(), queries, mHits.get(),
+                mMisses.get(), mGeneration.get()));
+    }
+
+    /**
+     * {@link InCallServiceInfo} tracks binding times, so each caller gets its own instances.
+     */
+    private static List<InCallServiceInfo> copy(List<InCallServiceInfo> infos) {
+        List<InCallServiceInfo> copy = new LinkedList<>();
+        for (InCallServiceInfo info : infos) {
+            copy.add(new InCallServiceInfo(info.getComponentName(),
+                    info.isExternalCallsSupported(), info.isSelfManagedCallsSupported(),
+                    info.getType(), info.hasCrossUserOrProfilePermission()));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into fixed buckets, along with the number of operations which did not
+ * complete before their deadline. Recording is lock-free, so it can be done from any thread.
+ */
+@VisibleForTesting
+public class LatencyHistogram {
+    /** Upper bounds (inclusive) of each bucket; the last bucket holds everything above. */
+    public static final long[] DEFAULT_BUCKETS_MILLIS =
+            {10, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    private final long[] mBuckets;
+    private final String mUnit;
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_BUCKETS_MILLIS);
+    }
+
+    public LatencyHistogram(long[] bucketsMillis) {
+        this(bucketsMillis, "ms");
+    }
+
+    /**
+     * @param buckets Upper bounds (inclusive) of each bucket, in the unit latencies are recorded
+     *                in.
+     * @param unit The unit latencies are recorded in, e.g. {@code "us"}, for {@link #toString}.
+     */
+    public LatencyHistogram(long[] buckets, String unit) {
+        mBuckets = buckets;
+        mUnit = unit;
+        mCounts = new AtomicLongArray(buckets.length + 1);
+    }
+
+    /**
+     * Records an operation which completed after {@code latency}, which is in milliseconds unless
+     * another unit was given at construction.
+     */
+    public void record(long latency) {
+        int bucket = 0;
+        while (bucket < mBuckets.length && latency > mBuckets[bucket]) {
+            bucket++;
+        }
+        mCounts.incrementAndGet(bucket);
+        mTotal.addAndGet(latency);
+        mMax.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Records an operation which was abandoned when its deadline passed.
+     */
+    public void recordTimeout() {
+        mTimeouts.incrementAndGet();
+    }
+
+    /**
+     * @return The number of operations recorded through {@link #record(long)}.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < mCounts.length(); i++) {
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of operations recorded which took longer than {@code bound}; only exact
+     * when {@code bound} is one of the bucket bounds.
+     */
+    public long getCountAbove(long bound) {
+        long count = 0;
+        for (int i = 1; i < mCounts.length(); i++) {
+            if (mBuckets[i - 1] >= bound) {
+                count += mCounts.get(i);
+            }
+        }
+        return count;
+    }
+
+    public long getTimeouts() {
+        return mTimeouts.get();
+    }
+
+    /**
+     * @return The sum of the latencies recorded through {@link #record(long)}.
+     */
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    /**
+     * @return The longest latency recorded through {@link #record(long)}.
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * @return A single line summary of the histogram, e.g.
+     * {@code count=3, timeouts=0, avg=40ms, max=90ms, [<=10ms:1, <=50ms:1, <=100ms:1]}.
+     */
+    @Override
+    public String toString() {
+        long count = getCount();
+        StringBuilder sb = new StringBuilder();
+        sb.append("count=").append(count)
+                .append(", timeouts=").append(mTimeouts.get())
+                .append(", avg=").append(count == 0 ? 0 : mTotal.get() / count)
+                .append(mUnit).append(", max=").append(mMax.get())
+                .append(mUnit).append(", [");
+        boolean first = true;
+        for (int i = 0; i < mCounts.length(); i++) {
+            long bucketCount = mCounts.get(i);
+            if (bucketCount == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            if (i < mBuckets.length) {
+                sb.append("<=").append(mBuckets[i]);
+            } else {
+                sb.append(">").append(mBuckets[mBuckets.length - 1]);
+            }
+            sb.append(mUnit).append(":").append(bucketCount);
+        }
+        return sb.append("]").toString();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.Parcel;
+import android.telecom.Log;
+import android.telecom.ParcelableCall;
+import android.util.ArrayMap;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.telecom.IInCallService;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remembers the last {@link ParcelableCall} sent to each {@link IInCallService} for each call, so
+ * that {@link InCallController} can skip call updates which would not change anything the
+ * InCallService can see. {@link IInCallService#updateCall(ParcelableCall)} always carries the
+ * full call, so two updates are considered equal when they marshal to the same bytes.
+ * <p>
+ * Parcels holding binders or file descriptors (video providers, RTT streams) cannot be
+ * marshalled; these are always sent and clear what is remembered for the call, as does any other
+ * path which sends a call to an InCallService without going through {@link #shouldSend}.
+ * <p>
+ * Not thread safe; callers hold the {@link TelecomSystem.SyncRoot} lock.
+ */
+@VisibleForTesting
+public class ParcelableCallUpdateTracker {
+    /** Last marshalled parcel sent, keyed by InCallService and then by call ID. */
+    private final Map<IInCallService, Map<String, byte[]>> mLastSent = new ArrayMap<>();
+
+    private long mUpdatesSent;
+    private long mUpdatesSuppressed;
+    private long mBytesSaved;
+    private long mParcelsBuilt;
+    private long mParcelsShared;
+
+    /**
+     * Decides whether an update needs to be sent, and if so records it as the last update sent.
+     *
+     * @param inCallService The InCallService the update is for.
+     * @param callId The ID of the call, as known by the InCallService.
+     * @param parcelableCall The sanitized parcel which would be sent.
+     * @return {@code true} if the update should be sent, {@code false} if the InCallService was
+     * already sent an identical update.
+     */
+    public boolean shouldSend(IInCallService inCallService, String callId,
+            ParcelableCall parcelableCall) {
+        return shouldSend(inCallService, callId, marshall(parcelableCall));
+    }
+
+    /**
+     * As {@link #shouldSend(IInCallService, String, ParcelableCall)}, for an update which was
+     * already marshalled with {@link #marshall}, so that InCallServices sharing a parcel do not
+     * marshal it again.
+     *
+     * @param marshalled The marshalled update, or {@code null} if it could not be marshalled.
+     */
+    public boolean shouldSend(IInCallService inCallService, String callId, byte[] marshalled) {
+        if (marshalled == null) {
+            forget(inCallService, callId);
+            mUpdatesSent++;
+            return true;
+        }
+        Map<String, byte[]> lastSentForService = mLastSent.get(inCallService);
+        if (lastSentForService == null) {
+            lastSentForService = new ArrayMap<>();
+            mLastSent.put(inCallService, lastSentForService);
+        }
+        byte[] lastSent = lastSentForService.get(callId);
+        if (lastSent != null && Arrays.equals(lastSent, marshalled)) {
+            mUpdatesSuppressed++;
+            mBytesSaved += marshalled.length;
+            return false;
+        }
+        lastSentForService.put(callId, marshalled);
+        mUpdatesSent++;
+        return true;
+    }
+
+    /**
+     * Forgets the last update sent for a call to an InCallService; the next update is always
+     * sent. Used when the call was sent to the service by some other means.
+     */
+    public void forget(IInCallService inCallService, String callId) {
+        Map<String, byte[]> lastSentForService = mLastSent.get(inCallService);
+        if (lastSentForService != null) {
+            lastSentForService.remove(callId);
+        }
+    }
+
+    /**
+     * Forgets the updates sent for a call which has been removed.
+     */
+    public void onCallRemoved(String callId) {
+        Iterator<Map<String, byte[]>> iterator = mLastSent.values().iterator();
+        while (iterator.hasNext()) {
+            Map<String, byte[]> lastSentForService = iterator.next();
+            lastSentForService.remove(callId);
+            if (lastSentForService.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets the updates sent to an InCallService which has disconnected.
+     */
+    public void onServiceRemoved(IInCallService inCallService) {
+        mLastSent.remove(inCallService);
+    }
+
+    /**
+     * Records that a call update built a parcel.
+     *
+     * @param shared {@code true} if an existing parcel was reused for an InCallService with the
+     *               same view of the call, {@code false} if a new one was built.
+     */
+    public void onParcelUsed(boolean shared) {
+        if (shared) {
+            mParcelsShared++;
+        } else {
+            mParcelsBuilt++;
+        }
+    }
+
+    public long getUpdatesSent() {
+        return mUpdatesSent;
+    }
+
+    public long getUpdatesSuppressed() {
+        return mUpdatesSuppressed;
+    }
+
+    public long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    public long getParcelsShared() {
+        return mParcelsShared;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("Call updates: sent=%d, suppressed=%d, bytesSaved=%d, "
+                        + "parcelsBuilt=%d, parcelsShared=%d", mUpdatesSent, mUpdatesSuppressed,
+                mBytesSaved, mParcelsBuilt, mParcelsShared));
+    }
+
+    /**
+     * @return The marshalled form of {@code parcelableCall}, or {@code null} if it holds binders
+     * or file descriptors and cannot be marshalled.
+     */
+    public byte[] marshall(ParcelableCall parcelableCall) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcelableCall.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } catch (RuntimeException e) {
+            // Parcels holding binders or file descriptors cannot be marshalled.
+            Log.d(this, "marshall: unable to compare call update; %s", e.getMessage());
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
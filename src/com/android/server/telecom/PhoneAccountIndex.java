@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.UserHandle;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of secondary indexes over a snapshot of the {@link PhoneAccount}s known to
+ * {@link PhoneAccountRegistrar}. A new index is built the first time the registrar is queried
+ * after its accounts change, and query results are memoized for the lifetime of the index.
+ * <p>
+ * Only properties stored in the registrar itself are indexed. Checks which depend on outside
+ * state, such as whether the {@link android.telecom.ConnectionService} still resolves, are left
+ * to the caller.
+ */
+@VisibleForTesting
+public class PhoneAccountIndex {
+    private static final int MAX_MEMOIZED_QUERIES = 64;
+    private static final int NUM_CAPABILITY_BITS = Integer.SIZE;
+
+    private final long mVersion;
+    private final List<PhoneAccount> mAccounts;
+    private final Map<PhoneAccount, Integer> mPositions = new IdentityHashMap<>();
+    private final Map<PhoneAccountHandle, PhoneAccount> mByHandle = new HashMap<>();
+    private final Map<String, List<PhoneAccount>> mByPackage = new HashMap<>();
+    private final Map<UserHandle, List<PhoneAccount>> mByUser = new HashMap<>();
+    private final Map<String, List<PhoneAccount>> mByUriScheme = new HashMap<>();
+    private final Map<Integer, List<PhoneAccount>> mByCapability = new HashMap<>();
+    private final List<PhoneAccount> mMultiUserAccounts = new ArrayList<>();
+    private final Map<Query, List<PhoneAccount>> mMemoizedQueries = new ConcurrentHashMap<>();
+
+    /**
+     * The parameters of a query which only depend on the state of the registrar.
+     */
+    private static final class Query {
+        final int capabilities;
+        final int excludedCapabilities;
+        final String uriScheme;
+        final String packageName;
+        final boolean includeDisabledAccounts;
+        final UserHandle userHandle;
+
+        Query(int capabilities, int excludedCapabilities, String uriScheme, String packageName,
+                boolean includeDisabledAccounts, UserHandle userHandle) {
+            this.capabilities = capabilities;
+            this.excludedCapabilities = excludedCapabilities;
+            this.uriScheme = uriScheme;
+            this.packageName = packageName;
+            this.includeDisabledAccounts = includeDisabledAccounts;
+            this.userHandle = userHandle;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Query)) return false;
+            Query query = (Query) o;
+            return capabilities == query.capabilities
+                    && excludedCapabilities == query.excludedCapabilities
+                    && includeDisabledAccounts == query.includeDisabledAccounts
+                    && Objects.equals(uriScheme, query.uriScheme)
+                    && Objects.equals(packageName, query.packageName)
+                    && Objects.equals(userHandle, query.userHandle);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(capabilities, excludedCapabilities, uriScheme, packageName,
+                    includeDisabledAccounts, userHandle);
+        }
+    }
+
+    /**
+     * @param version The version of the registrar state that {@code accounts} belongs to.
+     * @param accounts The registered accounts, in the order the registrar keeps them.
+     */
+    public PhoneAccountIndex(long version, List<PhoneAccount> accounts) {
+        mVersion = version;
+        mAccounts = Collections.unmodifiableList(new ArrayList<>(accounts));
+        for (int i = 0; i < mAccounts.size(); i++) {
+            PhoneAccount account = mAccounts.get(i);
+            PhoneAccountHandle handle = account.getAccountHandle();
+            mPositions.put(account, i);
+            mByHandle.putIfAbsent(handle, account);
+            mByPackage.computeIfAbsent(handle.getComponentName().getPackageName(),
+                    k -> new ArrayList<>()).add(account);
+            if (handle.getUserHandle() != null) {
+                mByUser.computeIfAbsent(handle.getUserHandle(), k -> new ArrayList<>())
+                        .add(account);
+            }
+            if (account.getSupportedUriSchemes() != null) {
+                for (String scheme : account.getSupportedUriSchemes()) {
+                    mByUriScheme.computeIfAbsent(scheme, k -> new ArrayList<>()).add(account);
+                }
+            }
+            int capabilities = account.getCapabilities();
+            for (int bit = 0; bit < NUM_CAPABILITY_BITS; bit++) {
+                if ((capabilities & (1 << bit)) != 0) {
+                    mByCapability.computeIfAbsent(bit, k -> new ArrayList<>()).add(account);
+                }
+            }
+            if (account.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER)) {
+                mMultiUserAccounts.add(account);
+            }
+        }
+    }
+
+    /**
+     * @return The version of the registrar state this index was built from.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return All indexed accounts, in registrar order.
+     */
+    public List<PhoneAccount> getAllAccounts() {
+        return mAccounts;
+    }
+
+    /**
+     * @return The first account registered with {@code handle}, or {@code null} if none is.
+     */
+    public PhoneAccount getAccount(PhoneAccountHandle handle) {
+        return mByHandle.get(handle);
+    }
+
+    /**
+     * @return All accounts registered by {@code packageName}, in registrar order.
+     */
+    public List<PhoneAccount> getAccountsForPackage(String packageName) {
+        List<PhoneAccount> accounts = mByPackage.get(packageName);
+        return accounts == null ? Collections.emptyList() : Collections.unmodifiableList(accounts);
+    }
+
+    /**
+     * Returns the accounts matching the given filter, in registrar order. The result is memoized
+     * until the registrar state changes.
+     *
+     * @param capabilities Capabilities which the account must have. Ignored if 0.
+     * @param excludedCapabilities Capabilities which the account must not have.
+     * @param uriScheme URI scheme the account must support, or {@code null} to skip the check.
+     * @param packageName Package which registered the account, or {@code null} to skip the check.
+     * @param includeDisabledAccounts Whether disabled accounts are included.
+     * @param userHandle If non-null, only accounts registered under this user or which have
+     *                   {@link PhoneAccount#CAPABILITY_MULTI_USER} are returned.
+     */
+    public List<PhoneAccount> getAccounts(int capabilities, int excludedCapabilities,
+            String uriScheme, String packageName, boolean includeDisabledAccounts,
+            UserHandle userHandle) {
+        Query query = new Query(capabilities, excludedCapabilities, uriScheme, packageName,
+                includeDisabledAccounts, userHandle);
+        List<PhoneAccount> result = mMemoizedQueries.get(query);
+        if (result != null) {
+            return result;
+        }
+
+        List<PhoneAccount> candidates = getSmallestCandidateList(query);
+        List<PhoneAccount> matches = new ArrayList<>(candidates.size());
+        for (PhoneAccount account : candidates) {
+            if (matches(account, query)) {
+                matches.add(account);
+            }
+        }
+        result = Collections.unmodifiableList(matches);
+        if (mMemoizedQueries.size() >= MAX_MEMOIZED_QUERIES) {
+            mMemoizedQueries.clear();
+        }
+        mMemoizedQueries.put(query, result);
+        return result;
+    }
+
+    /**
+     * @return The smallest of the indexed lists that must contain every match for the query.
+     */
+    private List<PhoneAccount> getSmallestCandidateList(Query query) {
+        List<PhoneAccount> smallest = mAccounts;
+        if (query.packageName != null) {
+            smallest = smallerOf(smallest, mByPackage.get(query.packageName));
+        }
+        if (query.uriScheme != null) {
+            smallest = smallerOf(smallest, mByUriScheme.get(query.uriScheme));
+        }
+        for (int bit = 0; bit < NUM_CAPABILITY_BITS; bit++) {
+            if ((query.capabilities & (1 << bit)) != 0) {
+                smallest = smallerOf(smallest, mByCapability.get(bit));
+            }
+        }
+        if (query.userHandle != null) {
+            List<PhoneAccount> userAccounts = mByUser.get(query.userHandle);
+            int userCount = (userAccounts == null ? 0 : userAccounts.size())
+                    + mMultiUserAccounts.size();
+            if (userCount < smallest.size()) {
+                smallest = mergeInRegistrarOrder(userAccounts, mMultiUserAccounts);
+            }
+        }
+        return smallest;
+    }
+
+    private static List<PhoneAccount> smallerOf(List<PhoneAccount> current,
+            List<PhoneAccount> candidate) {
+        if (candidate == null) {
+            return Collections.emptyList();
+        }
+        return candidate.size() < current.size() ? candidate : current;
+    }
+
+    private List<PhoneAccount> mergeInRegistrarOrder(List<PhoneAccount> first,
+            List<PhoneAccount> second) {
+        if (first == null || first.isEmpty()) {
+            return second;
+        }
+        List<PhoneAccount> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            if (j >= second.size()) {
+                merged.add(first.get(i++));
+            } else if (i >= first.size()) {
+                merged.add(second.get(j++));
+            } else {
+                int firstPosition = mPositions.get(first.get(i));
+                int secondPosition = mPositions.get(second.get(j));
+                if (firstPosition == secondPosition) {
+                    merged.add(first.get(i++));
+                    j++;
+                } else if (firstPosition < secondPosition) {
+                    merged.add(first.get(i++));
+                } else {
+                    merged.add(second.get(j++));
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static boolean matches(PhoneAccount account, Query query) {
+        if (!(account.isEnabled() || query.includeDisabledAccounts)) {
+            return false;
+        }
+        if ((account.getCapabilities() & query.excludedCapabilities) != 0) {
+            return false;
+        }
+        if (query.capabilities != 0 && !account.hasCapabilities(query.capabilities)) {
+            return false;
+        }
+        if (query.uriScheme != null && !account.supportsUriScheme(query.uriScheme)) {
+            return false;
+        }
+        PhoneAccountHandle handle = account.getAccountHandle();
+        if (query.packageName != null
+                && !query.packageName.equals(handle.getComponentName().getPackageName())) {
+            return false;
+        }
+        return query.userHandle == null
+                || account.hasCapabilities(PhoneAccount.CAPABILITY_MULTI_USER)
+                || Objects.equals(query.userHandle, handle.getUserHandle());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the changes made to the {@link PhoneAccountRegistrar} state since its last
+ * full snapshot was written. Each record holds a single serialized account (or account handle),
+ * so registering one account no longer rewrites every account, icon and extras bundle.
+ * <p>
+ * File layout: a 4 byte magic number and 4 byte format version, followed by records of the form
+ * {@code [op: 1 byte][payload length: 4 bytes][payload][CRC32 of op and payload: 8 bytes]}.
+ * A torn or corrupt record ends the replay; everything before it is still applied.
+ * <p>
+ * This class only deals with framing and file I/O; callers must serialize access to it.
+ */
+public class PhoneAccountJournal {
+    /** The payload is a serialized {@link android.telecom.PhoneAccount} to add or replace. */
+    public static final int OP_PUT_ACCOUNT = 1;
+    /** The payload is a serialized {@link android.telecom.PhoneAccountHandle} to remove. */
+    public static final int OP_REMOVE_ACCOUNT = 2;
+
+    private static final int MAGIC = 0x50414a4c; // "PAJL"
+    private static final int FORMAT_VERSION = 1;
+    // Guards against allocating a huge buffer when reading a corrupt length.
+    private static final int MAX_PAYLOAD_LENGTH = 1024 * 1024;
+
+    /**
+     * A single journaled change.
+     */
+    public static class Record {
+        public final int op;
+        public final byte[] payload;
+
+        public Record(int op, byte[] payload) {
+            this.op = op;
+            this.payload = payload;
+        }
+    }
+
+    private final File mFile;
+
+    public PhoneAccountJournal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Encode a record so that it can later be passed to {@link #append(byte[])}.
+     */
+    public static byte[] encode(int op, byte[] payload) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(payload.length + 13);
+        try (DataOutputStream out = new DataOutputStream(os)) {
+            out.writeByte(op);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeLong(checksum(op, payload));
+        } catch (IOException e) {
+            // Not possible when writing to a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Append an encoded record to the end of the journal and sync it to disk.
+     */
+    public void append(byte[] encodedRecord) throws IOException {
+        boolean writeHeader = !mFile.exists() || mFile.length() == 0;
+        try (FileOutputStream fos = new FileOutputStream(mFile, true /* append */)) {
+            if (writeHeader) {
+                DataOutputStream out = new DataOutputStream(fos);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.flush();
+            }
+            fos.write(encodedRecord);
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Read back every intact record, in the order they were appended.
+     */
+    public List<Record> readAll() {
+        List<Record> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                Log.w(this, "readAll: unrecognized journal header; ignoring journal");
+                return records;
+            }
+            while (true) {
+                int op = in.read();
+                if (op == -1) {
+                    break;
+                }
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PAYLOAD_LENGTH) {
+                    Log.w(this, "readAll: invalid record length %d; stopping", length);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (in.readLong() != checksum(op, payload)) {
+                    Log.w(this, "readAll: checksum mismatch; stopping");
+                    break;
+                }
+                records.add(new Record(op, payload));
+            }
+        } catch (FileNotFoundException e) {
+            // No changes were journaled since the last snapshot.
+        } catch (EOFException e) {
+            Log.w(this, "readAll: journal ends with a partial record");
+        } catch (IOException e) {
+            Log.e(this, e, "readAll: reading journal");
+        }
+        return records;
+    }
+
+    /**
+     * Discard all records, typically after a full snapshot has been written.
+     */
+    public void clear() {
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(this, "clear: unable to delete %s", mFile);
+        }
+    }
+
+    /**
+     * @return The current size of the journal in bytes.
+     */
+    @VisibleForTesting
+    public long length() {
+        return mFile.length();
+    }
+
+    private static long checksum(int op, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(payload);
+        return crc.getValue();
+    }
+}
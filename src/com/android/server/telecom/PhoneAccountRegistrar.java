@@ -35,6 +35,8 @@ import android.net.Uri;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.PersistableBundle;
 import android.os.Process;
 import android.os.UserHandle;
@@ -84,12 +86,14 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -156,11 +160,41 @@ public class PhoneAccountRegistrar {
         }
     };
 
+    /**
+     * Receiver which persists any pending changes before the device shuts down or a user stops,
+     * rather than waiting for the write delay to elapse.
+     */
+    private final BroadcastReceiver mFlushReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.startSession("PARbR.oRF");
+            try {
+                Log.i(PhoneAccountRegistrar.this, "Flushing pending writes for %s",
+                        intent.getAction());
+                if (Intent.ACTION_SHUTDOWN.equals(intent.getAction())
+                        && mTelecomFeatureFlags.journalPhoneAccountChanges()) {
+                    // Fold the journal into a snapshot, so that the next boot does not depend on
+                    // replaying it.
+                    synchronized (mLock) {
+                        mPendingFullWrite = mPendingFullWrite || mJournalRecordCount > 0;
+                    }
+                }
+                flushPendingWrites();
+            } finally {
+                Log.endSession();
+            }
+        }
+    };
+
     public static final String FILE_NAME = "phone-account-registrar-state.xml";
     public static final String ICON_ERROR_MSG =
             "Icon cannot be written to memory. Try compressing or downsizing";
     @VisibleForTesting
     public static final int EXPECTED_STATE_VERSION = 9;
+    // Once this many changes are journaled, the next change writes a full snapshot instead.
+    private static final int MAX_JOURNAL_RECORDS = 32;
+    @VisibleForTesting
+    public static final String JOURNAL_SUFFIX = ".journal";
     public static final int MAX_PHONE_ACCOUNT_REGISTRATIONS = 10;
     public static final int MAX_PHONE_ACCOUNT_EXTRAS_KEY_PAIR_LIMIT = 100;
     public static final int MAX_PHONE_ACCOUNT_FIELD_CHAR_LIMIT = 256;
@@ -171,6 +205,7 @@ public class PhoneAccountRegistrar {
 
     private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
     private final AtomicFile mAtomicFile;
+    private final PhoneAccountJournal mJournal;
     private final Context mContext;
     private final UserManager mUserManager;
     private final TelephonyManager mTelephonyManager;
@@ -179,8 +214,24 @@ public class PhoneAccountRegistrar {
     private final AppLabelProxy mAppLabelProxy;
     private final TelecomSystem.SyncRoot mLock;
     private State mState;
+    // Incremented whenever mState.accounts or the enabled state of an account changes.
+    private final AtomicLong mAccountsVersion = new AtomicLong(0);
+    private volatile PhoneAccountIndex mAccountIndex;
     private UserHandle mCurrentUserHandle;
     private String mTestPhoneAccountPackageNameFilter;
+    // Whether a full snapshot exists on disk that journaled changes can be applied on top of.
+    private boolean mHasSnapshot = false;
+    private int mJournalRecordCount = 0;
+    // Changes waiting to be persisted, guarded by mLock. Maps each changed account to whether it
+    // was removed; only the last change to an account within the write delay is written.
+    private final Map<PhoneAccountHandle, Boolean> mPendingAccountWrites = new LinkedHashMap<>();
+    private boolean mPendingFullWrite = false;
+    private boolean mFlushScheduled = false;
+    private final Handler mWriteHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFlushRunnable = this::flushPendingWrites;
+    private long mWritesRequested = 0;
+    private long mSnapshotWrites = 0;
+    private long mJournalWrites = 0;
     private interface PhoneAccountRegistrarWriteLock {}
     private final PhoneAccountRegistrarWriteLock mWriteLock =
             new PhoneAccountRegistrarWriteLock() {};
@@ -203,6 +254,8 @@ public class PhoneAccountRegistrar {
             com.android.server.telecom.flags.FeatureFlags telecomFeatureFlags) {
 
         mAtomicFile = new AtomicFile(new File(context.getFilesDir(), fileName));
+        mJournal = new PhoneAccountJournal(
+                new File(context.getFilesDir(), fileName + JOURNAL_SUFFIX));
 
         mState = new State();
         mContext = context;
@@ -227,6 +280,11 @@ public class PhoneAccountRegistrar {
         intentFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
         mContext.registerReceiver(mManagedProfileReceiver, intentFilter);
 
+        IntentFilter flushFilter = new IntentFilter(Intent.ACTION_SHUTDOWN);
+        flushFilter.addAction(Intent.ACTION_USER_STOPPED);
+        flushFilter.setPriority(IntentFilter.SYSTEM_HIGH_PRIORITY);
+        mContext.registerReceiver(mFlushReceiver, flushFilter);
+
         read();
     }
 
@@ -430,7 +488,7 @@ public class PhoneAccountRegistrar {
             }
         }
 
-        write();
+        requestWrite();
         fireDefaultOutgoingChanged();
     }
 
@@ -714,11 +772,14 @@ public class PhoneAccountRegistrar {
 
         if (account.isEnabled() != isEnabled) {
             account.setIsEnabled(isEnabled);
+            onAccountsModified();
             if (!isEnabled) {
                 // If the disabled account is the default, remove it.
                 removeDefaultPhoneAccountHandle(accountHandle);
+                requestWrite();
+            } else {
+                requestAccountWrite(accountHandle, false /* removed */);
             }
-            write();
             fireAccountsChanged();
         }
         return true;
@@ -1050,13 +1111,9 @@ public class PhoneAccountRegistrar {
         if (packageName == null) {
             return new ArrayList<>();
         }
-        List<PhoneAccount> accounts = new ArrayList<>(mState.accounts.size());
-        for (PhoneAccount m : mState.accounts) {
-            PhoneAccountHandle handle = m.getAccountHandle();
-            if (!packageName.equals(handle.getComponentName().getPackageName())) {
-                // Not the right package name; skip this one.
-                continue;
-            }
+        List<PhoneAccount> packageAccounts = getAccountIndex().getAccountsForPackage(packageName);
+        List<PhoneAccount> accounts = new ArrayList<>(packageAccounts.size());
+        for (PhoneAccount m : packageAccounts) {
             // Do not count accounts registered under different users on the device. Otherwise, an
             // application can only have MAX_PHONE_ACCOUNT_REGISTRATIONS across all users. If the
             // DUT has multiple users, they should each get to register 10 accounts. Also, 3rd
@@ -1302,6 +1359,7 @@ public class PhoneAccountRegistrar {
         if (oldAccount != null) {
             enforceSelfManagedAccountUnmodified(account, oldAccount);
             mState.accounts.remove(oldAccount);
+            onAccountsModified();
             isEnabled = oldAccount.isEnabled();
             Log.i(this, "Modify account: %s", getAccountDiffString(account, oldAccount));
             isNewAccount = false;
@@ -1332,6 +1390,7 @@ public class PhoneAccountRegistrar {
         }
 
         mState.accounts.add(account);
+        onAccountsModified();
         // Set defaults and replace based on the group Id.
         maybeReplaceOldAccount(account);
         // Reset enabled state to whatever the value was if the account was already registered,
@@ -1340,8 +1399,9 @@ public class PhoneAccountRegistrar {
         account.setIsEnabled(
                 isEnabled || account.hasCapabilities(PhoneAccount.CAPABILITY_SIM_SUBSCRIPTION)
                 || account.hasCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED));
+        onAccountsModified();
 
-        write();
+        requestAccountWrite(account.getAccountHandle(), false /* removed */);
         fireAccountsChanged();
         if (isNewAccount) {
             fireAccountRegistered(account.getAccountHandle());
@@ -1357,7 +1417,8 @@ public class PhoneAccountRegistrar {
         PhoneAccount account = getPhoneAccountUnchecked(accountHandle);
         if (account != null) {
             if (mState.accounts.remove(account)) {
-                write();
+                onAccountsModified();
+                requestAccountWrite(accountHandle, true /* removed */);
                 fireAccountsChanged();
                 fireAccountUnRegistered(accountHandle);
                 // If this is the SIM call manager, tell telephony when the voice ServiceState
@@ -1387,7 +1448,7 @@ public class PhoneAccountRegistrar {
      * @param userHandle The {@link UserHandle} the package is running under.
      */
     public void clearAccounts(String packageName, UserHandle userHandle) {
-        boolean accountsRemoved = false;
+        List<PhoneAccountHandle> removedHandles = new ArrayList<>();
         Iterator<PhoneAccount> it = mState.accounts.iterator();
         while (it.hasNext()) {
             PhoneAccount phoneAccount = it.next();
@@ -1396,12 +1457,15 @@ public class PhoneAccountRegistrar {
                     && Objects.equals(userHandle, handle.getUserHandle())) {
                 Log.i(this, "Removing phone account " + phoneAccount.getLabel());
                 mState.accounts.remove(phoneAccount);
-                accountsRemoved = true;
+                removedHandles.add(handle);
             }
         }
 
-        if (accountsRemoved) {
-            write();
+        if (!removedHandles.isEmpty()) {
+            onAccountsModified();
+            for (PhoneAccountHandle handle : removedHandles) {
+                requestAccountWrite(handle, true /* removed */);
+            }
             fireAccountsChanged();
         }
     }
@@ -1645,12 +1709,7 @@ public class PhoneAccountRegistrar {
      * @return The corresponding phone account if one exists.
      */
     public PhoneAccount getPhoneAccountUnchecked(PhoneAccountHandle handle) {
-        for (PhoneAccount m : mState.accounts) {
-            if (Objects.equals(handle, m.getAccountHandle())) {
-                return m;
-            }
-        }
-        return null;
+        return getAccountIndex().getAccount(handle);
     }
 
     /**
@@ -1789,25 +1848,18 @@ public class PhoneAccountRegistrar {
             UserHandle userHandle,
             boolean crossUserAccess,
             boolean includeAll) {
-        List<PhoneAccount> accounts = new ArrayList<>(mState.accounts.size());
-        List<PhoneAccount> matchedAccounts = new ArrayList<>(mState.accounts.size());
-        for (PhoneAccount m : mState.accounts) {
-            if (!(m.isEnabled() || includeDisabledAccounts)) {
-                // Do not include disabled accounts.
-                continue;
-            }
-
-            if ((m.getCapabilities() & excludedCapabilities) != 0) {
-                // If an excluded capability is present, skip.
-                continue;
-            }
-
-            if (capabilities != 0 && !m.hasCapabilities(capabilities)) {
-                // Account doesn't have the right capabilities; skip this one.
-                continue;
-            }
-            if (uriScheme != null && !m.supportsUriScheme(uriScheme)) {
-                // Account doesn't support this URI scheme; skip this one.
+        // Visibility for a specific user can be narrowed down by the index unless the current
+        // user is unknown, in which case every account is visible.
+        UserHandle indexUserHandle = !crossUserAccess && mCurrentUserHandle != null
+                ? userHandle : null;
+        List<PhoneAccount> candidates = getAccountIndex().getAccounts(capabilities,
+                excludedCapabilities, uriScheme, packageName, includeDisabledAccounts,
+                indexUserHandle);
+        List<PhoneAccount> accounts = new ArrayList<>(candidates.size());
+        List<PhoneAccount> matchedAccounts = new ArrayList<>(candidates.size());
+        for (PhoneAccount m : candidates) {
+            if (!crossUserAccess && !isVisibleForUser(m, userHandle, false)) {
+                // Account is not visible for the current user; skip this one.
                 continue;
             }
             PhoneAccountHandle handle = m.getAccountHandle();
@@ -1819,18 +1871,9 @@ public class PhoneAccountRegistrar {
                 // This component cannot be resolved anymore; skip this one.
                 continue;
             }
-            if (packageName != null &&
-                    !packageName.equals(handle.getComponentName().getPackageName())) {
-                // Not the right package name; skip this one.
-                continue;
-            }
             if (isMatchedUser(m, userHandle)) {
                 matchedAccounts.add(m);
             }
-            if (!crossUserAccess && !isVisibleForUser(m, userHandle, false)) {
-                // Account is not visible for the current user; skip this one.
-                continue;
-            }
             accounts.add(m);
         }
 
@@ -1843,6 +1886,28 @@ public class PhoneAccountRegistrar {
         return accounts;
     }
 
+    /**
+     * Must be called whenever {@code mState.accounts} is modified or the enabled state of one of
+     * its accounts changes so that {@link #getAccountIndex()} is rebuilt.
+     */
+    private void onAccountsModified() {
+        mAccountsVersion.incrementAndGet();
+    }
+
+    /**
+     * @return An index over the current accounts, rebuilding it if the accounts were modified
+     * since it was last built.
+     */
+    private PhoneAccountIndex getAccountIndex() {
+        long version = mAccountsVersion.get();
+        PhoneAccountIndex index = mAccountIndex;
+        if (index == null || index.getVersion() != version) {
+            index = new PhoneAccountIndex(version, mState.accounts);
+            mAccountIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Clean up the orphan {@code PhoneAccount}. An orphan {@code PhoneAccount} is a phone
      * account that does not have a {@code UserHandle} or belongs to a deleted package.
@@ -1871,6 +1936,7 @@ public class PhoneAccountRegistrar {
         }
 
         mState.accounts.removeAll(badAccountsList);
+        onAccountsModified();
 
         return badAccountsList.size();
     }
@@ -1972,6 +2038,12 @@ public class PhoneAccountRegistrar {
             pw.increaseIndent();
             pw.println("test emergency PhoneAccount filter: " + mTestPhoneAccountPackageNameFilter);
             pw.decreaseIndent();
+            synchronized (mLock) {
+                pw.println(String.format("writes requested=%d, snapshot writes=%d, "
+                                + "journal writes=%d, pending=%d%s", mWritesRequested,
+                        mSnapshotWrites, mJournalWrites, mPendingAccountWrites.size(),
+                        mPendingFullWrite ? " (full)" : ""));
+            }
         }
     }
 
@@ -2018,6 +2090,7 @@ public class PhoneAccountRegistrar {
 
             // Sort the phone accounts.
             mState.accounts.sort(bySimCapability.thenComparing(bySortOrder.thenComparing(byLabel)));
+            onAccountsModified();
         }
     }
 
@@ -2036,6 +2109,8 @@ public class PhoneAccountRegistrar {
                     fileOutput = mAtomicFile.startWrite();
                     buffer.writeTo(fileOutput);
                     mAtomicFile.finishWrite(fileOutput);
+                    // The snapshot now contains every journaled change.
+                    mJournal.clear();
                 }
             } catch (IOException e) {
                 Log.e(this, e, "Writing state to XML file");
@@ -2045,6 +2120,126 @@ public class PhoneAccountRegistrar {
         }
     }
 
+    private class AsyncJournalWriter extends AsyncTask<byte[], Void, Void> {
+        @Override
+        public Void doInBackground(byte[]... args) {
+            try {
+                synchronized (mWriteLock) {
+                    mJournal.append(args[0]);
+                }
+            } catch (IOException e) {
+                Log.e(this, e, "Appending to phone account journal");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Requests that the full state be persisted, e.g. because the defaults changed. When writes
+     * are coalesced, the write is deferred by {@link Timeouts#getPhoneAccountWriteDelayMillis} so
+     * that it can be combined with any other changes made in the meantime. Pending writes are
+     * flushed when the device shuts down or a user stops, so a deferred write is not lost.
+     */
+    private void requestWrite() {
+        synchronized (mLock) {
+            sortPhoneAccounts();
+            mWritesRequested++;
+            mPendingFullWrite = true;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Requests that a change to a single account be persisted. Unless a full write is due, only
+     * the changed account is journaled when the write delay elapses.
+     *
+     * @param handle The account which was added, changed or removed.
+     * @param removed {@code true} if the account was removed.
+     */
+    private void requestAccountWrite(PhoneAccountHandle handle, boolean removed) {
+        synchronized (mLock) {
+            sortPhoneAccounts();
+            mWritesRequested++;
+            // Re-insert so the pending changes stay in the order they were last made.
+            mPendingAccountWrites.remove(handle);
+            mPendingAccountWrites.put(handle, removed);
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!mTelecomFeatureFlags.coalescePhoneAccountWrites()) {
+            flushPendingWrites();
+            return;
+        }
+        if (mFlushScheduled) {
+            return;
+        }
+        mFlushScheduled = true;
+        mWriteHandler.postDelayed(mFlushRunnable,
+                Timeouts.getPhoneAccountWriteDelayMillis(mContext.getContentResolver()));
+    }
+
+    /**
+     * Persists all pending changes now instead of waiting for the write delay to elapse. The
+     * actual disk I/O still happens on the serial {@link AsyncTask} executor.
+     */
+    @VisibleForTesting
+    public void flushPendingWrites() {
+        synchronized (mLock) {
+            mWriteHandler.removeCallbacks(mFlushRunnable);
+            mFlushScheduled = false;
+            if (!mPendingFullWrite && mPendingAccountWrites.isEmpty()) {
+                return;
+            }
+            if (mPendingFullWrite || !mHasSnapshot
+                    || !mTelecomFeatureFlags.journalPhoneAccountChanges()
+                    || mJournalRecordCount + mPendingAccountWrites.size() > MAX_JOURNAL_RECORDS) {
+                // Compact the journal into a new snapshot.
+                write();
+                return;
+            }
+            for (Map.Entry<PhoneAccountHandle, Boolean> entry
+                    : mPendingAccountWrites.entrySet()) {
+                PhoneAccount account = entry.getValue()
+                        ? null : getPhoneAccountUnchecked(entry.getKey());
+                boolean written = account == null
+                        ? writeAccountRemoved(entry.getKey()) : writeAccountChanged(account);
+                if (!written) {
+                    Log.w(this, "flushPendingWrites: writing full state instead");
+                    write();
+                    return;
+                }
+            }
+            mPendingAccountWrites.clear();
+        }
+    }
+
+    /**
+     * @return The number of times a change asked for the state to be persisted.
+     */
+    @VisibleForTesting
+    public long getWritesRequested() {
+        synchronized (mLock) {
+            return mWritesRequested;
+        }
+    }
+
+    /**
+     * @return The number of full snapshots and journal records written.
+     */
+    @VisibleForTesting
+    public long getWritesPerformed() {
+        synchronized (mLock) {
+            return mSnapshotWrites + mJournalWrites;
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the state, which also discards the journal and any pending
+     * changes. Both writers run on the serial {@link AsyncTask} executor, so records journaled
+     * after this snapshot was taken are always appended after the journal is cleared.
+     */
     private void write() {
         try {
             sortPhoneAccounts();
@@ -2052,17 +2247,108 @@ public class PhoneAccountRegistrar {
             XmlSerializer serializer = Xml.resolveSerializer(os);
             writeToXml(mState, serializer, mContext, mTelephonyFeatureFlags);
             serializer.flush();
+            mHasSnapshot = true;
+            mJournalRecordCount = 0;
+            mSnapshotWrites++;
+            mPendingAccountWrites.clear();
+            mPendingFullWrite = false;
             new AsyncXmlWriter().execute(os);
         } catch (IOException e) {
             Log.e(this, e, "Writing state to XML buffer");
         }
     }
 
+    /**
+     * Persists an added or changed account by journaling only that account.
+     */
+    private boolean writeAccountChanged(PhoneAccount account) {
+        return writeJournalRecord(PhoneAccountJournal.OP_PUT_ACCOUNT, sPhoneAccountXml, account);
+    }
+
+    /**
+     * Persists the removal of an account by journaling only its handle.
+     */
+    private boolean writeAccountRemoved(PhoneAccountHandle handle) {
+        return writeJournalRecord(PhoneAccountJournal.OP_REMOVE_ACCOUNT, sPhoneAccountHandleXml,
+                handle);
+    }
+
+    /**
+     * @return {@code false} if the record could not be serialized.
+     */
+    private <T> boolean writeJournalRecord(int op, XmlSerialization<T> xml, T value) {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            XmlSerializer serializer = Xml.resolveSerializer(os);
+            xml.writeToXml(value, serializer, mContext, mTelephonyFeatureFlags);
+            serializer.flush();
+            mJournalRecordCount++;
+            mJournalWrites++;
+            new AsyncJournalWriter().execute(
+                    PhoneAccountJournal.encode(op, os.toByteArray()));
+            return true;
+        } catch (IOException e) {
+            Log.e(this, e, "Writing journal record");
+            return false;
+        }
+    }
+
+    /**
+     * Applies changes journaled since the last snapshot to {@code mState}. This happens whether or
+     * not journaling is enabled, so that records left by a build which journaled are always
+     * folded into a new snapshot rather than lost.
+     *
+     * @return {@code true} if any changes were applied.
+     */
+    private boolean replayJournal() {
+        List<PhoneAccountJournal.Record> records = mJournal.readAll();
+        for (PhoneAccountJournal.Record record : records) {
+            try {
+                XmlPullParser parser = Xml.resolvePullParser(
+                        new ByteArrayInputStream(record.payload));
+                parser.nextTag();
+                switch (record.op) {
+                    case PhoneAccountJournal.OP_PUT_ACCOUNT:
+                        PhoneAccount account = sPhoneAccountXml.readFromXml(parser,
+                                EXPECTED_STATE_VERSION, mContext, mTelephonyFeatureFlags,
+                                mTelecomFeatureFlags);
+                        if (account != null) {
+                            removeAccountFromState(account.getAccountHandle());
+                            mState.accounts.add(account);
+                        }
+                        break;
+                    case PhoneAccountJournal.OP_REMOVE_ACCOUNT:
+                        PhoneAccountHandle handle = sPhoneAccountHandleXml.readFromXml(parser,
+                                EXPECTED_STATE_VERSION, mContext, mTelephonyFeatureFlags,
+                                mTelecomFeatureFlags);
+                        if (handle != null) {
+                            removeAccountFromState(handle);
+                        }
+                        break;
+                    default:
+                        Log.w(this, "replayJournal: unknown op %d", record.op);
+                }
+            } catch (IOException | XmlPullParserException e) {
+                Log.e(this, e, "replayJournal: skipping unreadable record");
+            }
+        }
+        return !records.isEmpty();
+    }
+
+    private void removeAccountFromState(PhoneAccountHandle handle) {
+        mState.accounts.removeIf(a -> Objects.equals(handle, a.getAccountHandle()));
+    }
+
     private void read() {
         final InputStream is;
         try {
             is = mAtomicFile.openRead();
         } catch (FileNotFoundException ex) {
+            // No snapshot yet; apply anything journaled on top of the empty state.
+            if (replayJournal()) {
+                onAccountsModified();
+                write();
+            }
             return;
         }
 
@@ -2074,6 +2360,7 @@ public class PhoneAccountRegistrar {
             mState = readFromXml(parser, mContext, mTelephonyFeatureFlags, mTelecomFeatureFlags);
             migratePhoneAccountHandle(mState);
             versionChanged = mState.versionNumber < EXPECTED_STATE_VERSION;
+            mHasSnapshot = true;
 
         } catch (IOException | XmlPullParserException e) {
             Log.e(this, e, "Reading state from XML file");
@@ -2086,6 +2373,8 @@ public class PhoneAccountRegistrar {
             }
         }
 
+        boolean journalReplayed = replayJournal();
+
         // Verify all of the UserHandles.
         List<PhoneAccount> badAccounts = new ArrayList<>();
         for (PhoneAccount phoneAccount : mState.accounts) {
@@ -2099,9 +2388,11 @@ public class PhoneAccountRegistrar {
             }
         }
         mState.accounts.removeAll(badAccounts);
+        onAccountsModified();
 
-        // If an upgrade occurred, write out the changed data.
-        if (versionChanged || !badAccounts.isEmpty()) {
+        // If an upgrade occurred, write out the changed data. Journaled changes are also folded
+        // into a new snapshot so they are not replayed again on the next boot.
+        if (versionChanged || !badAccounts.isEmpty() || journalReplayed) {
             write();
         }
     }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import static android.provider.Settings.Global.ZEN_MODE_OFF;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.os.Vibrator;
+import android.provider.Settings;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a snapshot of the device-wide state which decides whether and how an incoming call rings:
+ * ring volume, ringer mode, zen mode and the ring vibration, ramping ringer and theater mode
+ * settings. The snapshot is refreshed when any of these change, so that {@link Ringer} can make
+ * its decision from memory instead of querying each one when a call starts ringing.
+ */
+@VisibleForTesting
+public class RingPolicyTracker {
+    /**
+     * An immutable copy of the ring policy at the time it was last refreshed.
+     */
+    public static final class Snapshot {
+        public final int ringVolume;
+        public final int ringerMode;
+        public final int zenMode;
+        public final boolean hasVibrator;
+        public final boolean isRingVibrationEnabled;
+        public final boolean isRampingRingerEnabled;
+        public final boolean isTheaterModeOn;
+        public final long refreshedAtMillis;
+
+        @VisibleForTesting
+        public Snapshot(int ringVolume, int ringerMode, int zenMode, boolean hasVibrator,
+                boolean isRingVibrationEnabled, boolean isRampingRingerEnabled,
+                boolean isTheaterModeOn, long refreshedAtMillis) {
+            this.ringVolume = ringVolume;
+            this.ringerMode = ringerMode;
+            this.zenMode = zenMode;
+            this.hasVibrator = hasVibrator;
+            this.isRingVibrationEnabled = isRingVibrationEnabled;
+            this.isRampingRingerEnabled = isRampingRingerEnabled;
+            this.isTheaterModeOn = isTheaterModeOn;
+            this.refreshedAtMillis = refreshedAtMillis;
+        }
+
+        public boolean isVolumeOverZero() {
+            return ringVolume > 0;
+        }
+
+        /**
+         * Same as {@code Ringer#isVibratorEnabled}: vibrate unless the ringer is silenced, but let
+         * a call which breaks through DND vibrate anyway.
+         */
+        public boolean isVibratorEnabled(boolean shouldRingForContact) {
+            boolean zenModeOn = zenMode != ZEN_MODE_OFF;
+            return hasVibrator && isRingVibrationEnabled
+                    && (ringerMode != AudioManager.RINGER_MODE_SILENT
+                    || (zenModeOn && shouldRingForContact));
+        }
+
+        /**
+         * @return {@code true} if {@code other} holds the same policy, whenever it was read.
+         */
+        public boolean hasSamePolicy(Snapshot other) {
+            return other != null && ringVolume == other.ringVolume
+                    && ringerMode == other.ringerMode && zenMode == other.zenMode
+                    && hasVibrator == other.hasVibrator
+                    && isRingVibrationEnabled == other.isRingVibrationEnabled
+                    && isRampingRingerEnabled == other.isRampingRingerEnabled
+                    && isTheaterModeOn == other.isTheaterModeOn;
+        }
+
+        @Override
+        public String toString() {
+            return "[ringVolume=" + ringVolume + ", ringerMode=" + ringerMode + ", zenMode="
+                    + zenMode + ", hasVibrator=" + hasVibrator + ", ringVibration="
+                    + isRingVibrationEnabled + ", rampingRinger=" + isRampingRingerEnabled
+                    + ", theaterMode=" + isTheaterModeOn + ", refreshedAt=" + refreshedAtMillis
+                    + "]";
+        }
+    }
+
+    private final Context mContext;
+    private final SystemSettingsUtil mSystemSettingsUtil;
+    private final NotificationManager mNotificationManager;
+    private final Handler mHandler;
+    private final boolean mHasVibrator;
+    private final AtomicLong mRefreshCount = new AtomicLong(0);
+    private volatile Snapshot mSnapshot;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            if ((AudioManager.VOLUME_CHANGED_ACTION.equals(action)
+                    || AudioManager.STREAM_MUTE_CHANGED_ACTION.equals(action))
+                    && intent.getIntExtra(AudioManager.EXTRA_VOLUME_STREAM_TYPE, -1)
+                    != AudioManager.STREAM_RING) {
+                return;
+            }
+            refresh(action);
+        }
+    };
+
+    private final ContentObserver mSettingsObserver;
+
+    public RingPolicyTracker(Context context, SystemSettingsUtil systemSettingsUtil,
+            Vibrator vibrator, NotificationManager notificationManager, Handler handler) {
+        mContext = context;
+        mSystemSettingsUtil = systemSettingsUtil;
+        mNotificationManager = notificationManager;
+        mHandler = handler;
+        // Whether the device has a vibrator never changes.
+        mHasVibrator = vibrator.hasVibrator();
+        mSettingsObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                refresh("settings");
+            }
+        };
+    }
+
+    /**
+     * Takes the first snapshot and starts listening for changes.
+     */
+    public void startTracking() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
+        filter.addAction(AudioManager.VOLUME_CHANGED_ACTION);
+        filter.addAction(AudioManager.STREAM_MUTE_CHANGED_ACTION);
+        filter.addAction(NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED);
+        filter.addAction(Intent.ACTION_USER_SWITCHED);
+        mContext.registerReceiverAsUser(mReceiver, UserHandle.ALL, filter, null, mHandler);
+
+        mContext.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.RING_VIBRATION_INTENSITY), false,
+                mSettingsObserver, UserHandle.USER_ALL);
+        mContext.getContentResolver().registerContentObserver(
+                Settings.System.getUriFor(Settings.System.APPLY_RAMPING_RINGER), false,
+                mSettingsObserver, UserHandle.USER_ALL);
+        mContext.getContentResolver().registerContentObserver(
+                Settings.Global.getUriFor(Settings.Global.THEATER_MODE_ON), false,
+                mSettingsObserver, UserHandle.USER_ALL);
+        mContext.getContentResolver().registerContentObserver(
+                Settings.Global.getUriFor(Settings.Global.ZEN_MODE), false,
+                mSettingsObserver, UserHandle.USER_ALL);
+        refresh("start");
+    }
+
+    /**
+     * @return The most recent snapshot. Never blocks.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            // Only before startTracking; read the policy directly rather than guess.
+            snapshot = refresh("uninitialized");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Re-reads the ring policy and publishes it as the current snapshot.
+     * @param reason Why the policy is being re-read, for logging.
+     */
+    @VisibleForTesting
+    public Snapshot refresh(String reason) {
+        AudioManager audioManager = mContext.getSystemService(AudioManager.class);
+        Snapshot snapshot = new Snapshot(
+                audioManager.getStreamVolume(AudioManager.STREAM_RING),
+                // Use AudioManager#getRingerMode for more accurate result, instead of
+                // AudioManager#getRingerModeInternal which only useful for volume controllers
+                audioManager.getRingerMode(),
+                mNotificationManager != null ? mNotificationManager.getZenMode() : ZEN_MODE_OFF,
+                mHasVibrator,
+                mSystemSettingsUtil.isRingVibrationEnabled(mContext),
+                mSystemSettingsUtil.isRampingRingerEnabled(mContext),
+                mSystemSettingsUtil.isTheaterModeOn(mContext),
+                SystemClock.elapsedRealtime());
+        Snapshot previous = mSnapshot;
+        mSnapshot = snapshot;
+        mRefreshCount.incrementAndGet();
+        // Volume broadcasts and settings changes often leave the policy as it was.
+        if (snapshot.hasSamePolicy(previous)) {
+            Log.v(this, "refresh: reason=%s, policy unchanged", reason);
+        } else {
+            Log.i(this, "refresh: reason=%s, policy=%s", reason, snapshot);
+        }
+        return snapshot;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("snapshot=" + mSnapshot + ", refreshes=" + mRefreshCount.get());
+    }
+}
@@ -61,6 +61,7 @@ import android.view.accessibility.AccessibilityManager;
 import android.provider.Settings;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.LogUtils.EventTimer;
 import com.android.server.telecom.flags.FeatureFlags;
 
@@ -142,9 +143,6 @@ public class Ringer {
     private static final int RAMPING_RINGER_DURATION = 10000;
 
     private static final int OUTGOING_CALL_VIBRATING_DURATION = 100;
-    
-    private int mRampingRingerDuration = -1;  // ramping ringer duration in millisecond
-    private float mRampingRingerStartVolume = 0f;
 
     static {
         // construct complete pulse pattern
@@ -294,6 +292,12 @@ public class Ringer {
 
     private Handler mHandler = null;
     private int mSavedSpeakerInCallVolume = -1;
+    /** Only set when ringing is decided from a {@link RingPolicyTracker.Snapshot}. */
+    private RingPolicyTracker mRingPolicyTracker = null;
+    /** From a call being added to its ringtone starting to play. */
+    private final LatencyHistogram mCallAddedToRingLatency = new LatencyHistogram();
+    /** From {@link #startRinging} being called to the ringtone starting to play. */
+    private final LatencyHistogram mStartRingingToRingLatency = new LatencyHistogram();
     private CommunicationDeviceChangedListener mCommunicationDeviceChangedListener = null;
 
     /**
@@ -339,6 +343,11 @@ public class Ringer {
         mIsHapticPlaybackSupportedByDevice =
                 mSystemSettingsUtil.isHapticPlaybackSupported(mContext);
         mFlags = featureFlags;
+        if (mFlags.ringPolicySnapshot()) {
+            mRingPolicyTracker = new RingPolicyTracker(mContext, mSystemSettingsUtil, mVibrator,
+                    mNotificationManager, mH);
+            mRingPolicyTracker.startTracking();
+        }
 
         mSettingObserver = new SettingsObserver(mH);
         mContext.getContentResolver().registerContentObserver(
@@ -579,6 +588,7 @@ public class Ringer {
     }
 
     public boolean startRinging(Call foregroundCall, boolean isHfpDeviceAttached) {
+        final long startRingingMillis = android.os.SystemClock.elapsedRealtime();
         boolean deferBlockOnRingingFuture = false;
         // try-finally to ensure that the block on ringing future is always called.
         try {
@@ -645,8 +655,7 @@ public class Ringer {
             // now.
             final boolean isVibratorEnabled =
                     isVibratorEnabled(mContext, attributes.shouldRingForContact());
-            boolean shouldApplyRampingRinger =
-                    isVibratorEnabled && mSystemSettingsUtil.isRampingRingerEnabled(mContext);
+            boolean shouldApplyRampingRinger = shouldApplyRampingRinger(isVibratorEnabled);
 
             boolean isHapticOnly = false;
             boolean useCustomVibrationEffect = false;
@@ -697,19 +706,6 @@ public class Ringer {
                 // request the custom ringtone from the call and expect it to be current.
                 if (shouldApplyRampingRinger) {
                     Log.i(this, "create ramping ringer.");
-                    float silencePoint = (float) (RAMPING_RINGER_VIBRATION_DURATION)
-                            / (float) (RAMPING_RINGER_VIBRATION_DURATION + RAMPING_RINGER_DURATION);
-                    mVolumeShaperConfig =
-                            new VolumeShaper.Configuration.Builder()
-                                    .setDuration(RAMPING_RINGER_VIBRATION_DURATION
-                                            + RAMPING_RINGER_DURATION)
-                                    .setCurve(
-                                            new float[]{0.f, silencePoint + EPSILON
-                                                    /*keep monotonicity*/, 1.f},
-                                            new float[]{0.f, 0.f, 1.f})
-                                    .setInterpolatorType(
-                                            VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
-                                    .build();
                     if (mSystemSettingsUtil.isAudioCoupledVibrationForRampingRingerEnabled()) {
                         useCustomVibrationEffect = true;
                     }
@@ -717,30 +713,10 @@ public class Ringer {
                     if (DEBUG_RINGER) {
                         Log.i(this, "Create ringer with custom vibration effect");
                     }
-                    final ContentResolver cr = mContext.getContentResolver();
-                    if (Settings.System.getInt(cr,
-                            Settings.System.INCREASING_RING, 0) != 0) {
-                        float startVolume = Settings.System.getFloat(cr,
-                                Settings.System.INCREASING_RING_START_VOLUME, 0.1f);
-                        int rampUpTime = Settings.System.getInt(cr,
-                                Settings.System.INCREASING_RING_RAMP_UP_TIME, 20);
-                        if (mVolumeShaperConfig == null
-                            || mRampingRingerDuration != rampUpTime
-                            || mRampingRingerStartVolume != startVolume) {
-                            mVolumeShaperConfig = new VolumeShaper.Configuration.Builder()
-                                .setDuration(rampUpTime * 1000)
-                                .setCurve(new float[] {0.f, 1.f}, new float[] {startVolume, 1.f})
-                                .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
-                                .build();
-                            mRampingRingerDuration = rampUpTime;
-                            mRampingRingerStartVolume = startVolume;
-                        }
-                    } else {
-                        mVolumeShaperConfig = null;
-                    }
                     // Ramping ringtone is not enabled.
                     useCustomVibrationEffect = true;
                 }
+                mVolumeShaperConfig = createVolumeShaperConfig(shouldApplyRampingRinger);
             } else {
                 Log.addEvent(foregroundCall, LogUtils.Events.SKIP_RINGING,
                         "Inaudible: " + attributes.getInaudibleReason()
@@ -759,16 +735,12 @@ public class Ringer {
                 }
             }
 
-            boolean hapticChannelsMuted = !isVibratorEnabled || !mIsHapticPlaybackSupportedByDevice;
-            if (shouldApplyRampingRinger
-                    && !mSystemSettingsUtil.isAudioCoupledVibrationForRampingRingerEnabled()
-                    && isVibratorEnabled) {
-                Log.i(this, "Muted haptic channels since audio coupled ramping ringer is disabled");
-                hapticChannelsMuted = true;
-            } else if (hapticChannelsMuted) {
-                Log.i(this,
-                        "Muted haptic channels isVibratorEnabled=%s, hapticPlaybackSupported=%s",
-                        isVibratorEnabled, mIsHapticPlaybackSupportedByDevice);
+            boolean hapticChannelsMuted = shouldMuteHapticChannels(isVibratorEnabled,
+                    shouldApplyRampingRinger);
+            if (hapticChannelsMuted) {
+                Log.i(this, "Muted haptic channels isVibratorEnabled=%s, "
+                        + "hapticPlaybackSupported=%s, rampingRinger=%s", isVibratorEnabled,
+                        mIsHapticPlaybackSupportedByDevice, shouldApplyRampingRinger);
             }
             // Defer ringtone creation to the async player thread.
             Supplier<Pair<Uri, Ringtone>> ringtoneInfoSupplier;
@@ -791,12 +763,21 @@ public class Ringer {
                 && tryReserveVibration(foregroundCall);
             if (!vibratorReserved) {
                 foregroundCall.setUserMissed(USER_MISSED_NO_VIBRATE);
-                Log.addEvent(foregroundCall, LogUtils.Events.SKIP_VIBRATION,
-                        "hasVibrator=%b, userRequestsVibrate=%b, ringerMode=%d, "
-                                + "isVibratorEnabled=%b",
-                        mVibrator.hasVibrator(),
-                        mSystemSettingsUtil.isRingVibrationEnabled(mContext),
-                        mAudioManager.getRingerMode(), isVibratorEnabled);
+                if (mRingPolicyTracker != null) {
+                    RingPolicyTracker.Snapshot policy = mRingPolicyTracker.getSnapshot();
+                    Log.addEvent(foregroundCall, LogUtils.Events.SKIP_VIBRATION,
+                            "hasVibrator=%b, userRequestsVibrate=%b, ringerMode=%d, "
+                                    + "isVibratorEnabled=%b",
+                            policy.hasVibrator, policy.isRingVibrationEnabled, policy.ringerMode,
+                            isVibratorEnabled);
+                } else {
+                    Log.addEvent(foregroundCall, LogUtils.Events.SKIP_VIBRATION,
+                            "hasVibrator=%b, userRequestsVibrate=%b, ringerMode=%d, "
+                                    + "isVibratorEnabled=%b",
+                            mVibrator.hasVibrator(),
+                            mSystemSettingsUtil.isRingVibrationEnabled(mContext),
+                            mAudioManager.getRingerMode(), isVibratorEnabled);
+                }
             }
 
             // The vibration logic depends on the loaded ringtone, but we need to defer the ringtone
@@ -816,6 +797,9 @@ public class Ringer {
                     } else {
                         Log.w(this, "The ringtone could not be loaded.");
                     }
+                    if (ringtone != null && !stopped.booleanValue()) {
+                        onRingtoneStarted(foregroundCall, startRingingMillis);
+                    }
 
                     if (stopped.booleanValue() || !vibratorReserved) {
                         // don't start vibration if the ringing is already abandoned, or the
@@ -1097,7 +1081,73 @@ public class Ringer {
         }
     }
 
+    private boolean shouldApplyRampingRinger(boolean isVibratorEnabled) {
+        return isVibratorEnabled && (mRingPolicyTracker != null
+                ? mRingPolicyTracker.getSnapshot().isRampingRingerEnabled
+                : mSystemSettingsUtil.isRampingRingerEnabled(mContext));
+    }
+
+    /**
+     * The haptic channels of the ringtone only play when the vibrator is enabled and the device
+     * plays haptics with audio; with the ramping ringer, audio coupled vibration must be on too.
+     */
+    private boolean shouldMuteHapticChannels(boolean isVibratorEnabled,
+            boolean shouldApplyRampingRinger) {
+        return !isVibratorEnabled || !mIsHapticPlaybackSupportedByDevice
+                || (shouldApplyRampingRinger
+                        && !mSystemSettingsUtil.isAudioCoupledVibrationForRampingRingerEnabled());
+    }
+
+    /**
+     * @return The volume shaper of the ramping ringer if it applies, otherwise that of the
+     * increasing ring if it is turned on, or {@code null} if the ringtone is played as is.
+     */
+    @Nullable
+    private VolumeShaper.Configuration createVolumeShaperConfig(
+            boolean shouldApplyRampingRinger) {
+        if (shouldApplyRampingRinger) {
+            float silencePoint = (float) (RAMPING_RINGER_VIBRATION_DURATION)
+                    / (float) (RAMPING_RINGER_VIBRATION_DURATION + RAMPING_RINGER_DURATION);
+            return new VolumeShaper.Configuration.Builder()
+                    .setDuration(RAMPING_RINGER_VIBRATION_DURATION + RAMPING_RINGER_DURATION)
+                    .setCurve(
+                            new float[]{0.f, silencePoint + EPSILON /*keep monotonicity*/, 1.f},
+                            new float[]{0.f, 0.f, 1.f})
+                    .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
+                    .build();
+        }
+        final ContentResolver cr = mContext.getContentResolver();
+        if (Settings.System.getInt(cr, Settings.System.INCREASING_RING, 0) == 0) {
+            return null;
+        }
+        float startVolume = Settings.System.getFloat(cr,
+                Settings.System.INCREASING_RING_START_VOLUME, 0.1f);
+        int rampUpTime = Settings.System.getInt(cr,
+                Settings.System.INCREASING_RING_RAMP_UP_TIME, 20);
+        return new VolumeShaper.Configuration.Builder()
+                .setDuration(rampUpTime * 1000)
+                .setCurve(new float[] {0.f, 1.f}, new float[] {startVolume, 1.f})
+                .setInterpolatorType(VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR)
+                .build();
+    }
+
+    /**
+     * @return The volume shaper, and whether the haptic channels are muted, which
+     * {@link #startRinging} would choose for an audible call which should ring, so that the
+     * default ringtone can be prepared to match.
+     */
+    public Pair<VolumeShaper.Configuration, Boolean> getExpectedRingtonePlaybackParams() {
+        boolean isVibratorEnabled = isVibratorEnabled(mContext,
+                true /* shouldRingForContact */);
+        boolean shouldApplyRampingRinger = shouldApplyRampingRinger(isVibratorEnabled);
+        return new Pair<>(createVolumeShaperConfig(shouldApplyRampingRinger),
+                shouldMuteHapticChannels(isVibratorEnabled, shouldApplyRampingRinger));
+    }
+
     private boolean isVibratorEnabled(Context context, boolean shouldRingForContact) {
+        if (mRingPolicyTracker != null) {
+            return mRingPolicyTracker.getSnapshot().isVibratorEnabled(shouldRingForContact);
+        }
         AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
         // Use AudioManager#getRingerMode for more accurate result, instead of
         // AudioManager#getRingerModeInternal which only useful for volume controllers
@@ -1114,7 +1164,7 @@ public class Ringer {
                 && Settings.Global.getInt(mContext.getContentResolver(),
                         Settings.Global.VIBRATING_FOR_OUTGOING_CALL_ACCEPTED, 1) == 1) {
             mIsVibrating = true;
-            java.util.concurrent.Executors.defaultThreadFactory().newThread(() -> {
+            Runnable vibrate = () -> {
                 final VibrationEffect vibrationEffect =
                         mVibrationEffectProxy.createWaveform(SIMPLE_VIBRATION_PATTERN,
                         FIVE_ELEMENTS_VIBRATION_AMPLITUDE, REPEAT_SIMPLE_VIBRATION_AT);
@@ -1126,7 +1176,13 @@ public class Ringer {
                 android.os.SystemClock.sleep(OUTGOING_CALL_VIBRATING_DURATION);
                 mVibrator.cancel();
                 mIsVibrating = false;
-            }).start();
+            };
+            if (mFlags.sharedWorkerPool()) {
+                TelecomWorkerPool.getInstance().newSerialExecutor("R.sVFOCA",
+                        TelecomWorkerPool.LANE_AUDIO).execute(vibrate);
+            } else {
+                java.util.concurrent.Executors.defaultThreadFactory().newThread(vibrate).start();
+            }
         }
     }
 
@@ -1135,8 +1191,11 @@ public class Ringer {
         RingerAttributes.Builder builder = new RingerAttributes.Builder();
 
         LogUtils.EventTimer timer = new EventTimer();
+        RingPolicyTracker.Snapshot policy =
+                mRingPolicyTracker != null ? mRingPolicyTracker.getSnapshot() : null;
 
-        boolean isVolumeOverZero = mAudioManager.getStreamVolume(AudioManager.STREAM_RING) > 0;
+        boolean isVolumeOverZero = policy != null ? policy.isVolumeOverZero()
+                : mAudioManager.getStreamVolume(AudioManager.STREAM_RING) > 0;
         timer.record("isVolumeOverZero");
         boolean shouldRingForContact = shouldRingForContact(call);
         timer.record("shouldRingForContact");
@@ -1156,7 +1215,8 @@ public class Ringer {
         boolean hasExternalRinger = hasExternalRinger(call);
         timer.record("hasExternalRinger");
         // Don't do call waiting operations or vibration unless these are false.
-        boolean isTheaterModeOn = mSystemSettingsUtil.isTheaterModeOn(mContext);
+        boolean isTheaterModeOn = policy != null ? policy.isTheaterModeOn
+                : mSystemSettingsUtil.isTheaterModeOn(mContext);
         timer.record("isTheaterModeOn");
         boolean letDialerHandleRinging = mInCallController.doesConnectedDialerSupportRinging(
                 call.getAssociatedUser());
@@ -1205,6 +1265,43 @@ public class Ringer {
                 .build();
     }
 
+    private void onRingtoneStarted(Call call, long startRingingMillis) {
+        long now = android.os.SystemClock.elapsedRealtime();
+        long sinceStartRinging = now - startRingingMillis;
+        mStartRingingToRingLatency.record(sinceStartRinging);
+        long sinceCallAdded = now - call.getCreationElapsedRealtimeMillis();
+        if (sinceCallAdded >= 0) {
+            mCallAddedToRingLatency.record(sinceCallAdded);
+            if (call.getAnalytics() != null) {
+                call.getAnalytics().setTimeToFirstRingMillis(sinceCallAdded);
+            }
+        }
+        Log.i(this, "Ringtone started %d ms after call added, %d ms after startRinging",
+                sinceCallAdded, sinceStartRinging);
+    }
+
+    @VisibleForTesting
+    public LatencyHistogram getCallAddedToRingLatency() {
+        return mCallAddedToRingLatency;
+    }
+
+    @VisibleForTesting
+    public LatencyHistogram getStartRingingToRingLatency() {
+        return mStartRingingToRingLatency;
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("Ring start latency, from call added: " + mCallAddedToRingLatency);
+        pw.println("Ring start latency, from startRinging: " + mStartRingingToRingLatency);
+        if (mRingPolicyTracker != null) {
+            pw.println("RingPolicyTracker:");
+            pw.increaseIndent();
+            mRingPolicyTracker.dump(pw);
+            pw.decreaseIndent();
+        }
+        mRingtoneFactory.dump(pw);
+    }
+
     private boolean isProfileInQuietMode(UserHandle user) {
         UserManager um = mContext.getSystemService(UserManager.class);
         return um.isManagedProfile(user.getIdentifier()) && um.isQuietModeEnabled(user);
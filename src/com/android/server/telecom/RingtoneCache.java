@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.annotation.Nullable;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.Ringtone;
+import android.media.VolumeShaper;
+import android.net.Uri;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps ringtones which are likely to be played next opened and prepared, so that an incoming
+ * call can start playback without waiting for the media to be opened.
+ * <p>
+ * A {@link Ringtone} cannot be replayed once it has been stopped, so each prepared ringtone is
+ * handed out once; taking one prepares a replacement in the background. Only the
+ * {@link #MAX_ENTRIES} most recently used ringtones are kept prepared. {@link #invalidate} drops
+ * them all, for when the ringtone settings change.
+ */
+@VisibleForTesting
+public class RingtoneCache {
+    /**
+     * Opens and prepares a ringtone; {@link android.media.RingtoneManager#getRingtone} outside of
+     * tests.
+     */
+    public interface RingtoneLoader {
+        @Nullable
+        Ringtone load(Context context, Uri uri,
+                @Nullable VolumeShaper.Configuration volumeShaperConfig,
+                AudioAttributes audioAttributes);
+    }
+
+    @VisibleForTesting
+    public static final int MAX_ENTRIES = 3;
+
+    private static final class Key {
+        final int mUserId;
+        final Uri mUri;
+        final VolumeShaper.Configuration mVolumeShaperConfig;
+        final AudioAttributes mAudioAttributes;
+
+        Key(int userId, Uri uri, VolumeShaper.Configuration volumeShaperConfig,
+                AudioAttributes audioAttributes) {
+            mUserId = userId;
+            mUri = uri;
+            mVolumeShaperConfig = volumeShaperConfig;
+            mAudioAttributes = audioAttributes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mUserId == other.mUserId && mUri.equals(other.mUri)
+                    && Objects.equals(mVolumeShaperConfig, other.mVolumeShaperConfig)
+                    && mAudioAttributes.equals(other.mAudioAttributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mUserId, mUri, mVolumeShaperConfig, mAudioAttributes);
+        }
+
+        @Override
+        public String toString() {
+            return "[user=" + mUserId + ", uri=" + mUri.toSafeString() + ", shaped="
+                    + (mVolumeShaperConfig != null) + ", hapticsMuted="
+                    + mAudioAttributes.areHapticChannelsMuted() + "]";
+        }
+    }
+
+    private static final class Entry {
+        final Context mContext;
+        // Null until prepared, and again once taken.
+        Ringtone mRingtone;
+        boolean mIsLoading;
+
+        Entry(Context context) {
+            mContext = context;
+        }
+    }
+
+    private final RingtoneLoader mLoader;
+    private final Executor mExecutor;
+    // Guarded by itself; in access order, so the eldest entry is the least recently used.
+    private final LinkedHashMap<Key, Entry> mEntries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f,
+            true);
+    // Bumped by invalidate, so that loads started before it are discarded.
+    private long mGeneration = 0;
+    private final AtomicLong mHits = new AtomicLong(0);
+    private final AtomicLong mMisses = new AtomicLong(0);
+    private final AtomicLong mInvalidations = new AtomicLong(0);
+
+    /**
+     * @param loader Opens and prepares ringtones.
+     * @param executor Where ringtones are prepared ahead of use.
+     */
+    public RingtoneCache(RingtoneLoader loader, Executor executor) {
+        mLoader = loader;
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns a prepared ringtone if one is available, otherwise opens one now. In either case,
+     * another ringtone for the same arguments is prepared in the background for the next call.
+     * Must not be called on the main thread.
+     */
+    @Nullable
+    public Ringtone getRingtone(Context context, Uri uri,
+            @Nullable VolumeShaper.Configuration volumeShaperConfig,
+            AudioAttributes audioAttributes) {
+        Key key = new Key(context.getUserId(), uri, volumeShaperConfig, audioAttributes);
+        Ringtone ringtone = null;
+        List<Ringtone> evicted;
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                ringtone = entry.mRingtone;
+                entry.mRingtone = null;
+            } else {
+                mEntries.put(key, new Entry(context));
+            }
+            evicted = trimLocked();
+        }
+        releaseAll(evicted);
+
+        if (ringtone != null) {
+            mHits.incrementAndGet();
+            Log.i(this, "getRingtone: using prepared ringtone %s", key);
+        } else {
+            mMisses.incrementAndGet();
+            Log.i(this, "getRingtone: no prepared ringtone for %s", key);
+            ringtone = mLoader.load(context, uri, volumeShaperConfig, audioAttributes);
+        }
+        scheduleLoad(key);
+        return ringtone;
+    }
+
+    /**
+     * Prepares a ringtone for the given arguments in the background, if one is not already
+     * prepared.
+     */
+    public void preload(Context context, Uri uri,
+            @Nullable VolumeShaper.Configuration volumeShaperConfig,
+            AudioAttributes audioAttributes) {
+        Key key = new Key(context.getUserId(), uri, volumeShaperConfig, audioAttributes);
+        List<Ringtone> evicted;
+        synchronized (mEntries) {
+            if (!mEntries.containsKey(key)) {
+                mEntries.put(key, new Entry(context));
+            }
+            evicted = trimLocked();
+        }
+        releaseAll(evicted);
+        scheduleLoad(key);
+    }
+
+    /**
+     * Releases all prepared ringtones and forgets which ringtones were recently used.
+     * @param reason Why the cache is being invalidated, for logging.
+     */
+    public void invalidate(String reason) {
+        List<Ringtone> released = new ArrayList<>();
+        synchronized (mEntries) {
+            mGeneration++;
+            for (Entry entry : mEntries.values()) {
+                if (entry.mRingtone != null) {
+                    released.add(entry.mRingtone);
+                }
+            }
+            mEntries.clear();
+        }
+        mInvalidations.incrementAndGet();
+        Log.i(this, "invalidate: reason=%s, released=%d", reason, released.size());
+        releaseAll(released);
+    }
+
+    private void scheduleLoad(Key key) {
+        final long generation;
+        final Context context;
+        synchronized (mEntries) {
+            Entry entry = findEntryLocked(key);
+            if (entry == null || entry.mRingtone != null || entry.mIsLoading) {
+                return;
+            }
+            entry.mIsLoading = true;
+            generation = mGeneration;
+            context = entry.mContext;
+        }
+        mExecutor.execute(() -> load(key, context, generation));
+    }
+
+    private void load(Key key, Context context, long generation) {
+        Ringtone ringtone = null;
+        try {
+            ringtone = mLoader.load(context, key.mUri, key.mVolumeShaperConfig,
+                    key.mAudioAttributes);
+        } catch (Exception e) {
+            Log.e(this, e, "load: exception while preparing %s", key);
+        }
+        synchronized (mEntries) {
+            Entry entry = generation == mGeneration ? findEntryLocked(key) : null;
+            if (entry != null) {
+                entry.mIsLoading = false;
+                if (entry.mRingtone == null) {
+                    entry.mRingtone = ringtone;
+                    ringtone = null;
+                }
+            }
+        }
+        // Not wanted any more: the cache was invalidated or the entry evicted meanwhile.
+        if (ringtone != null) {
+            ringtone.stop();
+        }
+    }
+
+    /** Looks up an entry without counting it as a use. */
+    private Entry findEntryLocked(Key key) {
+        for (Map.Entry<Key, Entry> e : mEntries.entrySet()) {
+            if (e.getKey().equals(key)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private List<Ringtone> trimLocked() {
+        List<Ringtone> evicted = new ArrayList<>();
+        Iterator<Entry> it = mEntries.values().iterator();
+        while (mEntries.size() > MAX_ENTRIES && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.mRingtone != null) {
+                evicted.add(entry.mRingtone);
+            }
+            it.remove();
+        }
+        return evicted;
+    }
+
+    private static void releaseAll(List<Ringtone> ringtones) {
+        // Stopping a ringtone which was never played releases its player.
+        for (Ringtone ringtone : ringtones) {
+            ringtone.stop();
+        }
+    }
+
+    /**
+     * @return The number of ringtones which are prepared and waiting to be used.
+     */
+    @VisibleForTesting
+    public int getPreparedCount() {
+        synchronized (mEntries) {
+            int count = 0;
+            for (Entry entry : mEntries.values()) {
+                if (entry.mRingtone != null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    @VisibleForTesting
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    @VisibleForTesting
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("hits=" + mHits.get() + ", misses=" + mMisses.get() + ", invalidations="
+                + mInvalidations.get());
+        synchronized (mEntries) {
+            for (Map.Entry<Key, Entry> e : mEntries.entrySet()) {
+                pw.println(e.getKey() + ": prepared=" + (e.getValue().mRingtone != null)
+                        + ", loading=" + e.getValue().mIsLoading);
+            }
+        }
+    }
+}
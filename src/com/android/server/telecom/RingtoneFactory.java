@@ -17,14 +17,20 @@
 package com.android.server.telecom;
 
 import android.annotation.Nullable;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.content.pm.UserInfo;
+import android.database.ContentObserver;
 import android.media.AudioAttributes;
 import android.media.RingtoneManager;
 import android.media.Ringtone;
 import android.media.VolumeShaper;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
@@ -34,12 +40,15 @@ import android.telephony.SubscriptionManager;
 import android.text.TextUtils;
 
 import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.server.telecom.flags.FeatureFlags;
 
 import android.telecom.CallerInfo;
 import android.util.Pair;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * Uses the incoming {@link Call}'s ringtone URI (obtained by the Contact Lookup) to obtain a
@@ -52,11 +61,107 @@ public class RingtoneFactory {
     private final Context mContext;
     private final CallsManager mCallsManager;
     private FeatureFlags mFeatureFlags;
+    /** Only set when ringtones are preloaded. */
+    private RingtoneCache mRingtoneCache = null;
+    private Executor mPreloadExecutor = null;
+    /**
+     * How the next ringtone will be played: its volume shaper, and whether its haptic channels
+     * are muted. Set by {@link Ringer}, which makes that decision.
+     */
+    private volatile Supplier<Pair<VolumeShaper.Configuration, Boolean>> mPlaybackParamsSupplier;
+
+    private final BroadcastReceiver mUserReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int userId = intent.getIntExtra(Intent.EXTRA_USER_HANDLE, UserHandle.USER_NULL);
+            UserHandle userHandle = userId == UserHandle.USER_NULL ? null : UserHandle.of(userId);
+            if (Intent.ACTION_USER_UNLOCKED.equals(intent.getAction()) && userHandle != null
+                    && !userHandle.equals(mCallsManager.getCurrentUserHandle())) {
+                // Only the current user's default ringtone is kept prepared.
+                return;
+            }
+            preloadDefaultRingtone(userHandle);
+        }
+    };
 
     public RingtoneFactory(CallsManager callsManager, Context context, FeatureFlags featureFlags) {
         mContext = context;
         mCallsManager = callsManager;
         mFeatureFlags = featureFlags;
+        if (mFeatureFlags.preloadRingtones()) {
+            mPreloadExecutor = TelecomWorkerPool.getInstance().newSerialExecutor("RF.pR",
+                    TelecomWorkerPool.LANE_AUDIO);
+            mRingtoneCache = new RingtoneCache(RingtoneManager::getRingtone, mPreloadExecutor);
+            ContentObserver ringtoneObserver = new ContentObserver(
+                    new Handler(Looper.getMainLooper())) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mRingtoneCache.invalidate("ringtone setting changed");
+                    preloadDefaultRingtone(null /* userHandle */);
+                }
+            };
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.System.getUriFor(Settings.System.RINGTONE), false,
+                    ringtoneObserver, UserHandle.USER_ALL);
+            mContext.getContentResolver().registerContentObserver(
+                    Settings.System.getUriFor(Settings.System.RINGTONE2), false,
+                    ringtoneObserver, UserHandle.USER_ALL);
+            // The default ringtone can't be read while the user is locked, and belongs to the
+            // new user after a switch.
+            IntentFilter userFilter = new IntentFilter(Intent.ACTION_USER_UNLOCKED);
+            userFilter.addAction(Intent.ACTION_USER_SWITCHED);
+            mContext.registerReceiverAsUser(mUserReceiver, UserHandle.ALL, userFilter, null,
+                    new Handler(Looper.getMainLooper()));
+        }
+    }
+
+    /**
+     * Sets how the next ringtone will be played, so that the default ringtone is prepared the
+     * same way, and prepares it.
+     */
+    public void setPlaybackParamsSupplier(
+            Supplier<Pair<VolumeShaper.Configuration, Boolean>> playbackParamsSupplier) {
+        mPlaybackParamsSupplier = playbackParamsSupplier;
+        preloadDefaultRingtone(null /* userHandle */);
+    }
+
+    /**
+     * Prepares a user's default ringtone ahead of the next incoming call. Ringtones which were
+     * recently used are kept prepared by {@link RingtoneCache} itself.
+     * @param userHandle The user, or {@code null} for the current user.
+     */
+    private void preloadDefaultRingtone(@Nullable UserHandle userHandle) {
+        Supplier<Pair<VolumeShaper.Configuration, Boolean>> playbackParamsSupplier =
+                mPlaybackParamsSupplier;
+        if (mRingtoneCache == null || playbackParamsSupplier == null) {
+            return;
+        }
+        // Resolving the default ringtone reads settings, so do that off the calling thread too.
+        mPreloadExecutor.execute(() -> {
+            UserHandle currentUser = userHandle != null
+                    ? userHandle : mCallsManager.getCurrentUserHandle();
+            Context userContext = currentUser != null
+                    ? getContextForUserHandle(currentUser) : null;
+            Context contextToUse = hasDefaultRingtoneForUserBySlot(userContext, 0)
+                    ? userContext : mContext;
+            UserManager um = contextToUse.getSystemService(UserManager.class);
+            boolean isUserUnlocked = mFeatureFlags.telecomResolveHiddenDependencies()
+                    ? um.isUserUnlocked(contextToUse.getUser())
+                    : um.isUserUnlocked(contextToUse.getUserId());
+            if (!isUserUnlocked) {
+                // Not worth preparing until the actual default can be read.
+                return;
+            }
+            Uri defaultRingtoneUri = RingtoneManager.getActualDefaultRingtoneUriBySlot(
+                    contextToUse, RingtoneManager.TYPE_RINGTONE, 0);
+            if (defaultRingtoneUri != null) {
+                // Only a ringtone prepared exactly as Ringer will ask for it can be used.
+                Pair<VolumeShaper.Configuration, Boolean> playbackParams =
+                        playbackParamsSupplier.get();
+                mRingtoneCache.preload(contextToUse, defaultRingtoneUri, playbackParams.first,
+                        getDefaultRingtoneAudioAttributes(playbackParams.second));
+            }
+        });
     }
 
     public Pair<Uri, Ringtone> getRingtone(Call incomingCall,
@@ -77,7 +182,7 @@ public class RingtoneFactory {
         if (ringtoneUri != null && userContext != null) {
             // Ringtone URI is explicitly specified. First, try to create a Ringtone with that.
             try {
-                ringtone = RingtoneManager.getRingtone(
+                ringtone = loadRingtone(
                         userContext, ringtoneUri, volumeShaperConfig, audioAttrs);
             } catch (Exception e) {
                 Log.e(this, e, "getRingtone: exception while getting ringtone.");
@@ -117,7 +222,7 @@ public class RingtoneFactory {
             }
 
             try {
-                ringtone = RingtoneManager.getRingtone(
+                ringtone = loadRingtone(
                         contextToUse, ringtoneUri, volumeShaperConfig, audioAttrs);
             } catch (Exception e) {
                 Log.e(this, e, "getRingtone: exception while getting ringtone.");
@@ -126,6 +231,15 @@ public class RingtoneFactory {
         return new Pair(ringtoneUri, ringtone);
     }
 
+    private Ringtone loadRingtone(Context context, Uri ringtoneUri,
+            @Nullable VolumeShaper.Configuration volumeShaperConfig, AudioAttributes audioAttrs) {
+        if (mRingtoneCache != null) {
+            return mRingtoneCache.getRingtone(context, ringtoneUri, volumeShaperConfig,
+                    audioAttrs);
+        }
+        return RingtoneManager.getRingtone(context, ringtoneUri, volumeShaperConfig, audioAttrs);
+    }
+
     private AudioAttributes getDefaultRingtoneAudioAttributes(boolean hapticChannelsMuted) {
         return new AudioAttributes.Builder()
             .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
@@ -152,6 +266,15 @@ public class RingtoneFactory {
         return new Pair(ringtoneUri, ringtone);
     }
 
+    public void dump(IndentingPrintWriter pw) {
+        if (mRingtoneCache != null) {
+            pw.println("RingtoneCache:");
+            pw.increaseIndent();
+            mRingtoneCache.dump(pw);
+            pw.decreaseIndent();
+        }
+    }
+
     private Context getWorkProfileContextForUser(UserHandle userHandle) {
         // UserManager.getUserProfiles returns the enabled profiles along with the context user's
         // handle itself (so we must filter out the user).
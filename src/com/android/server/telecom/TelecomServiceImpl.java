@@ -1184,6 +1184,11 @@ public class TelecomServiceImpl {
                     return false;
                 }
 
+                if (mFeatureFlags.publishCallSummary()) {
+                    // Answered from the published call summary; no need to take the lock.
+                    return mCallsManager.getCallSummary().hasOngoingCalls(
+                            Binder.getCallingUserHandle(), hasInAppCrossUserPermission());
+                }
                 synchronized (mLock) {
                     return mCallsManager.hasOngoingCalls(Binder.getCallingUserHandle(),
                             hasInAppCrossUserPermission());
@@ -1226,6 +1231,11 @@ public class TelecomServiceImpl {
                             "READ_PHONE_STATE permission can use this method.");
                 }
 
+                if (mFeatureFlags.publishCallSummary()) {
+                    // Answered from the published call summary; no need to take the lock.
+                    return mCallsManager.getCallSummary().hasOngoingManagedCalls(
+                            Binder.getCallingUserHandle(), hasInAppCrossUserPermission());
+                }
                 synchronized (mLock) {
                     return mCallsManager.hasOngoingManagedCalls(Binder.getCallingUserHandle(),
                             hasInAppCrossUserPermission());
@@ -1252,12 +1262,15 @@ public class TelecomServiceImpl {
                     }
                 }
 
+                // Note: We are explicitly checking the calls telecom is tracking rather than
+                // relying on mCallsManager#getCallState(). Since getCallState() relies on the
+                // current state as tracked by PhoneStateBroadcaster, any failure to properly
+                // track the current call state there could result in the wrong ringing state
+                // being reported by this API.
+                if (mFeatureFlags.publishCallSummary()) {
+                    return mCallsManager.getCallSummary().isRinging();
+                }
                 synchronized (mLock) {
-                    // Note: We are explicitly checking the calls telecom is tracking rather than
-                    // relying on mCallsManager#getCallState(). Since getCallState() relies on the
-                    // current state as tracked by PhoneStateBroadcaster, any failure to properly
-                    // track the current call state there could result in the wrong ringing state
-                    // being reported by this API.
                     return mCallsManager.hasRingingOrSimulatedRingingCall();
                 }
             } finally {
@@ -1324,6 +1337,9 @@ public class TelecomServiceImpl {
                                 + " for API version 31+");
                     }
                 }
+                if (mFeatureFlags.publishCallSummary()) {
+                    return mCallsManager.getCallSummary().getCallState();
+                }
                 synchronized (mLock) {
                     return mCallsManager.getCallState();
                 }
@@ -2081,7 +2097,8 @@ public class TelecomServiceImpl {
                     args[0])) {
                 long token = Binder.clearCallingIdentity();
                 try {
-                    Analytics.dumpToEncodedProto(mContext, writer, args);
+                    Analytics.dumpToEncodedProto(mContext, writer, args,
+                            mCallsManager == null ? null : mCallsManager.getListenerTimings());
                 } finally {
                     Binder.restoreCallingIdentity(token);
                 }
@@ -2117,6 +2134,13 @@ public class TelecomServiceImpl {
                 pw.increaseIndent();
                 TransactionManager.getInstance().dump(pw);
                 pw.decreaseIndent();
+
+                if (mStartup != null) {
+                    pw.println("Startup: ");
+                    pw.increaseIndent();
+                    mStartup.dump(pw);
+                    pw.decreaseIndent();
+                }
             }
             if (isTimeLineView) {
                 Log.dumpEventsTimeline(pw);
@@ -2129,7 +2153,8 @@ public class TelecomServiceImpl {
         public int handleShellCommand(@NonNull ParcelFileDescriptor in,
                 @NonNull ParcelFileDescriptor out, @NonNull ParcelFileDescriptor err,
                 @NonNull String[] args) {
-            return new TelecomShellCommand(this, mContext).exec(this,
+            return new TelecomShellCommand(this, mContext,
+                    mCallsManager == null ? null : mCallsManager.getListenerTimings()).exec(this,
                     in.getFileDescriptor(), out.getFileDescriptor(), err.getFileDescriptor(), args);
         }
 
@@ -2300,6 +2325,17 @@ public class TelecomServiceImpl {
             try {
                 Log.startSession("TSI.iIEC");
                 enforceModifyPermission();
+                if (mFeatureFlags.publishCallSummary()) {
+                    long token = Binder.clearCallingIdentity();
+                    try {
+                        boolean isInEmergencyCall =
+                                mCallsManager.getCallSummary().isInEmergencyCall();
+                        Log.i(this, "isInEmergencyCall: %b", isInEmergencyCall);
+                        return isInEmergencyCall;
+                    } finally {
+                        Binder.restoreCallingIdentity(token);
+                    }
+                }
                 synchronized (mLock) {
                     long token = Binder.clearCallingIdentity();
                     try {
@@ -2640,6 +2676,15 @@ public class TelecomServiceImpl {
                 }
 
                 Log.startSession("TSI.iISMC", Log.getPackageAbbreviation(callingPackage));
+                if (mFeatureFlags.publishCallSummary()) {
+                    long token = Binder.clearCallingIdentity();
+                    try {
+                        return mCallsManager.getCallSummary().isInSelfManagedCall(
+                                packageName, userHandle);
+                    } finally {
+                        Binder.restoreCallingIdentity(token);
+                    }
+                }
                 synchronized (mLock) {
                     long token = Binder.clearCallingIdentity();
                     try {
@@ -2720,6 +2765,7 @@ public class TelecomServiceImpl {
     private final SettingsSecureAdapter mSettingsSecureAdapter;
     private final TelecomSystem.SyncRoot mLock;
     private TransactionManager mTransactionManager;
+    private TelecomStartup mStartup;
     private final TransactionalServiceRepository mTransactionalServiceRepository;
     private final BlockedNumbersManager mBlockedNumbersManager;
     private final FeatureFlags mFeatureFlags;
@@ -2782,6 +2828,13 @@ public class TelecomServiceImpl {
         mTransactionManager = transactionManager;
     }
 
+    /**
+     * @param startup How Telecom started, to show in dumpsys.
+     */
+    public void setStartup(TelecomStartup startup) {
+        mStartup = startup;
+    }
+
     public ITelecomService.Stub getBinder() {
         return mBinderImpl;
     }
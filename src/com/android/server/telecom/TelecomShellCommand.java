@@ -16,6 +16,7 @@
 
 package com.android.server.telecom;
 
+import android.Manifest;
 import android.content.ComponentName;
 import android.content.Context;
 import android.net.Uri;
@@ -32,6 +33,7 @@ import android.telephony.TelephonyManager;
 import android.text.TextUtils;
 
 import com.android.internal.telecom.ITelecomService;
+import com.android.internal.util.IndentingPrintWriter;
 import com.android.modules.utils.BasicShellCommandHandler;
 
 import java.util.Arrays;
@@ -87,15 +89,27 @@ public class TelecomShellCommand extends BasicShellCommandHandler {
      * Command used to emit a distinct "mark" in the logs.
      */
     private static final String COMMAND_LOG_MARK = "log-mark";
+    /**
+     * Command used to print how long each CallsManager listener takes to handle its callbacks.
+     */
+    private static final String COMMAND_GET_LISTENER_TIMINGS = "get-listener-timings";
+    private static final String ARG_RESET = "--reset";
 
     private final Context mContext;
     private final ITelecomService mTelecomService;
+    private final CallsManagerListenerTimings mListenerTimings;
     private TelephonyManager mTelephonyManager;
     private UserManager mUserManager;
 
     public TelecomShellCommand(ITelecomService binder, Context context) {
+        this(binder, context, null);
+    }
+
+    public TelecomShellCommand(ITelecomService binder, Context context,
+            CallsManagerListenerTimings listenerTimings) {
         mTelecomService = binder;
         mContext = context;
+        mListenerTimings = listenerTimings;
     }
 
     @Override
@@ -184,6 +198,9 @@ public class TelecomShellCommand extends BasicShellCommandHandler {
                 case COMMAND_LOG_MARK:
                     runLogMark();
                     break;
+                case COMMAND_GET_LISTENER_TIMINGS:
+                    runGetListenerTimings();
+                    break;
                 default:
                     return handleDefaultCommands(command);
             }
@@ -228,6 +245,7 @@ public class TelecomShellCommand extends BasicShellCommandHandler {
                 + " no longer have a valid UserHandle or accounts that no longer belongs to an"
                 + " installed package.\n"
                 + "usage: telecom set-emer-phone-account-filter <PACKAGE>\n"
+                + "usage: telecom get-listener-timings [--reset]\n"
                 + "\n"
                 + "telecom set-phone-account-enabled: Enables the given phone account, if it has"
                 + " already been registered with Telecom.\n"
@@ -262,6 +280,9 @@ public class TelecomShellCommand extends BasicShellCommandHandler {
                 + "testers to indicate where in the logs various test steps take place.\n"
                 + "telecom is-non-ui-in-call-service-bound <PACKAGE>: queries a particular "
                 + "non-ui-InCallService in InCallController to determine if it is bound \n"
+                + "telecom get-listener-timings [--reset]: prints how long each CallsManager "
+                + "listener has taken to handle each callback, and the recent slow callbacks. "
+                + "With \"--reset\", the timings are cleared after being printed.\n"
         );
     }
     private void runSetPhoneAccountEnabled(boolean enabled) throws RemoteException {
@@ -457,6 +478,21 @@ public class TelecomShellCommand extends BasicShellCommandHandler {
         mTelecomService.requestLogMark(message);
     }
 
+    private void runGetListenerTimings() {
+        mContext.enforceCallingOrSelfPermission(Manifest.permission.DUMP,
+                "get-listener-timings requires DUMP");
+        if (mListenerTimings == null) {
+            getOutPrintWriter().println("Listener timings are not available");
+            return;
+        }
+        IndentingPrintWriter pw = new IndentingPrintWriter(getOutPrintWriter(), "  ");
+        mListenerTimings.dump(pw);
+        pw.flush();
+        if (ARG_RESET.equals(getNextArg())) {
+            mListenerTimings.reset();
+        }
+    }
+
     private PhoneAccountHandle getPhoneAccountHandleFromArgs() throws RemoteException {
         if (TextUtils.isEmpty(peekNextArg())) {
             return null;
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Builds the components of {@link TelecomSystem} and records how long each one took, so that the
+ * startup path can be seen in dumpsys.
+ * <p>
+ * A component which does its own I/O and which nothing else needs right away can be built with
+ * {@link #runAsync}, on the executor given at construction, while the components after it are
+ * built. Anything which depends on it waits for it through {@link Step#get}, and the time spent
+ * waiting is recorded too.
+ */
+@VisibleForTesting
+public class TelecomStartup {
+    private static final String TAG = TelecomStartup.class.getSimpleName();
+
+    /**
+     * A component being built by {@link #runAsync}.
+     */
+    public final class Step<T> {
+        private final String mName;
+        private final CompletableFuture<T> mFuture;
+
+        private Step(String name, CompletableFuture<T> future) {
+            mName = name;
+            mFuture = future;
+        }
+
+        /**
+         * Waits for the component to be built, and returns it. If building it threw, rethrows
+         * that here.
+         */
+        public T get() {
+            long startMillis = mClockProxy.elapsedRealtime();
+            try {
+                return mFuture.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            } finally {
+                long waitedMillis = mClockProxy.elapsedRealtime() - startMillis;
+                if (waitedMillis > 0) {
+                    record("await " + mName, startMillis, waitedMillis);
+                }
+            }
+        }
+    }
+
+    private static final class Record {
+        final String mName;
+        final String mThreadName;
+        final long mStartOffsetMillis;
+        final long mDurationMillis;
+
+        Record(String name, String threadName, long startOffsetMillis, long durationMillis) {
+            mName = name;
+            mThreadName = threadName;
+            mStartOffsetMillis = startOffsetMillis;
+            mDurationMillis = durationMillis;
+        }
+    }
+
+    private final ClockProxy mClockProxy;
+    private final Executor mAsyncExecutor;
+    private final long mStartMillis;
+    // Guarded by itself.
+    private final List<Record> mRecords = new ArrayList<>();
+    private volatile long mTotalMillis = -1;
+
+    /**
+     * @param clockProxy Used to time each component.
+     * @param asyncExecutor Where {@link #runAsync} builds components; a direct executor builds
+     *                      them in order, as {@link #run} would.
+     */
+    public TelecomStartup(ClockProxy clockProxy, Executor asyncExecutor) {
+        mClockProxy = clockProxy;
+        mAsyncExecutor = asyncExecutor;
+        mStartMillis = clockProxy.elapsedRealtime();
+    }
+
+    /**
+     * Builds a component on the calling thread.
+     */
+    public <T> T run(String name, Supplier<T> init) {
+        long startMillis = mClockProxy.elapsedRealtime();
+        try {
+            return init.get();
+        } finally {
+            record(name, startMillis, mClockProxy.elapsedRealtime() - startMillis);
+        }
+    }
+
+    /**
+     * Starts building a component on the async executor.
+     * @return The {@link Step} to get the component from once it is needed.
+     */
+    public <T> Step<T> runAsync(String name, Supplier<T> init) {
+        return new Step<>(name, CompletableFuture.supplyAsync(() -> run(name, init),
+                mAsyncExecutor));
+    }
+
+    /**
+     * Marks the end of startup.
+     */
+    public void finish() {
+        mTotalMillis = mClockProxy.elapsedRealtime() - mStartMillis;
+        Log.i(TAG, "finish: startup took %d ms", mTotalMillis);
+    }
+
+    private void record(String name, long startMillis, long durationMillis) {
+        Record record = new Record(name, Thread.currentThread().getName(),
+                startMillis - mStartMillis, durationMillis);
+        synchronized (mRecords) {
+            mRecords.add(record);
+        }
+    }
+
+    /**
+     * @return How long the named component took to build, or -1 if it has not been built.
+     */
+    @VisibleForTesting
+    public long getDurationMillis(String name) {
+        synchronized (mRecords) {
+            for (Record record : mRecords) {
+                if (record.mName.equals(name)) {
+                    return record.mDurationMillis;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println("total=" + (mTotalMillis < 0 ? "in progress" : mTotalMillis + "ms"));
+        List<Record> records;
+        synchronized (mRecords) {
+            records = new ArrayList<>(mRecords);
+        }
+        // Recorded as each component finishes; show them in the order they started.
+        records.sort(Comparator.comparingLong(r -> r.mStartOffsetMillis));
+        pw.increaseIndent();
+        for (Record record : records) {
+            pw.println(String.format("+%dms %s: %dms [%s]", record.mStartOffsetMillis,
+                    record.mName, record.mDurationMillis, record.mThreadName));
+        }
+        pw.decreaseIndent();
+    }
+}
@@ -44,6 +44,7 @@ import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
 import com.android.server.telecom.bluetooth.BluetoothRouteManager;
 import com.android.server.telecom.bluetooth.BluetoothStateReceiver;
 import com.android.server.telecom.callfiltering.BlockedNumbersAdapter;
+import com.android.server.telecom.callfiltering.CallFilterEngine;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
 import com.android.server.telecom.components.UserCallIntentProcessor;
 import com.android.server.telecom.components.UserCallIntentProcessorFactory;
@@ -139,6 +140,7 @@ public class TelecomSystem {
     private final ContactsAsyncHelper mContactsAsyncHelper;
     private final DialerCodeReceiver mDialerCodeReceiver;
     private final FeatureFlags mFeatureFlags;
+    private final TelecomStartup mStartup;
 
     private boolean mIsBootComplete = false;
 
@@ -231,21 +233,34 @@ public class TelecomSystem {
             com.android.internal.telephony.flags.FeatureFlags telephonyFlags) {
         mContext = context.getApplicationContext();
         mFeatureFlags = featureFlags;
+        if (mFeatureFlags.cacheTimeouts()) {
+            Timeouts.setCache(new TimeoutsCache(mContext));
+        }
         LogUtils.initLogging(mContext);
         android.telecom.Log.setLock(mLock);
         AnomalyReporter.initialize(mContext);
+        // The registrar reads its accounts from disk; with parallel startup that overlaps with
+        // building the components which don't need it.
+        mStartup = new TelecomStartup(clockProxy, mFeatureFlags.parallelTelecomStartup()
+                ? TelecomWorkerPool.getInstance().newSerialExecutor("TS.init",
+                        TelecomWorkerPool.LANE_BACKGROUND)
+                : Runnable::run);
         DefaultDialerManagerAdapter defaultDialerAdapter =
                 new DefaultDialerCache.DefaultDialerManagerAdapterImpl();
 
-        DefaultDialerCache defaultDialerCache = new DefaultDialerCache(mContext,
-                defaultDialerAdapter, roleManagerAdapter, mLock);
+        DefaultDialerCache defaultDialerCache = mStartup.run("DefaultDialerCache",
+                () -> new DefaultDialerCache(mContext, defaultDialerAdapter, roleManagerAdapter,
+                        mLock));
 
         Log.startSession("TS.init");
         // Wrap this in a try block to ensure session cleanup occurs in the case of error.
         try {
-            mPhoneAccountRegistrar = new PhoneAccountRegistrar(mContext, mLock, defaultDialerCache,
-                    packageName -> AppLabelProxy.Util.getAppLabel(
-                            mContext.getPackageManager(), packageName), null, mFeatureFlags);
+            TelecomStartup.Step<PhoneAccountRegistrar> phoneAccountRegistrarStep =
+                    mStartup.runAsync("PhoneAccountRegistrar",
+                            () -> new PhoneAccountRegistrar(mContext, mLock, defaultDialerCache,
+                                    packageName -> AppLabelProxy.Util.getAppLabel(
+                                            mContext.getPackageManager(), packageName), null,
+                                    mFeatureFlags));
 
             mContactsAsyncHelper = contactsAsyncHelperFactory.create(
                     new ContactsAsyncHelper.ContentResolverAdapter() {
@@ -257,12 +272,13 @@ public class TelecomSystem {
                     });
             CallAudioCommunicationDeviceTracker communicationDeviceTracker = new
                     CallAudioCommunicationDeviceTracker(mContext);
-            BluetoothDeviceManager bluetoothDeviceManager = new BluetoothDeviceManager(mContext,
-                    mContext.getSystemService(BluetoothManager.class).getAdapter(),
-                    communicationDeviceTracker, featureFlags);
-            BluetoothRouteManager bluetoothRouteManager = new BluetoothRouteManager(mContext, mLock,
-                    bluetoothDeviceManager, new Timeouts.Adapter(),
-                    communicationDeviceTracker, featureFlags);
+            BluetoothDeviceManager bluetoothDeviceManager = mStartup.run("BluetoothDeviceManager",
+                    () -> new BluetoothDeviceManager(mContext,
+                            mContext.getSystemService(BluetoothManager.class).getAdapter(),
+                            communicationDeviceTracker, featureFlags));
+            BluetoothRouteManager bluetoothRouteManager = mStartup.run("BluetoothRouteManager",
+                    () -> new BluetoothRouteManager(mContext, mLock, bluetoothDeviceManager,
+                            new Timeouts.Adapter(), communicationDeviceTracker, featureFlags));
             BluetoothStateReceiver bluetoothStateReceiver = new BluetoothStateReceiver(
                     bluetoothDeviceManager, bluetoothRouteManager,
                     communicationDeviceTracker, featureFlags);
@@ -272,6 +288,8 @@ public class TelecomSystem {
             WiredHeadsetManager wiredHeadsetManager = new WiredHeadsetManager(mContext);
             SystemStateHelper systemStateHelper = new SystemStateHelper(mContext, mLock);
 
+            // Everything from here on needs the registrar, directly or through CallsManager.
+            mPhoneAccountRegistrar = phoneAccountRegistrarStep.get();
             mMissedCallNotifier = missedCallNotifierImplFactory
                     .makeMissedCallNotifierImpl(mContext, mPhoneAccountRegistrar,
                             defaultDialerCache,
@@ -282,7 +300,8 @@ public class TelecomSystem {
 
             CallerInfoLookupHelper callerInfoLookupHelper =
                     new CallerInfoLookupHelper(context, callerInfoAsyncQueryFactory,
-                            mContactsAsyncHelper, mLock);
+                            mContactsAsyncHelper, mLock, featureFlags.cacheCallerInfo()
+                                    ? new CallerInfoCache(mContext) : null);
 
             EmergencyCallHelper emergencyCallHelper = new EmergencyCallHelper(mContext,
                     defaultDialerCache, timeoutsAdapter);
@@ -309,6 +328,7 @@ public class TelecomSystem {
             };
 
             CallDiagnosticServiceController callDiagnosticServiceController =
+                    mStartup.run("CallDiagnosticServiceController", () ->
                     new CallDiagnosticServiceController(
                             new CallDiagnosticServiceController.ContextProxy() {
                                 @Override
@@ -339,7 +359,7 @@ public class TelecomSystem {
                                     com.android.server.telecom.R.string
                                             .call_diagnostic_service_package_name),
                             mLock
-                    );
+                    ));
 
             AudioProcessingNotification audioProcessingNotification =
                     new AudioProcessingNotification(mContext);
@@ -373,8 +393,10 @@ public class TelecomSystem {
                             BugreportManager.class), timeoutsAdapter, mContext.getSystemService(
                             DropBoxManager.class), asyncTaskExecutor, clockProxy);
 
-            CallAnomalyWatchdog callAnomalyWatchdog = new CallAnomalyWatchdog(
-                    Executors.newSingleThreadScheduledExecutor(),
+            TelecomTimerService timerService = new TelecomTimerService(
+                    Executors.newSingleThreadScheduledExecutor(), clockProxy);
+
+            CallAnomalyWatchdog callAnomalyWatchdog = new CallAnomalyWatchdog(timerService,
                     mLock, timeoutsAdapter, clockProxy, emergencyCallDiagnosticLogger);
 
             TransactionManager transactionManager = TransactionManager.getInstance();
@@ -384,7 +406,7 @@ public class TelecomSystem {
                             packageName -> AppLabelProxy.Util.getAppLabel(
                                     mContext.getPackageManager(), packageName), asyncTaskExecutor);
 
-            mCallsManager = new CallsManager(
+            mCallsManager = mStartup.run("CallsManager", () -> new CallsManager(
                     mContext,
                     mLock,
                     callerInfoLookupHelper,
@@ -416,6 +438,7 @@ public class TelecomSystem {
                     toastFactory,
                     callEndpointControllerFactory,
                     callAnomalyWatchdog,
+                    timerService,
                     accessibilityManagerAdapter,
                     asyncTaskExecutor,
                     asyncCallAudioTaskExecutor,
@@ -427,7 +450,11 @@ public class TelecomSystem {
                     bluetoothDeviceManager,
                     featureFlags,
                     telephonyFlags,
-                    IncomingCallFilterGraph::new);
+                    featureFlags.sharedCallFilterEngine()
+                            ? (call, listener, graphContext, timeouts, syncRoot) ->
+                                    new IncomingCallFilterGraph(call, listener, graphContext,
+                                            timeouts, syncRoot, CallFilterEngine.getInstance())
+                            : IncomingCallFilterGraph::new));
 
             mIncomingCallNotifier = incomingCallNotifier;
             incomingCallNotifier.setCallsManagerProxy(new IncomingCallNotifier.CallsManagerProxy() {
@@ -481,7 +508,7 @@ public class TelecomSystem {
                     Manifest.permission.CONTROL_INCALL_EXPERIENCE, null);
 
             // There is no USER_SWITCHED broadcast for user 0, handle it here explicitly.
-            mTelecomServiceImpl = new TelecomServiceImpl(
+            mTelecomServiceImpl = mStartup.run("TelecomServiceImpl", () -> new TelecomServiceImpl(
                     mContext, mCallsManager, mPhoneAccountRegistrar,
                     new CallIntentProcessor.AdapterImpl(defaultDialerCache),
                     new UserCallIntentProcessorFactory() {
@@ -496,7 +523,9 @@ public class TelecomSystem {
                     new TelecomServiceImpl.SettingsSecureAdapterImpl(),
                     featureFlags,
                     null,
-                    mLock);
+                    mLock));
+            mTelecomServiceImpl.setStartup(mStartup);
+            mStartup.finish();
         } finally {
             Log.endSession();
         }
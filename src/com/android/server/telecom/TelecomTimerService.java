@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the timeouts Telecom tracks for calls on a single hashed timing wheel.
+ * <p>
+ * Each {@link Timer} is created once by its owner and can then be scheduled, re-scheduled and
+ * cancelled any number of times; none of these allocate, and all are O(1). The wheel is advanced
+ * by a task on a {@link ScheduledExecutorService} which only runs while a timer is pending, and
+ * fires a timer on the first tick at or after its deadline, so timers fire up to one tick late.
+ * Timer actions run on the executor's thread, outside of the wheel's lock.
+ */
+@VisibleForTesting
+public class TelecomTimerService {
+    private static final String TAG = TelecomTimerService.class.getSimpleName();
+    public static final long DEFAULT_TICK_MILLIS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * A timeout which can be armed repeatedly. A timer is only ever in one slot of the wheel.
+     */
+    public static class Timer {
+        private final TelecomTimerService mService;
+        private final String mOwner;
+        private final String mName;
+        private final Runnable mAction;
+        // Guarded by mService.mLock.
+        private Timer mPrev;
+        private Timer mNext;
+        private int mSlot = -1;
+        private long mDeadlineMillis;
+
+        private Timer(TelecomTimerService service, String owner, String name, Runnable action) {
+            mService = service;
+            mOwner = owner;
+            mName = name;
+            mAction = action;
+        }
+
+        /**
+         * Arms the timer to fire after {@code delayMillis}, replacing any pending deadline.
+         */
+        public void schedule(long delayMillis) {
+            mService.schedule(this, delayMillis);
+        }
+
+        /**
+         * Disarms the timer; does nothing if it is not pending.
+         */
+        public void cancel() {
+            mService.cancel(this);
+        }
+
+        public boolean isPending() {
+            synchronized (mService.mLock) {
+                return mSlot >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mOwner + "/" + mName;
+        }
+    }
+
+    private final ScheduledExecutorService mExecutor;
+    private final ClockProxy mClockProxy;
+    private final long mTickMillis;
+    private final Object mLock = new Object();
+    // Heads of the doubly linked list of timers in each slot.
+    private final Timer[] mSlots;
+    private final Runnable mTickRunnable = this::tick;
+    // The last tick the wheel has been advanced to; its slot may still hold later timers.
+    private long mCurrentTick;
+    private int mPendingCount;
+    private boolean mIsTickScheduled;
+    private long mFiredCount;
+
+    public TelecomTimerService(ScheduledExecutorService executor, ClockProxy clockProxy) {
+        this(executor, clockProxy, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public TelecomTimerService(ScheduledExecutorService executor, ClockProxy clockProxy,
+            long tickMillis, int wheelSize) {
+        mExecutor = executor;
+        mClockProxy = clockProxy;
+        mTickMillis = tickMillis;
+        mSlots = new Timer[wheelSize];
+        mCurrentTick = clockProxy.elapsedRealtime() / tickMillis;
+    }
+
+    /**
+     * Creates a timer; it is not scheduled until {@link Timer#schedule} is called.
+     * @param owner The component the timer belongs to, for dumps.
+     * @param name What the timer is for, e.g. a call ID, for dumps.
+     * @param action Run on the timer thread when the timer fires.
+     */
+    public Timer newTimer(String owner, String name, Runnable action) {
+        return new Timer(this, owner, name, action);
+    }
+
+    private void schedule(Timer timer, long delayMillis) {
+        synchronized (mLock) {
+            unlink(timer);
+            long now = mClockProxy.elapsedRealtime();
+            if (mPendingCount == 0) {
+                // The wheel has been idle; there is nothing to catch up on.
+                mCurrentTick = now / mTickMillis;
+            }
+            timer.mDeadlineMillis = now + Math.max(0, delayMillis);
+            // Never put a timer behind the current tick, or it would wait a whole revolution.
+            long tick = Math.max(mCurrentTick, timer.mDeadlineMillis / mTickMillis);
+            link(timer, (int) (tick % mSlots.length));
+            if (!mIsTickScheduled) {
+                mIsTickScheduled = true;
+                mExecutor.schedule(mTickRunnable, mTickMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void cancel(Timer timer) {
+        synchronized (mLock) {
+            unlink(timer);
+        }
+    }
+
+    /**
+     * Advances the wheel to the current time and runs every timer which has expired.
+     */
+    private void tick() {
+        List<Timer> expired = null;
+        synchronized (mLock) {
+            long now = mClockProxy.elapsedRealtime();
+            long nowTick = now / mTickMillis;
+            // Once a full revolution has passed, every slot has been visited.
+            long lastTick = Math.min(nowTick, mCurrentTick + mSlots.length - 1);
+            for (long tick = mCurrentTick; tick <= lastTick; tick++) {
+                Timer timer = mSlots[(int) (tick % mSlots.length)];
+                while (timer != null) {
+                    Timer next = timer.mNext;
+                    // Timers more than a revolution away share the slot; leave them be.
+                    if (timer.mDeadlineMillis <= now) {
+                        unlink(timer);
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timer);
+                    }
+                    timer = next;
+                }
+            }
+            mCurrentTick = Math.max(mCurrentTick, nowTick);
+            if (expired != null) {
+                mFiredCount += expired.size();
+            }
+            mIsTickScheduled = mPendingCount > 0;
+            if (mIsTickScheduled) {
+                mExecutor.schedule(mTickRunnable, mTickMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (expired != null) {
+            for (Timer timer : expired) {
+                try {
+                    timer.mAction.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, e, "tick: %s failed", timer);
+                }
+            }
+        }
+    }
+
+    private void link(Timer timer, int slot) {
+        timer.mSlot = slot;
+        timer.mPrev = null;
+        timer.mNext = mSlots[slot];
+        if (timer.mNext != null) {
+            timer.mNext.mPrev = timer;
+        }
+        mSlots[slot] = timer;
+        mPendingCount++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.mSlot < 0) {
+            return;
+        }
+        if (timer.mPrev != null) {
+            timer.mPrev.mNext = timer.mNext;
+        } else {
+            mSlots[timer.mSlot] = timer.mNext;
+        }
+        if (timer.mNext != null) {
+            timer.mNext.mPrev = timer.mPrev;
+        }
+        timer.mPrev = null;
+        timer.mNext = null;
+        timer.mSlot = -1;
+        mPendingCount--;
+    }
+
+    @VisibleForTesting
+    public int getPendingCount() {
+        synchronized (mLock) {
+            return mPendingCount;
+        }
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            long now = mClockProxy.elapsedRealtime();
+            pw.println("TelecomTimerService: tick=" + mTickMillis + "ms, slots=" + mSlots.length
+                    + ", pending=" + mPendingCount + ", fired=" + mFiredCount);
+            List<Timer> pending = new ArrayList<>(mPendingCount);
+            for (Timer head : mSlots) {
+                for (Timer timer = head; timer != null; timer = timer.mNext) {
+                    pending.add(timer);
+                }
+            }
+            pending.sort(Comparator.comparingLong(timer -> timer.mDeadlineMillis));
+            pw.increaseIndent();
+            for (Timer timer : pending) {
+                pw.println(timer + ": deadline=" + timer.mDeadlineMillis + " (in "
+                        + (timer.mDeadlineMillis - now) + "ms)");
+            }
+            pw.decreaseIndent();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.os.SystemClock;
+import android.telecom.Log;
+import android.telecom.Logging.Runnable;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, bounded pool of threads shared by Telecom's short background jobs, so that work such
+ * as a block check or a location query does not start a thread of its own.
+ * <p>
+ * Work is submitted through named {@link SerialExecutor}s, each of which runs its tasks one at a
+ * time in the order they were submitted, much like a {@link android.os.HandlerThread} would. Each
+ * serial executor belongs to a lane; when threads are scarce, queued work in
+ * {@link #LANE_AUDIO} always runs before queued work in {@link #LANE_BACKGROUND}. Threads are
+ * started on demand and stop again once idle. Queue depth, queueing latency and run time are kept
+ * per lane for dumpsys.
+ */
+public class TelecomWorkerPool {
+    private static final String TAG = TelecomWorkerPool.class.getSimpleName();
+    private static final int DEFAULT_POOL_SIZE = 2;
+    private static final long KEEP_ALIVE_MILLIS = 10_000;
+    private static final long[] QUEUE_LATENCY_BUCKETS_MILLIS = {1, 5, 10, 50, 100, 500, 1000};
+
+    /** Ringing and audio work, which is noticeable to the user if it runs late. */
+    public static final int LANE_AUDIO = 0;
+    /** Everything else. */
+    public static final int LANE_BACKGROUND = 1;
+    private static final String[] LANE_NAMES = {"audio", "background"};
+
+    private static TelecomWorkerPool INSTANCE = null;
+    private static final Object sLock = new Object();
+
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mNextSequence = new AtomicLong(0);
+    private final Lane[] mLanes = new Lane[LANE_NAMES.length];
+    /** Tasks run, keyed by the name of the serial executor which ran them. */
+    private final Map<String, AtomicLong> mTasksRunByName = new ConcurrentHashMap<>();
+
+    private static class Lane {
+        final AtomicInteger mDepth = new AtomicInteger(0);
+        final AtomicInteger mMaxDepth = new AtomicInteger(0);
+        final LatencyHistogram mQueueLatency = new LatencyHistogram(QUEUE_LATENCY_BUCKETS_MILLIS);
+        final LatencyHistogram mRunTime = new LatencyHistogram();
+
+        void onQueued() {
+            int depth = mDepth.incrementAndGet();
+            mMaxDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        void onStarted(long queuedMillis) {
+            mDepth.decrementAndGet();
+            mQueueLatency.record(queuedMillis);
+        }
+    }
+
+    /**
+     * Runs one task from a {@link SerialExecutor}. Turns are ordered by lane, and then by the
+     * order they were queued in, so serial executors in the same lane take turns fairly.
+     */
+    private static class Turn implements java.lang.Runnable, Comparable<Turn> {
+        final SerialExecutor mSerialExecutor;
+        final long mSequence;
+
+        Turn(SerialExecutor serialExecutor, long sequence) {
+            mSerialExecutor = serialExecutor;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mSerialExecutor.runNext();
+        }
+
+        @Override
+        public int compareTo(Turn other) {
+            int byLane = Integer.compare(mSerialExecutor.mLane, other.mSerialExecutor.mLane);
+            return byLane != 0 ? byLane : Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private static class Task {
+        final java.lang.Runnable mCommand;
+        final long mQueuedAtMillis;
+
+        Task(java.lang.Runnable command, long queuedAtMillis) {
+            mCommand = command;
+            mQueuedAtMillis = queuedAtMillis;
+        }
+    }
+
+    /**
+     * An {@link Executor} which runs its tasks on the shared pool, one at a time and in the order
+     * they were submitted. Creating one is cheap; it holds no thread of its own.
+     */
+    public final class SerialExecutor implements Executor {
+        private final String mName;
+        private final int mLane;
+        private final ArrayDeque<Task> mTasks = new ArrayDeque<>();
+        // Guarded by mTasks; true while a turn is queued or running.
+        private boolean mIsScheduled = false;
+
+        private SerialExecutor(String name, int lane) {
+            mName = name;
+            mLane = lane;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        @Override
+        public void execute(java.lang.Runnable command) {
+            Task task = new Task(new Runnable(mName, null) {
+                @Override
+                public void loggedRun() {
+                    command.run();
+                }
+            }.prepare(), SystemClock.elapsedRealtime());
+            mLanes[mLane].onQueued();
+            synchronized (mTasks) {
+                mTasks.add(task);
+                if (mIsScheduled) {
+                    return;
+                }
+                mIsScheduled = true;
+            }
+            scheduleTurn(this);
+        }
+
+        private void runNext() {
+            Task task;
+            synchronized (mTasks) {
+                task = mTasks.poll();
+            }
+            Lane lane = mLanes[mLane];
+            long startMillis = SystemClock.elapsedRealtime();
+            lane.onStarted(startMillis - task.mQueuedAtMillis);
+            try {
+                task.mCommand.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, e, "Task on %s threw", mName);
+            } finally {
+                lane.mRunTime.record(SystemClock.elapsedRealtime() - startMillis);
+                mTasksRunByName.computeIfAbsent(mName, k -> new AtomicLong()).incrementAndGet();
+                boolean hasMore;
+                synchronized (mTasks) {
+                    hasMore = !mTasks.isEmpty();
+                    mIsScheduled = hasMore;
+                }
+                if (hasMore) {
+                    // Queue behind the other work in the lane rather than draining this
+                    // executor, so a busy executor cannot starve the others.
+                    scheduleTurn(this);
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    public TelecomWorkerPool(int poolSize) {
+        for (int i = 0; i < mLanes.length; i++) {
+            mLanes[i] = new Lane();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_MILLIS,
+                TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(),
+                r -> new Thread(r, TAG + "-" + threadCount.getAndIncrement()));
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static TelecomWorkerPool getInstance() {
+        synchronized (sLock) {
+            if (INSTANCE == null) {
+                INSTANCE = new TelecomWorkerPool(DEFAULT_POOL_SIZE);
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * @param name The name of the executor, used as the log session name of its tasks and to
+     *             attribute its work in dumpsys.
+     * @param lane {@link #LANE_AUDIO} or {@link #LANE_BACKGROUND}.
+     * @return A new {@link SerialExecutor} running on this pool.
+     */
+    public SerialExecutor newSerialExecutor(String name, int lane) {
+        if (lane < 0 || lane >= mLanes.length) {
+            throw new IllegalArgumentException("Unknown lane " + lane);
+        }
+        return new SerialExecutor(name, lane);
+    }
+
+    private void scheduleTurn(SerialExecutor serialExecutor) {
+        mExecutor.execute(new Turn(serialExecutor, mNextSequence.getAndIncrement()));
+    }
+
+    /**
+     * @return The number of tasks in {@code lane} which are waiting to run.
+     */
+    @VisibleForTesting
+    public int getQueueDepth(int lane) {
+        return mLanes[lane].mDepth.get();
+    }
+
+    @VisibleForTesting
+    public int getMaxQueueDepth(int lane) {
+        return mLanes[lane].mMaxDepth.get();
+    }
+
+    /**
+     * @return How long tasks in {@code lane} waited between being submitted and starting to run.
+     */
+    @VisibleForTesting
+    public LatencyHistogram getQueueLatency(int lane) {
+        return mLanes[lane].mQueueLatency;
+    }
+
+    /**
+     * @return The most threads this pool has had running at once.
+     */
+    @VisibleForTesting
+    public int getLargestPoolSize() {
+        return mExecutor.getLargestPoolSize();
+    }
+
+    /**
+     * Stops the pool; only used by tests which create their own pool.
+     */
+    @VisibleForTesting
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("threads=%d/%d, largest=%d, active=%d",
+                mExecutor.getPoolSize(), mExecutor.getMaximumPoolSize(),
+                mExecutor.getLargestPoolSize(), mExecutor.getActiveCount()));
+        for (int i = 0; i < mLanes.length; i++) {
+            Lane lane = mLanes[i];
+            pw.println(LANE_NAMES[i] + ": depth=" + lane.mDepth.get() + ", maxDepth="
+                    + lane.mMaxDepth.get());
+            pw.increaseIndent();
+            pw.println("queued: " + lane.mQueueLatency);
+            pw.println("run: " + lane.mRunTime);
+            pw.decreaseIndent();
+        }
+        pw.println("tasks run:");
+        pw.increaseIndent();
+        new TreeMap<>(mTasksRunByName).forEach((name, count) ->
+                pw.println(name + ": " + count.get()));
+        pw.decreaseIndent();
+    }
+}
@@ -24,6 +24,8 @@ import android.telecom.CallDiagnostics;
 import android.telecom.CallRedirectionService;
 import android.telephony.ims.ImsReasonInfo;
 
+import com.android.internal.annotations.VisibleForTesting;
+
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,6 +43,10 @@ public final class Timeouts {
             return Timeouts.getCallScreeningTimeoutMillis(cr);
         }
 
+        public long getCallFilterTimeoutMillis(ContentResolver cr) {
+            return Timeouts.getCallFilterTimeoutMillis(cr);
+        }
+
         public long getCallBindBluetoothInCallServicesDelay(ContentResolver cr) {
             return Timeouts.getCallBindBluetoothInCallServicesDelay(cr);
         }
@@ -218,9 +224,25 @@ public final class Timeouts {
     private static final String INTERMEDIATE_STATE_NON_VOIP_EMERGENCY_TIMEOUT_MILLIS =
             "intermediate_state_non_voip_emergency_timeout_millis";
 
+    /** When set, values are served from this cache rather than read from settings each time. */
+    private static volatile TimeoutsCache sCache;
+
     private Timeouts() {
     }
 
+    /**
+     * Sets the cache used to look up timeout values, or {@code null} to read them from settings
+     * on every lookup.
+     */
+    @VisibleForTesting
+    public static void setCache(TimeoutsCache cache) {
+        sCache = cache;
+    }
+
+    public static TimeoutsCache getCache() {
+        return sCache;
+    }
+
     /**
      * Returns the timeout value from Settings or the default value if it hasn't been changed. This
      * method is safe to call from any thread, including the UI thread.
@@ -231,10 +253,30 @@ public final class Timeouts {
      * @return The timeout value from Settings or the default value if it hasn't been changed.
      */
     private static long get(ContentResolver contentResolver, String key, long defaultValue) {
+        TimeoutsCache cache = sCache;
+        if (cache != null) {
+            return cache.getSecureLong(contentResolver, PREFIX + key, defaultValue);
+        }
         return Settings.Secure.getLongForUser(contentResolver, PREFIX + key, defaultValue,
                         contentResolver.getUserId());
     }
 
+    private static long getDeviceConfigLong(String namespace, String name, long defaultValue) {
+        TimeoutsCache cache = sCache;
+        if (cache != null) {
+            return cache.getDeviceConfigLong(namespace, name, defaultValue);
+        }
+        return DeviceConfig.getLong(namespace, name, defaultValue);
+    }
+
+    private static int getDeviceConfigInt(String namespace, String name, int defaultValue) {
+        TimeoutsCache cache = sCache;
+        if (cache != null) {
+            return cache.getDeviceConfigInt(namespace, name, defaultValue);
+        }
+        return DeviceConfig.getInt(namespace, name, defaultValue);
+    }
+
     /**
      * Returns the amount of time to wait before disconnecting a call that was canceled via
      * NEW_OUTGOING_CALL broadcast. This timeout allows apps which repost the call using a gateway
@@ -329,6 +371,16 @@ public final class Timeouts {
         return get(contentResolver, "call_screening_timeout", 5000L /* 5 seconds */);
     }
 
+    /**
+     * Returns the amount of time a single incoming call filter is given before the remaining
+     * filters proceed without its result. Not set by default, in which case a filter may use
+     * whatever remains of {@link #getCallScreeningTimeoutMillis}; a filter is never given longer
+     * than that.
+     */
+    public static long getCallFilterTimeoutMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "call_filter_timeout", 0L /* not set */);
+    }
+
     /**
      * Returns the amount of time after an emergency call that incoming calls should be treated
      * as potential emergency callbacks.
@@ -375,13 +427,21 @@ public final class Timeouts {
         return get(contentResolver, "call_diagnostic_service_timeout", 2000L /* 2 sec */);
     }
 
+    /**
+     * Returns the amount of time {@link PhoneAccountRegistrar} waits after a change before it
+     * persists its state, so that bursts of changes are written out together.
+     */
+    public static long getPhoneAccountWriteDelayMillis(ContentResolver contentResolver) {
+        return get(contentResolver, "phone_account_write_delay_millis", 500L /* 500 ms */);
+    }
+
     /**
      * Returns the duration of time a VoIP call can be in a transitory state before Telecom will
      * try to clean up the call.
      * @return the state timeout in millis.
      */
     public static long getVoipCallTransitoryStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 TRANSITORY_STATE_VOIP_NORMAL_TIMEOUT_MILLIS, 5000L);
     }
 
@@ -392,7 +452,7 @@ public final class Timeouts {
      * @return the threshold in milliseconds
      */
     public static long getEmergencyCallTimeBeforeUserDisconnectThresholdMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 EMERGENCY_CALL_TIME_BEFORE_USER_DISCONNECT_THRESHOLD_MILLIS, 20000L);
     }
 
@@ -402,7 +462,7 @@ public final class Timeouts {
      * @return the threshold in milliseconds
      */
     public static long getEmergencyCallActiveTimeThresholdMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 EMERGENCY_CALL_ACTIVE_TIME_THRESHOLD_MILLIS, 15000L);
     }
 
@@ -411,7 +471,7 @@ public final class Timeouts {
      * data. Entries older than this are ignored
      */
     public static int getDaysBackToSearchEmergencyDiagnosticEntries() {
-        return DeviceConfig.getInt(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigInt(DeviceConfig.NAMESPACE_TELEPHONY,
                 DAYS_BACK_TO_SEARCH_EMERGENCY_DROP_BOX_ENTRIES, 30);
     }
 
@@ -421,7 +481,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getVoipEmergencyCallTransitoryStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 TRANSITORY_STATE_VOIP_EMERGENCY_TIMEOUT_MILLIS, 5000L);
     }
 
@@ -431,7 +491,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getNonVoipCallTransitoryStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 TRANSITORY_STATE_NON_VOIP_NORMAL_TIMEOUT_MILLIS, 10000L);
     }
 
@@ -441,7 +501,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getNonVoipEmergencyCallTransitoryStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 TRANSITORY_STATE_NON_VOIP_EMERGENCY_TIMEOUT_MILLIS, 10000L);
     }
 
@@ -451,7 +511,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getVoipCallIntermediateStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 INTERMEDIATE_STATE_VOIP_NORMAL_TIMEOUT_MILLIS, 60000L);
     }
 
@@ -461,7 +521,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getVoipEmergencyCallIntermediateStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 INTERMEDIATE_STATE_VOIP_EMERGENCY_TIMEOUT_MILLIS, 60000L);
     }
 
@@ -471,7 +531,7 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getNonVoipCallIntermediateStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 INTERMEDIATE_STATE_NON_VOIP_NORMAL_TIMEOUT_MILLIS, 120000L);
     }
 
@@ -481,12 +541,12 @@ public final class Timeouts {
      * @return the state timeout in millis.
      */
     public static long getNonVoipEmergencyCallIntermediateStateTimeoutMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_TELEPHONY,
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_TELEPHONY,
                 INTERMEDIATE_STATE_NON_VOIP_EMERGENCY_TIMEOUT_MILLIS, 60000L);
     }
 
     public static long getCallStartAppOpDebounceIntervalMillis() {
-        return DeviceConfig.getLong(DeviceConfig.NAMESPACE_PRIVACY, "app_op_debounce_time", 250L);
+        return getDeviceConfigLong(DeviceConfig.NAMESPACE_PRIVACY, "app_op_debounce_time", 250L);
     }
 
     /**
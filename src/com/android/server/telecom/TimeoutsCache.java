@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.UserHandle;
+import android.provider.DeviceConfig;
+import android.provider.Settings;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the values {@link Timeouts} reads from {@link Settings.Secure} and {@link DeviceConfig},
+ * so that timeouts looked up while setting up and tracking calls do not each go to the settings
+ * provider. A value is read the first time it is needed and then served from memory until a
+ * {@link ContentObserver} on {@link Settings.Secure}, or a {@link DeviceConfig} listener on the
+ * namespace it came from, reports that it changed.
+ * <p>
+ * Settings values are cached per user, as {@link Timeouts} reads them for the user of the
+ * {@link ContentResolver} it is given. Safe to use from any thread.
+ */
+@VisibleForTesting
+public class TimeoutsCache {
+    /**
+     * Reads raw values from settings; replaced in tests.
+     */
+    @VisibleForTesting
+    public interface Reader {
+        String getSecureSetting(ContentResolver contentResolver, String name, int userId);
+        String getDeviceConfigProperty(String namespace, String name);
+        void addDeviceConfigListener(String namespace,
+                DeviceConfig.OnPropertiesChangedListener listener);
+    }
+
+    /**
+     * Reads values from {@link Settings.Secure} and {@link DeviceConfig}.
+     */
+    @VisibleForTesting
+    public static class SettingsReader implements Reader {
+        @Override
+        public String getSecureSetting(ContentResolver contentResolver, String name, int userId) {
+            return Settings.Secure.getStringForUser(contentResolver, name, userId);
+        }
+
+        @Override
+        public String getDeviceConfigProperty(String namespace, String name) {
+            return DeviceConfig.getProperty(namespace, name);
+        }
+
+        @Override
+        public void addDeviceConfigListener(String namespace,
+                DeviceConfig.OnPropertiesChangedListener listener) {
+            DeviceConfig.addOnPropertiesChangedListener(namespace, Runnable::run, listener);
+        }
+    }
+
+    private final Reader mReader;
+    /** Settings values keyed by user ID and then by name; empty if the setting is not set. */
+    private final Map<Integer, Map<String, Optional<String>>> mSettings =
+            new ConcurrentHashMap<>();
+    /** DeviceConfig values keyed by namespace and then by name. */
+    private final Map<String, Map<String, Optional<String>>> mDeviceConfig =
+            new ConcurrentHashMap<>();
+    /**
+     * Bumped on every invalidation, so a value read from settings concurrently with a change is
+     * not cached after the change has been processed.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    private final ContentObserver mSettingsObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Collection<Uri> uris, int flags,
+                UserHandle user) {
+            for (Uri uri : uris) {
+                onSettingChanged(uri, user.getIdentifier());
+            }
+        }
+    };
+
+    public TimeoutsCache(Context context) {
+        this(new SettingsReader());
+        context.getContentResolver().registerContentObserver(Settings.Secure.CONTENT_URI,
+                true /* notifyForDescendants */, mSettingsObserver, UserHandle.USER_ALL);
+    }
+
+    @VisibleForTesting
+    public TimeoutsCache(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Equivalent to {@link Settings.Secure#getLongForUser} for the user of the content resolver.
+     */
+    public long getSecureLong(ContentResolver contentResolver, String name, long defaultValue) {
+        int userId = contentResolver.getUserId();
+        Map<String, Optional<String>> values = mSettings.computeIfAbsent(userId,
+                k -> new ConcurrentHashMap<>());
+        Optional<String> value = values.get(name);
+        if (value == null) {
+            mMisses.incrementAndGet();
+            long generation = mGeneration.get();
+            value = Optional.ofNullable(mReader.getSecureSetting(contentResolver, name, userId));
+            cacheIfCurrent(values, name, value, generation);
+        } else {
+            mHits.incrementAndGet();
+        }
+        return parseLong(value, defaultValue);
+    }
+
+    /**
+     * Equivalent to {@link DeviceConfig#getLong(String, String, long)}.
+     */
+    public long getDeviceConfigLong(String namespace, String name, long defaultValue) {
+        return parseLong(getDeviceConfig(namespace, name), defaultValue);
+    }
+
+    /**
+     * Equivalent to {@link DeviceConfig#getInt(String, String, int)}.
+     */
+    public int getDeviceConfigInt(String namespace, String name, int defaultValue) {
+        Optional<String> value = getDeviceConfig(namespace, name);
+        try {
+            return value.isPresent() ? Integer.parseInt(value.get()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private Optional<String> getDeviceConfig(String namespace, String name) {
+        Map<String, Optional<String>> values = mDeviceConfig.get(namespace);
+        if (values == null) {
+            synchronized (mDeviceConfig) {
+                values = mDeviceConfig.get(namespace);
+                if (values == null) {
+                    values = new ConcurrentHashMap<>();
+                    mDeviceConfig.put(namespace, values);
+                    mReader.addDeviceConfigListener(namespace,
+                            properties -> onDeviceConfigChanged(properties.getNamespace(),
+                                    properties.getKeyset()));
+                }
+            }
+        }
+        Optional<String> value = values.get(name);
+        if (value == null) {
+            mMisses.incrementAndGet();
+            long generation = mGeneration.get();
+            value = Optional.ofNullable(mReader.getDeviceConfigProperty(namespace, name));
+            cacheIfCurrent(values, name, value, generation);
+        } else {
+            mHits.incrementAndGet();
+        }
+        return value;
+    }
+
+    private void cacheIfCurrent(Map<String, Optional<String>> values, String name,
+            Optional<String> value, long generation) {
+        if (generation != mGeneration.get()) {
+            return;
+        }
+        values.putIfAbsent(name, value);
+        if (generation != mGeneration.get()) {
+            // Invalidated while being cached; the value may be stale.
+            values.remove(name, value);
+        }
+    }
+
+    @VisibleForTesting
+    public void onSettingChanged(Uri uri, int userId) {
+        String name = uri == null ? null : uri.getLastPathSegment();
+        mGeneration.incrementAndGet();
+        if (name == null) {
+            // Unknown change; drop everything for the user.
+            mSettings.remove(userId);
+            return;
+        }
+        Map<String, Optional<String>> values = mSettings.get(userId);
+        if (values != null) {
+            values.remove(name);
+        }
+    }
+
+    @VisibleForTesting
+    public void onDeviceConfigChanged(String namespace, Set<String> names) {
+        mGeneration.incrementAndGet();
+        Map<String, Optional<String>> values = mDeviceConfig.get(namespace);
+        if (values != null) {
+            for (String name : names) {
+                values.remove(name);
+            }
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("TimeoutsCache: hits=%d, misses=%d, invalidations=%d",
+                mHits.get(), mMisses.get(), mGeneration.get()));
+    }
+
+    private static long parseLong(Optional<String> value, long defaultValue) {
+        try {
+            return value.isPresent() ? Long.parseLong(value.get()) : defaultValue;
+        } catch (NumberFormatException e) {
+            Log.w(TimeoutsCache.class.getSimpleName(), "Invalid timeout value %s", value.get());
+            return defaultValue;
+        }
+    }
+}
@@ -53,6 +53,7 @@ import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BluetoothRouteManager extends StateMachine {
     private static final String LOG_TAG = BluetoothRouteManager.class.getSimpleName();
@@ -126,6 +127,59 @@ public class BluetoothRouteManager extends StateMachine {
 
     private static final int MAX_CONNECTION_RETRIES = 2;
 
+    // Set as Message#arg1 on the CONNECT_BT and DISCONNECT_BT messages sent by
+    // connectBluetoothAudio and disconnectBluetoothAudio, which are counted in
+    // mPendingAudioRequests until they have been handled.
+    private static final int AUDIO_REQUEST = 1;
+
+    /**
+     * An immutable view of the state machine's current state, published on every transition so
+     * that it can be read from any thread without waiting on the state machine's looper.
+     */
+    public static final class AudioStateSnapshot {
+        public static final int STATE_OFF = 0;
+        public static final int STATE_CONNECTING = 1;
+        public static final int STATE_CONNECTED = 2;
+
+        private static final AudioStateSnapshot OFF = new AudioStateSnapshot(STATE_OFF, null);
+
+        private final int mState;
+        private final String mDeviceAddress;
+
+        private AudioStateSnapshot(int state, String deviceAddress) {
+            mState = state;
+            mDeviceAddress = deviceAddress;
+        }
+
+        /**
+         * @return One of {@link #STATE_OFF}, {@link #STATE_CONNECTING} or
+         * {@link #STATE_CONNECTED}.
+         */
+        public int getState() {
+            return mState;
+        }
+
+        /**
+         * @return The address of the device audio is connecting or connected to, or {@code null}
+         * if audio is off.
+         */
+        public String getDeviceAddress() {
+            return mDeviceAddress;
+        }
+
+        @Override
+        public String toString() {
+            switch (mState) {
+                case STATE_CONNECTING:
+                    return AUDIO_CONNECTING_STATE_NAME_PREFIX + ":" + mDeviceAddress;
+                case STATE_CONNECTED:
+                    return AUDIO_CONNECTED_STATE_NAME_PREFIX + ":" + mDeviceAddress;
+                default:
+                    return AUDIO_OFF_STATE_NAME;
+            }
+        }
+    }
+
     // States
     private final class AudioOffState extends State {
         @Override
@@ -135,6 +189,7 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            mAudioStateSnapshot = AudioStateSnapshot.OFF;
             BluetoothDevice erroneouslyConnectedDevice = getBluetoothAudioConnectedDevice();
             if (erroneouslyConnectedDevice != null &&
                 !erroneouslyConnectedDevice.equals(mHearingAidActiveDeviceCache)) {
@@ -259,6 +314,8 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            mAudioStateSnapshot = new AudioStateSnapshot(AudioStateSnapshot.STATE_CONNECTING,
+                    mDeviceAddress);
             SomeArgs args = SomeArgs.obtain();
             args.arg1 = Log.createSubsession();
             sendMessageDelayed(CONNECTION_TIMEOUT, args,
@@ -442,6 +499,8 @@ public class BluetoothRouteManager extends StateMachine {
 
         @Override
         public void enter() {
+            mAudioStateSnapshot = new AudioStateSnapshot(AudioStateSnapshot.STATE_CONNECTED,
+                    mDeviceAddress);
             // Remove any of the retries that are still in the queue once any device becomes
             // connected.
             removeMessages(RETRY_BT_CONNECTION);
@@ -601,6 +660,11 @@ public class BluetoothRouteManager extends StateMachine {
     private final TelecomSystem.SyncRoot mLock;
     private final Context mContext;
     private final Timeouts.Adapter mTimeoutsAdapter;
+    // Written only from the state machine's looper, as each state is entered.
+    private volatile AudioStateSnapshot mAudioStateSnapshot = AudioStateSnapshot.OFF;
+    // Connect and disconnect requests which have been sent to the looper but not yet handled.
+    // mAudioStateSnapshot does not reflect them until this drops back to zero.
+    private final AtomicInteger mPendingAudioRequests = new AtomicInteger();
 
     private BluetoothStateListener mListener;
     private BluetoothDeviceManager mDeviceManager;
@@ -651,6 +715,10 @@ public class BluetoothRouteManager extends StateMachine {
 
     @Override
     protected void onPostHandleMessage(Message msg) {
+        // Any transition the request caused has been made, and its snapshot published, by now.
+        if (msg.arg1 == AUDIO_REQUEST) {
+            mPendingAudioRequests.decrementAndGet();
+        }
         Log.endSession();
     }
 
@@ -663,12 +731,25 @@ public class BluetoothRouteManager extends StateMachine {
     }
 
     /**
-     * This method needs be synchronized with the local looper because getCurrentState() depends
-     * on the internal state of the state machine being consistent. Therefore, there may be a
-     * delay when calling this method.
+     * @return The state the state machine was in after its most recent transition. Never blocks.
+     */
+    public AudioStateSnapshot getAudioStateSnapshot() {
+        return mAudioStateSnapshot;
+    }
+
+    /**
+     * When {@link FeatureFlags#nonBlockingBluetoothAudioState()} is enabled and no request made
+     * through {@link #connectBluetoothAudio} or {@link #disconnectBluetoothAudio} is still waiting
+     * to be handled, this reads the snapshot published on each transition and returns immediately.
+     * Otherwise, this method is synchronized with the local looper because getCurrentState()
+     * depends on the internal state of the state machine being consistent, and on any requests
+     * already sent to it, so there may be a delay when calling it.
      * @return
      */
     public boolean isBluetoothAudioConnectedOrPending() {
+        if (mFeatureFlags.nonBlockingBluetoothAudioState() && mPendingAudioRequests.get() == 0) {
+            return mAudioStateSnapshot.getState() != AudioStateSnapshot.STATE_OFF;
+        }
         SomeArgs args = SomeArgs.obtain();
         args.arg1 = Log.createSubsession();
         BlockingQueue<IState> stateQueue = new LinkedBlockingQueue<>();
@@ -700,7 +781,8 @@ public class BluetoothRouteManager extends StateMachine {
         SomeArgs args = SomeArgs.obtain();
         args.arg1 = Log.createSubsession();
         args.arg2 = address;
-        sendMessage(CONNECT_BT, args);
+        mPendingAudioRequests.incrementAndGet();
+        sendMessage(obtainMessage(CONNECT_BT, AUDIO_REQUEST, 0, args));
     }
 
     /**
@@ -709,7 +791,8 @@ public class BluetoothRouteManager extends StateMachine {
     public void disconnectBluetoothAudio() {
         SomeArgs args = SomeArgs.obtain();
         args.arg1 = Log.createSubsession();
-        sendMessage(DISCONNECT_BT, args);
+        mPendingAudioRequests.incrementAndGet();
+        sendMessage(obtainMessage(DISCONNECT_BT, AUDIO_REQUEST, 0, args));
     }
 
     public void disconnectAudio() {
@@ -28,9 +28,19 @@ public class BlockCheckerAdapter {
     private static final String TAG = BlockCheckerAdapter.class.getSimpleName();
 
     private FeatureFlags mFeatureFlags;
+    private final BlockVerdictCache mVerdictCache;
 
     public BlockCheckerAdapter(FeatureFlags featureFlags) {
+        this(featureFlags, null /* verdictCache */);
+    }
+
+    /**
+     * @param verdictCache Cache to serve repeated lookups from, or {@code null} to always query
+     *                     the blocked number provider.
+     */
+    public BlockCheckerAdapter(FeatureFlags featureFlags, BlockVerdictCache verdictCache) {
         mFeatureFlags = featureFlags;
+        mVerdictCache = verdictCache;
     }
 
     /**
@@ -52,7 +62,23 @@ public class BlockCheckerAdapter {
      */
     public int getBlockStatus(Context context, String phoneNumber,
             int numberPresentation, boolean isNumberInContacts) {
-        int blockStatus = BlockedNumberContract.STATUS_NOT_BLOCKED;
+        if (mVerdictCache != null) {
+            return mVerdictCache.getBlockStatus(phoneNumber, numberPresentation,
+                    isNumberInContacts, () -> queryBlockStatus(context, phoneNumber,
+                            numberPresentation, isNumberInContacts));
+        }
+        Integer blockStatus = queryBlockStatus(context, phoneNumber, numberPresentation,
+                isNumberInContacts);
+        return blockStatus == null ? BlockedNumberContract.STATUS_NOT_BLOCKED : blockStatus;
+    }
+
+    /**
+     * Queries the blocked number provider for the block status of {@code phoneNumber}.
+     * @return The block status, or {@code null} if the provider could not be queried.
+     */
+    private Integer queryBlockStatus(Context context, String phoneNumber,
+            int numberPresentation, boolean isNumberInContacts) {
+        Integer blockStatus = null;
         long startTimeNano = System.nanoTime();
         BlockedNumbersManager blockedNumbersManager = mFeatureFlags
                 .telecomMainlineBlockedNumbersManager()
@@ -35,6 +35,7 @@ import com.android.server.telecom.settings.BlockedNumbersUtil;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 public class BlockCheckerFilter extends CallFilter {
     private final Call mCall;
@@ -45,6 +46,7 @@ public class BlockCheckerFilter extends CallFilter {
     private boolean mContactExists;
     private HandlerThread mHandlerThread;
     private Handler mHandler;
+    private final Executor mExecutor;
 
     public static final long CALLER_INFO_QUERY_TIMEOUT = 5000;
 
@@ -106,14 +108,29 @@ public class BlockCheckerFilter extends CallFilter {
     public BlockCheckerFilter(Context context, Call call,
             CallerInfoLookupHelper callerInfoLookupHelper,
             BlockCheckerAdapter blockCheckerAdapter) {
+        this(context, call, callerInfoLookupHelper, blockCheckerAdapter, null);
+    }
+
+    /**
+     * @param executor The executor to check the block status on, or {@code null} to check it on
+     *                 a {@link HandlerThread} owned by this filter. Must run tasks in order.
+     */
+    public BlockCheckerFilter(Context context, Call call,
+            CallerInfoLookupHelper callerInfoLookupHelper,
+            BlockCheckerAdapter blockCheckerAdapter, Executor executor) {
         mCall = call;
         mContext = context;
         mCallerInfoLookupHelper = callerInfoLookupHelper;
         mBlockCheckerAdapter = blockCheckerAdapter;
         mContactExists = false;
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        if (executor == null) {
+            mHandlerThread = new HandlerThread(TAG);
+            mHandlerThread.start();
+            mHandler = new Handler(mHandlerThread.getLooper());
+            mExecutor = new LoggedHandlerExecutor(mHandler, "BCF.gBS", null);
+        } else {
+            mExecutor = executor;
+        }
     }
 
     @Override
@@ -174,10 +191,8 @@ public class BlockCheckerFilter extends CallFilter {
 
         CompletableFuture.supplyAsync(
                 () -> mBlockCheckerAdapter.getBlockStatus(mContext, number,
-                        presentation, isNumberInContacts),
-                new LoggedHandlerExecutor(mHandler, "BCF.gBS", null))
-                .thenApplyAsync((x) -> completeResult(resultFuture, x),
-                        new LoggedHandlerExecutor(mHandler, "BCF.gBS", null));
+                        presentation, isNumberInContacts), mExecutor)
+                .thenApplyAsync((x) -> completeResult(resultFuture, x), mExecutor);
     }
 
     private int completeResult(CompletableFuture<CallFilteringResult> resultFuture,
@@ -208,7 +223,9 @@ public class BlockCheckerFilter extends CallFilter {
         Log.addEvent(mCall, LogUtils.Events.BLOCK_CHECK_FINISHED,
                 blockStatusToString(blockStatus) + " " + result);
         resultFuture.complete(result);
-        mHandlerThread.quitSafely();
+        if (mHandlerThread != null) {
+            mHandlerThread.quitSafely();
+        }
         return blockStatus;
     }
 
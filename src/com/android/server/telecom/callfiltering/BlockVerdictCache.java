@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.BlockedNumberContract;
+import android.telecom.Log;
+import android.telephony.PhoneNumberUtils;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the block status {@link BlockCheckerAdapter} last got from the blocked number
+ * provider for a number, so that repeated calls from the same number (as in a robocall burst) do
+ * not each wait on the provider. Verdicts depend on the presentation of the number and whether it
+ * is in the user's contacts as well as the number itself, so those are part of the key.
+ * <p>
+ * The cache is cleared whenever the blocked number provider reports a change, and by
+ * {@link #invalidate(String)} when the block suppression state or carrier config changes. As the
+ * provider does not announce every expiry of block suppression, verdicts are also only kept for
+ * {@link #MAX_AGE_MILLIS}. Safe to use from any thread.
+ */
+public class BlockVerdictCache {
+    private static final String TAG = BlockVerdictCache.class.getSimpleName();
+    @VisibleForTesting
+    public static final int MAX_SIZE = 64;
+    @VisibleForTesting
+    public static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+    private static class Key {
+        final String mNumber;
+        final int mPresentation;
+        final boolean mIsNumberInContacts;
+
+        Key(String number, int presentation, boolean isNumberInContacts) {
+            mNumber = number;
+            mPresentation = presentation;
+            mIsNumberInContacts = isNumberInContacts;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return mPresentation == key.mPresentation
+                    && mIsNumberInContacts == key.mIsNumberInContacts
+                    && Objects.equals(mNumber, key.mNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mNumber, mPresentation, mIsNumberInContacts);
+        }
+    }
+
+    private static class Verdict {
+        final int mBlockStatus;
+        final long mCachedAtMillis;
+
+        Verdict(int blockStatus, long cachedAtMillis) {
+            mBlockStatus = blockStatus;
+            mCachedAtMillis = cachedAtMillis;
+        }
+    }
+
+    private final Object mLock = new Object();
+    private final LinkedHashMap<Key, Verdict> mVerdicts =
+            new LinkedHashMap<>(16, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Verdict> eldest) {
+                    if (size() > MAX_SIZE) {
+                        mEvictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    /**
+     * Bumped on every invalidation, so a verdict looked up concurrently with a change is not
+     * cached after the change has been processed.
+     */
+    private final AtomicLong mGeneration = new AtomicLong();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    private final ContentObserver mBlockedNumbersObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            invalidate("blocked numbers changed");
+        }
+    };
+
+    public BlockVerdictCache(Context context) {
+        this();
+        context.getContentResolver().registerContentObserver(
+                BlockedNumberContract.AUTHORITY_URI, true /* notifyForDescendants */,
+                mBlockedNumbersObserver);
+    }
+
+    @VisibleForTesting
+    public BlockVerdictCache() {
+    }
+
+    /**
+     * Returns the block status for a number, from the cache if possible.
+     * @param number The number of the incoming call.
+     * @param presentation The presentation of the number.
+     * @param isNumberInContacts Whether the number is in the user's contacts.
+     * @param lookup Queries the provider for the block status; returns {@code null} if the status
+     *               could not be determined, in which case it is not cached.
+     * @return The block status, or {@link BlockCheckerFilter#STATUS_NOT_BLOCKED} if it could
+     * not be determined.
+     */
+    public int getBlockStatus(String number, int presentation, boolean isNumberInContacts,
+            Supplier<Integer> lookup) {
+        Key key = new Key(number == null ? null : PhoneNumberUtils.normalizeNumber(number),
+                presentation, isNumberInContacts);
+        long generation;
+        synchronized (mLock) {
+            Verdict verdict = mVerdicts.get(key);
+            if (verdict != null) {
+                if (SystemClock.elapsedRealtime() - verdict.mCachedAtMillis <= MAX_AGE_MILLIS) {
+                    mHits.incrementAndGet();
+                    return verdict.mBlockStatus;
+                }
+                mVerdicts.remove(key);
+            }
+            mMisses.incrementAndGet();
+            generation = mGeneration.get();
+        }
+
+        Integer blockStatus = lookup.get();
+        if (blockStatus == null) {
+            return BlockCheckerFilter.STATUS_NOT_BLOCKED;
+        }
+        synchronized (mLock) {
+            if (generation == mGeneration.get()) {
+                mVerdicts.put(key, new Verdict(blockStatus, SystemClock.elapsedRealtime()));
+            }
+        }
+        return blockStatus;
+    }
+
+    /**
+     * Drops all cached verdicts.
+     * @param reason Why, for logging.
+     */
+    public void invalidate(String reason) {
+        synchronized (mLock) {
+            mGeneration.incrementAndGet();
+            if (!mVerdicts.isEmpty()) {
+                Log.i(TAG, "invalidate: dropping %d verdicts, %s", mVerdicts.size(), reason);
+                mVerdicts.clear();
+            }
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    @VisibleForTesting
+    public int size() {
+        synchronized (mLock) {
+            return mVerdicts.size();
+        }
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("BlockVerdictCache: size=%d/%d, hits=%d, misses=%d, "
+                        + "evictions=%d, invalidations=%d", size(), MAX_SIZE, mHits.get(),
+                mMisses.get(), mEvictions.get(), mGeneration.get()));
+    }
+}
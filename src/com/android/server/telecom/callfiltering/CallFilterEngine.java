@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.os.SystemClock;
+import android.telecom.Log;
+import android.telecom.Logging.Runnable;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the {@link CallFilter}s of every {@link IncomingCallFilterGraph} on a small, shared thread
+ * pool, so that filtering an incoming call does not start a thread of its own. Filters whose
+ * dependencies have completed run concurrently; each filter may be given a deadline after which
+ * the graph moves on without its result and the filter is cancelled. Deadlines run on a
+ * scheduler thread of their own, so they still fire when every filter thread is busy. Idle
+ * threads exit after {@link #KEEP_ALIVE_MILLIS}, so the engine holds no threads between calls.
+ * The latency of each kind of filter and of whole graphs is kept for dumpsys.
+ */
+public class CallFilterEngine {
+    private static final String TAG = CallFilterEngine.class.getSimpleName();
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_MILLIS = 10_000;
+    private static CallFilterEngine INSTANCE = null;
+    private static final Object sLock = new Object();
+
+    private final ThreadPoolExecutor mExecutor;
+    /** Runs deadlines and graph timeouts; kept apart from the filters so they are never late. */
+    private final ScheduledThreadPoolExecutor mScheduler;
+    /** Latencies keyed by the simple class name of the filter. */
+    private final Map<String, LatencyHistogram> mFilterLatencies = new ConcurrentHashMap<>();
+    private final LatencyHistogram mGraphLatency = new LatencyHistogram();
+
+    @VisibleForTesting
+    public CallFilterEngine(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_MILLIS,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, TAG + "-" + threadCount.getAndIncrement()));
+        mExecutor.allowCoreThreadTimeOut(true);
+        mScheduler = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, TAG + "-scheduler"));
+        mScheduler.setRemoveOnCancelPolicy(true);
+        // The scheduler thread stays while a deadline is pending, and exits once none are.
+        mScheduler.setKeepAliveTime(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        mScheduler.allowCoreThreadTimeOut(true);
+    }
+
+    public static CallFilterEngine getInstance() {
+        synchronized (sLock) {
+            if (INSTANCE == null) {
+                INSTANCE = new CallFilterEngine(DEFAULT_POOL_SIZE);
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * @return An {@link Executor} which runs work on the shared pool as part of the current
+     * logging session.
+     */
+    public Executor getExecutor(String sessionName) {
+        return command -> mExecutor.execute(new Runnable(sessionName, null) {
+            @Override
+            public void loggedRun() {
+                command.run();
+            }
+        }.prepare());
+    }
+
+    /**
+     * Runs {@code command} on the engine's scheduler thread after {@code delayMillis}. The
+     * command should be short; anything longer belongs on {@link #getExecutor}.
+     * @return A future which can be used to cancel the command.
+     */
+    public ScheduledFuture<?> schedule(String sessionName, java.lang.Runnable command,
+            long delayMillis) {
+        return mScheduler.schedule(new Runnable(sessionName, null) {
+            @Override
+            public void loggedRun() {
+                command.run();
+            }
+        }.prepare(), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the lookup of {@code filter} on the shared pool.
+     * @param filter The filter to run.
+     * @param input The combined result of the filters it depends on.
+     * @param deadlineMillis How long to wait for the filter; if it has not completed by then the
+     *                       returned future completes with {@code input}, as if the filter had
+     *                       not changed the result, and the filter is cancelled. No deadline is
+     *                       applied if this is not positive.
+     * @return A future which completes with the result of the filter.
+     */
+    public CompletableFuture<CallFilteringResult> runFilter(CallFilter filter,
+            CallFilteringResult input, long deadlineMillis) {
+        CompletableFuture<CallFilteringResult> result = new CompletableFuture<>();
+        LatencyHistogram latency = mFilterLatencies.computeIfAbsent(
+                filter.getClass().getSimpleName(), k -> new LatencyHistogram());
+        long startMillis = SystemClock.elapsedRealtime();
+
+        // Set once the lookup has started, so that a deadline can cancel it.
+        AtomicReference<CompletableFuture<CallFilteringResult>> lookupRef =
+                new AtomicReference<>();
+        Future<?> task = mExecutor.submit(new Runnable("CFE.rF", null) {
+            @Override
+            public void loggedRun() {
+                if (result.isDone()) {
+                    // The deadline fired before the filter got a thread.
+                    return;
+                }
+                CompletableFuture<CallFilteringResult> lookup;
+                try {
+                    lookup = filter.startFilterLookup(input).toCompletableFuture();
+                } catch (RuntimeException e) {
+                    lookup = CompletableFuture.failedFuture(e);
+                }
+                lookupRef.set(lookup);
+                if (result.isDone()) {
+                    lookup.cancel(false);
+                    return;
+                }
+                lookup.whenComplete((filterResult, throwable) -> {
+                    boolean completed = throwable == null ? result.complete(filterResult)
+                            : result.completeExceptionally(throwable);
+                    if (completed) {
+                        latency.record(SystemClock.elapsedRealtime() - startMillis);
+                    }
+                });
+            }
+        }.prepare());
+
+        if (deadlineMillis > 0) {
+            ScheduledFuture<?> deadline = schedule("CFE.rF.d", () -> {
+                if (result.complete(input)) {
+                    Log.w(TAG, "Filter %s missed its %d ms deadline.", filter, deadlineMillis);
+                    latency.recordTimeout();
+                    // The graph has moved on without it; stop the filter rather than let it
+                    // hold a thread.
+                    task.cancel(true);
+                    CompletableFuture<CallFilteringResult> lookup = lookupRef.get();
+                    if (lookup != null) {
+                        lookup.cancel(false);
+                    }
+                }
+            }, deadlineMillis);
+            result.whenComplete((filterResult, throwable) -> deadline.cancel(false));
+        }
+        return result;
+    }
+
+    /**
+     * Records how long a graph took to reach a result.
+     * @param latencyMillis The time the graph took.
+     * @param timedOut {@code true} if the graph was abandoned at its deadline.
+     */
+    public void onGraphCompleted(long latencyMillis, boolean timedOut) {
+        if (timedOut) {
+            mGraphLatency.recordTimeout();
+        } else {
+            mGraphLatency.record(latencyMillis);
+        }
+    }
+
+    @VisibleForTesting
+    public LatencyHistogram getFilterLatency(Class<? extends CallFilter> filterClass) {
+        return mFilterLatencies.get(filterClass.getSimpleName());
+    }
+
+    @VisibleForTesting
+    public LatencyHistogram getGraphLatency() {
+        return mGraphLatency;
+    }
+
+    /**
+     * @return The number of deadlines and graph timeouts which have yet to fire.
+     */
+    @VisibleForTesting
+    public int getPendingDeadlineCount() {
+        return mScheduler.getQueue().size();
+    }
+
+    /**
+     * Stops the pool and the scheduler; only used by tests which create their own engine.
+     */
+    @VisibleForTesting
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mScheduler.shutdownNow();
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("threads=%d/%d, active=%d, queued=%d",
+                mExecutor.getPoolSize(), mExecutor.getCorePoolSize(),
+                mExecutor.getActiveCount(), mExecutor.getQueue().size()));
+        pw.println("pending deadlines=" + mScheduler.getQueue().size());
+        pw.println("graphs: " + mGraphLatency);
+        pw.println("filters:");
+        pw.increaseIndent();
+        new TreeMap<>(mFilterLatencies).forEach((name, latency) ->
+                pw.println(name + ": " + latency));
+        pw.decreaseIndent();
+    }
+}
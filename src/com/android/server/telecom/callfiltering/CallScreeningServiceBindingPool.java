@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.callfiltering;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.telecom.CallScreeningService;
+import android.telecom.Log;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallScreeningServiceHelper;
+import com.android.server.telecom.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps {@link CallScreeningService} bindings alive for a short while after the call they were
+ * made for has been screened, so that the next incoming call can reuse the bound service instead
+ * of binding (and possibly starting the screening app's process) again within the screening
+ * timeout.
+ * <p>
+ * Each {@link CallScreeningServiceFilter} {@link #acquire acquires} a {@link Lease} on the binding
+ * for its package and {@link #release releases} it once it has a verdict. When a binding has no
+ * leases left it lingers for {@link #DEFAULT_LINGER_MILLIS} before it is unbound.
+ * <p>
+ * For each screening package the time taken to bind is tracked separately from the time taken by
+ * the service to return a verdict once bound, and both are printed in dumpsys.
+ */
+public class CallScreeningServiceBindingPool {
+    private static final String TAG = CallScreeningServiceBindingPool.class.getSimpleName();
+    public static final long DEFAULT_LINGER_MILLIS = 30000;
+
+    /**
+     * Notified about the state of the binding a {@link Lease} is held on. Apart from
+     * {@link #onLeaseAcquired}, called on the looper the pool was created with.
+     */
+    public interface Client {
+        /**
+         * Hands the client its lease before anything is delivered through it; the same lease is
+         * then returned by {@link #acquire}. Called with the pool's lock held, from the thread
+         * calling {@link #acquire}, so it must not block.
+         */
+        void onLeaseAcquired(Lease lease);
+        void onServiceConnected(ComponentName componentName, IBinder service);
+        void onServiceDisconnected();
+    }
+
+    /**
+     * A hold on a screening service binding, which keeps it bound until released.
+     */
+    public class Lease {
+        private final Binding mBinding;
+        private final Client mClient;
+        private long mConnectedAtMillis;
+        private boolean mVerdictReceived;
+        private boolean mReleased;
+
+        private Lease(Binding binding, Client client) {
+            mBinding = binding;
+            mClient = client;
+        }
+
+        /**
+         * Records that the screening service returned a verdict through this lease.
+         */
+        public void onVerdictReceived() {
+            synchronized (mLock) {
+                if (!mReleased && !mVerdictReceived && mConnectedAtMillis > 0) {
+                    mVerdictReceived = true;
+                    getStats(mBinding.mPackageName).mVerdictLatency.record(
+                            SystemClock.elapsedRealtime() - mConnectedAtMillis);
+                }
+            }
+        }
+
+        private void deliverConnected(ComponentName componentName, IBinder service) {
+            synchronized (mLock) {
+                if (mReleased) {
+                    return;
+                }
+                mConnectedAtMillis = SystemClock.elapsedRealtime();
+            }
+            mClient.onServiceConnected(componentName, service);
+        }
+
+        private void deliverDisconnected() {
+            synchronized (mLock) {
+                if (mReleased) {
+                    return;
+                }
+            }
+            mClient.onServiceDisconnected();
+        }
+    }
+
+    private class Binding implements ServiceConnection {
+        private final String mPackageName;
+        private final String mKey;
+        private final List<Lease> mLeases = new ArrayList<>();
+        private final long mBindStartMillis = SystemClock.elapsedRealtime();
+        private final Runnable mLingerExpired = () -> onLingerExpired(this);
+        private ComponentName mComponentName;
+        private IBinder mService;
+
+        Binding(String packageName, String key) {
+            mPackageName = packageName;
+            mKey = key;
+        }
+
+        @Override
+        public void onServiceConnected(ComponentName componentName, IBinder service) {
+            List<Lease> leases;
+            synchronized (mLock) {
+                if (mBindings.get(mKey) != this) {
+                    return;
+                }
+                mComponentName = componentName;
+                mService = service;
+                getStats(mPackageName).mBindLatency.record(
+                        SystemClock.elapsedRealtime() - mBindStartMillis);
+                leases = new ArrayList<>(mLeases);
+            }
+            Log.i(TAG, "Bound to %s", componentName);
+            for (Lease lease : leases) {
+                lease.deliverConnected(componentName, service);
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName componentName) {
+            drop("disconnected");
+        }
+
+        @Override
+        public void onBindingDied(ComponentName componentName) {
+            drop("binding died");
+        }
+
+        @Override
+        public void onNullBinding(ComponentName componentName) {
+            drop("null binding");
+        }
+
+        private void drop(String reason) {
+            List<Lease> leases;
+            synchronized (mLock) {
+                if (mBindings.get(mKey) != this) {
+                    return;
+                }
+                Log.i(TAG, "Dropping binding to %s: %s", mPackageName, reason);
+                unbindLocked(this);
+                leases = new ArrayList<>(mLeases);
+                mLeases.clear();
+            }
+            for (Lease lease : leases) {
+                lease.deliverDisconnected();
+            }
+        }
+    }
+
+    private static class PackageStats {
+        final LatencyHistogram mBindLatency = new LatencyHistogram();
+        final LatencyHistogram mVerdictLatency = new LatencyHistogram();
+        long mColdBinds;
+        long mWarmReuses;
+        long mBindFailures;
+    }
+
+    private final Object mLock = new Object();
+    private final Context mContext;
+    private final Handler mHandler;
+    private final long mLingerMillis;
+    /** Bindings keyed by user ID and package name. */
+    private final Map<String, Binding> mBindings = new HashMap<>();
+    private final Map<String, PackageStats> mStats = new HashMap<>();
+
+    public CallScreeningServiceBindingPool(Context context) {
+        this(context, Looper.getMainLooper(), DEFAULT_LINGER_MILLIS);
+    }
+
+    @VisibleForTesting
+    public CallScreeningServiceBindingPool(Context context, Looper looper, long lingerMillis) {
+        mContext = context;
+        mHandler = new Handler(looper);
+        mLingerMillis = lingerMillis;
+    }
+
+    /**
+     * Gets a lease on a binding to the screening service of {@code packageName}, binding to it
+     * if it is not already bound. {@link Client#onServiceConnected} is called once the service
+     * is available, which is right away if it was already bound.
+     * @return The lease, or {@code null} if the service could not be bound.
+     */
+    public Lease acquire(UserHandle userHandle, String packageName, Client client) {
+        String key = userHandle.getIdentifier() + "/" + packageName;
+        Lease lease;
+        IBinder service;
+        ComponentName componentName;
+        synchronized (mLock) {
+            PackageStats stats = getStats(packageName);
+            Binding binding = mBindings.get(key);
+            if (binding == null) {
+                binding = new Binding(packageName, key);
+                if (!CallScreeningServiceHelper.bindCallScreeningService(mContext, userHandle,
+                        packageName, binding)) {
+                    stats.mBindFailures++;
+                    return null;
+                }
+                mBindings.put(key, binding);
+                stats.mColdBinds++;
+            } else {
+                mHandler.removeCallbacks(binding.mLingerExpired);
+                stats.mWarmReuses++;
+            }
+            lease = new Lease(binding, client);
+            // The connection is delivered from the looper, and once the lease is added it may
+            // be delivered before this returns; the client has to hold the lease by then.
+            client.onLeaseAcquired(lease);
+            binding.mLeases.add(lease);
+            service = binding.mService;
+            componentName = binding.mComponentName;
+        }
+        if (service != null) {
+            // Delivered on the looper, as it is when the service connects.
+            mHandler.post(() -> lease.deliverConnected(componentName, service));
+        }
+        return lease;
+    }
+
+    /**
+     * Gives up a lease. The binding is unbound once it has had no leases for the linger time.
+     */
+    public void release(Lease lease) {
+        synchronized (mLock) {
+            if (lease.mReleased) {
+                return;
+            }
+            lease.mReleased = true;
+            Binding binding = lease.mBinding;
+            binding.mLeases.remove(lease);
+            if (binding.mLeases.isEmpty() && mBindings.get(binding.mKey) == binding) {
+                mHandler.postDelayed(binding.mLingerExpired, mLingerMillis);
+            }
+        }
+    }
+
+    /**
+     * Unbinds every binding which is not currently leased, e.g. when the user switches.
+     */
+    public void unbindIdle() {
+        synchronized (mLock) {
+            for (Binding binding : new ArrayList<>(mBindings.values())) {
+                if (binding.mLeases.isEmpty()) {
+                    unbindLocked(binding);
+                }
+            }
+        }
+    }
+
+    private void onLingerExpired(Binding binding) {
+        synchronized (mLock) {
+            if (binding.mLeases.isEmpty() && mBindings.get(binding.mKey) == binding) {
+                unbindLocked(binding);
+            }
+        }
+    }
+
+    private void unbindLocked(Binding binding) {
+        mBindings.remove(binding.mKey);
+        mHandler.removeCallbacks(binding.mLingerExpired);
+        try {
+            mContext.unbindService(binding);
+        } catch (IllegalArgumentException e) {
+            Log.i(TAG, "Exception when unbinding %s: %s", binding.mPackageName, e.getMessage());
+        }
+    }
+
+    private PackageStats getStats(String packageName) {
+        return mStats.computeIfAbsent(packageName, k -> new PackageStats());
+    }
+
+    @VisibleForTesting
+    public int getBindingCount() {
+        synchronized (mLock) {
+            return mBindings.size();
+        }
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        synchronized (mLock) {
+            pw.println("bindings:");
+            pw.increaseIndent();
+            for (Binding binding : mBindings.values()) {
+                pw.println(String.format("%s: connected=%b, leases=%d", binding.mKey,
+                        binding.mService != null, binding.mLeases.size()));
+            }
+            pw.decreaseIndent();
+            pw.println("packages:");
+            pw.increaseIndent();
+            for (Map.Entry<String, PackageStats> entry : new TreeMap<>(mStats).entrySet()) {
+                PackageStats stats = entry.getValue();
+                pw.println(String.format("%s: coldBinds=%d, warmReuses=%d, bindFailures=%d",
+                        entry.getKey(), stats.mColdBinds, stats.mWarmReuses,
+                        stats.mBindFailures));
+                pw.increaseIndent();
+                pw.println("bind: " + stats.mBindLatency);
+                pw.println("verdict: " + stats.mVerdictLatency);
+                pw.decreaseIndent();
+            }
+            pw.decreaseIndent();
+        }
+    }
+}
@@ -57,6 +57,9 @@ public class CallScreeningServiceFilter extends CallFilter {
     private final CallsManager mCallsManager;
     private CharSequence mAppName;
     private final ParcelableCallUtils.Converter mParcelableCallUtilsConverter;
+    private final CallScreeningServiceBindingPool mBindingPool;
+    // Set by the pool before it can deliver anything, and read from binder threads.
+    private volatile CallScreeningServiceBindingPool.Lease mLease;
 
     private class CallScreeningAdapter extends ICallScreeningAdapter.Stub {
         private CompletableFuture<CallFilteringResult> mResultFuture;
@@ -72,6 +75,10 @@ public class CallScreeningServiceFilter extends CallFilter {
                 Log.w(this, "Null responses are only supposed to happen for outgoing calls");
                 return;
             }
+            CallScreeningServiceBindingPool.Lease lease = mLease;
+            if (lease != null) {
+                lease.onVerdictReceived();
+            }
             if (callResponse.shouldDisallowCall()) {
                 disallowCall(callId, componentName, callResponse);
             } else if (callResponse.shouldSilenceCall()) {
@@ -262,6 +269,23 @@ public class CallScreeningServiceFilter extends CallFilter {
             CallsManager callsManager,
             AppLabelProxy appLabelProxy,
             ParcelableCallUtils.Converter parcelableCallUtilsConverter) {
+        this(call, packageName, packageType, context, callsManager, appLabelProxy,
+                parcelableCallUtilsConverter, null /* bindingPool */);
+    }
+
+    /**
+     * @param bindingPool Pool to take the screening service binding from, or {@code null} to
+     *                    bind to the service for this call only.
+     */
+    public CallScreeningServiceFilter(
+            Call call,
+            String packageName,
+            int packageType,
+            Context context,
+            CallsManager callsManager,
+            AppLabelProxy appLabelProxy,
+            ParcelableCallUtils.Converter parcelableCallUtilsConverter,
+            CallScreeningServiceBindingPool bindingPool) {
         super();
         mCall = call;
         mPackageName = packageName;
@@ -271,6 +295,7 @@ public class CallScreeningServiceFilter extends CallFilter {
         mCallsManager = callsManager;
         mAppName = appLabelProxy.getAppLabel(mPackageName);
         mParcelableCallUtilsConverter = parcelableCallUtilsConverter;
+        mBindingPool = bindingPool;
     }
 
     @Override
@@ -293,6 +318,13 @@ public class CallScreeningServiceFilter extends CallFilter {
         }
 
         CompletableFuture<CallFilteringResult> resultFuture = new CompletableFuture<>();
+        // Cancelled by the CallFilterEngine when the filter misses its deadline; the verdict is
+        // no longer wanted, so don't keep the service bound waiting for it.
+        resultFuture.whenComplete((result, throwable) -> {
+            if (resultFuture.isCancelled()) {
+                unbindCallScreeningService();
+            }
+        });
 
         bindCallScreeningService(resultFuture);
         return resultFuture;
@@ -318,6 +350,34 @@ public class CallScreeningServiceFilter extends CallFilter {
             CompletableFuture<CallFilteringResult> resultFuture) {
         CallScreeningServiceConnection connection = new CallScreeningServiceConnection(
                 resultFuture);
+        if (mBindingPool != null) {
+            CallScreeningServiceBindingPool.Lease lease = mBindingPool.acquire(
+                    mCall.getAssociatedUser(), mPackageName,
+                    new CallScreeningServiceBindingPool.Client() {
+                        @Override
+                        public void onLeaseAcquired(
+                                CallScreeningServiceBindingPool.Lease acquired) {
+                            mLease = acquired;
+                        }
+
+                        @Override
+                        public void onServiceConnected(ComponentName componentName,
+                                IBinder service) {
+                            connection.onServiceConnected(componentName, service);
+                        }
+
+                        @Override
+                        public void onServiceDisconnected() {
+                            connection.onServiceDisconnected(null);
+                        }
+                    });
+            // Not assigned from the return value: a verdict may already have released it.
+            if (lease == null) {
+                Log.i(this, "Call screening service binding failed.");
+                resultFuture.complete(mPriorStageResult);
+            }
+            return;
+        }
         if (!CallScreeningServiceHelper.bindCallScreeningService(mContext,
                 mCall.getAssociatedUser(), mPackageName, connection)) {
             Log.i(this, "Call screening service binding failed.");
@@ -328,6 +388,11 @@ public class CallScreeningServiceFilter extends CallFilter {
     }
 
     public void unbindCallScreeningService() {
+        CallScreeningServiceBindingPool.Lease lease = mLease;
+        if (lease != null) {
+            mBindingPool.release(lease);
+            mLease = null;
+        }
         if (mConnection != null) {
             try {
                 mContext.unbindService(mConnection);
@@ -19,6 +19,7 @@ package com.android.server.telecom.callfiltering;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.telecom.Log;
 import android.telecom.Logging.Runnable;
 
@@ -31,6 +32,8 @@ import com.android.server.telecom.Timeouts;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 
 public class IncomingCallFilterGraph {
     //TODO: Add logging for control flow.
@@ -49,12 +52,18 @@ public class IncomingCallFilterGraph {
     private final Handler mHandler;
     private final HandlerThread mHandlerThread;
     private final TelecomSystem.SyncRoot mLock;
+    /** Runs the filters when set; otherwise they run on {@link #mHandlerThread}. */
+    private final CallFilterEngine mEngine;
     private List<CallFilter> mFiltersList;
     private CallFilter mCompletionSentinel;
     private boolean mFinished;
-    private CallFilteringResult mCurrentResult;
+    private volatile CallFilteringResult mCurrentResult;
     private Context mContext;
     private Timeouts.Adapter mTimeoutsAdapter;
+    private long mStartMillis;
+    private long mTimeoutMillis;
+    /** The graph timeout when running on {@link #mEngine}; cancelled once the graph finishes. */
+    private ScheduledFuture<?> mTimeoutFuture;
 
     private class PostFilterTask {
         private final CallFilter mFilter;
@@ -74,10 +83,18 @@ public class IncomingCallFilterGraph {
             if (mFilter.equals(mCompletionSentinel)) {
                 synchronized (mLock) {
                     mFinished = true;
+                    if (mTimeoutFuture != null) {
+                        mTimeoutFuture.cancel(false);
+                    }
                     mListener.onCallFilteringComplete(mCall, result, false);
                     Log.addEvent(mCall, LogUtils.Events.FILTERING_COMPLETED, result);
                 }
-                mHandlerThread.quit();
+                if (mEngine != null) {
+                    mEngine.onGraphCompleted(SystemClock.elapsedRealtime() - mStartMillis,
+                            false /* timedOut */);
+                } else {
+                    mHandlerThread.quit();
+                }
             }
             return result;
         }
@@ -85,13 +102,29 @@ public class IncomingCallFilterGraph {
 
     public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
             Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock) {
+        this(call, listener, context, timeoutsAdapter, lock, null /* engine */);
+    }
+
+    /**
+     * @param engine The shared engine to run the filters on, or {@code null} to run them on a
+     *               {@link HandlerThread} owned by this graph.
+     */
+    public IncomingCallFilterGraph(Call call, CallFilterResultCallback listener, Context context,
+            Timeouts.Adapter timeoutsAdapter, TelecomSystem.SyncRoot lock,
+            CallFilterEngine engine) {
         mListener = listener;
         mCall = call;
         mFiltersList = new ArrayList<>();
 
-        mHandlerThread = new HandlerThread(TAG);
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mEngine = engine;
+        if (engine == null) {
+            mHandlerThread = new HandlerThread(TAG);
+            mHandlerThread.start();
+            mHandler = new Handler(mHandlerThread.getLooper());
+        } else {
+            mHandlerThread = null;
+            mHandler = null;
+        }
         mLock = lock;
         mFinished = false;
         mContext = context;
@@ -116,25 +149,50 @@ public class IncomingCallFilterGraph {
         }
         addEdge(dummyStart, mCompletionSentinel);
 
-        scheduleFilter(dummyStart);
-        mHandler.postDelayed(new Runnable("ICFG.pF", mLock) {
-            @Override
-            public void loggedRun() {
-                if (!mFinished) {
-                    Log.i(this, "Graph timed out when performing filtering.");
-                    Log.addEvent(mCall, LogUtils.Events.FILTERING_TIMED_OUT);
-                    mListener.onCallFilteringComplete(mCall, mCurrentResult, true);
-                    mFinished = true;
-                    mHandlerThread.quit();
+        mStartMillis = SystemClock.elapsedRealtime();
+        long timeoutMillis = mTimeoutsAdapter.getCallScreeningTimeoutMillis(
+                mContext.getContentResolver());
+        mTimeoutMillis = timeoutMillis;
+        if (mEngine != null) {
+            // Set before any filter runs, so that the graph finishing can always cancel it.
+            mTimeoutFuture = mEngine.schedule("ICFG.pF", () -> {
+                synchronized (mLock) {
+                    onGraphTimeout();
                 }
-                for (CallFilter filter : mFiltersList) {
-                    // unbind timed out call screening service
-                    if (filter instanceof CallScreeningServiceFilter) {
-                        ((CallScreeningServiceFilter) filter).unbindCallScreeningService();
-                    }
+            }, timeoutMillis);
+        } else {
+            mHandler.postDelayed(new Runnable("ICFG.pF", mLock) {
+                @Override
+                public void loggedRun() {
+                    onGraphTimeout();
                 }
+            }.prepare(), timeoutMillis);
+        }
+        scheduleFilter(dummyStart);
+    }
+
+    private void onGraphTimeout() {
+        if (mFinished) {
+            // Every filter completed, and each call screening service was unbound as its
+            // filter finished.
+            return;
+        }
+        Log.i(this, "Graph timed out when performing filtering.");
+        Log.addEvent(mCall, LogUtils.Events.FILTERING_TIMED_OUT);
+        mListener.onCallFilteringComplete(mCall, mCurrentResult, true);
+        mFinished = true;
+        if (mEngine != null) {
+            mEngine.onGraphCompleted(SystemClock.elapsedRealtime() - mStartMillis,
+                    true /* timedOut */);
+        } else {
+            mHandlerThread.quit();
+        }
+        for (CallFilter filter : mFiltersList) {
+            // unbind timed out call screening service
+            if (filter instanceof CallScreeningServiceFilter) {
+                ((CallScreeningServiceFilter) filter).unbindCallScreeningService();
             }
-        }.prepare(), mTimeoutsAdapter.getCallScreeningTimeoutMillis(mContext.getContentResolver()));
+        }
     }
 
     private void scheduleFilter(CallFilter filter) {
@@ -156,6 +214,22 @@ public class IncomingCallFilterGraph {
                 CompletableFuture.completedFuture(input);
         PostFilterTask postFilterTask = new PostFilterTask(filter);
 
+        if (mEngine != null) {
+            // The start and completion sentinels do no work, so only the real filters are
+            // given a deadline and have their latency recorded.
+            Executor executor = mEngine.getExecutor("ICFG.sF");
+            CompletableFuture<CallFilteringResult> filterFuture = mFiltersList.contains(filter)
+                    ? mEngine.runFilter(filter, input, getFilterDeadlineMillis())
+                    : startFuture.thenComposeAsync(filter::startFilterLookup, executor);
+            filterFuture.thenApplyAsync(postFilterTask::whenDone, executor)
+                    .exceptionally((t) -> {
+                        Log.e(filter, t, "Encountered exception running filter");
+                        return null;
+                    });
+            Log.i(TAG, "Filter %s scheduled.", filter);
+            return;
+        }
+
         // TODO: improve these filter logging names to be more reflective of the filters that are
         // executing
         startFuture.thenComposeAsync(filter::startFilterLookup,
@@ -169,11 +243,28 @@ public class IncomingCallFilterGraph {
         Log.i(TAG, "Filter %s scheduled.", filter);
     }
 
+    /**
+     * @return How long a filter starting now may run: what remains of the graph timeout, or the
+     * configured per-filter timeout if that is shorter.
+     */
+    private long getFilterDeadlineMillis() {
+        long remainingMillis = Math.max(1L,
+                mTimeoutMillis - (SystemClock.elapsedRealtime() - mStartMillis));
+        long filterTimeoutMillis = mTimeoutsAdapter.getCallFilterTimeoutMillis(
+                mContext.getContentResolver());
+        return filterTimeoutMillis > 0 ? Math.min(filterTimeoutMillis, remainingMillis)
+                : remainingMillis;
+    }
+
     public static void addEdge(CallFilter before, CallFilter after) {
         before.addFollowings(after);
         after.addDependency(before);
     }
 
+    /**
+     * @return The thread the filters run on, or {@code null} if they run on a
+     * {@link CallFilterEngine}.
+     */
     public HandlerThread getHandlerThread() {
         return mHandlerThread;
     }
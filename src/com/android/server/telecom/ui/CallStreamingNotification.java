@@ -106,6 +106,11 @@ public class CallStreamingNotification extends CallsManagerListenerBase implemen
         }
     }
 
+    @Override
+    public long getInterestedEvents() {
+        return Call.LISTENER_CALL_STREAMING_STATE_CHANGED;
+    }
+
     /**
      * Handles streaming state changes for a call.
      * @param call the call
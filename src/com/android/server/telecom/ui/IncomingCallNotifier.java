@@ -73,6 +73,11 @@ public class IncomingCallNotifier extends CallsManagerListenerBase {
     private final Object mLock = new Object();
 
     public final Call.ListenerBase mCallListener = new Call.ListenerBase() {
+        @Override
+        public long getInterestedEvents() {
+            return Call.LISTENER_CALLER_INFO_CHANGED;
+        }
+
         @Override
         public void onCallerInfoChanged(Call call) {
             if (mIncomingCall != call) {
@@ -32,8 +32,6 @@ import com.android.server.telecom.TransactionalServiceWrapper;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 /**
  * SRP: using the ICallEventCallback binder, reach out to the client for the pending call event and
@@ -52,17 +50,17 @@ public class CallEventCallbackAckTransaction extends VoipCallTransaction {
             CODE_OPERATION_TIMED_OUT, "failed to complete the operation before timeout");
 
     private static class AckResultReceiver extends ResultReceiver {
-        CountDownLatch mCountDownLatch;
+        CompletableFuture<Boolean> mAckFuture;
 
-        public AckResultReceiver(CountDownLatch latch) {
+        public AckResultReceiver(CompletableFuture<Boolean> ackFuture) {
             super(null);
-            mCountDownLatch = latch;
+            mAckFuture = ackFuture;
         }
 
         @Override
         protected void onReceiveResult(int resultCode, Bundle resultData) {
             if (resultCode == TELECOM_TRANSACTION_SUCCESS) {
-                mCountDownLatch.countDown();
+                mAckFuture.complete(true);
             }
         }
     }
@@ -98,8 +96,10 @@ public class CallEventCallbackAckTransaction extends VoipCallTransaction {
     @Override
     public CompletionStage<VoipCallTransactionResult> processTransaction(Void v) {
         Log.d(TAG, "processTransaction");
-        CountDownLatch latch = new CountDownLatch(1);
-        ResultReceiver receiver = new AckResultReceiver(latch);
+        // Completed with true by the client's ack, or with false by the timeout below. The ack is
+        // waited for asynchronously so that the shared transaction looper is not blocked.
+        CompletableFuture<Boolean> ackFuture = new CompletableFuture<>();
+        ResultReceiver receiver = new AckResultReceiver(ackFuture);
 
         try {
             switch (mAction) {
@@ -123,22 +123,16 @@ public class CallEventCallbackAckTransaction extends VoipCallTransaction {
             return CompletableFuture.completedFuture(TRANSACTION_FAILED);
         }
 
-        try {
-            // wait for the client to ack that CallEventCallback
-            boolean success = latch.await(mTransactionTimeoutMs, TimeUnit.MILLISECONDS);
+        mHandler.postDelayed(() -> ackFuture.complete(false), mTransactionTimeoutMs);
+        return ackFuture.thenApply(success -> {
             if (!success) {
                 // client send onError and failed to complete transaction
                 Log.i(TAG, String.format("CallEventCallbackAckTransaction:"
                         + " client failed to complete the [%s] transaction", mAction));
-                return CompletableFuture.completedFuture(TRANSACTION_FAILED);
-            } else {
-                // success
-                return CompletableFuture.completedFuture(
-                        new VoipCallTransactionResult(VoipCallTransactionResult.RESULT_SUCCEED,
-                                "success"));
+                return TRANSACTION_FAILED;
             }
-        } catch (InterruptedException ie) {
-            return CompletableFuture.completedFuture(TRANSACTION_FAILED);
-        }
+            return new VoipCallTransactionResult(VoipCallTransactionResult.RESULT_SUCCEED,
+                    "success");
+        });
     }
 }
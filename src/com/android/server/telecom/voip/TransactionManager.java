@@ -40,6 +40,7 @@ public class TransactionManager {
     private static final Object sLock = new Object();
     private final Queue<VoipCallTransaction> mTransactions;
     private final Deque<VoipCallTransaction> mCompletedTransactions;
+    private final TransactionScheduler mScheduler;
     private VoipCallTransaction mCurrentTransaction;
 
     public interface TransactionCompleteListener {
@@ -50,6 +51,8 @@ public class TransactionManager {
     private TransactionManager() {
         mTransactions = new ArrayDeque<>();
         mCurrentTransaction = null;
+        mScheduler = new TransactionScheduler(VoipCallTransaction.class.getSimpleName(),
+                TransactionScheduler.DEFAULT_POOL_SIZE);
         if (Flags.enableCallSequencing()) {
             mCompletedTransactions = new ArrayDeque<>();
         } else
@@ -70,6 +73,13 @@ public class TransactionManager {
         return new TransactionManager();
     }
 
+    /**
+     * @return The scheduler whose threads {@link VoipCallTransaction}s run on.
+     */
+    public TransactionScheduler getScheduler() {
+        return mScheduler;
+    }
+
     public void addTransaction(VoipCallTransaction transaction,
             OutcomeReceiver<VoipCallTransactionResult, CallException> receiver) {
         synchronized (sLock) {
@@ -164,6 +174,10 @@ public class TransactionManager {
      * Called when the dumpsys is created for telecom to capture the current state.
      */
     public void dump(IndentingPrintWriter pw) {
+        pw.println("Transaction Scheduler:");
+        pw.increaseIndent();
+        mScheduler.dump(pw);
+        pw.decreaseIndent();
         if (!Flags.enableCallSequencing()) {
             pw.println("<<Flag not enabled>>");
             return;
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.voip;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+import android.util.IndentingPrintWriter;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns a small set of {@link HandlerThread}s which all {@link VoipCallTransaction}s (and their
+ * sub-transactions) run on, so bursts of transactions do not start a thread each. All work for a
+ * single transaction, including its timeout, stays on one looper, so it is still processed in
+ * order. Threads are started on demand, and quit once no transaction has used them for
+ * {@link #DEFAULT_KEEP_ALIVE_MILLIS}, so an idle Telecom holds none of them. Owned by
+ * {@link TransactionManager}.
+ */
+public class TransactionScheduler {
+    @VisibleForTesting
+    public static final int DEFAULT_POOL_SIZE = 4;
+    /** How long a thread is kept after the last transaction on it finished. */
+    @VisibleForTesting
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 10_000;
+
+    private final String mName;
+    private final long mKeepAliveMillis;
+    private final Slot[] mSlots;
+    private final AtomicInteger mNextSlot = new AtomicInteger(0);
+    private final AtomicInteger mThreadsStarted = new AtomicInteger(0);
+    private final AtomicLong mHandlersCreated = new AtomicLong(0);
+
+    /**
+     * A {@link Handler} bound to one of the shared loopers. Once {@link #quit()} is called, new
+     * work is rejected, work which is already due still runs and delayed work is dropped, which
+     * mirrors {@link HandlerThread#quitSafely()} on the thread a transaction used to own.
+     */
+    public static class TransactionHandler extends Handler {
+        private final Runnable mOnQuit;
+        private final AtomicBoolean mIsQuit = new AtomicBoolean(false);
+
+        TransactionHandler(Looper looper, Runnable onQuit) {
+            super(looper);
+            mOnQuit = onQuit;
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            if (mIsQuit.get()) {
+                return false;
+            }
+            return super.sendMessageAtTime(msg, uptimeMillis);
+        }
+
+        /**
+         * Reject any new work from the owning transaction. Work which is already due still runs;
+         * once it has, delayed work that is still pending is removed.
+         */
+        public void quit() {
+            if (mIsQuit.getAndSet(true)) {
+                return;
+            }
+            // Queued after every message which is due now, since the looper keeps messages with
+            // the same time in the order they were sent.
+            super.sendMessageAtTime(Message.obtain(this, () -> removeCallbacksAndMessages(null)),
+                    SystemClock.uptimeMillis());
+            mOnQuit.run();
+        }
+    }
+
+    /**
+     * One of the threads, and the number of transactions which have not yet quit their handler
+     * on it. All fields are guarded by {@link #mSlots}.
+     */
+    private final class Slot {
+        private final int mIndex;
+        private HandlerThread mThread;
+        // Posts the idle quit on the thread itself, so it is dropped along with the thread.
+        private Handler mIdleHandler;
+        private int mActiveHandlers;
+
+        Slot(int index) {
+            mIndex = index;
+        }
+
+        Looper acquireLocked() {
+            if (mThread == null) {
+                mThread = new HandlerThread(mName + "-" + mIndex);
+                mThread.start();
+                mIdleHandler = new Handler(mThread.getLooper());
+                mThreadsStarted.incrementAndGet();
+            } else {
+                mIdleHandler.removeCallbacksAndMessages(null);
+            }
+            mActiveHandlers++;
+            return mThread.getLooper();
+        }
+
+        void release() {
+            synchronized (mSlots) {
+                mActiveHandlers--;
+                if (mActiveHandlers == 0) {
+                    final HandlerThread thread = mThread;
+                    mIdleHandler.postDelayed(() -> quitIfIdle(thread), mKeepAliveMillis);
+                }
+            }
+        }
+
+        private void quitIfIdle(HandlerThread thread) {
+            synchronized (mSlots) {
+                // A transaction may have been handed this thread since the quit was posted.
+                if (mActiveHandlers > 0 || mThread != thread) {
+                    return;
+                }
+                mThread = null;
+                mIdleHandler = null;
+            }
+            thread.quitSafely();
+        }
+
+        boolean isRunningLocked() {
+            return mThread != null;
+        }
+    }
+
+    TransactionScheduler(String name, int poolSize) {
+        this(name, poolSize, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+
+    @VisibleForTesting
+    public TransactionScheduler(String name, int poolSize, long keepAliveMillis) {
+        mName = name;
+        mKeepAliveMillis = keepAliveMillis;
+        mSlots = new Slot[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            mSlots[i] = new Slot(i);
+        }
+    }
+
+    /**
+     * @return A new {@link TransactionHandler} for a transaction. Loopers are assigned round-robin
+     * and the backing threads are started lazily, so at most {@code poolSize} threads run at once
+     * no matter how many transactions are processed. The handler must be
+     * {@link TransactionHandler#quit() quit} once the transaction is done with it, so that its
+     * thread can stop when idle.
+     */
+    public TransactionHandler obtainHandler() {
+        Slot slot = mSlots[Math.floorMod(mNextSlot.getAndIncrement(), mSlots.length)];
+        Looper looper;
+        synchronized (mSlots) {
+            looper = slot.acquireLocked();
+        }
+        mHandlersCreated.incrementAndGet();
+        return new TransactionHandler(looper, slot::release);
+    }
+
+    /**
+     * @return The number of threads this scheduler has started since it was created, including
+     * threads which have since quit.
+     */
+    @VisibleForTesting
+    public int getThreadsStarted() {
+        return mThreadsStarted.get();
+    }
+
+    /**
+     * @return The number of threads which are running now.
+     */
+    @VisibleForTesting
+    public int getThreadsRunning() {
+        synchronized (mSlots) {
+            int running = 0;
+            for (Slot slot : mSlots) {
+                if (slot.isRunningLocked()) {
+                    running++;
+                }
+            }
+            return running;
+        }
+    }
+
+    /**
+     * @return The maximum number of threads this scheduler will run at once.
+     */
+    @VisibleForTesting
+    public int getPoolSize() {
+        return mSlots.length;
+    }
+
+    /**
+     * @return The number of transaction handlers that have been handed out.
+     */
+    @VisibleForTesting
+    public long getHandlersCreated() {
+        return mHandlersCreated.get();
+    }
+
+    /**
+     * Called when the dumpsys is created for telecom to capture the current state.
+     */
+    public void dump(IndentingPrintWriter pw) {
+        pw.println(String.format("threads running=%d/%d, started=%d, handlers created=%d",
+                getThreadsRunning(), mSlots.length, mThreadsStarted.get(),
+                mHandlersCreated.get()));
+    }
+}
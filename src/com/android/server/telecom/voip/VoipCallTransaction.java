@@ -17,7 +17,6 @@
 package com.android.server.telecom.voip;
 
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.telecom.CallException;
 import android.telecom.Log;
 
@@ -131,7 +130,7 @@ public class VoipCallTransaction {
 
     protected final AtomicBoolean mCompleted = new AtomicBoolean(false);
     protected final String mTransactionName = this.getClass().getSimpleName();
-    private final HandlerThread mHandlerThread;
+    private final TransactionScheduler.TransactionHandler mTransactionHandler;
     protected final Handler mHandler;
     protected TransactionManager.TransactionCompleteListener mCompleteListener;
     protected final List<VoipCallTransaction> mSubTransactions;
@@ -143,9 +142,8 @@ public class VoipCallTransaction {
             List<VoipCallTransaction> subTransactions, TelecomSystem.SyncRoot lock,
             long timeoutMs) {
         mSubTransactions = subTransactions;
-        mHandlerThread = new HandlerThread(this.toString());
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        mTransactionHandler = TransactionManager.getInstance().getScheduler().obtainHandler();
+        mHandler = mTransactionHandler;
         mLock = lock;
         mTransactionTimeoutMs = timeoutMs;
         mStats = Flags.enableCallSequencing() ? new Stats() : null;
@@ -259,7 +257,7 @@ public class VoipCallTransaction {
         if (mSubTransactions != null && !mSubTransactions.isEmpty()) {
             mSubTransactions.forEach( t -> t.finish(isTimedOut, result));
         }
-        mHandlerThread.quitSafely();
+        mTransactionHandler.quit();
     }
 
     /**
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import android.telecom.TelecomAnalytics.SessionTiming;
+import android.telecom.VideoProfile;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.Analytics;
+import com.android.server.telecom.AnalyticsStore;
+import com.android.server.telecom.nano.TelecomLogClass;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class AnalyticsStoreTest extends TelecomTestCase {
+    @SmallTest
+    @Test
+    public void testOldestCallsOverwritten() {
+        AnalyticsStore store = new AnalyticsStore(2, 2);
+        store.addCall(makeCall("TC@1"));
+        store.addCall(makeCall("TC@2"));
+        store.addCall(makeCall("TC@3"));
+
+        assertArrayEquals(new String[] {"TC@2", "TC@3"}, getCallIds(store));
+    }
+
+    @SmallTest
+    @Test
+    public void testClear() {
+        AnalyticsStore store = new AnalyticsStore(4, 4);
+        store.addCall(makeCall("TC@1"));
+        store.addSessionTiming(SessionTiming.ICA_ANSWER_CALL, 10);
+        store.clearCalls();
+        store.clearSessionTimings();
+        store.addCall(makeCall("TC@2"));
+
+        assertArrayEquals(new String[] {"TC@2"}, getCallIds(store));
+        assertEquals(0, getSessionTimings(store).size());
+    }
+
+    @SmallTest
+    @Test
+    public void testSessionTimings() {
+        AnalyticsStore store = new AnalyticsStore(1, 2);
+        store.addSessionTiming(SessionTiming.ICA_ANSWER_CALL, 10);
+        store.addSessionTiming(SessionTiming.CSW_ADD_CONFERENCE_CALL, 20);
+        store.addSessionTiming(SessionTiming.CSW_SET_ACTIVE, 123456789L);
+
+        List<long[]> timings = getSessionTimings(store);
+        assertEquals(2, timings.size());
+        assertArrayEquals(new long[] {SessionTiming.CSW_ADD_CONFERENCE_CALL, 20},
+                timings.get(0));
+        assertArrayEquals(new long[] {SessionTiming.CSW_SET_ACTIVE, 123456789L},
+                timings.get(1));
+    }
+
+    @SmallTest
+    @Test
+    public void testEncodeTelecomLog() throws Exception {
+        AnalyticsStore store = new AnalyticsStore(4, 4);
+        Analytics.CallInfoImpl call = makeCall("TC@1");
+        call.addVideoEvent(Analytics.SEND_LOCAL_SESSION_MODIFY_REQUEST,
+                VideoProfile.STATE_RX_ENABLED);
+        store.addCall(call);
+        store.addCall(makeCall("TC@2"));
+        store.addSessionTiming(SessionTiming.ICA_MUTE, 42);
+
+        TelecomLogClass.TelecomLog log = TelecomLogClass.TelecomLog.parseFrom(
+                store.encodeTelecomLog("EVT", 1989));
+
+        assertEquals(2, log.callLogs.length);
+        assertEquals(1, log.callLogs[0].videoEvents.length);
+        assertEquals(Analytics.SEND_LOCAL_SESSION_MODIFY_REQUEST,
+                log.callLogs[0].videoEvents[0].getEventName());
+        assertEquals(1, log.sessionTimings.length);
+        assertEquals(SessionTiming.ICA_MUTE, log.sessionTimings[0].getSessionEntryPoint());
+        assertEquals(42, log.sessionTimings[0].getTimeMillis());
+        assertEquals("EVT", log.getHardwareRevision());
+        assertEquals(1989, log.getCarrierId());
+    }
+
+    @SmallTest
+    @Test
+    public void testEncodeListenerLatencies() throws Exception {
+        AnalyticsStore store = new AnalyticsStore(1, 1);
+        TelecomLogClass.ListenerLatency latency = new TelecomLogClass.ListenerLatency()
+                .setListenerName("InCallController")
+                .setCallbackName("onCallAdded")
+                .setCount(3)
+                .setMaxMicros(1500);
+
+        TelecomLogClass.TelecomLog log = TelecomLogClass.TelecomLog.parseFrom(
+                store.encodeTelecomLog("EVT", 1989,
+                        new TelecomLogClass.ListenerLatency[] {latency}));
+
+        assertEquals(1, log.listenerLatencies.length);
+        assertEquals("InCallController", log.listenerLatencies[0].getListenerName());
+        assertEquals("onCallAdded", log.listenerLatencies[0].getCallbackName());
+        assertEquals(3, log.listenerLatencies[0].getCount());
+        assertEquals(1500, log.listenerLatencies[0].getMaxMicros());
+        assertEquals(1989, log.getCarrierId());
+    }
+
+    private static Analytics.CallInfoImpl makeCall(String callId) {
+        return new Analytics.CallInfoImpl(callId, Analytics.INCOMING_DIRECTION);
+    }
+
+    private static String[] getCallIds(AnalyticsStore store) {
+        List<String> callIds = new ArrayList<>();
+        store.forEachCall(callInfo -> callIds.add(callInfo.callId));
+        return callIds.toArray(new String[0]);
+    }
+
+    private static List<long[]> getSessionTimings(AnalyticsStore store) {
+        List<long[]> timings = new ArrayList<>();
+        store.forEachSessionTiming((sessionId, time) -> timings.add(new long[] {sessionId, time}));
+        return timings;
+    }
+}
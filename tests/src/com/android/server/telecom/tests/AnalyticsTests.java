@@ -468,6 +468,29 @@ public class AnalyticsTests extends TelecomSystemTest {
                 .count(), 0);
     }
 
+    @SmallTest
+    @Test
+    public void testAnalyticsTimeToFirstRing() throws Exception {
+        Analytics.reset();
+        Analytics.CallInfo rang = Analytics.initiateCallAnalytics("rang",
+                Analytics.INCOMING_DIRECTION);
+        rang.setTimeToFirstRingMillis(120);
+        // Ringing again later, e.g. after a headset connects, is not the first ring.
+        rang.setTimeToFirstRingMillis(5000);
+        Analytics.initiateCallAnalytics("neverRang", Analytics.INCOMING_DIRECTION);
+
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        Analytics.dumpToEncodedProto(mContext, pw, new String[]{});
+        TelecomLogClass.TelecomLog analyticsProto =
+                TelecomLogClass.TelecomLog.parseFrom(Base64.decode(sw.toString(), Base64.DEFAULT));
+
+        assertEquals(2, analyticsProto.callLogs.length);
+        assertTrue(analyticsProto.callLogs[0].hasTimeToFirstRingMillis());
+        assertEquals(120, analyticsProto.callLogs[0].getTimeToFirstRingMillis());
+        assertFalse(analyticsProto.callLogs[1].hasTimeToFirstRingMillis());
+    }
+
     private void assertIsRoundedToOneSigFig(long x) {
         assertEquals(x, Analytics.roundToOneSigFig(x));
     }
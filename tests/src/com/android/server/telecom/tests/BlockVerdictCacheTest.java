@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static com.android.server.telecom.callfiltering.BlockCheckerFilter.STATUS_BLOCKED_IN_LIST;
+import static com.android.server.telecom.callfiltering.BlockCheckerFilter.STATUS_BLOCKED_NOT_IN_CONTACTS;
+import static com.android.server.telecom.callfiltering.BlockCheckerFilter.STATUS_NOT_BLOCKED;
+
+import static org.junit.Assert.assertEquals;
+
+import android.telecom.TelecomManager;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.callfiltering.BlockVerdictCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.function.Supplier;
+
+@RunWith(JUnit4.class)
+public class BlockVerdictCacheTest extends TelecomTestCase {
+    private static final String NUMBER = "650-555-1212";
+    private static final String NORMALIZED_NUMBER = "6505551212";
+
+    private BlockVerdictCache mCache;
+    private int mLookups;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mCache = new BlockVerdictCache();
+        mLookups = 0;
+    }
+
+    @SmallTest
+    @Test
+    public void testRepeatedNumberServedFromCache() {
+        assertEquals(STATUS_BLOCKED_IN_LIST, getBlockStatus(NUMBER, false,
+                STATUS_BLOCKED_IN_LIST));
+        // The same number, formatted differently, is a hit.
+        assertEquals(STATUS_BLOCKED_IN_LIST, getBlockStatus(NORMALIZED_NUMBER, false,
+                STATUS_NOT_BLOCKED));
+
+        assertEquals(1, mLookups);
+        assertEquals(1, mCache.getHits());
+        assertEquals(1, mCache.getMisses());
+    }
+
+    @SmallTest
+    @Test
+    public void testContactExistenceIsPartOfKey() {
+        assertEquals(STATUS_BLOCKED_NOT_IN_CONTACTS, getBlockStatus(NUMBER, false,
+                STATUS_BLOCKED_NOT_IN_CONTACTS));
+        assertEquals(STATUS_NOT_BLOCKED, getBlockStatus(NUMBER, true, STATUS_NOT_BLOCKED));
+        assertEquals(2, mLookups);
+    }
+
+    @SmallTest
+    @Test
+    public void testFailedLookupNotCached() {
+        assertEquals(STATUS_NOT_BLOCKED, mCache.getBlockStatus(NUMBER,
+                TelecomManager.PRESENTATION_ALLOWED, false, countLookup(() -> null)));
+        assertEquals(STATUS_BLOCKED_IN_LIST, getBlockStatus(NUMBER, false,
+                STATUS_BLOCKED_IN_LIST));
+        assertEquals(2, mLookups);
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidate() {
+        getBlockStatus(NUMBER, false, STATUS_BLOCKED_IN_LIST);
+        mCache.invalidate("test");
+        assertEquals(STATUS_NOT_BLOCKED, getBlockStatus(NUMBER, false, STATUS_NOT_BLOCKED));
+        assertEquals(2, mLookups);
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidatedDuringLookupNotCached() {
+        mCache.getBlockStatus(NUMBER, TelecomManager.PRESENTATION_ALLOWED, false,
+                countLookup(() -> {
+                    mCache.invalidate("test");
+                    return STATUS_BLOCKED_IN_LIST;
+                }));
+        assertEquals(0, mCache.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        for (int i = 0; i < BlockVerdictCache.MAX_SIZE; i++) {
+            getBlockStatus("555" + i, false, STATUS_NOT_BLOCKED);
+        }
+        // Touch the first number so the second is the eldest.
+        getBlockStatus("5550", false, STATUS_NOT_BLOCKED);
+        getBlockStatus("5551212", false, STATUS_NOT_BLOCKED);
+        assertEquals(BlockVerdictCache.MAX_SIZE, mCache.size());
+
+        int lookups = mLookups;
+        getBlockStatus("5550", false, STATUS_NOT_BLOCKED);
+        assertEquals(lookups, mLookups);
+        getBlockStatus("5551", false, STATUS_NOT_BLOCKED);
+        assertEquals(lookups + 1, mLookups);
+    }
+
+    private int getBlockStatus(String number, boolean isNumberInContacts, int providerStatus) {
+        return mCache.getBlockStatus(number, TelecomManager.PRESENTATION_ALLOWED,
+                isNumberInContacts, countLookup(() -> providerStatus));
+    }
+
+    private Supplier<Integer> countLookup(Supplier<Integer> lookup) {
+        return () -> {
+            mLookups++;
+            return lookup.get();
+        };
+    }
+}
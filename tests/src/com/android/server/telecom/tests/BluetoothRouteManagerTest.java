@@ -17,6 +17,8 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -36,6 +38,7 @@ import android.bluetooth.BluetoothProfile;
 import android.bluetooth.BluetoothStatusCodes;
 import android.content.ContentResolver;
 import android.os.Parcel;
+import android.os.SystemClock;
 import android.telecom.Log;
 
 import androidx.test.filters.SmallTest;
@@ -56,6 +59,9 @@ import org.mockito.Mock;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -294,6 +300,93 @@ public class BluetoothRouteManagerTest extends TelecomTestCase {
         sm.quitNow();
     }
 
+    @SmallTest
+    @Test
+    public void testAudioStateSnapshotFollowsTransitions() {
+        BluetoothRouteManager sm = setupStateMachine(
+                BluetoothRouteManager.AUDIO_OFF_STATE_NAME, null);
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.STATE_OFF,
+                sm.getAudioStateSnapshot().getState());
+        assertNull(sm.getAudioStateSnapshot().getDeviceAddress());
+
+        setupConnectedDevices(new BluetoothDevice[]{DEVICE1}, null, null, null, null, null);
+        when(mDeviceManager.connectAudio(anyString(), anyBoolean())).thenReturn(true);
+        executeRoutingAction(sm, BluetoothRouteManager.CONNECT_BT, DEVICE1.getAddress());
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.STATE_CONNECTING,
+                sm.getAudioStateSnapshot().getState());
+        assertEquals(DEVICE1.getAddress(), sm.getAudioStateSnapshot().getDeviceAddress());
+
+        executeRoutingAction(sm, BluetoothRouteManager.BT_AUDIO_IS_ON, DEVICE1.getAddress());
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.STATE_CONNECTED,
+                sm.getAudioStateSnapshot().getState());
+        assertEquals(DEVICE1.getAddress(), sm.getAudioStateSnapshot().getDeviceAddress());
+        assertEquals(sm.getCurrentState().getName(), sm.getAudioStateSnapshot().toString());
+        sm.quitNow();
+    }
+
+    @SmallTest
+    @Test
+    public void testIsBluetoothAudioConnectedOrPendingDoesNotWaitOnLooper() throws Exception {
+        when(mFeatureFlags.nonBlockingBluetoothAudioState()).thenReturn(true);
+        BluetoothRouteManager sm = setupStateMachine(
+                BluetoothRouteManager.AUDIO_CONNECTED_STATE_NAME_PREFIX, DEVICE1);
+
+        // Hold the state machine's looper; the query must still answer straight away.
+        CountDownLatch handlerBlocked = new CountDownLatch(1);
+        CountDownLatch releaseHandler = new CountDownLatch(1);
+        sm.sendMessage(BluetoothRouteManager.RUN_RUNNABLE, (Runnable) () -> {
+            handlerBlocked.countDown();
+            try {
+                releaseHandler.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through and let the handler go.
+            }
+        });
+        assertTrue(handlerBlocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        try {
+            long start = SystemClock.elapsedRealtime();
+            assertTrue(sm.isBluetoothAudioConnectedOrPending());
+            assertTrue(SystemClock.elapsedRealtime() - start < TEST_TIMEOUT / 2);
+        } finally {
+            releaseHandler.countDown();
+        }
+        waitForHandlerAction(sm.getHandler(), TEST_TIMEOUT);
+        sm.quitNow();
+    }
+
+    @SmallTest
+    @Test
+    public void testIsBluetoothAudioConnectedOrPendingWaitsForRequestedConnect()
+            throws Exception {
+        when(mFeatureFlags.nonBlockingBluetoothAudioState()).thenReturn(true);
+        BluetoothRouteManager sm = setupStateMachine(
+                BluetoothRouteManager.AUDIO_OFF_STATE_NAME, null);
+        setupConnectedDevices(new BluetoothDevice[]{DEVICE1}, null, null, null, null, null);
+        when(mDeviceManager.connectAudio(anyString(), anyBoolean())).thenReturn(true);
+
+        // Hold the looper so that the connect request is still queued when the query is made.
+        CountDownLatch releaseHandler = new CountDownLatch(1);
+        sm.sendMessage(BluetoothRouteManager.RUN_RUNNABLE, (Runnable) () -> {
+            try {
+                releaseHandler.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Fall through and let the handler go.
+            }
+        });
+        sm.connectBluetoothAudio(DEVICE1.getAddress());
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.STATE_OFF,
+                sm.getAudioStateSnapshot().getState());
+
+        CompletableFuture<Boolean> connectedOrPending = CompletableFuture.supplyAsync(
+                sm::isBluetoothAudioConnectedOrPending);
+        releaseHandler.countDown();
+        assertTrue(connectedOrPending.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(BluetoothRouteManager.AudioStateSnapshot.STATE_CONNECTING,
+                sm.getAudioStateSnapshot().getState());
+        sm.getHandler().removeMessages(BluetoothRouteManager.CONNECTION_TIMEOUT);
+        sm.quitNow();
+    }
+
     private BluetoothRouteManager setupStateMachine(String initialState,
             BluetoothDevice initialDevice) {
         resetMocks();
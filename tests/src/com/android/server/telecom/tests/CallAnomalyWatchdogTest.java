@@ -44,6 +44,7 @@ import com.android.server.telecom.EmergencyCallDiagnosticLogger;
 import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.PhoneNumberUtilsAdapter;
 import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.TelecomTimerService;
 import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.ui.ToastFactory;
 
@@ -121,7 +122,8 @@ public class CallAnomalyWatchdogTest extends TelecomTestCase {
         when(mMockClockProxy.elapsedRealtime()).thenReturn(0L);
         doReturn(new ComponentName(mContext, CallTest.class))
                 .when(mMockConnectionService).getComponentName();
-        mCallAnomalyWatchdog = new CallAnomalyWatchdog(mTestScheduledExecutorService, mLock,
+        mCallAnomalyWatchdog = new CallAnomalyWatchdog(
+                new TelecomTimerService(mTestScheduledExecutorService, mMockClockProxy), mLock,
                 mTimeouts, mMockClockProxy, mMockEmergencyCallDiagnosticLogger);
         mCallAnomalyWatchdog.setAnomalyReporterAdapter(mAnomalyReporterAdapter);
         when(mMockCallsManager.getCurrentUserHandle()).thenReturn(UserHandle.CURRENT);
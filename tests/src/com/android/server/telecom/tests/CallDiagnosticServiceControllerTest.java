@@ -53,6 +53,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -112,6 +113,18 @@ public class CallDiagnosticServiceControllerTest {
                 TEST_PACKAGE, mLock);
     }
 
+    /**
+     * Verify the call listener is told about every callback it handles.
+     */
+    @Test
+    public void testCallListenerDeclaresImplementedCallbacks() throws Exception {
+        Field callListener = CallDiagnosticServiceController.class.getDeclaredField(
+                "mCallListener");
+        callListener.setAccessible(true);
+        CallTest.assertListensForImplementedCallbacks(
+                (Call.Listener) callListener.get(mCallDiagnosticService));
+    }
+
     /**
      * Verify no binding takes place for a non-sim call.
      */
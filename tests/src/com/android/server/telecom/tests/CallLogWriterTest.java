@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerExecutor;
+import android.os.HandlerThread;
+import android.os.PersistableBundle;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.CallLog;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.CallLogWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class CallLogWriterTest extends TelecomTestCase {
+    private static final String FILE_NAME = "pending-call-log-test.xml";
+    private static final long BATCH_WINDOW_MILLIS = 50;
+    private static final long RETRY_DELAY_MILLIS = 10;
+    private static final long TEST_TIMEOUT = 5000;
+
+    /**
+     * Stands in for the call log provider, and counts the batches it is handed.
+     */
+    private static class FakeCallLogProvider implements CallLogWriter.Inserter {
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger callsWritten = new AtomicInteger();
+        final AtomicInteger busyBatches = new AtomicInteger();
+        final AtomicInteger nullUriBatches = new AtomicInteger();
+
+        FakeCallLogProvider(int busyBatches) {
+            this.busyBatches.set(busyBatches);
+        }
+
+        @Override
+        public void addCalls(Context context, List<CallLogWriter.ParamsBuilder> calls,
+                Uri[] uris, Exception[] errors) {
+            batches.incrementAndGet();
+            boolean busy = busyBatches.getAndDecrement() > 0;
+            boolean noUri = !busy && nullUriBatches.getAndDecrement() > 0;
+            for (int i = 0; i < calls.size(); i++) {
+                if (busy) {
+                    errors[i] = new SQLiteDatabaseLockedException("busy");
+                } else if (noUri) {
+                    // The provider can fail to insert without throwing.
+                    uris[i] = null;
+                } else {
+                    uris[i] = Uri.withAppendedPath(CallLog.Calls.CONTENT_URI,
+                            String.valueOf(callsWritten.incrementAndGet()));
+                }
+            }
+        }
+    }
+
+    private final List<HandlerThread> mThreads = new ArrayList<>();
+    private final AtomicInteger mWriteFailures = new AtomicInteger();
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = mComponentContextFixture.getTestDouble().getApplicationContext();
+        when(mContext.getSystemService(UserManager.class).isUserUnlocked()).thenReturn(true);
+        new File(mContext.getFilesDir(), FILE_NAME).delete();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        for (HandlerThread thread : mThreads) {
+            thread.quitSafely();
+        }
+        new File(mContext.getFilesDir(), FILE_NAME).delete();
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testCallsLoggedTogetherAreBatched() throws Exception {
+        FakeCallLogProvider provider = new FakeCallLogProvider(0 /* busyBatches */);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+
+        List<Uri> uris = addCallsAndWait(writer, 5);
+
+        assertEquals(1, provider.batches.get());
+        assertEquals(5, provider.callsWritten.get());
+        for (Uri uri : uris) {
+            assertNotNull(uri);
+        }
+        waitForHandlerAction(writer.getTimerHandler(), TEST_TIMEOUT);
+        assertFalse(new File(mContext.getFilesDir(), FILE_NAME).exists());
+    }
+
+    @SmallTest
+    @Test
+    public void testBusyProviderIsRetried() throws Exception {
+        FakeCallLogProvider provider = new FakeCallLogProvider(2 /* busyBatches */);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+
+        List<Uri> uris = addCallsAndWait(writer, 2);
+
+        // Two failed attempts and then one which writes both calls.
+        assertEquals(3, provider.batches.get());
+        assertEquals(2, provider.callsWritten.get());
+        assertNotNull(uris.get(0));
+        assertNotNull(uris.get(1));
+        assertEquals(0, mWriteFailures.get());
+    }
+
+    @SmallTest
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        FakeCallLogProvider provider = new FakeCallLogProvider(Integer.MAX_VALUE);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+
+        List<Uri> uris = addCallsAndWait(writer, 1);
+
+        assertNull(uris.get(0));
+        assertEquals(CallLogWriter.MAX_ATTEMPTS, provider.batches.get());
+        assertEquals(1, mWriteFailures.get());
+    }
+
+    @SmallTest
+    @Test
+    public void testNullUriIsNotRetried() throws Exception {
+        FakeCallLogProvider provider = new FakeCallLogProvider(0 /* busyBatches */);
+        provider.nullUriBatches.set(1);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+
+        List<Uri> uris = addCallsAndWait(writer, 1);
+
+        // The provider rejected the call; writing it again could log it twice.
+        assertNull(uris.get(0));
+        assertEquals(1, provider.batches.get());
+        assertEquals(1, mWriteFailures.get());
+    }
+
+    @SmallTest
+    @Test
+    public void testNothingSavedWhenWritesSucceed() throws Exception {
+        FakeCallLogProvider provider = new FakeCallLogProvider(0 /* busyBatches */);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+        writer.addCall("TC@1", makeParams("5551212"), null /* listener */);
+        // Queued, and still waiting for the batch window.
+        waitForHandlerAction(writer.getTimerHandler(), TEST_TIMEOUT);
+        assertFalse(new File(mContext.getFilesDir(), FILE_NAME).exists());
+    }
+
+    @SmallTest
+    @Test
+    public void testUnwrittenCallsRestored() throws Exception {
+        // The first writer cannot reach the provider, and will not retry before it is gone.
+        FakeCallLogProvider busyProvider = new FakeCallLogProvider(Integer.MAX_VALUE);
+        CallLogWriter busyWriter = createWriter(busyProvider, TimeUnit.HOURS.toMillis(1));
+        busyWriter.addCall("TC@1", makeParams("5551212"), null /* listener */);
+        busyWriter.addCall("TC@2", makeParams("5551213"), null /* listener */);
+        waitForHandlerActionDelayed(busyWriter.getTimerHandler(), TEST_TIMEOUT,
+                BATCH_WINDOW_MILLIS * 2);
+        assertEquals(1, busyProvider.batches.get());
+        assertTrue(new File(mContext.getFilesDir(), FILE_NAME).exists());
+
+        // A new writer, as after a restart, writes the calls the first one could not.
+        FakeCallLogProvider provider = new FakeCallLogProvider(0 /* busyBatches */);
+        CallLogWriter writer = createWriter(provider, RETRY_DELAY_MILLIS);
+        waitForHandlerActionDelayed(writer.getTimerHandler(), TEST_TIMEOUT, BATCH_WINDOW_MILLIS * 2);
+        waitForHandlerAction(writer.getTimerHandler(), TEST_TIMEOUT);
+
+        assertEquals(1, provider.batches.get());
+        assertEquals(2, provider.callsWritten.get());
+        assertFalse(new File(mContext.getFilesDir(), FILE_NAME).exists());
+    }
+
+    @SmallTest
+    @Test
+    public void testParamsRoundTrip() {
+        PhoneAccountHandle handle = new PhoneAccountHandle(
+                new ComponentName("com.foo", "Bar"), "account", UserHandle.of(10));
+        CallLogWriter.ParamsBuilder params = makeParams("5551212")
+                .setAccountHandle(handle)
+                .setUserToBeInsertedTo(UserHandle.of(10))
+                .setAddForAllUsers(false)
+                .setCallType(CallLog.Calls.MISSED_TYPE)
+                .setCallScreeningAppName("Screener")
+                .setPictureUri(Uri.parse("content://pictures/1"))
+                .setMissedReason(CallLog.Calls.AUTO_MISSED_EMERGENCY_CALL);
+
+        PersistableBundle restored = CallLogWriter.ParamsBuilder.fromPersistableBundle(
+                params.toPersistableBundle()).toPersistableBundle();
+        PersistableBundle original = params.toPersistableBundle();
+
+        assertEquals(original.keySet(), restored.keySet());
+        for (String key : original.keySet()) {
+            assertEquals(key, original.get(key), restored.get(key));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testContentValuesMatchAddCall() {
+        PhoneAccountHandle handle = new PhoneAccountHandle(
+                new ComponentName("com.foo", "Bar"), "account", UserHandle.of(0));
+        CallLogWriter.ParamsBuilder params = makeParams("5551212")
+                .setAccountHandle(handle)
+                .setCallType(CallLog.Calls.MISSED_TYPE)
+                .setIsRead(true)
+                .setDataUsage(Long.MIN_VALUE);
+
+        ContentValues values = params.toContentValues("5550000");
+        assertEquals("5551212", values.getAsString(CallLog.Calls.NUMBER));
+        assertEquals(CallLog.Calls.PRESENTATION_ALLOWED,
+                (int) values.getAsInteger(CallLog.Calls.NUMBER_PRESENTATION));
+        assertEquals("account", values.getAsString(CallLog.Calls.PHONE_ACCOUNT_ID));
+        assertEquals("5550000", values.getAsString(CallLog.Calls.PHONE_ACCOUNT_ADDRESS));
+        assertEquals(1, (int) values.getAsInteger(CallLog.Calls.IS_READ));
+        assertFalse(values.containsKey(CallLog.Calls.DATA_USAGE));
+
+        // Numbers which may not be shown are not logged.
+        values = makeParams("5551212")
+                .setPresentation(TelecomManager.PRESENTATION_RESTRICTED)
+                .toContentValues(null /* accountAddress */);
+        assertEquals("", values.getAsString(CallLog.Calls.NUMBER));
+        assertEquals(TelecomManager.PRESENTATION_RESTRICTED,
+                (int) values.getAsInteger(CallLog.Calls.NUMBER_PRESENTATION));
+        assertFalse(values.containsKey(CallLog.Calls.IS_READ));
+    }
+
+    private CallLogWriter createWriter(CallLogWriter.Inserter inserter, long retryDelayMillis) {
+        HandlerThread thread = new HandlerThread("CallLogWriterTest");
+        thread.start();
+        mThreads.add(thread);
+        // Writing and timing on the same thread lets the tests wait for both through one handler.
+        return new CallLogWriter(mContext, new HandlerExecutor(new Handler(thread.getLooper())),
+                thread.getLooper(), inserter, mWriteFailures::incrementAndGet,
+                new File(mContext.getFilesDir(), FILE_NAME), BATCH_WINDOW_MILLIS,
+                retryDelayMillis);
+    }
+
+    private List<Uri> addCallsAndWait(CallLogWriter writer, int count) throws Exception {
+        CountDownLatch latch = new CountDownLatch(count);
+        Uri[] uris = new Uri[count];
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            writer.addCall("TC@" + i, makeParams("555121" + i), uri -> {
+                uris[index] = uri;
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        return Arrays.asList(uris);
+    }
+
+    private static CallLogWriter.ParamsBuilder makeParams(String number) {
+        return new CallLogWriter.ParamsBuilder()
+                .setNumber(number)
+                .setStart(1000L)
+                .setDuration(10)
+                .setCallType(CallLog.Calls.INCOMING_TYPE)
+                .setPresentation(1);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.UserHandle;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.callfiltering.CallScreeningServiceBindingPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class CallScreeningServiceBindingPoolTest extends TelecomTestCase {
+    private static final String PKG_NAME = "com.android.services.telecom.tests";
+    private static final String CLS_NAME = "CallScreeningService";
+    private static final ComponentName COMPONENT_NAME = new ComponentName(PKG_NAME, CLS_NAME);
+    private static final UserHandle USER = UserHandle.of(0);
+    private static final long LINGER_MILLIS = 100;
+    private static final long TEST_TIMEOUT = 5000;
+
+    @Mock Context mContext;
+    @Mock PackageManager mPackageManager;
+    @Mock IBinder mBinder;
+    @Mock CallScreeningServiceBindingPool.Client mClient;
+
+    private HandlerThread mHandlerThread;
+    private CallScreeningServiceBindingPool mPool;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.serviceInfo = new ServiceInfo();
+        resolveInfo.serviceInfo.packageName = PKG_NAME;
+        resolveInfo.serviceInfo.name = CLS_NAME;
+        resolveInfo.serviceInfo.permission = Manifest.permission.BIND_SCREENING_SERVICE;
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mPackageManager.queryIntentServicesAsUser(nullable(Intent.class), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(resolveInfo));
+        when(mContext.bindServiceAsUser(nullable(Intent.class), nullable(ServiceConnection.class),
+                anyInt(), eq(USER))).thenReturn(true);
+
+        mHandlerThread = new HandlerThread("CallScreeningServiceBindingPoolTest");
+        mHandlerThread.start();
+        mPool = new CallScreeningServiceBindingPool(mContext, mHandlerThread.getLooper(),
+                LINGER_MILLIS);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        mHandlerThread.quitSafely();
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testBackToBackCallsReuseBinding() throws Exception {
+        CallScreeningServiceBindingPool.Lease lease = mPool.acquire(USER, PKG_NAME, mClient);
+        assertNotNull(lease);
+        ServiceConnection connection = verifyBound(1);
+        connection.onServiceConnected(COMPONENT_NAME, mBinder);
+        verify(mClient).onServiceConnected(COMPONENT_NAME, mBinder);
+        lease.onVerdictReceived();
+        mPool.release(lease);
+
+        // The next call gets the bound service without binding again.
+        CallScreeningServiceBindingPool.Client client =
+                mock(CallScreeningServiceBindingPool.Client.class);
+        CallScreeningServiceBindingPool.Lease nextLease = mPool.acquire(USER, PKG_NAME, client);
+        waitForHandlerAction(mHandlerThread.getThreadHandler(), TEST_TIMEOUT);
+        verify(client).onServiceConnected(COMPONENT_NAME, mBinder);
+        verifyBound(1);
+
+        mPool.release(nextLease);
+        waitForHandlerActionDelayed(mHandlerThread.getThreadHandler(), TEST_TIMEOUT,
+                LINGER_MILLIS * 2);
+        verify(mContext).unbindService(connection);
+        assertEquals(0, mPool.getBindingCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testClientHoldsLeaseBeforeConnection() throws Exception {
+        CallScreeningServiceBindingPool.Lease lease = mPool.acquire(USER, PKG_NAME, mClient);
+        verifyBound(1).onServiceConnected(COMPONENT_NAME, mBinder);
+        InOrder inOrder = inOrder(mClient);
+        inOrder.verify(mClient).onLeaseAcquired(lease);
+        inOrder.verify(mClient).onServiceConnected(COMPONENT_NAME, mBinder);
+
+        // Also when the binding is reused.
+        CallScreeningServiceBindingPool.Client client =
+                mock(CallScreeningServiceBindingPool.Client.class);
+        CallScreeningServiceBindingPool.Lease nextLease = mPool.acquire(USER, PKG_NAME, client);
+        waitForHandlerAction(mHandlerThread.getThreadHandler(), TEST_TIMEOUT);
+        inOrder = inOrder(client);
+        inOrder.verify(client).onLeaseAcquired(nextLease);
+        inOrder.verify(client).onServiceConnected(COMPONENT_NAME, mBinder);
+
+        mPool.release(lease);
+        mPool.release(nextLease);
+    }
+
+    @SmallTest
+    @Test
+    public void testBindingKeptWhileLeased() throws Exception {
+        CallScreeningServiceBindingPool.Lease first = mPool.acquire(USER, PKG_NAME, mClient);
+        CallScreeningServiceBindingPool.Lease second = mPool.acquire(USER, PKG_NAME, mClient);
+        verifyBound(1);
+
+        mPool.release(first);
+        waitForHandlerActionDelayed(mHandlerThread.getThreadHandler(), TEST_TIMEOUT,
+                LINGER_MILLIS * 2);
+        verify(mContext, never()).unbindService(any(ServiceConnection.class));
+        assertEquals(1, mPool.getBindingCount());
+        mPool.release(second);
+    }
+
+    @SmallTest
+    @Test
+    public void testBindingDiedNotifiesLeaseHolders() throws Exception {
+        mPool.acquire(USER, PKG_NAME, mClient);
+        ServiceConnection connection = verifyBound(1);
+
+        connection.onBindingDied(COMPONENT_NAME);
+
+        verify(mClient).onServiceDisconnected();
+        verify(mContext).unbindService(connection);
+        assertEquals(0, mPool.getBindingCount());
+
+        // A later call binds again.
+        mPool.acquire(USER, PKG_NAME, mClient);
+        verifyBound(2);
+    }
+
+    @SmallTest
+    @Test
+    public void testBindFailure() throws Exception {
+        when(mContext.bindServiceAsUser(nullable(Intent.class), nullable(ServiceConnection.class),
+                anyInt(), eq(USER))).thenReturn(false);
+
+        assertNull(mPool.acquire(USER, PKG_NAME, mClient));
+        assertEquals(0, mPool.getBindingCount());
+    }
+
+    private ServiceConnection verifyBound(int times) {
+        ArgumentCaptor<ServiceConnection> captor =
+                ArgumentCaptor.forClass(ServiceConnection.class);
+        verify(mContext, times(times)).bindServiceAsUser(any(Intent.class), captor.capture(),
+                anyInt(), eq(USER));
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import android.telecom.Call;
+import android.telecom.Connection;
+import android.telecom.DisconnectCause;
+
+import androidx.test.filters.LargeTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Benchmarks setting up and tearing down calls through {@link
+ * com.android.server.telecom.CallsManager}, from the binder call which starts them to the
+ * {@link android.telecom.InCallService}s being told about them.
+ * <p>
+ * Each benchmark is run with no other calls and again with a held call in the background; with an
+ * active call in the foreground as well, Telecom would not allow another call to be set up.
+ */
+@RunWith(JUnit4.class)
+public class CallSetupBenchmarkTest extends TelecomSystemTest {
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 5;
+    private static final int CALLS_PER_RUN = 4;
+    private static final int MAX_BACKGROUND_CALLS = 1;
+
+    @LargeTest
+    @Test
+    public void testBenchmarkOutgoingCallSetup() throws Exception {
+        for (int backgroundCalls = 0; backgroundCalls <= MAX_BACKGROUND_CALLS;
+                backgroundCalls++) {
+            if (backgroundCalls > 0) {
+                startHeldCall("650-555-0000");
+            }
+            TelecomBenchmark.measure("CallsManager.outgoingCall/backgroundCalls="
+                    + backgroundCalls, WARMUP_RUNS, RUNS, CALLS_PER_RUN, i -> {
+                        IdPair ids = startOutgoingPhoneCall("650-555-1212",
+                                mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA,
+                                mPhoneAccountA0.getAccountHandle().getUserHandle());
+                        mInCallServiceFixtureX.mInCallAdapter.disconnectCall(ids.mCallId);
+                        disconnect(ids, DisconnectCause.LOCAL);
+                    });
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkIncomingCallSetup() throws Exception {
+        for (int backgroundCalls = 0; backgroundCalls <= MAX_BACKGROUND_CALLS;
+                backgroundCalls++) {
+            if (backgroundCalls > 0) {
+                startHeldCall("650-555-0000");
+            }
+            TelecomBenchmark.measure("CallsManager.incomingCall/backgroundCalls="
+                    + backgroundCalls, WARMUP_RUNS, RUNS, CALLS_PER_RUN, i -> {
+                        IdPair ids = startIncomingPhoneCall("650-555-2323",
+                                mPhoneAccountA0.getAccountHandle(), mConnectionServiceFixtureA);
+                        mInCallServiceFixtureX.mInCallAdapter.rejectCall(ids.mCallId,
+                                false /* rejectWithMessage */, null /* textMessage */);
+                        disconnect(ids, DisconnectCause.REJECTED);
+                    });
+        }
+    }
+
+    private void startHeldCall(String number) throws Exception {
+        IdPair ids = startAndMakeActiveOutgoingCall(number, mPhoneAccountA0.getAccountHandle(),
+                mConnectionServiceFixtureA);
+        mInCallServiceFixtureX.mInCallAdapter.holdCall(ids.mCallId);
+        mConnectionServiceFixtureA.mConnectionById.get(ids.mConnectionId).state =
+                Connection.STATE_HOLDING;
+        mConnectionServiceFixtureA.sendSetOnHold(ids.mConnectionId);
+        assertEquals(Call.STATE_HOLDING, mInCallServiceFixtureX.getCall(ids.mCallId).getState());
+    }
+
+    private void disconnect(IdPair ids, int disconnectCause) throws Exception {
+        mConnectionServiceFixtureA.sendSetDisconnected(ids.mConnectionId, disconnectCause);
+        waitForHandlerAction(mConnectionServiceFixtureA.mConnectionServiceDelegate.getHandler(),
+                TEST_TIMEOUT);
+        assertEquals(Call.STATE_DISCONNECTED,
+                mInCallServiceFixtureX.getCall(ids.mCallId).getState());
+    }
+}
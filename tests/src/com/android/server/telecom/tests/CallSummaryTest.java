@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.os.UserHandle;
+import android.telecom.PhoneAccountHandle;
+import android.telephony.TelephonyManager;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallState;
+import com.android.server.telecom.CallSummary;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class CallSummaryTest extends TelecomTestCase {
+    private static final UserHandle USER_0 = UserHandle.of(0);
+    private static final UserHandle USER_10 = UserHandle.of(10);
+    private static final PhoneAccountHandle SIM_HANDLE = new PhoneAccountHandle(
+            new ComponentName("com.foo", "Sim"), "sim", USER_0);
+    private static final PhoneAccountHandle SELF_MANAGED_HANDLE = new PhoneAccountHandle(
+            new ComponentName("com.voip", "Voip"), "voip", USER_10);
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @SmallTest
+    @Test
+    public void testEmptySummary() {
+        CallSummary summary = CallSummary.create(Collections.emptyList(),
+                Collections.emptyList(), TelephonyManager.CALL_STATE_IDLE);
+        assertFalse(summary.isRinging());
+        assertFalse(summary.isInEmergencyCall());
+        assertFalse(summary.hasOngoingCalls(USER_0, true));
+        assertFalse(summary.hasOngoingManagedCalls(USER_0, true));
+        assertFalse(summary.isInSelfManagedCall("com.voip", UserHandle.ALL));
+        assertEquals(TelephonyManager.CALL_STATE_IDLE, summary.getCallState());
+    }
+
+    @SmallTest
+    @Test
+    public void testSummaryMatchesCalls() {
+        Call ringing = makeCall(SIM_HANDLE, USER_0, CallState.RINGING, false);
+        Call selfManaged = makeCall(SELF_MANAGED_HANDLE, USER_10, CallState.ACTIVE, true);
+        CallSummary summary = CallSummary.create(Arrays.asList(ringing, selfManaged),
+                Collections.emptyList(), TelephonyManager.CALL_STATE_RINGING);
+
+        assertTrue(summary.isRinging());
+        assertFalse(summary.isInEmergencyCall());
+        assertEquals(TelephonyManager.CALL_STATE_RINGING, summary.getCallState());
+        // Calls are scoped to the user they are associated with.
+        assertTrue(summary.hasOngoingCalls(USER_0, false));
+        assertTrue(summary.hasOngoingCalls(USER_10, false));
+        assertTrue(summary.hasOngoingManagedCalls(USER_0, false));
+        assertFalse(summary.hasOngoingManagedCalls(USER_10, false));
+        assertTrue(summary.hasOngoingManagedCalls(USER_10, true));
+        // Self-managed calls are scoped to the package and user of their phone account.
+        assertTrue(summary.isInSelfManagedCall("com.voip", USER_10));
+        assertTrue(summary.isInSelfManagedCall("com.voip", UserHandle.ALL));
+        assertFalse(summary.isInSelfManagedCall("com.voip", USER_0));
+        assertFalse(summary.isInSelfManagedCall("com.foo", UserHandle.ALL));
+    }
+
+    @SmallTest
+    @Test
+    public void testChildExternalAndSetupCalls() {
+        Call child = makeCall(SIM_HANDLE, USER_0, CallState.RINGING, false);
+        when(child.getParentCall()).thenReturn(mock(Call.class));
+        Call external = makeCall(SIM_HANDLE, USER_0, CallState.ACTIVE, false);
+        when(external.isExternalCall()).thenReturn(true);
+        when(external.isEmergencyCall()).thenReturn(true);
+        Call beingSetup = makeCall(SELF_MANAGED_HANDLE, USER_10, CallState.NEW, true);
+
+        CallSummary summary = CallSummary.create(Arrays.asList(child, external),
+                Collections.singletonList(beingSetup), TelephonyManager.CALL_STATE_IDLE);
+
+        // Only top-level, non-external calls are ringing or ongoing...
+        assertFalse(summary.isRinging());
+        assertFalse(summary.hasOngoingCalls(USER_0, true));
+        // ...but any live emergency call counts.
+        assertTrue(summary.isInEmergencyCall());
+        // Self-managed calls being set up are included.
+        assertTrue(summary.isInSelfManagedCall("com.voip", USER_10));
+    }
+
+    private static Call makeCall(PhoneAccountHandle handle, UserHandle user, int state,
+            boolean isSelfManaged) {
+        Call call = mock(Call.class);
+        when(call.getTargetPhoneAccount()).thenReturn(handle);
+        when(call.getAssociatedUser()).thenReturn(user);
+        when(call.getState()).thenReturn(state);
+        when(call.isSelfManaged()).thenReturn(isSelfManaged);
+        return call;
+    }
+}
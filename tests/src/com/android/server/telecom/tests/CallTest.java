@@ -18,6 +18,7 @@ package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -67,8 +68,10 @@ import com.android.server.telecom.CachedMuteStateChange;
 import com.android.server.telecom.Call;
 import com.android.server.telecom.CallIdMapper;
 import com.android.server.telecom.CallState;
+import com.android.server.telecom.CallAnomalyWatchdog;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.CallsManagerListenerBase;
 import com.android.server.telecom.ClockProxy;
 import com.android.server.telecom.ConnectionServiceWrapper;
 import com.android.server.telecom.EmergencyCallHelper;
@@ -76,6 +79,7 @@ import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.PhoneNumberUtilsAdapter;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.TransactionalServiceWrapper;
+import com.android.server.telecom.ui.IncomingCallNotifier;
 import com.android.server.telecom.ui.ToastFactory;
 
 import org.junit.After;
@@ -86,6 +90,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.Set;
 
@@ -1041,6 +1046,133 @@ public class CallTest extends TelecomTestCase {
         assertFalse(call.isRespondViaSmsCapable());
     }
 
+    @Test
+    @SmallTest
+    public void testListenerOnlyNotifiedOfInterestedEvents() {
+        CountingListener listener = new CountingListener(Call.LISTENER_STATUS_HINTS_CHANGED);
+        Call call = createCall("1");
+        call.addListener(listener);
+
+        call.setConnectionCapabilities(Connection.CAPABILITY_HOLD);
+        call.setStatusHints(mock(StatusHints.class));
+
+        assertEquals(0, listener.mCapabilitiesChanges);
+        assertEquals(1, listener.mStatusHintsChanges);
+    }
+
+    @Test
+    @SmallTest
+    public void testUpdateBatchEndedOnceForNestedBatches() {
+        CountingListener listener = new CountingListener(
+                Call.LISTENER_CONNECTION_CAPABILITIES_CHANGED | Call.LISTENER_UPDATE_BATCH_ENDED);
+        Call call = createCall("1");
+        call.addListener(listener);
+
+        call.beginUpdateBatch();
+        call.setConnectionCapabilities(Connection.CAPABILITY_HOLD);
+        call.beginUpdateBatch();
+        call.setConnectionCapabilities(Connection.CAPABILITY_MUTE);
+        call.endUpdateBatch();
+        assertTrue(call.isInUpdateBatch());
+        assertEquals(0, listener.mUpdateBatchesEnded);
+        call.endUpdateBatch();
+
+        // Changes are still reported as they are made.
+        assertEquals(2, listener.mCapabilitiesChanges);
+        assertEquals(1, listener.mUpdateBatchesEnded);
+        assertFalse(call.isInUpdateBatch());
+
+        // An unmatched end is ignored.
+        call.endUpdateBatch();
+        assertEquals(1, listener.mUpdateBatchesEnded);
+    }
+
+    @Test
+    @SmallTest
+    public void testRemovedListenerNotNotified() {
+        CountingListener listener = new CountingListener(Call.LISTENER_STATUS_HINTS_CHANGED);
+        CountingListener otherListener = new CountingListener(Call.LISTENER_ALL_EVENTS);
+        Call call = createCall("1");
+        call.addListener(listener);
+        call.addListener(otherListener);
+        call.removeListener(listener);
+
+        call.setStatusHints(mock(StatusHints.class));
+
+        assertEquals(0, listener.mStatusHintsChanges);
+        assertEquals(1, otherListener.mStatusHintsChanges);
+    }
+
+    @Test
+    @SmallTest
+    public void testListenersDeclareImplementedCallbacks() {
+        assertListensForImplementedCallbacks(new CallAnomalyWatchdog(null, mLock, null,
+                mMockClockProxy, null));
+        assertListensForImplementedCallbacks(new IncomingCallNotifier(mContext).mCallListener);
+    }
+
+    /**
+     * Checks that {@code listener} is interested in every {@link Call.Listener} callback it
+     * implements, as otherwise {@link Call} would skip them.
+     */
+    public static void assertListensForImplementedCallbacks(Call.Listener listener) {
+        long interestedEvents = listener.getInterestedEvents();
+        for (Method callback : Call.Listener.class.getDeclaredMethods()) {
+            if (callback.getName().equals("getInterestedEvents")) {
+                continue;
+            }
+            Class<?> implementingClass;
+            long event;
+            try {
+                implementingClass = listener.getClass().getMethod(callback.getName(),
+                        callback.getParameterTypes()).getDeclaringClass();
+                String eventName = "LISTENER_"
+                        + callback.getName().substring(2).replaceAll("(?<!^)([A-Z])", "_$1")
+                                .toUpperCase();
+                event = Call.class.getField(eventName).getLong(null);
+            } catch (ReflectiveOperationException e) {
+                throw new AssertionError(e);
+            }
+            if (implementingClass != Call.Listener.class
+                    && implementingClass != Call.ListenerBase.class
+                    && implementingClass != CallsManagerListenerBase.class) {
+                assertNotEquals(listener.getClass() + " implements " + callback.getName(), 0,
+                        interestedEvents & event);
+            }
+        }
+    }
+
+    private static class CountingListener extends Call.ListenerBase {
+        private final long mInterestedEvents;
+        int mCapabilitiesChanges;
+        int mStatusHintsChanges;
+        int mUpdateBatchesEnded;
+
+        CountingListener(long interestedEvents) {
+            mInterestedEvents = interestedEvents;
+        }
+
+        @Override
+        public long getInterestedEvents() {
+            return mInterestedEvents;
+        }
+
+        @Override
+        public void onConnectionCapabilitiesChanged(Call call) {
+            mCapabilitiesChanges++;
+        }
+
+        @Override
+        public void onStatusHintsChanged(Call call) {
+            mStatusHintsChanges++;
+        }
+
+        @Override
+        public void onUpdateBatchEnded(Call call) {
+            mUpdateBatchesEnded++;
+        }
+    }
+
     private Call createCall(String id) {
         return createCall(id, Call.CALL_DIRECTION_UNDEFINED);
     }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.telecom.CallerInfo;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.CallerInfoCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CallerInfoCacheTest extends TelecomTestCase {
+    private static final Uri URI1 = Uri.parse("tel:555-555-7010");
+    private static final Uri URI2 = Uri.parse("tel:555-555-7016");
+    private static final Uri URI3 = Uri.parse("tel:555-555-7020");
+    private static final long TTL_MILLIS = 60000;
+
+    @SmallTest
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        CallerInfoCache cache = new CallerInfoCache(2, Long.MAX_VALUE, TTL_MILLIS);
+        CallerInfo info1 = new CallerInfo();
+        info1.setName("First");
+        put(cache, URI1, info1);
+        put(cache, URI2, new CallerInfo());
+        // Using URI1 makes URI2 the least recently used entry.
+        assertEquals("First", cache.get(URI1).getName());
+        put(cache, URI3, new CallerInfo());
+
+        assertEquals(2, cache.size());
+        assertEquals("First", cache.get(URI1).getName());
+        assertNull(cache.get(URI2));
+    }
+
+    @SmallTest
+    @Test
+    public void testPhotoBudgetEvicts() {
+        CallerInfo photo1 = makeCallerInfoWithPhoto();
+        long photoBytes = photo1.cachedPhotoIcon.getAllocationByteCount();
+        CallerInfoCache cache = new CallerInfoCache(10, photoBytes * 2, TTL_MILLIS);
+        put(cache, URI1, photo1);
+        put(cache, URI2, makeCallerInfoWithPhoto());
+        assertEquals(photoBytes * 2, cache.getPhotoBytes());
+
+        put(cache, URI3, makeCallerInfoWithPhoto());
+        assertEquals(photoBytes * 2, cache.getPhotoBytes());
+        assertNull(cache.get(URI1));
+    }
+
+    @SmallTest
+    @Test
+    public void testCallerChangesDoNotReachCache() {
+        CallerInfoCache cache = new CallerInfoCache(10, Long.MAX_VALUE, TTL_MILLIS);
+        CallerInfo info = makeCallerInfoWithPhoto();
+        Bitmap photo = info.cachedPhotoIcon;
+        put(cache, URI1, info);
+        long photoBytes = cache.getPhotoBytes();
+
+        // What a call does to its caller info once it is destroyed.
+        info.cachedPhotoIcon = null;
+        CallerInfo cached = cache.get(URI1);
+        assertNotSame(info, cached);
+        assertSame(photo, cached.cachedPhotoIcon);
+
+        cached.cachedPhotoIcon = null;
+        assertSame(photo, cache.get(URI1).cachedPhotoIcon);
+        assertEquals(photoBytes, cache.getPhotoBytes());
+    }
+
+    @SmallTest
+    @Test
+    public void testExpiredEntryNotReturned() throws Exception {
+        CallerInfoCache cache = new CallerInfoCache(10, Long.MAX_VALUE, 0 /* ttlMillis */);
+        put(cache, URI1, new CallerInfo());
+        Thread.sleep(10);
+        assertNull(cache.get(URI1));
+        assertEquals(0, cache.size());
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidate() {
+        CallerInfoCache cache = new CallerInfoCache(10, Long.MAX_VALUE, TTL_MILLIS);
+        put(cache, URI1, makeCallerInfoWithPhoto());
+        cache.invalidate();
+        assertNull(cache.get(URI1));
+        assertEquals(0, cache.getPhotoBytes());
+    }
+
+    @SmallTest
+    @Test
+    public void testLookupStartedBeforeInvalidateNotCached() {
+        CallerInfoCache cache = new CallerInfoCache(10, Long.MAX_VALUE, TTL_MILLIS);
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        cache.put(URI1, new CallerInfo(), generation);
+        assertNull(cache.get(URI1));
+    }
+
+    private static void put(CallerInfoCache cache, Uri handle, CallerInfo info) {
+        cache.put(handle, info, cache.getGeneration());
+    }
+
+    private static CallerInfo makeCallerInfoWithPhoto() {
+        CallerInfo info = new CallerInfo();
+        info.cachedPhotoIcon = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        return info;
+    }
+}
@@ -17,6 +17,7 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -40,6 +41,7 @@ import androidx.test.InstrumentationRegistry;
 import androidx.test.filters.SmallTest;
 
 import com.android.server.telecom.CallerInfoAsyncQueryFactory;
+import com.android.server.telecom.CallerInfoCache;
 import com.android.server.telecom.CallerInfoLookupHelper;
 import com.android.server.telecom.ContactsAsyncHelper;
 import com.android.server.telecom.TelecomSystem;
@@ -239,6 +241,56 @@ public class CallerInfoLookupHelperTest extends TelecomTestCase {
         verifyProperCleanup();
     }
 
+    @SmallTest
+    @Test
+    public void testLookupAnsweredFromCache() {
+        CallerInfoCache cache = new CallerInfoCache(CallerInfoCache.DEFAULT_MAX_ENTRIES,
+                CallerInfoCache.DEFAULT_MAX_PHOTO_BYTES, CallerInfoCache.DEFAULT_TTL_MILLIS);
+        mCallerInfoLookupHelper = new CallerInfoLookupHelper(mContext, mFactory,
+                mContactsAsyncHelper, new TelecomSystem.SyncRoot() { }, cache);
+        CallerInfoLookupHelper.OnQueryCompleteListener callListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        CallerInfoLookupHelper.OnQueryCompleteListener laterListener = mock(
+                CallerInfoLookupHelper.OnQueryCompleteListener.class);
+        mCallerInfo1.SetContactDisplayPhotoUri(CONTACTS_PHOTO_URI);
+
+        mCallerInfoLookupHelper.startLookup(URI1, callListener);
+        waitForActionCompletion();
+
+        ArgumentCaptor<CallerInfoAsyncQuery.OnQueryCompleteListener> queryListenerCaptor =
+                ArgumentCaptor.forClass(CallerInfoAsyncQuery.OnQueryCompleteListener.class);
+        ArgumentCaptor<Session> logSessionCaptor = ArgumentCaptor.forClass(Session.class);
+        verify(mFactory).startQuery(anyInt(), eq(mContext), eq(URI1.getSchemeSpecificPart()),
+                queryListenerCaptor.capture(), logSessionCaptor.capture());
+        queryListenerCaptor.getValue().onQueryComplete(
+                0, logSessionCaptor.getValue(), mCallerInfo1);
+        waitForActionCompletion();
+
+        ArgumentCaptor<ContactsAsyncHelper.OnImageLoadCompleteListener> imageListenerCaptor =
+                ArgumentCaptor.forClass(ContactsAsyncHelper.OnImageLoadCompleteListener.class);
+        verify(mContactsAsyncHelper).startObtainPhotoAsync(anyInt(), eq(mContext),
+                eq(CONTACTS_PHOTO_URI), imageListenerCaptor.capture(), logSessionCaptor.capture());
+        imageListenerCaptor.getValue().onImageLoadComplete(0, mDrawable1, mBitmap,
+                logSessionCaptor.getValue());
+        verifyProperCleanup();
+
+        // A later lookup is answered from the cache, without querying contacts or decoding the
+        // photo.
+        mCallerInfoLookupHelper.startLookup(URI1, laterListener);
+        waitForActionCompletion();
+        ArgumentCaptor<CallerInfo> cachedInfoCaptor = ArgumentCaptor.forClass(CallerInfo.class);
+        verify(laterListener).onCallerInfoQueryComplete(eq(URI1), cachedInfoCaptor.capture());
+        verify(laterListener).onContactPhotoQueryComplete(URI1, cachedInfoCaptor.getValue());
+        // The call's caller info is not shared with the cache.
+        assertNotSame(mCallerInfo1, cachedInfoCaptor.getValue());
+        assertEquals(mBitmap, cachedInfoCaptor.getValue().cachedPhotoIcon);
+        verify(mFactory, times(1)).startQuery(anyInt(), eq(mContext), anyString(),
+                any(CallerInfoAsyncQuery.OnQueryCompleteListener.class), any());
+        verify(mContactsAsyncHelper, times(1)).startObtainPhotoAsync(anyInt(), eq(mContext),
+                any(Uri.class), any(ContactsAsyncHelper.OnImageLoadCompleteListener.class), any());
+        assertEquals(1, cache.getHits());
+    }
+
     private void verifyProperCleanup() {
         assertEquals(0, mCallerInfoLookupHelper.getCallerInfoEntries().size());
     }
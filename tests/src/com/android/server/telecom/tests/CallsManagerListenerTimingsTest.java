@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.CallAudioManager;
+import com.android.server.telecom.CallsManagerListenerTimings;
+import com.android.server.telecom.InCallController;
+import com.android.server.telecom.LatencyHistogram;
+import com.android.server.telecom.nano.TelecomLogClass;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CallsManagerListenerTimingsTest extends TelecomTestCase {
+    private static final String ON_CALL_ADDED = "onCallAdded";
+    private static final String ON_CALL_STATE_CHANGED = "onCallStateChanged";
+
+    private CallsManagerListenerTimings mTimings;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mTimings = new CallsManagerListenerTimings();
+    }
+
+    @SmallTest
+    @Test
+    public void testRecordedPerListenerAndCallback() {
+        mTimings.record(InCallController.class, ON_CALL_ADDED, 200);
+        mTimings.record(InCallController.class, ON_CALL_ADDED, 400);
+        mTimings.record(InCallController.class, ON_CALL_STATE_CHANGED, 10);
+        mTimings.record(CallAudioManager.class, ON_CALL_ADDED, 20);
+
+        LatencyHistogram histogram = mTimings.getHistogram(InCallController.class,
+                ON_CALL_ADDED);
+        assertEquals(2, histogram.getCount());
+        assertEquals(600, histogram.getTotal());
+        assertEquals(400, histogram.getMax());
+        assertEquals(1, mTimings.getHistogram(InCallController.class, ON_CALL_STATE_CHANGED)
+                .getCount());
+        assertEquals(1, mTimings.getHistogram(CallAudioManager.class, ON_CALL_ADDED).getCount());
+        assertNull(mTimings.getHistogram(CallAudioManager.class, ON_CALL_STATE_CHANGED));
+    }
+
+    @SmallTest
+    @Test
+    public void testSlowInvocationsCaptured() {
+        mTimings.record(InCallController.class, ON_CALL_ADDED,
+                CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS);
+        mTimings.record(InCallController.class, ON_CALL_ADDED,
+                CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS + 1);
+
+        List<CallsManagerListenerTimings.SlowInvocation> slow = mTimings.getSlowInvocations();
+        assertEquals(1, slow.size());
+        assertEquals("InCallController", slow.get(0).listenerName);
+        assertEquals(ON_CALL_ADDED, slow.get(0).callbackName);
+        assertEquals(CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS + 1,
+                slow.get(0).durationMicros);
+    }
+
+    @SmallTest
+    @Test
+    public void testSlowInvocationsBounded() {
+        int extra = 5;
+        for (int i = 0; i < CallsManagerListenerTimings.MAX_SLOW_INVOCATIONS + extra; i++) {
+            mTimings.record(InCallController.class, ON_CALL_ADDED,
+                    CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS + 1 + i);
+        }
+
+        List<CallsManagerListenerTimings.SlowInvocation> slow = mTimings.getSlowInvocations();
+        assertEquals(CallsManagerListenerTimings.MAX_SLOW_INVOCATIONS, slow.size());
+        // Oldest first, with the earliest ones dropped.
+        assertEquals(CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS + 1 + extra,
+                slow.get(0).durationMicros);
+    }
+
+    @SmallTest
+    @Test
+    public void testToProto() {
+        mTimings.record(InCallController.class, ON_CALL_STATE_CHANGED, 10);
+        mTimings.record(InCallController.class, ON_CALL_ADDED,
+                CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS * 2);
+        mTimings.record(CallAudioManager.class, ON_CALL_ADDED, 30);
+
+        TelecomLogClass.ListenerLatency[] latencies = mTimings.toProto();
+
+        // Sorted by listener and then callback.
+        assertEquals(3, latencies.length);
+        assertEquals("CallAudioManager", latencies[0].getListenerName());
+        assertEquals("InCallController", latencies[1].getListenerName());
+        assertEquals(ON_CALL_ADDED, latencies[1].getCallbackName());
+        assertEquals(1, latencies[1].getSlowCount());
+        assertEquals(ON_CALL_STATE_CHANGED, latencies[2].getCallbackName());
+        assertEquals(0, latencies[2].getSlowCount());
+        assertEquals(10, latencies[2].getTotalMicros());
+    }
+
+    @SmallTest
+    @Test
+    public void testRecordFromStartTime() {
+        Object listener = new Object();
+        long startNanos = mTimings.start();
+        mTimings.record(listener, ON_CALL_ADDED, startNanos);
+
+        assertEquals(1, mTimings.getHistogram(Object.class, ON_CALL_ADDED).getCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testDumpAndReset() {
+        mTimings.record(InCallController.class, ON_CALL_ADDED,
+                CallsManagerListenerTimings.SLOW_THRESHOLD_MICROS + 1);
+        StringWriter writer = new StringWriter();
+        mTimings.dump(new IndentingPrintWriter(writer, "  "));
+        String dump = writer.toString();
+        assertTrue(dump, dump.contains("InCallController:"));
+        assertTrue(dump, dump.contains(ON_CALL_ADDED + ": count=1"));
+        assertTrue(dump, dump.contains("Slow invocations (>50000us): 1"));
+
+        mTimings.reset();
+        assertNull(mTimings.getHistogram(InCallController.class, ON_CALL_ADDED));
+        assertEquals(0, mTimings.getSlowInvocations().size());
+    }
+}
@@ -128,6 +128,7 @@ import com.android.server.telecom.Ringer;
 import com.android.server.telecom.RoleManagerAdapter;
 import com.android.server.telecom.SystemStateHelper;
 import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.TelecomTimerService;
 import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.WiredHeadsetManager;
 import com.android.server.telecom.bluetooth.BluetoothDeviceManager;
@@ -383,6 +384,7 @@ public class CallsManagerTest extends TelecomTestCase {
                 mToastFactory,
                 mCallEndpointControllerFactory,
                 mCallAnomalyWatchdog,
+                new TelecomTimerService(new TestScheduledExecutorService(), mClockProxy),
                 mAccessibilityManagerAdapter,
                 // Just do async tasks synchronously to support testing.
                 command -> command.run(),
@@ -2610,6 +2612,82 @@ public class CallsManagerTest extends TelecomTestCase {
                 SELF_MANAGED_HANDLE.getUserHandle()));
     }
 
+    /**
+     * Verify that indexed call lookups follow calls through state, account and emergency changes
+     * with the index consistency check enabled.
+     */
+    @SmallTest
+    @Test
+    public void testIndexedLookupsFollowCallChanges() {
+        when(mFeatureFlags.callIndexLookups()).thenReturn(true);
+        mCallsManager.setCallIndexVerificationEnabled(true);
+        Call activeCall = createCall(SIM_1_HANDLE, CallState.ACTIVE);
+        Call heldCall = createCall(SIM_2_HANDLE, CallState.ON_HOLD);
+        mCallsManager.addCall(activeCall);
+        mCallsManager.addCall(heldCall);
+
+        assertEquals(activeCall, mCallsManager.getFirstCallWithState(CallState.ACTIVE));
+        assertEquals(heldCall, mCallsManager.getHeldCallByConnectionService(SIM_1_HANDLE));
+        assertEquals(1, mCallsManager.getNumHeldCalls());
+        assertFalse(mCallsManager.isInEmergencyCall());
+
+        // Swap the calls without going through CallsManager.
+        activeCall.setState(CallState.ON_HOLD, "");
+        heldCall.setState(CallState.ACTIVE, "");
+        assertEquals(heldCall, mCallsManager.getFirstCallWithState(CallState.ACTIVE));
+        assertEquals(activeCall, mCallsManager.getHeldCallByConnectionService(SIM_2_HANDLE));
+
+        heldCall.setConnectionProperties(Connection.PROPERTY_NETWORK_IDENTIFIED_EMERGENCY_CALL);
+        assertTrue(mCallsManager.isInEmergencyCall());
+
+        mCallsManager.removeCall(heldCall);
+        assertNull(mCallsManager.getFirstCallWithState(CallState.ACTIVE));
+        assertFalse(mCallsManager.isInEmergencyCall());
+        assertEquals(1, mCallsManager.getCallIndex().size());
+    }
+
+    /**
+     * Verify that indexed lookups return the same call as the unindexed ones when several calls
+     * match.
+     */
+    @SmallTest
+    @Test
+    public void testIndexedLookupsMatchCallOrder() {
+        mCallsManager.setCallIndexVerificationEnabled(true);
+        for (int i = 0; i < 8; i++) {
+            mCallsManager.addCall(createCall(SIM_1_HANDLE, CallState.ON_HOLD));
+        }
+        Call firstHeldCall = mCallsManager.getFirstCallWithState(CallState.ON_HOLD);
+        Call heldCallForService = mCallsManager.getHeldCallByConnectionService(SIM_1_HANDLE);
+
+        when(mFeatureFlags.callIndexLookups()).thenReturn(true);
+        assertEquals(firstHeldCall, mCallsManager.getFirstCallWithState(CallState.ON_HOLD));
+        assertEquals(heldCallForService,
+                mCallsManager.getHeldCallByConnectionService(SIM_1_HANDLE));
+    }
+
+    /**
+     * Verify that the index consistency check catches a call whose state changed without its
+     * listeners being told.
+     */
+    @SmallTest
+    @Test
+    public void testCallIndexVerificationDetectsStaleCalls() {
+        Call callSpy = addSpyCall(CallState.ACTIVE);
+        assertTrue(mCallsManager.getCallIndex().verify(mCallsManager.getCalls()).isEmpty());
+
+        doReturn(CallState.ON_HOLD).when(callSpy).getState();
+        assertEquals(1, mCallsManager.getCallIndex().verify(mCallsManager.getCalls()).size());
+
+        when(mFeatureFlags.callIndexLookups()).thenReturn(true);
+        mCallsManager.setCallIndexVerificationEnabled(true);
+        try {
+            mCallsManager.getNumHeldCalls();
+            fail("Expected the stale index to be detected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
     /**
      * Emulate the case where a new incoming call is created but the connection fails for a known
      * reason before being added to CallsManager. In this case, the listeners should be notified
@@ -3253,7 +3331,11 @@ public class CallsManagerTest extends TelecomTestCase {
                 SIM_1_ACCOUNT.getAccountHandle().getComponentName(), null,
                 mPhoneAccountRegistrar, mCallsManager, mContext, mLock, null, mFeatureFlags);
         TestScheduledExecutorService scheduledExecutorService = new TestScheduledExecutorService();
-        service.setScheduledExecutorService(scheduledExecutorService);
+        ClockProxy clockProxy = mock(ClockProxy.class);
+        when(clockProxy.elapsedRealtime()).thenReturn(0L);
+        TelecomTimerService timerService =
+                new TelecomTimerService(scheduledExecutorService, clockProxy);
+        service.setTimerService(timerService);
         Call call = addSpyCall();
         service.addCall(call);
         when(call.isCreateConnectionComplete()).thenReturn(false);
@@ -3268,9 +3350,10 @@ public class CallsManagerTest extends TelecomTestCase {
 
             @Override
             public Object actual() {
-                return scheduledExecutorService.isRunnableScheduledAtTime(15000L);
+                return timerService.getPendingCount() == 1;
             }
         }, 5000L, "Expected job failed to schedule");
+        when(clockProxy.elapsedRealtime()).thenReturn(15000L);
         scheduledExecutorService.advanceTime(15000L);
         verify(response).handleCreateConnectionFailure(
                 eq(new DisconnectCause(DisconnectCause.ERROR)));
@@ -3772,6 +3855,26 @@ public class CallsManagerTest extends TelecomTestCase {
     }
 
 
+    /**
+     * Verify that the published call summary follows state changes made directly on a call,
+     * which do not go through {@link CallsManager#setCallState}.
+     */
+    @SmallTest
+    @Test
+    public void testCallSummaryFollowsDirectStateChanges() {
+        when(mFeatureFlags.publishCallSummary()).thenReturn(true);
+        Call call = addSpyCall(CallState.ACTIVE);
+        assertTrue(mCallsManager.getCallSummary().hasOngoingCalls(TEST_USER_HANDLE, true));
+        assertFalse(mCallsManager.getCallSummary().isRinging());
+
+        call.setState(CallState.RINGING, "test");
+        assertTrue(mCallsManager.getCallSummary().isRinging());
+
+        call.setState(CallState.DISCONNECTED, "test");
+        assertFalse(mCallsManager.getCallSummary().isRinging());
+        assertFalse(mCallsManager.getCallSummary().hasOngoingCalls(TEST_USER_HANDLE, true));
+    }
+
     private Call addSpyCall() {
         return addSpyCall(SIM_2_HANDLE, CallState.ACTIVE);
     }
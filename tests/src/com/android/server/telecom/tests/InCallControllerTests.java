@@ -95,12 +95,14 @@ import com.android.internal.telecom.IInCallService;
 import com.android.server.telecom.Analytics;
 import com.android.server.telecom.AnomalyReporterAdapter;
 import com.android.server.telecom.Call;
+import com.android.server.telecom.CallState;
 import com.android.server.telecom.CallsManager;
 import com.android.server.telecom.CarModeTracker;
 import com.android.server.telecom.ClockProxy;
 import com.android.server.telecom.DefaultDialerCache;
 import com.android.server.telecom.EmergencyCallHelper;
 import com.android.server.telecom.InCallController;
+import com.android.server.telecom.ParcelableCallUpdateTracker;
 import com.android.server.telecom.ParcelableCallUtils;
 import com.android.server.telecom.PhoneAccountRegistrar;
 import com.android.server.telecom.R;
@@ -126,6 +128,7 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.quality.Strictness;
 import org.mockito.stubbing.Answer;
 
+import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -330,6 +333,15 @@ public class InCallControllerTests extends TelecomTestCase {
         super.tearDown();
     }
 
+    @SmallTest
+    @Test
+    public void testCallListenerDeclaresImplementedCallbacks() throws Exception {
+        Field callListener = InCallController.class.getDeclaredField("mCallListener");
+        callListener.setAccessible(true);
+        CallTest.assertListensForImplementedCallbacks(
+                (Call.Listener) callListener.get(mInCallController));
+    }
+
     @SmallTest
     @Test
     public void testBringToForeground_NoInCallServices() {
@@ -1791,6 +1803,75 @@ public class InCallControllerTests extends TelecomTestCase {
                 android.telecom.Call.EXTRA_IS_SUPPRESSED_BY_DO_NOT_DISTURB));
     }
 
+    @SmallTest
+    @Test
+    public void testUpdatesDeferredUntilBatchEnds() throws Exception {
+        when(mFeatureFlags.batchConnectionUpdates()).thenReturn(true);
+        setupMocks(false /* isExternalCall */);
+        Field callListenerField = InCallController.class.getDeclaredField("mCallListener");
+        callListenerField.setAccessible(true);
+        Call.Listener callListener = (Call.Listener) callListenerField.get(mInCallController);
+
+        when(mMockCall.isInUpdateBatch()).thenReturn(true);
+        callListener.onConnectionCapabilitiesChanged(mMockCall);
+        callListener.onStatusHintsChanged(mMockCall);
+        callListener.onVideoCallProviderChanged(mMockCall);
+        assertEquals(3, mInCallController.getDeferredCallUpdateCount());
+        assertEquals(0, mInCallController.getBatchedCallUpdateCount());
+
+        when(mMockCall.isInUpdateBatch()).thenReturn(false);
+        callListener.onUpdateBatchEnded(mMockCall);
+        assertEquals(1, mInCallController.getBatchedCallUpdateCount());
+
+        // Nothing is held back once the batch has been sent.
+        callListener.onUpdateBatchEnded(mMockCall);
+        callListener.onConnectionCapabilitiesChanged(mMockCall);
+        assertEquals(3, mInCallController.getDeferredCallUpdateCount());
+        assertEquals(1, mInCallController.getBatchedCallUpdateCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testRedundantCallUpdatesSuppressed() throws Exception {
+        setupMocks(false /* isExternalCall */);
+        ParcelableCallUpdateTracker tracker = new ParcelableCallUpdateTracker();
+        IInCallService inCallService = mock(IInCallService.class);
+        IInCallService otherInCallService = mock(IInCallService.class);
+        when(mMockCall.getState()).thenReturn(CallState.ACTIVE);
+
+        ParcelableCall activeCall = toParcelableCall(mMockCall);
+        assertTrue(tracker.shouldSend(inCallService, "TC@1", activeCall));
+        // An identical update is only suppressed for the service which already has it.
+        assertFalse(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+        assertTrue(tracker.shouldSend(otherInCallService, "TC@1", activeCall));
+        assertEquals(1, tracker.getUpdatesSuppressed());
+        assertTrue(tracker.getBytesSaved() > 0);
+
+        // A change to the call is sent.
+        when(mMockCall.getState()).thenReturn(CallState.ON_HOLD);
+        assertTrue(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+        assertFalse(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+
+        // Once forgotten, e.g. because the call was re-added to the service, it is sent again.
+        tracker.forget(inCallService, "TC@1");
+        assertTrue(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+        tracker.onCallRemoved("TC@1");
+        assertTrue(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+        tracker.onServiceRemoved(inCallService);
+        assertTrue(tracker.shouldSend(inCallService, "TC@1", toParcelableCall(mMockCall)));
+        assertEquals(2, tracker.getUpdatesSuppressed());
+        assertEquals(6, tracker.getUpdatesSent());
+    }
+
+    private static ParcelableCall toParcelableCall(Call call) {
+        return ParcelableCallUtils.toParcelableCall(call,
+                false /* includevideoProvider */,
+                null /* phoneAccountRegistrar */,
+                false /* supportsExternalCalls */,
+                false /* includeRttCall */,
+                false /* isForSystemDialer */);
+    }
+
     @Test
     public void testSecondaryUserCallBindToCurrentUser() throws Exception {
         setupMocks(true /* isExternalCall */);
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.UserHandle;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.DefaultDialerCache;
+import com.android.server.telecom.InCallController.InCallServiceInfo;
+import com.android.server.telecom.InCallServiceResolutionCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+@RunWith(JUnit4.class)
+public class InCallServiceResolutionCacheTest extends TelecomTestCase {
+    private static final UserHandle USER_0 = UserHandle.of(0);
+    private static final UserHandle USER_10 = UserHandle.of(10);
+    private static final ComponentName DIALER = new ComponentName("com.foo", "InCall");
+    // The cache does not interpret the requested type.
+    private static final int SERVICE_TYPE = 1;
+
+    @Mock Context mContext;
+    @Mock DefaultDialerCache mDefaultDialerCache;
+    @Mock AppOpsManager mAppOpsManager;
+
+    private InCallServiceResolutionCache mCache;
+    private BroadcastReceiver mPackageReceiver;
+    private IntConsumer mDialerObserver;
+    private AppOpsManager.OnOpChangedListener mOpChangedListener;
+    private int mResolutions;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mContext.getSystemService(AppOpsManager.class)).thenReturn(mAppOpsManager);
+        mCache = new InCallServiceResolutionCache(mContext, mDefaultDialerCache);
+
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        ArgumentCaptor<IntentFilter> filterCaptor = ArgumentCaptor.forClass(IntentFilter.class);
+        verify(mContext).registerReceiverAsUser(receiverCaptor.capture(), eq(UserHandle.ALL),
+                filterCaptor.capture(), isNull(), isNull());
+        mPackageReceiver = receiverCaptor.getValue();
+        IntentFilter filter = filterCaptor.getValue();
+        for (String action : new String[] {Intent.ACTION_PACKAGE_ADDED,
+                Intent.ACTION_PACKAGE_REMOVED, Intent.ACTION_PACKAGE_CHANGED}) {
+            assertTrue(action, filter.hasAction(action));
+        }
+
+        ArgumentCaptor<IntConsumer> observerCaptor = ArgumentCaptor.forClass(IntConsumer.class);
+        verify(mDefaultDialerCache).observeDefaultDialerApplication(any(Executor.class),
+                observerCaptor.capture());
+        mDialerObserver = observerCaptor.getValue();
+
+        ArgumentCaptor<AppOpsManager.OnOpChangedListener> opCaptor =
+                ArgumentCaptor.forClass(AppOpsManager.OnOpChangedListener.class);
+        verify(mAppOpsManager, times(2)).startWatchingMode(anyString(), isNull(),
+                opCaptor.capture());
+        mOpChangedListener = opCaptor.getValue();
+        mResolutions = 0;
+    }
+
+    @SmallTest
+    @Test
+    public void testSteadyStateDoesNotResolve() {
+        List<InCallServiceInfo> first = resolve(USER_0);
+        List<InCallServiceInfo> second = resolve(USER_0);
+
+        assertEquals(1, mResolutions);
+        assertEquals(first, second);
+        // Binding times are tracked on the info, so callers must not share instances.
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(1, mCache.getHits());
+    }
+
+    @SmallTest
+    @Test
+    public void testResolvedPerUser() {
+        resolve(USER_0);
+        resolve(USER_10);
+        resolve(USER_10);
+        assertEquals(2, mResolutions);
+    }
+
+    @SmallTest
+    @Test
+    public void testPackageChangeInvalidates() {
+        resolve(USER_0);
+        mPackageReceiver.onReceive(mContext, new Intent(Intent.ACTION_PACKAGE_CHANGED,
+                Uri.fromParts("package", "com.foo", null)));
+        resolve(USER_0);
+        assertEquals(2, mResolutions);
+    }
+
+    @SmallTest
+    @Test
+    public void testDialerRoleChangeInvalidates() {
+        resolve(USER_0);
+        resolve(USER_10);
+        mDialerObserver.accept(USER_10.getIdentifier());
+        resolve(USER_0);
+        resolve(USER_10);
+        assertEquals(4, mResolutions);
+    }
+
+    @SmallTest
+    @Test
+    public void testAppOpChangeInvalidates() {
+        resolve(USER_0);
+        mOpChangedListener.onOpChanged(AppOpsManager.OPSTR_MANAGE_ONGOING_CALLS, "com.foo");
+        resolve(USER_0);
+        assertEquals(2, mResolutions);
+    }
+
+    @SmallTest
+    @Test
+    public void testExplicitInvalidate() {
+        resolve(USER_0);
+        mCache.invalidate("car mode changed");
+        resolve(USER_0);
+        assertEquals(2, mResolutions);
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidatedDuringResolutionNotCached() {
+        mCache.get(USER_0, null, null, SERVICE_TYPE, true,
+                () -> {
+                    mResolutions++;
+                    mCache.invalidate("test");
+                    return Collections.emptyList();
+                });
+        resolve(USER_0);
+        assertEquals(2, mResolutions);
+    }
+
+    private List<InCallServiceInfo> resolve(UserHandle userHandle) {
+        return mCache.get(userHandle, null, null, SERVICE_TYPE,
+                true /* ignoreDisabled */, () -> {
+                    mResolutions++;
+                    return Collections.singletonList(new InCallServiceInfo(DIALER,
+                            false, false, SERVICE_TYPE, false));
+                });
+    }
+}
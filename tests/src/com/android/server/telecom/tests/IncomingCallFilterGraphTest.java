@@ -17,6 +17,9 @@
 package com.android.server.telecom.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.when;
 
@@ -31,10 +34,12 @@ import com.android.server.telecom.Call;
 import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.Timeouts;
 import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilterEngine;
 import com.android.server.telecom.callfiltering.CallFilterResultCallback;
 import com.android.server.telecom.callfiltering.CallFilteringResult;
 import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -43,6 +48,7 @@ import org.mockito.Mock;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
@@ -67,6 +73,8 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
     private final long FILTER_TIMEOUT = 5000;
     private final long TEST_TIMEOUT = 7000;
     private final long TIMEOUT_FILTER_SLEEP_TIME = 10000;
+    private final long PER_FILTER_TIMEOUT = 100;
+    private CallFilterEngine mEngine;
 
     private class AllowFilter extends CallFilter {
         @Override
@@ -99,6 +107,42 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
         }
     }
 
+    /**
+     * Blocks the thread it runs on until every filter sharing its latch has started, so the
+     * graph only completes if they run concurrently.
+     */
+    private class BlockingFilter extends CallFilter {
+        private final CountDownLatch mStarted;
+
+        BlockingFilter(CountDownLatch started) {
+            mStarted = started;
+        }
+
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            mStarted.countDown();
+            try {
+                if (!mStarted.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    return CompletableFuture.completedFuture(REJECT_CALL_RESULT);
+                }
+            } catch (InterruptedException e) {
+                return CompletableFuture.completedFuture(REJECT_CALL_RESULT);
+            }
+            return CompletableFuture.completedFuture(PASS_CALL_RESULT);
+        }
+    }
+
+    private class StalledFilter extends CallFilter {
+        final CompletableFuture<CallFilteringResult> mFuture = new CompletableFuture<>();
+
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return mFuture;
+        }
+    }
+
     @Before
     @Override
     public void setUp() throws Exception {
@@ -106,7 +150,16 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
         when(mContext.getContentResolver()).thenReturn(null);
         when(mTimeoutsAdapter.getCallScreeningTimeoutMillis(nullable(ContentResolver.class)))
                 .thenReturn(FILTER_TIMEOUT);
+        when(mTimeoutsAdapter.getCallFilterTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(PER_FILTER_TIMEOUT);
+        mEngine = new CallFilterEngine(2 /* poolSize */);
+    }
 
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        mEngine.shutdown();
+        super.tearDown();
     }
 
     @SmallTest
@@ -176,4 +229,82 @@ public class IncomingCallFilterGraphTest extends TelecomTestCase {
 
         assertEquals(REJECT_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
     }
+
+    @SmallTest
+    @Test
+    public void testEngineRunsIndependentFiltersConcurrently() throws Exception {
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> testResult.complete(result);
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock, mEngine);
+        CountDownLatch started = new CountDownLatch(2);
+        graph.addFilter(new BlockingFilter(started));
+        graph.addFilter(new BlockingFilter(started));
+        graph.performFiltering();
+
+        assertEquals(PASS_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(graph.getHandlerThread());
+        assertEquals(2, mEngine.getFilterLatency(BlockingFilter.class).getCount());
+        assertEquals(1, mEngine.getGraphLatency().getCount());
+        // Neither the filter deadlines nor the graph timeout are left to fire.
+        assertEquals(0, mEngine.getPendingDeadlineCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testEngineFilterDeadline() throws Exception {
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CompletableFuture<Boolean> testTimedOut = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> {
+            testTimedOut.complete(timeout);
+            testResult.complete(result);
+        };
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock, mEngine);
+        StalledFilter stalledFilter = new StalledFilter();
+        DisallowFilter disallowFilter = new DisallowFilter();
+        graph.addFilter(stalledFilter);
+        graph.addFilter(disallowFilter);
+        IncomingCallFilterGraph.addEdge(stalledFilter, disallowFilter);
+        graph.performFiltering();
+
+        // The filter after the stalled one still runs, well before the graph deadline.
+        assertEquals(REJECT_CALL_RESULT, testResult.get(FILTER_TIMEOUT / 2,
+                TimeUnit.MILLISECONDS));
+        assertFalse(testTimedOut.get());
+        assertEquals(1, mEngine.getFilterLatency(StalledFilter.class).getTimeouts());
+        assertEquals(0, mEngine.getFilterLatency(StalledFilter.class).getCount());
+        assertTrue(mEngine.getFilterLatency(DisallowFilter.class).getCount() > 0);
+        // The stalled filter is told to stop once the graph has moved on without it.
+        assertTrue(stalledFilter.mFuture.isCancelled());
+    }
+
+    @SmallTest
+    @Test
+    public void testEngineFilterDeadlineDefaultsToGraphTimeout() throws Exception {
+        when(mTimeoutsAdapter.getCallFilterTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(0L);
+        CompletableFuture<CallFilteringResult> testResult = new CompletableFuture<>();
+        CompletableFuture<Boolean> testTimedOut = new CompletableFuture<>();
+        CallFilterResultCallback listener = (call, result, timeout) -> {
+            testTimedOut.complete(timeout);
+            testResult.complete(result);
+        };
+
+        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(mCall, listener, mContext,
+                mTimeoutsAdapter, mLock, mEngine);
+        StalledFilter stalledFilter = new StalledFilter();
+        graph.addFilter(stalledFilter);
+        graph.performFiltering();
+
+        // Without a per-filter timeout, a slow filter keeps the rest of the graph's time.
+        Thread.sleep(PER_FILTER_TIMEOUT * 2);
+        assertFalse(testResult.isDone());
+        stalledFilter.mFuture.complete(REJECT_CALL_RESULT);
+        assertEquals(REJECT_CALL_RESULT, testResult.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(testTimedOut.get());
+        assertEquals(0, mEngine.getFilterLatency(StalledFilter.class).getTimeouts());
+    }
 }
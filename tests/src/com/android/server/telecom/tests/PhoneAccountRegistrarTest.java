@@ -26,7 +26,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -37,14 +39,17 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.annotation.Nullable;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.Intent;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.graphics.drawable.Icon;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.PersistableBundle;
@@ -78,6 +83,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -99,6 +105,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 public class PhoneAccountRegistrarTest extends TelecomTestCase {
@@ -108,6 +116,7 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
             PhoneAccountRegistrar.MAX_PHONE_ACCOUNT_FIELD_CHAR_LIMIT + 1;
     private static final String INVALID_STR = "a".repeat(INVALID_CHAR_LIMIT_COUNT);
     private static final String FILE_NAME = "phone-account-registrar-test-1223.xml";
+    private static final long TEST_TIMEOUT = 1000;
     private static final String TEST_LABEL = "right";
     private static final String TEST_ID = "123";
     private final String PACKAGE_1 = "PACKAGE_1";
@@ -133,6 +142,7 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
                 mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
                 FILE_NAME)
                 .delete();
+        getJournalFile().delete();
         when(mDefaultDialerCache.getDefaultDialerApplication(anyInt()))
                 .thenReturn("com.android.dialer");
         when(mAppLabelProxy.getAppLabel(anyString()))
@@ -148,11 +158,13 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
     @Override
     @After
     public void tearDown() throws Exception {
+        waitForRegistrarWrites();
         mRegistrar = null;
         new File(
                 mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
                 FILE_NAME)
                 .delete();
+        getJournalFile().delete();
         super.tearDown();
     }
 
@@ -522,6 +534,285 @@ public class PhoneAccountRegistrarTest extends TelecomTestCase {
         }
     }
 
+    /**
+     * Verify that queries answered through the registrar's account index return the same accounts,
+     * in the same order, as a linear scan over all registered accounts, including after accounts
+     * are unregistered or disabled.
+     */
+    @MediumTest
+    @Test
+    public void testIndexedQueriesMatchScan() throws Exception {
+        String[] packages = {"com.test.pkg0", "com.test.pkg1", "com.test.pkg2"};
+        int[] capabilities = {
+                PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.CAPABILITY_CALL_PROVIDER | PhoneAccount.CAPABILITY_VIDEO_CALLING,
+                PhoneAccount.CAPABILITY_CONNECTION_MANAGER,
+                PhoneAccount.CAPABILITY_SELF_MANAGED,
+                PhoneAccount.CAPABILITY_CALL_PROVIDER
+                        | PhoneAccount.CAPABILITY_EMERGENCY_CALLS_ONLY,
+                PhoneAccount.CAPABILITY_CALL_PROVIDER | PhoneAccount.CAPABILITY_MULTI_USER};
+        UserHandle[] users = {Process.myUserHandle(), USER_HANDLE_10};
+        List<PhoneAccountHandle> registered = new ArrayList<>();
+        int i = 0;
+        for (String pkg : packages) {
+            ComponentName componentName = new ComponentName(pkg, COMPONENT_NAME);
+            mComponentContextFixture.addConnectionService(componentName,
+                    Mockito.mock(IConnectionService.class));
+            for (UserHandle user : users) {
+                for (int capability : capabilities) {
+                    PhoneAccountHandle handle = new PhoneAccountHandle(componentName, "id" + i,
+                            user);
+                    mRegistrar.registerPhoneAccount(new PhoneAccount.Builder(handle, "label" + i)
+                            .setCapabilities(capability)
+                            .addSupportedUriScheme(i % 2 == 0
+                                    ? PhoneAccount.SCHEME_TEL : PhoneAccount.SCHEME_SIP)
+                            .build());
+                    if (i % 3 != 0) {
+                        mRegistrar.enablePhoneAccount(handle, true);
+                    }
+                    registered.add(handle);
+                    i++;
+                }
+            }
+        }
+        assertIndexedQueriesMatchScan(packages);
+
+        mRegistrar.unregisterPhoneAccount(registered.get(1));
+        mRegistrar.enablePhoneAccount(registered.get(2), false);
+        mRegistrar.enablePhoneAccount(registered.get(3), true);
+        mRegistrar.clearAccounts(packages[2], USER_HANDLE_10);
+        assertIndexedQueriesMatchScan(packages);
+    }
+
+    private void assertIndexedQueriesMatchScan(String[] packages) {
+        // An unfiltered query returns every registered account in registrar order.
+        List<PhoneAccount> allAccounts = mRegistrar.getPhoneAccounts(0, 0, null, null, true,
+                null, true, true);
+        List<String> packageFilters = new ArrayList<>(Arrays.asList(packages));
+        packageFilters.add(null);
+        int[] capabilityFilters = {0, PhoneAccount.CAPABILITY_CALL_PROVIDER,
+                PhoneAccount.CAPABILITY_SELF_MANAGED, PhoneAccount.CAPABILITY_VIDEO_CALLING
+                        | PhoneAccount.CAPABILITY_CALL_PROVIDER};
+        int[] excludedCapabilityFilters = {0, PhoneAccount.CAPABILITY_EMERGENCY_CALLS_ONLY};
+        String[] schemeFilters = {null, PhoneAccount.SCHEME_TEL, PhoneAccount.SCHEME_SIP};
+        UserHandle[] userFilters = {Process.myUserHandle(), USER_HANDLE_10};
+        for (String pkg : packageFilters) {
+            for (int capabilities : capabilityFilters) {
+                for (int excluded : excludedCapabilityFilters) {
+                    for (String scheme : schemeFilters) {
+                        for (UserHandle user : userFilters) {
+                            for (boolean includeDisabled : new boolean[] {true, false}) {
+                                for (boolean crossUser : new boolean[] {true, false}) {
+                                    List<PhoneAccount> expected = new ArrayList<>();
+                                    for (PhoneAccount account : allAccounts) {
+                                        PhoneAccountHandle handle = account.getAccountHandle();
+                                        if ((account.isEnabled() || includeDisabled)
+                                                && (account.getCapabilities() & excluded) == 0
+                                                && account.hasCapabilities(capabilities)
+                                                && (scheme == null
+                                                        || account.supportsUriScheme(scheme))
+                                                && (pkg == null || pkg.equals(handle
+                                                        .getComponentName().getPackageName()))
+                                                && (crossUser || account.hasCapabilities(
+                                                        PhoneAccount.CAPABILITY_MULTI_USER)
+                                                        || user.equals(handle.getUserHandle()))) {
+                                            expected.add(account);
+                                        }
+                                    }
+                                    assertEquals(expected, mRegistrar.getPhoneAccounts(
+                                            capabilities, excluded, scheme, pkg,
+                                            includeDisabled, user, crossUser, true));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Verify that account changes journaled after the last full snapshot are restored when the
+     * registrar is recreated, and that the journal is then folded into a new snapshot even if
+     * journaling has been turned off meanwhile.
+     */
+    @MediumTest
+    @Test
+    public void testJournaledChangesSurviveRestart() throws Exception {
+        when(mFeatureFlags.journalPhoneAccountChanges()).thenReturn(true);
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account0 = makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        PhoneAccount account1 = makeQuickAccountBuilder("id1", 1, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        PhoneAccount account2 = makeQuickAccountBuilder("id2", 2, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        // The first registration writes the snapshot; the rest are journaled.
+        mRegistrar.registerPhoneAccount(account0);
+        mRegistrar.flushPendingWrites();
+        mRegistrar.registerPhoneAccount(account1);
+        mRegistrar.registerPhoneAccount(account2);
+        mRegistrar.enablePhoneAccount(account1.getAccountHandle(), true);
+        mRegistrar.unregisterPhoneAccount(account0.getAccountHandle());
+        waitForRegistrarWrites();
+        assertTrue(getJournalFile().length() > 0);
+
+        when(mFeatureFlags.journalPhoneAccountChanges()).thenReturn(false);
+        PhoneAccountRegistrar restored = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(), mLock, FILE_NAME,
+                mDefaultDialerCache, mAppLabelProxy, mTelephonyFeatureFlags, mFeatureFlags);
+        assertNull(restored.getPhoneAccountUnchecked(account0.getAccountHandle()));
+        assertTrue(restored.getPhoneAccountUnchecked(account1.getAccountHandle()).isEnabled());
+        assertFalse(restored.getPhoneAccountUnchecked(account2.getAccountHandle()).isEnabled());
+        waitForRegistrarWrites();
+        assertEquals(0, getJournalFile().length());
+    }
+
+    /**
+     * Verify that every change writes a full snapshot when journaling is disabled.
+     */
+    @MediumTest
+    @Test
+    public void testChangesNotJournaledWhenDisabled() throws Exception {
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        mRegistrar.registerPhoneAccount(makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build());
+        mRegistrar.flushPendingWrites();
+        mRegistrar.registerPhoneAccount(makeQuickAccountBuilder("id1", 1, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build());
+        waitForRegistrarWrites();
+
+        assertEquals(0, getJournalFile().length());
+    }
+
+    /**
+     * Verify that a burst of changes made within the write delay is persisted with a single write,
+     * and that the last change to an account is the one which is persisted.
+     */
+    @MediumTest
+    @Test
+    public void testWritesAreCoalesced() throws Exception {
+        when(mFeatureFlags.journalPhoneAccountChanges()).thenReturn(true);
+        when(mFeatureFlags.coalescePhoneAccountWrites()).thenReturn(true);
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account0 = makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        PhoneAccount account1 = makeQuickAccountBuilder("id1", 1, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        mRegistrar.registerPhoneAccount(account0);
+        mRegistrar.flushPendingWrites();
+
+        long requestedBefore = mRegistrar.getWritesRequested();
+        long performedBefore = mRegistrar.getWritesPerformed();
+        mRegistrar.registerPhoneAccount(account1);
+        mRegistrar.enablePhoneAccount(account1.getAccountHandle(), true);
+        mRegistrar.registerPhoneAccount(account1);
+        mRegistrar.enablePhoneAccount(account0.getAccountHandle(), true);
+        mRegistrar.unregisterPhoneAccount(account0.getAccountHandle());
+        // Registrations wait for the write delay like any other change.
+        assertEquals(performedBefore, mRegistrar.getWritesPerformed());
+        waitForRegistrarWrites();
+
+        assertEquals(5, mRegistrar.getWritesRequested() - requestedBefore);
+        // One journal record for each account that changed.
+        assertEquals(2, mRegistrar.getWritesPerformed() - performedBefore);
+
+        PhoneAccountRegistrar restored = new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(), mLock, FILE_NAME,
+                mDefaultDialerCache, mAppLabelProxy, mTelephonyFeatureFlags, mFeatureFlags);
+        assertNull(restored.getPhoneAccountUnchecked(account0.getAccountHandle()));
+        assertTrue(restored.getPhoneAccountUnchecked(account1.getAccountHandle()).isEnabled());
+        restored.flushPendingWrites();
+    }
+
+    /**
+     * Verify that changes held back by the write delay are persisted as soon as a user stops.
+     */
+    @MediumTest
+    @Test
+    public void testPendingWritesFlushedWhenUserStops() throws Exception {
+        when(mFeatureFlags.coalescePhoneAccountWrites()).thenReturn(true);
+        mComponentContextFixture.addConnectionService(makeQuickConnectionServiceComponentName(),
+                Mockito.mock(IConnectionService.class));
+        PhoneAccount account0 = makeQuickAccountBuilder("id0", 0, null)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER).build();
+        Context context = mComponentContextFixture.getTestDouble().getApplicationContext();
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context, atLeastOnce()).registerReceiver(receiverCaptor.capture(),
+                argThat(filter -> filter.hasAction(Intent.ACTION_USER_STOPPED)));
+
+        long performedBefore = mRegistrar.getWritesPerformed();
+        mRegistrar.registerPhoneAccount(account0);
+        assertEquals(performedBefore, mRegistrar.getWritesPerformed());
+        receiverCaptor.getValue().onReceive(context, new Intent(Intent.ACTION_USER_STOPPED));
+        assertEquals(1, mRegistrar.getWritesPerformed() - performedBefore);
+    }
+
+    /**
+     * Verify that persisting one more registration costs the same number of bytes no matter how
+     * many accounts are already registered.
+     */
+    @MediumTest
+    @Test
+    public void testJournalWriteCostIndependentOfAccountCount() throws Exception {
+        when(mFeatureFlags.journalPhoneAccountChanges()).thenReturn(true);
+        String[] packages = {"com.test.pkg0", "com.test.pkg1", "com.test.pkg2"};
+        List<PhoneAccount> accounts = new ArrayList<>();
+        for (String pkg : packages) {
+            ComponentName componentName = new ComponentName(pkg, COMPONENT_NAME);
+            mComponentContextFixture.addConnectionService(componentName,
+                    Mockito.mock(IConnectionService.class));
+            for (int i = 0; i < 7; i++) {
+                accounts.add(new PhoneAccount.Builder(
+                        new PhoneAccountHandle(componentName, "id" + i, Process.myUserHandle()),
+                        String.format("label%02d", accounts.size()))
+                        .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                        .build());
+            }
+        }
+        // Writes the initial snapshot.
+        mRegistrar.registerPhoneAccount(accounts.get(0));
+        long smallStateCost = measureJournalBytes(accounts.get(1));
+        for (int i = 2; i < accounts.size() - 1; i++) {
+            mRegistrar.registerPhoneAccount(accounts.get(i));
+        }
+        long largeStateCost = measureJournalBytes(accounts.get(accounts.size() - 1));
+        Log.i(this, "testJournalWriteCostIndependentOfAccountCount: 1 account=%d bytes, "
+                + "%d accounts=%d bytes", smallStateCost, accounts.size() - 1, largeStateCost);
+        assertEquals(smallStateCost, largeStateCost);
+    }
+
+    private long measureJournalBytes(PhoneAccount account) throws Exception {
+        waitForRegistrarWrites();
+        long before = getJournalFile().length();
+        mRegistrar.registerPhoneAccount(account);
+        waitForRegistrarWrites();
+        return getJournalFile().length() - before;
+    }
+
+    private File getJournalFile() {
+        return new File(
+                mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir(),
+                FILE_NAME + PhoneAccountRegistrar.JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Flushes any writes the registrar is holding back, then waits for all pending state and
+     * journal writes, which run on the serial AsyncTask executor.
+     */
+    private void waitForRegistrarWrites() throws Exception {
+        if (mRegistrar != null) {
+            mRegistrar.flushPendingWrites();
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        AsyncTask.SERIAL_EXECUTOR.execute(latch::countDown);
+        assertTrue(latch.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
     @MediumTest
     @Test
     public void testSimCallManager() throws Exception {
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static android.provider.Settings.Global.ZEN_MODE_IMPORTANT_INTERRUPTIONS;
+import static android.provider.Settings.Global.ZEN_MODE_OFF;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.UserHandle;
+import android.os.Vibrator;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.RingPolicyTracker;
+import com.android.server.telecom.SystemSettingsUtil;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+@RunWith(JUnit4.class)
+public class RingPolicyTrackerTest extends TelecomTestCase {
+    @Mock SystemSettingsUtil mSystemSettingsUtil;
+    @Mock Vibrator mVibrator;
+    @Mock NotificationManager mNotificationManager;
+
+    private AudioManager mAudioManager;
+    private RingPolicyTracker mTracker;
+    private BroadcastReceiver mReceiver;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = spy(mComponentContextFixture.getTestDouble().getApplicationContext());
+        mAudioManager = mContext.getSystemService(AudioManager.class);
+        when(mAudioManager.getStreamVolume(AudioManager.STREAM_RING)).thenReturn(5);
+        when(mAudioManager.getRingerMode()).thenReturn(AudioManager.RINGER_MODE_NORMAL);
+        when(mNotificationManager.getZenMode()).thenReturn(ZEN_MODE_OFF);
+        when(mVibrator.hasVibrator()).thenReturn(true);
+        when(mSystemSettingsUtil.isRingVibrationEnabled(any(Context.class))).thenReturn(true);
+
+        mTracker = new RingPolicyTracker(mContext, mSystemSettingsUtil, mVibrator,
+                mNotificationManager, new Handler(Looper.getMainLooper()));
+        mTracker.startTracking();
+        ArgumentCaptor<BroadcastReceiver> receiverCaptor =
+                ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mContext).registerReceiverAsUser(receiverCaptor.capture(), eq(UserHandle.ALL),
+                any(IntentFilter.class), isNull(), any(Handler.class));
+        mReceiver = receiverCaptor.getValue();
+    }
+
+    @SmallTest
+    @Test
+    public void testInitialSnapshot() {
+        RingPolicyTracker.Snapshot snapshot = mTracker.getSnapshot();
+        assertEquals(5, snapshot.ringVolume);
+        assertTrue(snapshot.isVolumeOverZero());
+        assertEquals(AudioManager.RINGER_MODE_NORMAL, snapshot.ringerMode);
+        assertTrue(snapshot.isVibratorEnabled(false));
+        assertFalse(snapshot.isTheaterModeOn);
+    }
+
+    @SmallTest
+    @Test
+    public void testRingerModeChangeRefreshesSnapshot() {
+        when(mAudioManager.getRingerMode()).thenReturn(AudioManager.RINGER_MODE_SILENT);
+        // Not refreshed until told something changed.
+        assertEquals(AudioManager.RINGER_MODE_NORMAL, mTracker.getSnapshot().ringerMode);
+
+        mReceiver.onReceive(mContext, new Intent(AudioManager.RINGER_MODE_CHANGED_ACTION));
+        assertEquals(AudioManager.RINGER_MODE_SILENT, mTracker.getSnapshot().ringerMode);
+        assertFalse(mTracker.getSnapshot().isVibratorEnabled(false));
+    }
+
+    @SmallTest
+    @Test
+    public void testOnlyRingVolumeChangesRefreshSnapshot() {
+        when(mAudioManager.getStreamVolume(AudioManager.STREAM_RING)).thenReturn(0);
+
+        Intent musicVolume = new Intent(AudioManager.VOLUME_CHANGED_ACTION);
+        musicVolume.putExtra(AudioManager.EXTRA_VOLUME_STREAM_TYPE, AudioManager.STREAM_MUSIC);
+        mReceiver.onReceive(mContext, musicVolume);
+        assertTrue(mTracker.getSnapshot().isVolumeOverZero());
+
+        Intent ringVolume = new Intent(AudioManager.VOLUME_CHANGED_ACTION);
+        ringVolume.putExtra(AudioManager.EXTRA_VOLUME_STREAM_TYPE, AudioManager.STREAM_RING);
+        mReceiver.onReceive(mContext, ringVolume);
+        assertFalse(mTracker.getSnapshot().isVolumeOverZero());
+    }
+
+    @SmallTest
+    @Test
+    public void testZenModeLetsContactVibrateWhenSilent() {
+        when(mAudioManager.getRingerMode()).thenReturn(AudioManager.RINGER_MODE_SILENT);
+        when(mNotificationManager.getZenMode()).thenReturn(ZEN_MODE_IMPORTANT_INTERRUPTIONS);
+        mReceiver.onReceive(mContext,
+                new Intent(NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED));
+
+        RingPolicyTracker.Snapshot snapshot = mTracker.getSnapshot();
+        assertEquals(ZEN_MODE_IMPORTANT_INTERRUPTIONS, snapshot.zenMode);
+        assertTrue(snapshot.isVibratorEnabled(true));
+        assertFalse(snapshot.isVibratorEnabled(false));
+    }
+
+    @SmallTest
+    @Test
+    public void testSamePolicyIgnoresRefreshTime() {
+        RingPolicyTracker.Snapshot first = mTracker.refresh("test");
+        RingPolicyTracker.Snapshot second = mTracker.refresh("test");
+        assertTrue(second.hasSamePolicy(first));
+
+        when(mAudioManager.getStreamVolume(AudioManager.STREAM_RING)).thenReturn(0);
+        assertFalse(mTracker.refresh("test").hasSamePolicy(second));
+        assertFalse(second.hasSamePolicy(null));
+    }
+}
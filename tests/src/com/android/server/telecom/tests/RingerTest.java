@@ -29,6 +29,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -336,6 +337,26 @@ public class RingerTest extends TelecomTestCase {
                 .vibrate(any(VibrationEffect.class), any(VibrationAttributes.class));
     }
 
+    @SmallTest
+    @Test
+    public void testRingPolicySnapshotAvoidsQueriesWhenRinging() throws Exception {
+        when(mFeatureFlags.ringPolicySnapshot()).thenReturn(true);
+        Ringtone mockRingtone = ensureRingtoneMocked();
+        ensureRingerIsAudible();
+        enableVibrationOnlyWhenNotRinging();
+        createRingerUnderTest();
+        clearInvocations(mockAudioManager, mockSystemSettingsUtil);
+
+        assertTrue(startRingingAndWaitForAsync(mockCall2, false));
+        verify(mockRingtone).play();
+        // The decision came from the snapshot taken when the Ringer was created.
+        verify(mockAudioManager, never()).getStreamVolume(AudioManager.STREAM_RING);
+        verify(mockAudioManager, never()).getRingerMode();
+        verify(mockSystemSettingsUtil, never()).isTheaterModeOn(any(Context.class));
+        verify(mockSystemSettingsUtil, never()).isRingVibrationEnabled(any(Context.class));
+        assertEquals(1, mRingerUnderTest.getStartRingingToRingLatency().getCount());
+    }
+
     @SmallTest
     @Test
     public void testNoActionWithExternalRinger() throws Exception {
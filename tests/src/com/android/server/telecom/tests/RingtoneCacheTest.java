@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.Ringtone;
+import android.net.Uri;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.RingtoneCache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class RingtoneCacheTest extends TelecomTestCase {
+    private static final Uri DEFAULT_URI = Uri.parse("content://media/internal/audio/media/1");
+    private static final Uri CONTACT_URI = Uri.parse("content://media/internal/audio/media/2");
+    private static final AudioAttributes ATTRIBUTES = new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE)
+            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+            .setHapticChannelsMuted(true)
+            .build();
+
+    private final List<Ringtone> mLoaded = new ArrayList<>();
+    private final List<Runnable> mPendingLoads = new ArrayList<>();
+    private RingtoneCache mCache;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mContext = mComponentContextFixture.getTestDouble().getApplicationContext();
+        mCache = new RingtoneCache((context, uri, volumeShaperConfig, audioAttributes) -> {
+            Ringtone ringtone = mock(Ringtone.class);
+            mLoaded.add(ringtone);
+            return ringtone;
+        }, mPendingLoads::add);
+    }
+
+    @SmallTest
+    @Test
+    public void testPreloadedRingtoneIsHandedOutOnce() {
+        mCache.preload(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        runPendingLoads();
+        assertEquals(1, mCache.getPreparedCount());
+
+        Ringtone first = mCache.getRingtone(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        assertSame(mLoaded.get(0), first);
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(0, mCache.getPreparedCount());
+
+        // A replacement is prepared for the next call.
+        runPendingLoads();
+        Ringtone second = mCache.getRingtone(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        assertNotSame(first, second);
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(0, mCache.getMissCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testMissLoadsNowAndPreparesForNextTime() {
+        Ringtone ringtone = mCache.getRingtone(mContext, CONTACT_URI, null, ATTRIBUTES);
+        assertSame(mLoaded.get(0), ringtone);
+        assertEquals(1, mCache.getMissCount());
+
+        runPendingLoads();
+        assertEquals(1, mCache.getPreparedCount());
+        mCache.getRingtone(mContext, CONTACT_URI, null, ATTRIBUTES);
+        assertEquals(1, mCache.getHitCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testInvalidateReleasesPreparedRingtones() {
+        mCache.preload(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        mCache.preload(mContext, CONTACT_URI, null, ATTRIBUTES);
+        runPendingLoads();
+        assertEquals(2, mCache.getPreparedCount());
+
+        mCache.invalidate("test");
+        assertEquals(0, mCache.getPreparedCount());
+        verify(mLoaded.get(0)).stop();
+        verify(mLoaded.get(1)).stop();
+
+        // The old ringtone is not handed out after the setting changed.
+        Ringtone ringtone = mCache.getRingtone(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        assertSame(mLoaded.get(2), ringtone);
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testLoadFinishingAfterInvalidateIsDiscarded() {
+        mCache.preload(mContext, DEFAULT_URI, null, ATTRIBUTES);
+        mCache.invalidate("test");
+        runPendingLoads();
+
+        assertEquals(0, mCache.getPreparedCount());
+        verify(mLoaded.get(0)).stop();
+    }
+
+    @SmallTest
+    @Test
+    public void testOnlyRecentlyUsedRingtonesArePrepared() {
+        for (int i = 0; i <= RingtoneCache.MAX_ENTRIES; i++) {
+            mCache.preload(mContext, Uri.parse("content://media/internal/audio/media/1" + i),
+                    null, ATTRIBUTES);
+            runPendingLoads();
+        }
+
+        assertEquals(RingtoneCache.MAX_ENTRIES, mCache.getPreparedCount());
+        // The least recently used one was released to make room.
+        verify(mLoaded.get(0)).stop();
+        verify(mLoaded.get(RingtoneCache.MAX_ENTRIES), never()).stop();
+    }
+
+    private void runPendingLoads() {
+        List<Runnable> loads = new ArrayList<>(mPendingLoads);
+        mPendingLoads.clear();
+        loads.forEach(Runnable::run);
+    }
+}
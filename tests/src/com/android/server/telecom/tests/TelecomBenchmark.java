@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import android.os.Debug;
+import android.telecom.Log;
+
+import java.util.Arrays;
+
+/**
+ * Times an operation over a number of runs and reports the median cost per operation, along with
+ * the memory allocated per operation.
+ * <p>
+ * Allocations are counted across the whole process, so work an operation hands off to Telecom's
+ * handler threads is included. Results are logged on a single line per benchmark, in a fixed
+ * format, so they can be collected from logcat and compared across builds:
+ * <pre>
+ *   TelecomBenchmark: &lt;name&gt;: ns/op=&lt;n&gt; ops/s=&lt;n&gt; bytes/op=&lt;n&gt; allocs/op=&lt;n&gt;
+ * </pre>
+ */
+public class TelecomBenchmark {
+    private static final String TAG = TelecomBenchmark.class.getSimpleName();
+    public static final int DEFAULT_WARMUP_RUNS = 5;
+    public static final int DEFAULT_RUNS = 20;
+
+    /**
+     * The operation being measured.
+     */
+    public interface Operation {
+        /**
+         * @param index The index of the operation within its run.
+         */
+        void run(int index) throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final long nanosPerOp;
+        public final long bytesPerOp;
+        public final long allocationsPerOp;
+
+        Result(String name, long nanosPerOp, long bytesPerOp, long allocationsPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.allocationsPerOp = allocationsPerOp;
+        }
+
+        public long getOpsPerSecond() {
+            return nanosPerOp == 0 ? 0 : 1_000_000_000L / nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": ns/op=" + nanosPerOp + " ops/s=" + getOpsPerSecond()
+                    + " bytes/op=" + bytesPerOp + " allocs/op=" + allocationsPerOp;
+        }
+    }
+
+    /**
+     * Measures {@code operation} over {@link #DEFAULT_RUNS} runs of {@code opsPerRun}
+     * operations each, after {@link #DEFAULT_WARMUP_RUNS} runs which are discarded. The runs
+     * are timed first, and then repeated with allocation counting on.
+     */
+    public static Result measure(String name, int opsPerRun, Operation operation)
+            throws Exception {
+        return measure(name, DEFAULT_WARMUP_RUNS, DEFAULT_RUNS, opsPerRun, operation);
+    }
+
+    @SuppressWarnings("deprecation")
+    public static Result measure(String name, int warmupRuns, int runs, int opsPerRun,
+            Operation operation) throws Exception {
+        for (int run = 0; run < warmupRuns; run++) {
+            for (int i = 0; i < opsPerRun; i++) {
+                operation.run(i);
+            }
+        }
+
+        // Allocation counting slows every allocation down, so the runs which are timed and the
+        // runs whose allocations are counted are kept apart.
+        long[] nanosPerOp = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < opsPerRun; i++) {
+                operation.run(i);
+            }
+            nanosPerOp[run] = (System.nanoTime() - start) / opsPerRun;
+        }
+
+        long[] bytesPerOp = new long[runs];
+        long[] allocationsPerOp = new long[runs];
+        Debug.startAllocCounting();
+        try {
+            for (int run = 0; run < runs; run++) {
+                Debug.resetGlobalAllocSize();
+                Debug.resetGlobalAllocCount();
+                for (int i = 0; i < opsPerRun; i++) {
+                    operation.run(i);
+                }
+                bytesPerOp[run] = Debug.getGlobalAllocSize() / opsPerRun;
+                allocationsPerOp[run] = Debug.getGlobalAllocCount() / opsPerRun;
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        // The median is far less sensitive than the mean to a GC or a descheduled thread.
+        Result result = new Result(name, median(nanosPerOp), median(bytesPerOp),
+                median(allocationsPerOp));
+        Log.i(TAG, "%s", result);
+        return result;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.OutcomeReceiver;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.telecom.CallException;
+import android.telecom.Connection;
+import android.telecom.ParcelableCall;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomAnalytics.SessionTiming;
+import android.telecom.TelecomManager;
+import android.telephony.SubscriptionManager;
+import android.util.Xml;
+
+import androidx.test.filters.LargeTest;
+
+import com.android.internal.telecom.IConnectionService;
+import com.android.internal.telephony.flags.FeatureFlags;
+import com.android.internal.util.FastXmlSerializer;
+import com.android.server.telecom.Analytics;
+import com.android.server.telecom.AnalyticsStore;
+import com.android.server.telecom.AppLabelProxy;
+import com.android.server.telecom.Call;
+import com.android.server.telecom.CallIdMapper;
+import com.android.server.telecom.CallerInfoLookupHelper;
+import com.android.server.telecom.CallsManager;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.DefaultDialerCache;
+import com.android.server.telecom.ParcelableCallUtils;
+import com.android.server.telecom.PhoneAccountRegistrar;
+import com.android.server.telecom.PhoneNumberUtilsAdapter;
+import com.android.server.telecom.TelecomSystem;
+import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.callfiltering.CallFilter;
+import com.android.server.telecom.callfiltering.CallFilterEngine;
+import com.android.server.telecom.callfiltering.CallFilteringResult;
+import com.android.server.telecom.callfiltering.IncomingCallFilterGraph;
+import com.android.server.telecom.ui.ToastFactory;
+import com.android.server.telecom.voip.TransactionManager;
+import com.android.server.telecom.voip.TransactionScheduler;
+import com.android.server.telecom.voip.VoipCallTransaction;
+import com.android.server.telecom.voip.VoipCallTransactionResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the code Telecom runs on every call, using the same fixtures as the functional
+ * tests. Each benchmark logs its results through {@link TelecomBenchmark}.
+ */
+@RunWith(JUnit4.class)
+public class TelecomHotPathBenchmarkTest extends TelecomTestCase {
+    private static final String FILE_NAME = "phone-account-registrar-benchmark.xml";
+    private static final int NUM_ACCOUNTS = 20;
+    private static final int NUM_CALLS = 8;
+    private static final int NUM_FILTERS = 3;
+    private static final long TEST_TIMEOUT = 5000;
+    private static final CallFilteringResult PASS_CALL_RESULT = new CallFilteringResult.Builder()
+            .setShouldAllowCall(true)
+            .setShouldReject(false)
+            .setShouldSilence(false)
+            .setShouldAddToCallLog(true)
+            .setShouldShowNotification(true).build();
+
+    private final TelecomSystem.SyncRoot mLock = new TelecomSystem.SyncRoot() { };
+    @Mock private ClockProxy mClockProxy;
+    @Mock private ToastFactory mToastProxy;
+    @Mock private CallsManager mCallsManager;
+    @Mock private CallerInfoLookupHelper mCallerInfoLookupHelper;
+    @Mock private PhoneNumberUtilsAdapter mPhoneNumberUtilsAdapter;
+    @Mock private PhoneAccountRegistrar mMockPhoneAccountRegistrar;
+    @Mock private SubscriptionManager mSubscriptionManager;
+    @Mock private TelecomManager mTelecomManager;
+    @Mock private DefaultDialerCache mDefaultDialerCache;
+    @Mock private AppLabelProxy mAppLabelProxy;
+    @Mock private FeatureFlags mTelephonyFeatureFlags;
+    @Mock private Timeouts.Adapter mTimeoutsAdapter;
+
+    private static class AllowFilter extends CallFilter {
+        @Override
+        public CompletionStage<CallFilteringResult> startFilterLookup(
+                CallFilteringResult priorStageResult) {
+            return CompletableFuture.completedFuture(PASS_CALL_RESULT);
+        }
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        when(mClockProxy.currentTimeMillis()).thenReturn(System.currentTimeMillis());
+        when(mClockProxy.elapsedRealtime()).thenReturn(SystemClock.elapsedRealtime());
+        when(mCallsManager.getCallerInfoLookupHelper()).thenReturn(mCallerInfoLookupHelper);
+        when(mCallsManager.getPhoneAccountRegistrar()).thenReturn(mMockPhoneAccountRegistrar);
+        when(mCallsManager.getCurrentUserHandle()).thenReturn(UserHandle.CURRENT);
+        when(mMockPhoneAccountRegistrar.getPhoneAccountUnchecked(any())).thenReturn(null);
+        when(mComponentContextFixture.getTelephonyManager().isEmergencyNumber(any()))
+                .thenReturn(false);
+
+        mComponentContextFixture.setTelecomManager(mTelecomManager);
+        mComponentContextFixture.setSubscriptionManager(mSubscriptionManager);
+        when(mDefaultDialerCache.getDefaultDialerApplication(anyInt()))
+                .thenReturn("com.android.dialer");
+        when(mAppLabelProxy.getAppLabel(anyString())).thenReturn("label");
+        when(mFeatureFlags.unregisterUnresolvableAccounts()).thenReturn(true);
+        when(mTelephonyFeatureFlags.workProfileApiSplit()).thenReturn(false);
+        deleteRegistrarFiles();
+
+        when(mTimeoutsAdapter.getCallScreeningTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(TEST_TIMEOUT);
+        when(mTimeoutsAdapter.getCallFilterTimeoutMillis(nullable(ContentResolver.class)))
+                .thenReturn(TEST_TIMEOUT);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        deleteRegistrarFiles();
+        super.tearDown();
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkToParcelableCall() throws Exception {
+        Call call = makeCall("1");
+        Bundle extras = new Bundle();
+        extras.putString(Connection.EXTRA_CALL_SUBJECT, "Subject");
+        extras.putString("SomeExtra", "Value");
+        call.putConnectionServiceExtras(extras);
+
+        for (boolean isForSystemDialer : new boolean[] {true, false}) {
+            TelecomBenchmark.measure("toParcelableCall/systemDialer=" + isForSystemDialer, 100,
+                    i -> {
+                        ParcelableCall parcelableCall = ParcelableCallUtils.toParcelableCall(call,
+                                false /* includeVideoProvider */,
+                                null /* phoneAccountRegistrar */,
+                                false /* supportsExternalCalls */,
+                                false /* includeRttCall */,
+                                isForSystemDialer);
+                        assertEquals("1", parcelableCall.getId());
+                    });
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkPhoneAccountRegistrarQueries() throws Exception {
+        PhoneAccountRegistrar registrar = makeRegistrar();
+        mComponentContextFixture.addConnectionService(makeComponentName(),
+                mock(IConnectionService.class));
+        PhoneAccountHandle[] handles = new PhoneAccountHandle[NUM_ACCOUNTS];
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            PhoneAccount account = makeAccount(i);
+            handles[i] = account.getAccountHandle();
+            registrar.registerPhoneAccount(account);
+            registrar.enablePhoneAccount(handles[i], true);
+        }
+
+        TelecomBenchmark.measure("PhoneAccountRegistrar.getPhoneAccountUnchecked", 1000,
+                i -> assertNotNull(registrar.getPhoneAccountUnchecked(
+                        handles[i % NUM_ACCOUNTS])));
+        TelecomBenchmark.measure("PhoneAccountRegistrar.getCallCapablePhoneAccounts", 100,
+                i -> assertEquals(NUM_ACCOUNTS, registrar.getCallCapablePhoneAccounts(
+                        PhoneAccount.SCHEME_TEL, false /* includeDisabledAccounts */,
+                        Process.myUserHandle(), false /* crossUserAccess */).size()));
+        // Let the registrar finish persisting the accounts before tearDown deletes its files.
+        registrar.flushPendingWrites();
+        CountDownLatch latch = new CountDownLatch(1);
+        AsyncTask.SERIAL_EXECUTOR.execute(latch::countDown);
+        assertTrue(latch.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkPhoneAccountRegistrarXml() throws Exception {
+        PhoneAccountRegistrar.State state = new PhoneAccountRegistrar.State();
+        for (int i = 0; i < NUM_ACCOUNTS; i++) {
+            state.accounts.add(makeAccount(i));
+        }
+        byte[][] data = new byte[1][];
+
+        TelecomBenchmark.measure("PhoneAccountRegistrar.writeToXml/" + NUM_ACCOUNTS, 10, i -> {
+            XmlSerializer serializer = new FastXmlSerializer();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.setOutput(new BufferedOutputStream(out), "utf-8");
+            PhoneAccountRegistrar.sStateXml.writeToXml(state, serializer, mContext,
+                    mTelephonyFeatureFlags);
+            serializer.flush();
+            data[0] = out.toByteArray();
+        });
+        TelecomBenchmark.measure("PhoneAccountRegistrar.readFromXml/" + NUM_ACCOUNTS, 10, i -> {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(new BufferedInputStream(new ByteArrayInputStream(data[0])), null);
+            parser.nextTag();
+            PhoneAccountRegistrar.State result = PhoneAccountRegistrar.sStateXml.readFromXml(
+                    parser, Integer.MAX_VALUE, mContext, mTelephonyFeatureFlags, mFeatureFlags);
+            assertEquals(NUM_ACCOUNTS, result.accounts.size());
+        });
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkCallIdMapperLookups() throws Exception {
+        CallIdMapper mapper = new CallIdMapper(Call::getId);
+        Call[] calls = new Call[NUM_CALLS];
+        String[] ids = new String[NUM_CALLS];
+        for (int i = 0; i < NUM_CALLS; i++) {
+            ids[i] = "TC@" + i;
+            calls[i] = mock(Call.class);
+            when(calls[i].getId()).thenReturn(ids[i]);
+            mapper.addCall(calls[i], ids[i]);
+        }
+
+        TelecomBenchmark.measure("CallIdMapper.getCall/" + NUM_CALLS, 1000,
+                i -> assertEquals(calls[i % NUM_CALLS], mapper.getCall(ids[i % NUM_CALLS])));
+        TelecomBenchmark.measure("CallIdMapper.getCallId/" + NUM_CALLS, 1000,
+                i -> assertEquals(ids[i % NUM_CALLS], mapper.getCallId(calls[i % NUM_CALLS])));
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkIncomingCallFilterGraph() throws Exception {
+        Call call = mock(Call.class);
+        CallFilterEngine engine = new CallFilterEngine(2 /* poolSize */);
+        try {
+            TelecomBenchmark.measure("IncomingCallFilterGraph/" + NUM_FILTERS + "filters", 20,
+                    i -> {
+                        CompletableFuture<CallFilteringResult> result = new CompletableFuture<>();
+                        IncomingCallFilterGraph graph = new IncomingCallFilterGraph(call,
+                                (c, r, timeout) -> result.complete(r), mContext,
+                                mTimeoutsAdapter, mLock, engine);
+                        CallFilter previous = null;
+                        for (int filter = 0; filter < NUM_FILTERS; filter++) {
+                            CallFilter next = new AllowFilter();
+                            graph.addFilter(next);
+                            if (previous != null) {
+                                IncomingCallFilterGraph.addEdge(previous, next);
+                            }
+                            previous = next;
+                        }
+                        graph.performFiltering();
+                        assertEquals(PASS_CALL_RESULT,
+                                result.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                    });
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkVoipCallTransactionThreads() throws Exception {
+        // What each transaction did before TransactionScheduler: start a thread of its own, and
+        // quit it once done.
+        TelecomBenchmark.measure("VoipCallTransaction/ownHandlerThread", 20, i -> {
+            HandlerThread thread = new HandlerThread("TelecomHotPathBenchmarkTest");
+            thread.start();
+            runAndWait(new Handler(thread.getLooper()));
+            thread.quitSafely();
+        });
+        TransactionScheduler scheduler = new TransactionScheduler("TelecomHotPathBenchmarkTest",
+                TransactionScheduler.DEFAULT_POOL_SIZE,
+                TransactionScheduler.DEFAULT_KEEP_ALIVE_MILLIS);
+        TelecomBenchmark.measure("VoipCallTransaction/TransactionScheduler", 20, i -> {
+            TransactionScheduler.TransactionHandler handler = scheduler.obtainHandler();
+            runAndWait(handler);
+            handler.quit();
+        });
+
+        TransactionManager transactionManager = TransactionManager.getTestInstance();
+        TelecomBenchmark.measure("VoipCallTransaction/addTransaction", 20, i -> {
+            CompletableFuture<VoipCallTransactionResult> result = new CompletableFuture<>();
+            transactionManager.addTransaction(new VoipCallTransaction(mLock),
+                    new OutcomeReceiver<VoipCallTransactionResult, CallException>() {
+                        @Override
+                        public void onResult(VoipCallTransactionResult r) {
+                            result.complete(r);
+                        }
+
+                        @Override
+                        public void onError(CallException e) {
+                            result.completeExceptionally(e);
+                        }
+                    });
+            assertEquals(VoipCallTransactionResult.RESULT_SUCCEED,
+                    result.get(TEST_TIMEOUT, TimeUnit.MILLISECONDS).getResult());
+        });
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkAnalyticsStore() throws Exception {
+        for (int numCalls : new int[] {100, 10000}) {
+            AnalyticsStore store = new AnalyticsStore(numCalls, numCalls * 10);
+            TelecomBenchmark.measure("AnalyticsStore.addCall/" + numCalls, numCalls, i -> {
+                store.addCall(new Analytics.CallInfoImpl("TC@" + i,
+                        Analytics.INCOMING_DIRECTION));
+                for (int timing = 0; timing < 10; timing++) {
+                    store.addSessionTiming(SessionTiming.CSW_SET_ACTIVE, timing);
+                }
+            });
+            TelecomBenchmark.measure("AnalyticsStore.encodeTelecomLog/" + numCalls, 1,
+                    i -> assertTrue(store.encodeTelecomLog("", -1).length > 0));
+        }
+    }
+
+    @LargeTest
+    @Test
+    public void testBenchmarkListenerDispatch() throws Exception {
+        for (int numListeners : new int[] {1, 4, 16}) {
+            Call call = makeCall("1");
+            for (int i = 0; i < numListeners; i++) {
+                // Only one listener in four cares about capabilities, as with the real listeners.
+                call.addListener(new InterestedListener(i % 4 == 0
+                        ? Call.LISTENER_CONNECTION_CAPABILITIES_CHANGED
+                        : Call.LISTENER_STATUS_HINTS_CHANGED));
+            }
+            TelecomBenchmark.measure("Call.setConnectionCapabilities/" + numListeners
+                    + "listeners", 10000, i -> call.setConnectionCapabilities(
+                            i % 2 == 0 ? Connection.CAPABILITY_HOLD : 0));
+        }
+    }
+
+    private static void runAndWait(Handler handler) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        handler.post(latch::countDown);
+        assertTrue(latch.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private Call makeCall(String id) {
+        return new Call(id,
+                mContext /* context */,
+                mCallsManager,
+                mLock,
+                null /* ConnectionServiceRepository */,
+                mPhoneNumberUtilsAdapter,
+                Uri.fromParts("tel", "6505551212", null),
+                null /* GatewayInfo */,
+                null /* connectionMgr */,
+                new PhoneAccountHandle(
+                        ComponentName.unflattenFromString("com.test/Class"), "test"),
+                Call.CALL_DIRECTION_INCOMING,
+                false /* shouldAttachToExistingConnection */,
+                false /* isConference */,
+                mClockProxy /* ClockProxy */,
+                mToastProxy,
+                mFeatureFlags);
+    }
+
+    private PhoneAccountRegistrar makeRegistrar() {
+        return new PhoneAccountRegistrar(
+                mComponentContextFixture.getTestDouble().getApplicationContext(), mLock, FILE_NAME,
+                mDefaultDialerCache, mAppLabelProxy, mTelephonyFeatureFlags, mFeatureFlags);
+    }
+
+    private static PhoneAccount makeAccount(int index) {
+        return new PhoneAccount.Builder(
+                new PhoneAccountHandle(makeComponentName(), "id" + index, Process.myUserHandle()),
+                "label" + index)
+                .setCapabilities(PhoneAccount.CAPABILITY_CALL_PROVIDER)
+                .addSupportedUriScheme(PhoneAccount.SCHEME_TEL)
+                .setIsEnabled(true)
+                .build();
+    }
+
+    private static ComponentName makeComponentName() {
+        return new ComponentName(
+                "com.android.server.telecom.tests",
+                "com.android.server.telecom.tests.MockConnectionService");
+    }
+
+    private void deleteRegistrarFiles() {
+        File filesDir =
+                mComponentContextFixture.getTestDouble().getApplicationContext().getFilesDir();
+        new File(filesDir, FILE_NAME).delete();
+        new File(filesDir, FILE_NAME + PhoneAccountRegistrar.JOURNAL_SUFFIX).delete();
+    }
+
+    private static class InterestedListener extends Call.ListenerBase {
+        private final long mInterestedEvents;
+
+        InterestedListener(long interestedEvents) {
+            mInterestedEvents = interestedEvents;
+        }
+
+        @Override
+        public long getInterestedEvents() {
+            return mInterestedEvents;
+        }
+    }
+}
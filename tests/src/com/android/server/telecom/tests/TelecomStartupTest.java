@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.TelecomStartup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class TelecomStartupTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+
+    @Mock ClockProxy mClockProxy;
+
+    private long mNowMillis = 1000;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        when(mClockProxy.elapsedRealtime()).thenAnswer(invocation -> mNowMillis);
+    }
+
+    @SmallTest
+    @Test
+    public void testRunRecordsEachComponent() {
+        TelecomStartup startup = new TelecomStartup(mClockProxy, Runnable::run);
+        String result = startup.run("First", () -> {
+            mNowMillis += 10;
+            return "first";
+        });
+        startup.run("Second", () -> {
+            mNowMillis += 25;
+            return null;
+        });
+        startup.finish();
+
+        assertEquals("first", result);
+        assertEquals(10, startup.getDurationMillis("First"));
+        assertEquals(25, startup.getDurationMillis("Second"));
+        assertEquals(-1, startup.getDurationMillis("Third"));
+
+        StringWriter writer = new StringWriter();
+        startup.dump(new IndentingPrintWriter(writer, "  "));
+        String dump = writer.toString();
+        assertTrue(dump, dump.contains("total=35ms"));
+        assertTrue(dump, dump.contains("+0ms First: 10ms"));
+        assertTrue(dump, dump.contains("+10ms Second: 25ms"));
+    }
+
+    @SmallTest
+    @Test
+    public void testDirectExecutorKeepsOrder() {
+        TelecomStartup startup = new TelecomStartup(mClockProxy, Runnable::run);
+        List<String> order = new ArrayList<>();
+        TelecomStartup.Step<String> step = startup.runAsync("Async", () -> {
+            order.add("async");
+            return "async";
+        });
+        startup.run("Sync", () -> order.add("sync"));
+
+        assertEquals("async", step.get());
+        assertEquals(List.of("async", "sync"), order);
+    }
+
+    @SmallTest
+    @Test
+    public void testRunAsyncOverlapsWithLaterComponents() throws Exception {
+        TelecomStartup startup = new TelecomStartup(mClockProxy,
+                Executors.newSingleThreadExecutor());
+        CountDownLatch syncStarted = new CountDownLatch(1);
+        TelecomStartup.Step<String> step = startup.runAsync("Async", () -> {
+            try {
+                // Only finishes if the component after it got to run meanwhile.
+                assertTrue(syncStarted.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                fail();
+            }
+            return Thread.currentThread().getName();
+        });
+        startup.run("Sync", () -> {
+            syncStarted.countDown();
+            return null;
+        });
+
+        assertNotEquals(Thread.currentThread().getName(), step.get());
+    }
+
+    @SmallTest
+    @Test
+    public void testStepRethrowsFailure() {
+        TelecomStartup startup = new TelecomStartup(mClockProxy,
+                Executors.newSingleThreadExecutor());
+        TelecomStartup.Step<Object> step = startup.runAsync("Broken", () -> {
+            throw new IllegalStateException("expected");
+        });
+
+        try {
+            step.get();
+            fail("Expected the failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("expected", e.getMessage());
+        }
+    }
+}
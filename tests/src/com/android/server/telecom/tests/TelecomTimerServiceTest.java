@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.ClockProxy;
+import com.android.server.telecom.TelecomTimerService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+
+@RunWith(JUnit4.class)
+public class TelecomTimerServiceTest extends TelecomTestCase {
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    private TestScheduledExecutorService mExecutor;
+    private long mNow;
+    private TelecomTimerService mTimerService;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mExecutor = new TestScheduledExecutorService();
+        mNow = 0;
+        mTimerService = new TelecomTimerService(mExecutor, new ClockProxy() {
+            @Override
+            public long currentTimeMillis() {
+                return mNow;
+            }
+
+            @Override
+            public long elapsedRealtime() {
+                return mNow;
+            }
+        }, TICK_MILLIS, WHEEL_SIZE);
+    }
+
+    @SmallTest
+    @Test
+    public void testFiresAtDeadline() {
+        int[] fired = new int[1];
+        TelecomTimerService.Timer timer = mTimerService.newTimer("test", "t1",
+                () -> fired[0]++);
+        timer.schedule(25);
+
+        advanceTime(20);
+        assertEquals(0, fired[0]);
+        assertTrue(timer.isPending());
+
+        advanceTime(10);
+        assertEquals(1, fired[0]);
+        assertFalse(timer.isPending());
+        assertEquals(0, mTimerService.getPendingCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testCancel() {
+        int[] fired = new int[1];
+        TelecomTimerService.Timer timer = mTimerService.newTimer("test", "t1",
+                () -> fired[0]++);
+        timer.schedule(10);
+        timer.cancel();
+
+        advanceTime(50);
+        assertEquals(0, fired[0]);
+        assertEquals(0, mTimerService.getPendingCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testRescheduleReplacesDeadline() {
+        int[] fired = new int[1];
+        TelecomTimerService.Timer timer = mTimerService.newTimer("test", "t1",
+                () -> fired[0]++);
+        timer.schedule(10);
+        timer.schedule(40);
+        assertEquals(1, mTimerService.getPendingCount());
+
+        advanceTime(20);
+        assertEquals(0, fired[0]);
+        advanceTime(20);
+        assertEquals(1, fired[0]);
+    }
+
+    @SmallTest
+    @Test
+    public void testDeadlineBeyondOneRevolution() {
+        int[] fired = new int[2];
+        // Both timers hash to the same slot; the second is a full revolution later.
+        long revolution = TICK_MILLIS * WHEEL_SIZE;
+        mTimerService.newTimer("test", "near", () -> fired[0]++).schedule(15);
+        mTimerService.newTimer("test", "far", () -> fired[1]++).schedule(15 + revolution);
+
+        advanceTime(20);
+        assertEquals(1, fired[0]);
+        assertEquals(0, fired[1]);
+
+        advanceTime(revolution);
+        assertEquals(1, fired[1]);
+    }
+
+    @SmallTest
+    @Test
+    public void testCatchesUpAfterLongDelay() {
+        int[] fired = new int[1];
+        for (int i = 0; i < WHEEL_SIZE * 2; i++) {
+            mTimerService.newTimer("test", "t" + i, () -> fired[0]++)
+                    .schedule(i * TICK_MILLIS);
+        }
+
+        // A single tick which runs late still fires every expired timer.
+        advanceTime(TICK_MILLIS * WHEEL_SIZE * 3);
+        assertEquals(WHEEL_SIZE * 2, fired[0]);
+    }
+
+    @SmallTest
+    @Test
+    public void testActionCanReschedule() {
+        int[] fired = new int[1];
+        TelecomTimerService.Timer[] timer = new TelecomTimerService.Timer[1];
+        timer[0] = mTimerService.newTimer("test", "periodic", () -> {
+            if (++fired[0] < 3) {
+                timer[0].schedule(TICK_MILLIS);
+            }
+        });
+        timer[0].schedule(TICK_MILLIS);
+
+        for (int i = 0; i < 5; i++) {
+            advanceTime(TICK_MILLIS);
+        }
+        assertEquals(3, fired[0]);
+    }
+
+    @SmallTest
+    @Test
+    public void testDumpListsPendingTimers() {
+        mTimerService.newTimer("CallAnomalyWatchdog", "TC@1", () -> {}).schedule(500);
+        mTimerService.newTimer("ConnectionServiceWrapper", "TC@2", () -> {}).schedule(100);
+
+        StringWriter writer = new StringWriter();
+        mTimerService.dump(new IndentingPrintWriter(writer, "  "));
+        String dump = writer.toString();
+
+        assertTrue(dump, dump.contains("pending=2"));
+        // Soonest first.
+        int csw = dump.indexOf("ConnectionServiceWrapper/TC@2: deadline=100");
+        int caw = dump.indexOf("CallAnomalyWatchdog/TC@1: deadline=500");
+        assertTrue(dump, csw > 0 && caw > csw);
+    }
+
+    private void advanceTime(long millis) {
+        mNow += millis;
+        mExecutor.advanceTime(millis);
+    }
+}
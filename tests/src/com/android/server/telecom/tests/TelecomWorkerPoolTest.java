@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.internal.util.IndentingPrintWriter;
+import com.android.server.telecom.TelecomWorkerPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class TelecomWorkerPoolTest extends TelecomTestCase {
+    private static final long TEST_TIMEOUT = 5000;
+
+    private TelecomWorkerPool mPool;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        if (mPool != null) {
+            mPool.shutdown();
+        }
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testSerialExecutorRunsTasksInOrder() throws Exception {
+        mPool = new TelecomWorkerPool(4);
+        TelecomWorkerPool.SerialExecutor executor = mPool.newSerialExecutor("test",
+                TelecomWorkerPool.LANE_BACKGROUND);
+        int numTasks = 200;
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(numTasks);
+        for (int i = 0; i < numTasks; i++) {
+            final int index = i;
+            executor.execute(() -> {
+                order.add(index);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < numTasks; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @SmallTest
+    @Test
+    public void testAudioLaneRunsBeforeQueuedBackgroundWork() throws Exception {
+        mPool = new TelecomWorkerPool(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mPool.newSerialExecutor("blocker", TelecomWorkerPool.LANE_BACKGROUND).execute(() -> {
+            blocked.countDown();
+            try {
+                release.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Let the pool go.
+            }
+        });
+        assertTrue(blocked.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        mPool.newSerialExecutor("background1", TelecomWorkerPool.LANE_BACKGROUND).execute(() -> {
+            order.add("background1");
+            done.countDown();
+        });
+        mPool.newSerialExecutor("background2", TelecomWorkerPool.LANE_BACKGROUND).execute(() -> {
+            order.add("background2");
+            done.countDown();
+        });
+        mPool.newSerialExecutor("audio", TelecomWorkerPool.LANE_AUDIO).execute(() -> {
+            order.add("audio");
+            done.countDown();
+        });
+        assertEquals(2, mPool.getQueueDepth(TelecomWorkerPool.LANE_BACKGROUND));
+        assertEquals(1, mPool.getQueueDepth(TelecomWorkerPool.LANE_AUDIO));
+
+        release.countDown();
+        assertTrue(done.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(List.of("audio", "background1", "background2"), order);
+        assertEquals(0, mPool.getQueueDepth(TelecomWorkerPool.LANE_BACKGROUND));
+        assertEquals(2, mPool.getMaxQueueDepth(TelecomWorkerPool.LANE_BACKGROUND));
+        assertEquals(1, mPool.getQueueLatency(TelecomWorkerPool.LANE_AUDIO).getCount());
+    }
+
+    @SmallTest
+    @Test
+    public void testManyExecutorsShareBoundedThreads() throws Exception {
+        int poolSize = 2;
+        mPool = new TelecomWorkerPool(poolSize);
+        int numExecutors = 50;
+        CountDownLatch done = new CountDownLatch(numExecutors);
+        for (int i = 0; i < numExecutors; i++) {
+            mPool.newSerialExecutor("executor" + i, TelecomWorkerPool.LANE_BACKGROUND)
+                    .execute(done::countDown);
+        }
+
+        assertTrue(done.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(mPool.getLargestPoolSize() <= poolSize);
+    }
+
+    @SmallTest
+    @Test
+    public void testTaskExceptionDoesNotStopExecutor() throws Exception {
+        mPool = new TelecomWorkerPool(1);
+        TelecomWorkerPool.SerialExecutor executor = mPool.newSerialExecutor("test",
+                TelecomWorkerPool.LANE_BACKGROUND);
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(() -> {
+            throw new IllegalStateException("expected");
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @SmallTest
+    @Test
+    public void testDumpIncludesLanesAndExecutors() throws Exception {
+        mPool = new TelecomWorkerPool(1);
+        CountDownLatch done = new CountDownLatch(1);
+        mPool.newSerialExecutor("BCF.gBS", TelecomWorkerPool.LANE_BACKGROUND).execute(() -> { });
+        // With a single thread, this only runs once the first task has been fully accounted for.
+        mPool.newSerialExecutor("other", TelecomWorkerPool.LANE_BACKGROUND)
+                .execute(done::countDown);
+        assertTrue(done.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+
+        StringWriter writer = new StringWriter();
+        mPool.dump(new IndentingPrintWriter(writer, "  "));
+        String dump = writer.toString();
+        assertTrue(dump, dump.contains("audio: depth=0"));
+        assertTrue(dump, dump.contains("background: depth=0"));
+        assertTrue(dump, dump.contains("BCF.gBS: 1"));
+    }
+}
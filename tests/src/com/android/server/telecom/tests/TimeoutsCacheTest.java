@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.server.telecom.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentResolver;
+import android.os.SystemClock;
+import android.provider.DeviceConfig;
+import android.provider.Settings;
+import android.telecom.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.MediumTest;
+import androidx.test.filters.SmallTest;
+
+import com.android.server.telecom.Timeouts;
+import com.android.server.telecom.TimeoutsCache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class TimeoutsCacheTest extends TelecomTestCase {
+    private static final int USER_0 = 0;
+    private static final int USER_10 = 10;
+    private static final String SCREENING_TIMEOUT = "telecom.call_screening_timeout";
+    private static final int NUM_CALL_SETUPS = 10000;
+
+    /**
+     * Settings held in memory, counting how often they are read.
+     */
+    private static class FakeReader implements TimeoutsCache.Reader {
+        final Map<String, String> settings = new HashMap<>();
+        final Map<String, String> deviceConfig = new HashMap<>();
+        DeviceConfig.OnPropertiesChangedListener listener;
+        int reads;
+
+        @Override
+        public String getSecureSetting(ContentResolver contentResolver, String name,
+                int userId) {
+            reads++;
+            return settings.get(userId + "/" + name);
+        }
+
+        @Override
+        public String getDeviceConfigProperty(String namespace, String name) {
+            reads++;
+            return deviceConfig.get(namespace + "/" + name);
+        }
+
+        @Override
+        public void addDeviceConfigListener(String namespace,
+                DeviceConfig.OnPropertiesChangedListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private FakeReader mReader;
+    private TimeoutsCache mCache;
+    private ContentResolver mUser0Resolver;
+    private ContentResolver mUser10Resolver;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        mReader = new FakeReader();
+        mCache = new TimeoutsCache(mReader);
+        mUser0Resolver = mock(ContentResolver.class);
+        when(mUser0Resolver.getUserId()).thenReturn(USER_0);
+        mUser10Resolver = mock(ContentResolver.class);
+        when(mUser10Resolver.getUserId()).thenReturn(USER_10);
+    }
+
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        Timeouts.setCache(null);
+        super.tearDown();
+    }
+
+    @SmallTest
+    @Test
+    public void testSettingsReadOncePerUser() {
+        mReader.settings.put(USER_10 + "/" + SCREENING_TIMEOUT, "1000");
+
+        assertEquals(5000L, mCache.getSecureLong(mUser0Resolver, SCREENING_TIMEOUT, 5000L));
+        assertEquals(5000L, mCache.getSecureLong(mUser0Resolver, SCREENING_TIMEOUT, 5000L));
+        assertEquals(1000L, mCache.getSecureLong(mUser10Resolver, SCREENING_TIMEOUT, 5000L));
+        assertEquals(1000L, mCache.getSecureLong(mUser10Resolver, SCREENING_TIMEOUT, 5000L));
+
+        assertEquals(2, mReader.reads);
+        assertEquals(2, mCache.getHits());
+    }
+
+    @SmallTest
+    @Test
+    public void testSettingChangeInvalidates() {
+        assertEquals(5000L, mCache.getSecureLong(mUser0Resolver, SCREENING_TIMEOUT, 5000L));
+
+        mReader.settings.put(USER_0 + "/" + SCREENING_TIMEOUT, "2000");
+        // A change for another user or another setting leaves the value cached.
+        mCache.onSettingChanged(Settings.Secure.getUriFor(SCREENING_TIMEOUT), USER_10);
+        mCache.onSettingChanged(Settings.Secure.getUriFor("telecom.other"), USER_0);
+        assertEquals(5000L, mCache.getSecureLong(mUser0Resolver, SCREENING_TIMEOUT, 5000L));
+
+        mCache.onSettingChanged(Settings.Secure.getUriFor(SCREENING_TIMEOUT), USER_0);
+        assertEquals(2000L, mCache.getSecureLong(mUser0Resolver, SCREENING_TIMEOUT, 5000L));
+        assertEquals(2, mReader.reads);
+    }
+
+    @SmallTest
+    @Test
+    public void testDeviceConfigChangeInvalidates() {
+        String namespace = DeviceConfig.NAMESPACE_TELEPHONY;
+        mReader.deviceConfig.put(namespace + "/days", "not a number");
+        assertEquals(30, mCache.getDeviceConfigInt(namespace, "days", 30));
+        assertEquals(30, mCache.getDeviceConfigInt(namespace, "days", 30));
+        assertEquals(1, mReader.reads);
+
+        mReader.deviceConfig.put(namespace + "/days", "7");
+        mCache.onDeviceConfigChanged(namespace, Collections.singleton("days"));
+        assertEquals(7, mCache.getDeviceConfigInt(namespace, "days", 30));
+        assertEquals(2, mReader.reads);
+    }
+
+    /**
+     * Times the timeout lookups made while setting up a call, reading from settings each time
+     * and then through the cache.
+     */
+    @MediumTest
+    @Test
+    public void testCallSetupLookupCost() {
+        ContentResolver resolver = InstrumentationRegistry.getTargetContext()
+                .getContentResolver();
+        long uncachedNanos = timeCallSetups(resolver);
+
+        TimeoutsCache cache = new TimeoutsCache(new TimeoutsCache.SettingsReader());
+        Timeouts.setCache(cache);
+        long cachedNanos = timeCallSetups(resolver);
+
+        Log.i(this, "testCallSetupLookupCost: per call setup uncached=%dns, cached=%dns",
+                uncachedNanos / NUM_CALL_SETUPS, cachedNanos / NUM_CALL_SETUPS);
+        // Each distinct timeout is read from settings once.
+        assertEquals(6, cache.getMisses());
+    }
+
+    private static long timeCallSetups(ContentResolver resolver) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < NUM_CALL_SETUPS; i++) {
+            Timeouts.getPhoneAccountSuggestionServiceTimeout(resolver);
+            Timeouts.getUserDefinedCallRedirectionTimeoutMillis(resolver);
+            Timeouts.getCarrierCallRedirectionTimeoutMillis(resolver);
+            Timeouts.getCallScreeningTimeoutMillis(resolver);
+            Timeouts.getEmergencyCallbackWindowMillis(resolver);
+            Timeouts.getCallRemoveUnbindInCallServicesDelay(resolver);
+        }
+        return SystemClock.elapsedRealtimeNanos() - start;
+    }
+}
@@ -28,6 +28,7 @@ import com.android.server.telecom.TelecomSystem;
 import com.android.server.telecom.voip.ParallelTransaction;
 import com.android.server.telecom.voip.SerialTransaction;
 import com.android.server.telecom.voip.TransactionManager;
+import com.android.server.telecom.voip.TransactionScheduler;
 import com.android.server.telecom.voip.VoipCallTransaction;
 import com.android.server.telecom.voip.VoipCallTransactionResult;
 
@@ -41,6 +42,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -382,6 +384,66 @@ public class VoipCallTransactionTest extends TelecomTestCase {
         verifyTransactionsFinished(t1, t2, t3);
     }
 
+    /**
+     * Runs transactions back to back and verifies they are multiplexed onto the bounded set of
+     * scheduler threads rather than each starting its own thread.
+     */
+    @SmallTest
+    @Test
+    public void testTransactionsShareSchedulerThreads()
+            throws ExecutionException, InterruptedException, TimeoutException {
+        final int numTransactions = 100;
+        // Transactions take their handlers from the process-wide TransactionManager.
+        TransactionScheduler scheduler = TransactionManager.getInstance().getScheduler();
+        long handlersBefore = scheduler.getHandlersCreated();
+        CountDownLatch latch = new CountDownLatch(numTransactions);
+        OutcomeReceiver<VoipCallTransactionResult, CallException> outcomeReceiver =
+                result -> latch.countDown();
+        for (int i = 0; i < numTransactions; i++) {
+            mTransactionManager.addTransaction(new TestVoipCallTransaction("t" + i, 0L,
+                    TestVoipCallTransaction.SUCCESS), outcomeReceiver);
+        }
+        assertTrue(latch.await(10000L, TimeUnit.MILLISECONDS));
+        assertEquals(numTransactions, scheduler.getHandlersCreated() - handlersBefore);
+        assertTrue(scheduler.getThreadsRunning() <= scheduler.getPoolSize());
+    }
+
+    /**
+     * Verifies scheduler threads quit once no transaction has used them for the keep alive time,
+     * and are started again when needed.
+     */
+    @SmallTest
+    @Test
+    public void testIdleSchedulerThreadsQuit() throws Exception {
+        TransactionScheduler scheduler = new TransactionScheduler("VoipCallTransactionTest",
+                2 /* poolSize */, 10L /* keepAliveMillis */);
+        TransactionScheduler.TransactionHandler first = scheduler.obtainHandler();
+        TransactionScheduler.TransactionHandler second = scheduler.obtainHandler();
+        assertEquals(2, scheduler.getThreadsRunning());
+
+        // A thread which still has a transaction on it is kept.
+        first.quit();
+        waitForThreadsRunning(scheduler, 1);
+
+        second.quit();
+        waitForThreadsRunning(scheduler, 0);
+
+        TransactionScheduler.TransactionHandler third = scheduler.obtainHandler();
+        assertEquals(1, scheduler.getThreadsRunning());
+        assertEquals(3, scheduler.getThreadsStarted());
+        third.quit();
+    }
+
+    private static void waitForThreadsRunning(TransactionScheduler scheduler, int expected)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (scheduler.getThreadsRunning() != expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(expected, scheduler.getThreadsRunning());
+    }
+
     public void verifyTransactionsFinished(TestVoipCallTransaction... transactions) {
         for (TestVoipCallTransaction t : transactions) {
             assertTrue("TestVoipCallTransaction[" + t.mName + "] never called finishTransaction",